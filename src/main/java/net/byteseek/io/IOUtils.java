@@ -32,12 +32,15 @@
 package net.byteseek.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * A static utility package containing some useful methods for reading and
- * writing bytes using InputStreams, OutputStreams, and RandomAccessFiles.
+ * writing bytes using InputStreams, OutputStreams, RandomAccessFiles and channels.
  * 
  * @author M\tt Palmer
  */
@@ -219,6 +222,55 @@ public final class IOUtils {
 		return totalRead;
 	}
 
+	/**
+	 * Reads bytes from a {@link java.nio.channels.ReadableByteChannel} into the byte array,
+	 * starting from the current position of the channel, until the byte array is filled
+	 * or there are no more bytes in the channel.
+	 * <p>
+	 * The channel must be in blocking mode.  Returns the total number of bytes read into the array.
+	 *
+	 * @param input
+	 *            The ReadableByteChannel to read from.
+	 * @param bytes
+	 *            The byte array to fill.
+	 * @return int The total number of bytes read.
+	 * @throws IOException
+	 *             If a problem occurs reading from the ReadableByteChannel.
+	 */
+	public static int readBytes(final ReadableByteChannel input, final byte[] bytes)
+			throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			if (input.read(buffer) == -1) {
+				break;
+			}
+		}
+		return buffer.position();
+	}
+
+	/**
+	 * Reads bytes from a {@link java.nio.channels.SeekableByteChannel} into the byte array,
+	 * starting from the position provided in the channel, until the byte array is filled
+	 * or there are no more bytes in the channel.
+	 * <p>
+	 * Returns the total number of bytes read into the array.
+	 *
+	 * @param input
+	 *            The SeekableByteChannel to read from.
+	 * @param bytes
+	 *            The byte array to fill.
+	 * @param fromPosition
+	 *            The position to begin reading from in the SeekableByteChannel.
+	 * @return int The total number of bytes read.
+	 * @throws IOException
+	 *             If a problem occurs reading from the SeekableByteChannel.
+	 */
+	public static int readBytes(final SeekableByteChannel input,
+			final byte[] bytes, final long fromPosition) throws IOException {
+		input.position(fromPosition);
+		return readBytes(input, bytes);
+	}
+
 	/**
 	 * Writes the contents of an array of bytes into a
 	 * {@link java.io.RandomAccessFile}.
@@ -32,11 +32,18 @@
 package net.byteseek.io.reader;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.cache.WindowCache.WindowObserver;
+import net.byteseek.io.reader.windows.ByteBufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
 import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowArrayPool;
+import net.byteseek.io.reader.windows.WindowBufferPool;
 import net.byteseek.utils.ArgUtils;
 
 //FUTURE:
@@ -50,6 +57,22 @@ import net.byteseek.utils.ArgUtils;
  * It provides common Window and cache management services using a fixed Window
  * size, and a standard Window iterator
  * {@link net.byteseek.io.reader.AbstractReader.WindowIterator}.
+ * <p>
+ * Subclasses which can create windows of any size can offer adaptive window sizes,
+ * using {@link #useAdaptiveWindowSizes(int)}.  Windows then grow, up to a maximum size,
+ * while they are read one after another, and shrink back towards the window size when
+ * they are read at random.  An index of the windows created replaces the arithmetic on
+ * the window size to find the window containing a position.  Windows are still cached by
+ * their start position, so caches and searchers work unchanged.
+ * <p>
+ * The window lookup performed by {@link #getWindow(long)} is safe to call from
+ * more than one thread at the same time, as long as the {@link WindowCache} used
+ * and the implementation of {@link #createWindow(long)} are also thread-safe.
+ * <p>
+ * It counts cache hits and misses, the windows it creates, the bytes in them and the
+ * time spent creating them, which can be obtained using {@link #getStatistics()}.
+ * The counts are only updated when a window other than the last window is required,
+ * so reading bytes from the same window costs nothing extra.
  * 
  * @author Matt Palmer
  */
@@ -95,8 +118,57 @@ public abstract class AbstractReader implements WindowReader {
 	 * to be consecutive or close to the previous byte read from. Recording the
 	 * last window therefore avoids the need to look it up in the cache if the
 	 * required position is still inside the last Window.
+	 * <p>
+	 * It is volatile so that a reader shared between threads always sees a fully
+	 * constructed Window.  It is only ever read once into a local variable
+	 * on each lookup, so another thread replacing it cannot affect that lookup.
+	 */
+	private volatile Window lastWindow;
+
+	/**
+	 * An optional pool of arrays to create Windows from, which the arrays of
+	 * Windows freed by the cache are recycled into.  If null, no arrays are pooled.
+	 */
+	private volatile WindowArrayPool arrayPool;
+
+	/**
+	 * An optional pool of direct buffers to read Windows into, which the buffers of
+	 * Windows freed by the cache are recycled into.  If null, no buffers are pooled.
+	 */
+	private volatile WindowBufferPool bufferPool;
+
+	/**
+	 * Recycles the arrays and buffers of Windows freed by the cache into the pools.
+	 * It is only subscribed to the cache while there is an array or buffer pool.
+	 */
+	private final WindowObserver windowRecycler = new WindowRecycler();
+
+	/**
+	 * An index of the windows created when window sizes are adaptive,
+	 * or null if all windows are the window size.
 	 */
-	private Window lastWindow;
+	private volatile WindowIndex windowIndex;
+
+	/**
+	 * The maximum size of a window when window sizes are adaptive.
+	 */
+	private int maxWindowSize;
+
+	/**
+	 * The size of the last window added to the window index, and the position
+	 * immediately after it.  Guarded by the lock on the window index.
+	 */
+	private int lastIndexedSize;
+	private long lastIndexedEnd = -1;
+
+	/**
+	 * Statistics on cache use and window creation.
+	 */
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
+	private final AtomicLong windowsCreated = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong createWindowNanos = new AtomicLong();
 
 	/**
 	 * Construct the WindowReader using a default window size, using the WindowCache
@@ -142,7 +214,7 @@ public abstract class AbstractReader implements WindowReader {
 	@Override
 	public int readByte(final long position) throws IOException {
 		final Window window = getWindow(position);
-		final int offset = (int) (position % (long) windowSize);
+		final int offset = getWindowOffset(position);
 		if (window == null || offset >= window.length()) {
 			return NO_BYTE_AT_POSITION;
 		}
@@ -165,19 +237,24 @@ public abstract class AbstractReader implements WindowReader {
 	@Override
 	public Window getWindow(final long position) throws IOException {
 		if (position >= 0) {
-			Window window;
-			final int offset = (int) (position % (long) windowSize);
-			final long windowStart = position - offset;
-			if (lastWindow != null
-					&& lastWindow.getWindowPosition() == windowStart) {
-				window = lastWindow;
-			} else {
+			Window window = lastWindow;
+			if (windowIndex != null && isInWindow(window, position)) {
+				return window;
+			}
+			final long windowStart = getWindowStart(position);
+			final int offset = (int) (position - windowStart);
+			if (window == null || window.getWindowPosition() != windowStart) {
 				window = cache.getWindow(windowStart);
 				if (window != null) {
+					cacheHits.incrementAndGet();
 					lastWindow = window;
 				} else {
+					cacheMisses.incrementAndGet();
+					final long startTime = System.nanoTime();
 					window = createWindow(windowStart);
+					createWindowNanos.addAndGet(System.nanoTime() - startTime);
 					if (window != null) {
+						countWindowCreated(window);
 						lastWindow = window;
 						cache.addWindow(window);
 					}
@@ -216,7 +293,218 @@ public abstract class AbstractReader implements WindowReader {
 	 */
 	@Override
 	public int getWindowOffset(final long position) {
-		return (int) (position % (long) windowSize);
+		if (windowIndex == null) {
+			return (int) (position % (long) windowSize);
+		}
+		final Window window = lastWindow;
+		if (isInWindow(window, position)) {
+			return (int) (position - window.getWindowPosition());
+		}
+		return (int) (position - getWindowStart(position));
+	}
+
+	/**
+	 * Makes the windows of this reader grow while they are read one after another, up to
+	 * the maximum window size given, and shrink back towards the window size of this reader
+	 * when they are read at random.  Window sizes are always a multiple of the window size.
+	 * For example, a sequential scan of a file with a window size of 4096 and a maximum of
+	 * 1MB reads most of the file in 1MB windows, while random probes into it only read
+	 * 4096 bytes at a time.
+	 * <p>
+	 * Caches which hold a fixed number of windows can hold far more memory with adaptive
+	 * window sizes, so a cache bounded by bytes, such as a
+	 * {@link net.byteseek.io.reader.cache.BudgetedCache}, is a better fit.  An index
+	 * entry is kept for each window created, so the same bytes are always read into the
+	 * same window.  Array pools cannot be used with adaptive window sizes.
+	 * <p>
+	 * This must be called before any windows are read from the reader.
+	 * Subclasses which can create windows of any size given by {@link #getWindowSize(long)}
+	 * can make this method public.
+	 *
+	 * @param maxWindowSize The largest size a window can grow to.
+	 * @throws IllegalArgumentException if the maximum window size is smaller than the window size.
+	 * @throws IllegalStateException if windows have already been read, or an array pool is in use.
+	 */
+	protected void useAdaptiveWindowSizes(final int maxWindowSize) {
+		if (maxWindowSize < windowSize) {
+			throw new IllegalArgumentException("The maximum window size " + maxWindowSize +
+											   " cannot be smaller than the window size " + windowSize);
+		}
+		if (lastWindow != null || arrayPool != null) {
+			throw new IllegalStateException("Adaptive window sizes must be set before reading," +
+											" and cannot be used with an array pool.");
+		}
+		this.maxWindowSize = maxWindowSize - maxWindowSize % windowSize;
+		this.lastIndexedSize = windowSize;
+		this.windowIndex = new WindowIndex();
+	}
+
+	/**
+	 * Returns true if this reader uses adaptive window sizes.
+	 *
+	 * @return true if this reader uses adaptive window sizes.
+	 */
+	public boolean isAdaptiveWindowSize() {
+		return windowIndex != null;
+	}
+
+	/**
+	 * Returns the size of the window starting at the position given, which subclasses
+	 * should create windows of in {@link #createWindow(long)}.  This is the window size
+	 * of the reader, unless it uses adaptive window sizes.
+	 *
+	 * @param windowStart The start position of a window.
+	 * @return The size of the window starting at that position.
+	 */
+	protected final int getWindowSize(final long windowStart) {
+		final WindowIndex index = windowIndex;
+		if (index == null) {
+			return windowSize;
+		}
+		final int size = index.getWindowLength(windowStart);
+		return size > 0? size : windowSize;
+	}
+
+	/**
+	 * Sets a {@link WindowArrayPool} to create the arrays of new Windows from,
+	 * recycling the arrays of HardWindows back into the pool when the cache frees them.
+	 * Passing in null stops pooling arrays.
+	 * <p>
+	 * Only Windows freed by the cache are recycled, and never the last Window
+	 * accessed, so an array pool is safe to use as long as clients do not hold on to
+	 * Windows after reading further than the capacity of the cache.
+	 * Pooling only saves allocations if the cache notifies its subscribers when it frees
+	 * windows; a cache which holds every window recycles nothing.
+	 * Subclasses which create windows using {@link #createWindowArray()} can
+	 * make this method public if it is safe for them to pool arrays.
+	 *
+	 * @param pool The WindowArrayPool to use, or null if arrays should not be pooled.
+	 * @throws IllegalArgumentException if the array size of the pool is not the window size of this reader.
+	 * @throws IllegalStateException if the reader uses adaptive window sizes.
+	 */
+	protected void useArrayPool(final WindowArrayPool pool) {
+		if (pool != null && windowIndex != null) {
+			throw new IllegalStateException("An array pool cannot be used with adaptive window sizes.");
+		}
+		if (pool != null && pool.getArraySize() != windowSize) {
+			throw new IllegalArgumentException("The pool array size " + pool.getArraySize() +
+					                           " must be the same as the window size " + windowSize);
+		}
+		final boolean hadPool = arrayPool != null || bufferPool != null;
+		arrayPool = pool;
+		updateRecycler(hadPool);
+	}
+
+	/**
+	 * Returns the {@link WindowArrayPool} used by this reader, or null if there isn't one.
+	 *
+	 * @return The WindowArrayPool used by this reader, or null if there isn't one.
+	 */
+	public WindowArrayPool getArrayPool() {
+		return arrayPool;
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of this reader: its cache hits and misses,
+	 * the number of windows created, the bytes in them, and the time spent creating them.
+	 *
+	 * @return A snapshot of the statistics of this reader.
+	 */
+	public ReaderStatistics getStatistics() {
+		return new ReaderStatistics(cacheHits.get(), cacheMisses.get(), windowsCreated.get(),
+									bytesRead.get(), createWindowNanos.get());
+	}
+
+	/**
+	 * Counts a window created by this reader in its statistics.  Windows returned by
+	 * {@link #createWindow(long)} are counted automatically.  Subclasses which create
+	 * other windows, for example reading ahead through a stream, should count them with this method.
+	 *
+	 * @param window The window which was created.
+	 */
+	protected final void countWindowCreated(final Window window) {
+		windowsCreated.incrementAndGet();
+		bytesRead.addAndGet(window.length());
+	}
+
+	/**
+	 * Resets all the statistics of this reader to zero.
+	 */
+	public void resetStatistics() {
+		cacheHits.set(0);
+		cacheMisses.set(0);
+		windowsCreated.set(0);
+		bytesRead.set(0);
+		createWindowNanos.set(0);
+	}
+
+	/**
+	 * Sets a {@link WindowBufferPool} to take the direct buffers of new Windows from,
+	 * recycling the buffers of {@link ByteBufferWindow}s back into the pool when the
+	 * cache frees them.  Passing in null stops pooling buffers.
+	 * <p>
+	 * As with an array pool, only Windows freed by the cache are recycled, and never
+	 * the last Window accessed, so a buffer pool is safe to use as long as clients do not
+	 * hold on to Windows after reading further than the capacity of the cache.
+	 * With adaptive window sizes, only windows of the window size are pooled.
+	 * Subclasses which read windows into direct buffers using {@link #borrowWindowBuffer(long)}
+	 * can make this method public.
+	 *
+	 * @param pool The WindowBufferPool to use, or null if buffers should not be pooled.
+	 * @throws IllegalArgumentException if the buffer size of the pool is not the window size of this reader.
+	 */
+	protected void useBufferPool(final WindowBufferPool pool) {
+		if (pool != null && pool.getBufferSize() != windowSize) {
+			throw new IllegalArgumentException("The pool buffer size " + pool.getBufferSize() +
+											   " must be the same as the window size " + windowSize);
+		}
+		final boolean hadPool = arrayPool != null || bufferPool != null;
+		bufferPool = pool;
+		updateRecycler(hadPool);
+	}
+
+	/**
+	 * Returns the {@link WindowBufferPool} used by this reader, or null if there isn't one.
+	 *
+	 * @return The WindowBufferPool used by this reader, or null if there isn't one.
+	 */
+	public WindowBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Returns a cleared direct buffer from the buffer pool to read the Window starting at the
+	 * position given into, or null if there is no buffer pool, it is empty, or the Window
+	 * is not the window size.  Subclasses must allocate a buffer themselves if this returns null.
+	 *
+	 * @param windowStart The start position of the Window.
+	 * @return A cleared direct buffer of the window size, or null if none is available.
+	 */
+	protected final ByteBuffer borrowWindowBuffer(final long windowStart) {
+		final WindowBufferPool pool = bufferPool;
+		return pool == null || getWindowSize(windowStart) != windowSize? null : pool.borrowBuffer();
+	}
+
+	/**
+	 * Returns a byte array of the window size to read a new Window into,
+	 * taken from the array pool if there is one.
+	 *
+	 * @return A byte array of the window size.
+	 */
+	protected byte[] createWindowArray() {
+		final WindowArrayPool pool = arrayPool;
+		return pool == null? new byte[windowSize] : pool.borrowArray();
+	}
+
+	/**
+	 * Returns a byte array to read a new Window starting at the position given into,
+	 * of the size given by {@link #getWindowSize(long)}.
+	 *
+	 * @param windowStart The start position of the Window.
+	 * @return A byte array of the size of the Window starting at that position.
+	 */
+	protected byte[] createWindowArray(final long windowStart) {
+		return windowIndex == null? createWindowArray() : new byte[getWindowSize(windowStart)];
 	}
 
 	/**
@@ -236,12 +524,113 @@ public abstract class AbstractReader implements WindowReader {
 	 */
 	protected abstract Window createWindow(final long windowStart) throws IOException;
 
+	/**
+	 * Returns the start position of the window containing the position given.
+	 * With adaptive window sizes, a new window is added to the window index if no window
+	 * contains the position yet.  It is twice the size of the last window added if it
+	 * follows on from it, or half its size otherwise, but never overlaps another window.
+	 *
+	 * @param position The position to find the window start of.
+	 * @return The start position of the window containing the position.
+	 */
+	private long getWindowStart(final long position) {
+		final WindowIndex index = windowIndex;
+		if (index == null) {
+			return position - position % windowSize;
+		}
+		synchronized (index) {
+			final long indexedStart = index.getWindowStart(position);
+			if (indexedStart != WindowIndex.NOT_INDEXED) {
+				return indexedStart;
+			}
+			// All windows start and end on multiples of the window size, so the window starts
+			// on the multiple before the position without overlapping the window before it:
+			final long windowStart = position - position % windowSize;
+			int size = windowStart == lastIndexedEnd? Math.min(lastIndexedSize * 2, maxWindowSize)
+													 : Math.max(lastIndexedSize / 2, windowSize);
+			size -= size % windowSize;
+			final long nextStart = index.getNextWindowStart(windowStart);
+			if (nextStart != WindowIndex.NOT_INDEXED && windowStart + size > nextStart) {
+				size = (int) (nextStart - windowStart);
+			}
+			// Record the size actually indexed, so growth continues from the window added:
+			lastIndexedSize = size;
+			lastIndexedEnd = windowStart + size;
+			index.add(windowStart, size);
+			return windowStart;
+		}
+	}
+
+	/**
+	 * Returns true if the window is not null and contains the position given.
+	 * With adaptive window sizes, this avoids looking up the window index for
+	 * positions in the last window used.
+	 *
+	 * @param window   The window to test, which can be null.
+	 * @param position The position to test.
+	 * @return true if the window is not null and contains the position given.
+	 */
+	private static boolean isInWindow(final Window window, final long position) {
+		return window != null && position >= window.getWindowPosition() &&
+								 position < window.getNextWindowPosition();
+	}
+
+	/**
+	 * Recycles the array of a HardWindow into the array pool, if there is one.
+	 * The last Window accessed is never recycled, as it can still be returned by
+	 * {@link #getWindow(long)} without going to the cache.
+	 * <p>
+	 * Subclasses can call this for Windows whose arrays are no longer referenced
+	 * by a cache which does not notify its subscribers that they are free.
+	 *
+	 * @param window The Window whose array can be recycled.
+	 * @throws IOException If there was a problem getting the array of the window.
+	 */
+	protected final void recycleWindowArray(final Window window) throws IOException {
+		final WindowArrayPool pool = arrayPool;
+		if (pool != null && window instanceof HardWindow && window != lastWindow) {
+			pool.recycleArray(window.getArray());
+		}
+	}
+
+	/**
+	 * Subscribes the window recycler to the cache if a pool has just been set,
+	 * or unsubscribes it if there are no longer any pools.
+	 *
+	 * @param hadPool Whether there was an array or buffer pool before the pools changed.
+	 */
+	private void updateRecycler(final boolean hadPool) {
+		final boolean hasPool = arrayPool != null || bufferPool != null;
+		if (!hadPool && hasPool) {
+			cache.subscribe(windowRecycler);
+		} else if (hadPool && !hasPool) {
+			cache.unsubscribe(windowRecycler);
+		}
+	}
+
+	/**
+	 * Recycles the arrays of HardWindows freed by the cache into the array pool,
+	 * and the buffers of ByteBufferWindows into the buffer pool.
+	 * The last Window accessed is never recycled.
+	 */
+	private final class WindowRecycler implements WindowObserver {
+
+		@Override
+		public void windowFree(final Window window, final WindowCache fromCache) throws IOException {
+			recycleWindowArray(window);
+			final WindowBufferPool pool = bufferPool;
+			if (pool != null && window instanceof ByteBufferWindow && window != lastWindow) {
+				pool.recycleBuffer(((ByteBufferWindow) window).getByteBuffer());
+			}
+		}
+	}
+
 	/**
 	 * An iterator of {@link Window}s over a {@link WindowReader}.
 	 */
 	private class WindowIterator implements Iterator<Window> {
 
-		private int position = 0;
+		private long position = 0;
 
 		/**
 		 * {@inheritDoc}
@@ -0,0 +1,104 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import net.byteseek.io.reader.windows.Window;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.Future;
+
+/**
+ * An interface for random access to the windows of an underlying byte source without
+ * blocking the thread which asks for them, in the style of
+ * {@link java.nio.channels.AsynchronousFileChannel}.
+ * <p>
+ * A window is either returned as a {@link Future}, or passed to a {@link CompletionHandler}
+ * once it is available.  Windows which are already cached may be passed to the handler
+ * by the thread asking for them, before the method returns.  Otherwise, the handler is
+ * called by a thread of the pool which completes the read.  Handlers should not block,
+ * as they may hold up other reads completing.
+ * <p>
+ * As with a {@link WindowReader}, a window only has to contain the position requested,
+ * and a null window indicates that there is no byte at that position.
+ * Implementations must be thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public interface AsyncWindowReader extends Closeable {
+
+	/**
+	 * Returns a Future which completes with the {@link Window} for the given position,
+	 * or with null if there is no byte at that position.
+	 *
+	 * @param position
+	 *            The position of the byte in the underlying data.
+	 * @return A Future which completes with the Window containing the position.
+	 */
+	Future<Window> getWindow(long position);
+
+	/**
+	 * Reads the {@link Window} for the given position, passing it to the handler
+	 * when it is available.  The window passed to the handler is null if there
+	 * is no byte at that position.
+	 *
+	 * @param <A>
+	 *            The type of the attachment.
+	 * @param position
+	 *            The position of the byte in the underlying data.
+	 * @param attachment
+	 *            An object to pass to the handler, which can be null.
+	 * @param handler
+	 *            The handler to pass the window, or any failure reading it, to.
+	 */
+	<A> void getWindow(long position, A attachment, CompletionHandler<Window, ? super A> handler);
+
+	/**
+	 * Returns the offset into a {@link Window} for a given position.
+	 *
+	 * @param position
+	 *            The position which you want the Window offset of.
+	 * @return The offset into a Window matching the position given.
+	 */
+	int getWindowOffset(long position);
+
+	/**
+	 * Returns the total length of the bytes provided by this AsyncWindowReader.
+	 *
+	 * @return long the length of the byte source accessed by the reader.
+	 * @throws IOException
+	 *             If a problem occurred trying to determine the length.
+	 */
+	long length() throws IOException;
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.byteseek.io.reader.cache.ConcurrentClockCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * An {@link AsyncWindowReader} which reads a file into cached byte arrays using an
+ * {@link AsynchronousFileChannel}, so no thread blocks waiting for a window to be read.
+ * <p>
+ * Reads complete on the thread pool of the channel, which can be given to the reader, so
+ * that the reads of many files share a small pool of threads.  Windows found in the cache
+ * are passed to the handler straight away, on the thread which asked for them.  If a window
+ * is asked for again while it is still being read, the second request waits for the first
+ * read to complete rather than reading the window again.
+ * <p>
+ * This reader is thread-safe, as long as the {@link WindowCache} it uses is also thread-safe.
+ * By default, it uses a {@link net.byteseek.io.reader.cache.ConcurrentClockCache}.
+ *
+ * @author Matt Palmer
+ */
+public class AsynchronousFileReader implements AsyncWindowReader {
+
+	private final File file;
+	private final int windowSize;
+	private final WindowCache cache;
+	private final AsynchronousFileChannel channel;
+	private final long length;
+	private final ConcurrentMap<Long, PendingRead> pendingReads;
+
+	/**
+	 * Constructs an AsynchronousFileReader which defaults to a window size of 4096, caching
+	 * about the last 32 recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.ConcurrentClockCache}, and completing reads on
+	 * the default thread pool for asynchronous channels.
+	 *
+	 * @param file The file to read from.
+	 * @throws IOException If the file could not be opened.
+	 * @throws IllegalArgumentException if the file passed in is null.
+	 */
+	public AsynchronousFileReader(final File file) throws IOException {
+		this(file, AbstractReader.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructs an AsynchronousFileReader using the window size given, caching about the
+	 * last 32 recently used Windows in a {@link net.byteseek.io.reader.cache.ConcurrentClockCache},
+	 * and completing reads on the default thread pool for asynchronous channels.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of the byte array to read into.
+	 * @throws IOException If the file could not be opened.
+	 * @throws IllegalArgumentException if the file passed in is null, or the window size is less than one.
+	 */
+	public AsynchronousFileReader(final File file, final int windowSize) throws IOException {
+		this(file, windowSize, new ConcurrentClockCache(AbstractReader.DEFAULT_CAPACITY), null);
+	}
+
+	/**
+	 * Constructs an AsynchronousFileReader which reads the file given into windows of the
+	 * size given, caching them in the thread-safe {@link WindowCache} supplied, and completing
+	 * reads on the executor given.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of the byte array to read into.
+	 * @param cache The thread-safe cache of Windows to use.
+	 * @param executor The thread pool to complete reads on, or null to use the default pool
+	 *                 for asynchronous channels.
+	 * @throws IOException If the file could not be opened.
+	 * @throws IllegalArgumentException If the file or cache passed in is null, or the window size is less than one.
+	 */
+	public AsynchronousFileReader(final File file, final int windowSize, final WindowCache cache,
+								  final ExecutorService executor) throws IOException {
+		ArgUtils.checkNullObject(file, "file");
+		ArgUtils.checkPositiveInteger(windowSize, "windowSize");
+		ArgUtils.checkNullObject(cache, "cache");
+		this.file = file;
+		this.windowSize = windowSize;
+		this.cache = cache;
+		this.channel = AsynchronousFileChannel.open(file.toPath(),
+				Collections.singleton(StandardOpenOption.READ), executor);
+		this.length = channel.size();
+		this.pendingReads = new ConcurrentHashMap<Long, PendingRead>();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Future<Window> getWindow(final long position) {
+		final CompletionFuture<Window> future = new CompletionFuture<Window>();
+		getWindow(position, null, future);
+		return future;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <A> void getWindow(final long position, final A attachment,
+							  final CompletionHandler<Window, ? super A> handler) {
+		if (position < 0 || position >= length) {
+			handler.completed(null, attachment);
+			return;
+		}
+		final long windowStart = position - position % windowSize;
+		final Window cached;
+		try {
+			cached = cache.getWindow(windowStart);
+		} catch (final IOException ex) {
+			handler.failed(ex, attachment);
+			return;
+		}
+		if (cached != null) {
+			handler.completed(cached, attachment);
+			return;
+		}
+		final PendingRead read = new PendingRead(windowStart);
+		final PendingRead existing = pendingReads.putIfAbsent(windowStart, read);
+		if (existing != null) {
+			existing.addWaiter(attachment, handler);
+		} else {
+			read.addWaiter(attachment, handler);
+			// A read of the window may have finished since the cache was checked:
+			final Window cachedSince;
+			try {
+				cachedSince = cache.getWindow(windowStart);
+			} catch (final IOException ex) {
+				read.finish(null, ex);
+				return;
+			}
+			if (cachedSince != null) {
+				read.finish(cachedSince, null);
+			} else {
+				read.start();
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getWindowOffset(final long position) {
+		return (int) (position % windowSize);
+	}
+
+	/**
+	 * Returns the length of the file.
+	 *
+	 * @return The length of the file accessed by the reader.
+	 */
+	@Override
+	public final long length() {
+		return length;
+	}
+
+	/**
+	 * Returns the size of the windows read by this reader.
+	 *
+	 * @return The size of the windows read by this reader.
+	 */
+	public final int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Returns the {@link java.io.File} object accessed by this reader.
+	 *
+	 * @return The File object accessed by this reader.
+	 */
+	public final File getFile() {
+		return file;
+	}
+
+	/**
+	 * Closes the underlying channel, then clears the cache.  Reads which have not
+	 * completed fail with an {@link java.nio.channels.AsynchronousCloseException}.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			channel.close();
+		} finally {
+			cache.clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file:" + file + " length: " + length + " cache:" + cache + ']';
+	}
+
+	/**
+	 * A read of a window in progress, which completes the handlers of all requests for it.
+	 */
+	private final class PendingRead implements CompletionHandler<Integer, ByteBuffer> {
+
+		private final long windowStart;
+		private final List<Waiter<?>> waiters = new ArrayList<Waiter<?>>(2);
+		private boolean done;
+		private Window window;
+		private Throwable failure;
+
+		PendingRead(final long windowStart) {
+			this.windowStart = windowStart;
+		}
+
+		<A> void addWaiter(final A attachment, final CompletionHandler<Window, ? super A> handler) {
+			final Waiter<A> waiter = new Waiter<A>(attachment, handler);
+			synchronized (this) {
+				if (!done) {
+					waiters.add(waiter);
+					return;
+				}
+			}
+			waiter.complete(window, failure);
+		}
+
+		void start() {
+			final ByteBuffer buffer = ByteBuffer.wrap(new byte[windowSize]);
+			try {
+				channel.read(buffer, windowStart, buffer, this);
+			} catch (final RuntimeException ex) {
+				failed(ex, buffer);
+			}
+		}
+
+		@Override
+		public void completed(final Integer bytesRead, final ByteBuffer buffer) {
+			if (bytesRead >= 0 && buffer.hasRemaining()) {
+				try {
+					channel.read(buffer, windowStart + buffer.position(), buffer, this);
+				} catch (final RuntimeException ex) {
+					failed(ex, buffer);
+				}
+				return;
+			}
+			final int totalRead = buffer.position();
+			final Window read = totalRead > 0 ? new HardWindow(buffer.array(), windowStart, totalRead) : null;
+			if (read != null) {
+				try {
+					cache.addWindow(read);
+				} catch (final IOException ex) {
+					finish(null, ex);
+					return;
+				}
+			}
+			finish(read, null);
+		}
+
+		@Override
+		public void failed(final Throwable exc, final ByteBuffer buffer) {
+			finish(null, exc);
+		}
+
+		private void finish(final Window read, final Throwable readFailure) {
+			final Waiter<?>[] toNotify;
+			synchronized (this) {
+				window = read;
+				failure = readFailure;
+				done = true;
+				toNotify = waiters.toArray(new Waiter<?>[waiters.size()]);
+				waiters.clear();
+			}
+			pendingReads.remove(windowStart, this);
+			for (final Waiter<?> waiter : toNotify) {
+				waiter.complete(read, readFailure);
+			}
+		}
+	}
+
+	/**
+	 * A handler waiting for a window, with its attachment.
+	 */
+	private static final class Waiter<A> {
+
+		private final A attachment;
+		private final CompletionHandler<Window, ? super A> handler;
+
+		Waiter(final A attachment, final CompletionHandler<Window, ? super A> handler) {
+			this.attachment = attachment;
+			this.handler = handler;
+		}
+
+		void complete(final Window window, final Throwable failure) {
+			if (failure != null) {
+				handler.failed(failure, attachment);
+			} else {
+				handler.completed(window, attachment);
+			}
+		}
+	}
+
+}
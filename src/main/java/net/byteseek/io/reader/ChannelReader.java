@@ -0,0 +1,319 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+
+import net.byteseek.io.IOUtils;
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.TempFileCache;
+import net.byteseek.io.reader.cache.TwoLevelCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowArrayPool;
+import net.byteseek.io.reader.windows.WindowMissingException;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader extending {@link AbstractReader} over a forward-only
+ * {@link java.nio.channels.ReadableByteChannel}, such as a socket or a pipe.
+ * <p>
+ * It behaves in the same way as an {@link InputStreamReader}, but reads bytes from
+ * the channel directly into the arrays of its Windows, rather than having to adapt the
+ * channel into an InputStream.  If a position requested has not yet been read, then
+ * the channel will be read (and the Windows encountered cached) until the position
+ * requested is available.  Calling {@link #length()} reads the entire channel.
+ * <p>
+ * By default, the ChannelReader uses a {@link TwoLevelCache}, with a
+ * {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache} as its primary cache, and a
+ * {@link TempFileCache} as its secondary cache, so any position already read can be
+ * provided again.  If you provide your own WindowCache, it must be able to provide
+ * any earlier Window, or you must never request a position it can no longer provide,
+ * otherwise a {@link net.byteseek.io.reader.windows.WindowMissingException} will be thrown.
+ * <p>
+ * The channel must be in blocking mode.  For a {@link java.nio.channels.SeekableByteChannel},
+ * use a {@link SeekableChannelReader} instead, which does not need to cache the entire channel.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public class ChannelReader extends AbstractReader {
+
+	private final ReadableByteChannel channel;
+	private final boolean closeChannelOnClose;
+	private long nextReadPos = 0;
+	private long length = UNKNOWN_LENGTH;
+
+	/**
+	 * Constructs a ChannelReader from a ReadableByteChannel, using the default
+	 * window size of 4096 and a default capacity of 32, and a
+	 * {@link TwoLevelCache} with a {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache} as its primary
+	 * cache and a {@link TempFileCache} as the secondary cache.
+	 *
+	 * @param channel The ReadableByteChannel to read from.
+	 * @throws IllegalArgumentException if the channel is null or is not in blocking mode.
+	 */
+	public ChannelReader(final ReadableByteChannel channel) {
+		this(channel, DEFAULT_WINDOW_SIZE, DEFAULT_CAPACITY, true);
+	}
+
+	/**
+	 * Constructs a ChannelReader from a ReadableByteChannel, using the default
+	 * window size of 4096 and a default capacity of 32, and a
+	 * {@link TwoLevelCache} with a {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache} as its primary
+	 * cache and a {@link TempFileCache} as the secondary cache.
+	 *
+	 * @param channel             The ReadableByteChannel to read from.
+	 * @param closeChannelOnClose Whether to close the underlying channel when this reader is closed.
+	 * @throws IllegalArgumentException if the channel is null or is not in blocking mode.
+	 */
+	public ChannelReader(final ReadableByteChannel channel, final boolean closeChannelOnClose) {
+		this(channel, DEFAULT_WINDOW_SIZE, DEFAULT_CAPACITY, closeChannelOnClose);
+	}
+
+	/**
+	 * Constructs a ChannelReader from a ReadableByteChannel using a default
+	 * window size of 4096, and the {@link WindowCache} provided.
+	 *
+	 * @param channel The ReadableByteChannel to read from.
+	 * @param cache   The WindowCache to use.
+	 * @throws IllegalArgumentException if the channel or cache is null, or the channel is not in blocking mode.
+	 */
+	public ChannelReader(final ReadableByteChannel channel, final WindowCache cache) {
+		this(channel, DEFAULT_WINDOW_SIZE, cache, true);
+	}
+
+	/**
+	 * Constructs a ChannelReader from a ReadableByteChannel, using the window size
+	 * provided, a default capacity of 32, and a {@link TwoLevelCache} with a
+	 * {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache} as its primary cache
+	 * and a {@link TempFileCache} as the secondary cache.
+	 *
+	 * @param channel    The ReadableByteChannel to read from.
+	 * @param windowSize The size of a Window to create from the channel.
+	 * @throws IllegalArgumentException if the channel is null or is not in blocking mode,
+	 *                                  or the window size is less than one.
+	 */
+	public ChannelReader(final ReadableByteChannel channel, final int windowSize) {
+		this(channel, windowSize, DEFAULT_CAPACITY, true);
+	}
+
+	/**
+	 * Constructs a ChannelReader from a ReadableByteChannel, using the window size
+	 * and capacity provided, and a {@link TwoLevelCache} with a
+	 * {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache} as its primary cache
+	 * and a {@link TempFileCache} as the secondary cache.
+	 *
+	 * @param channel             The ReadableByteChannel to read from.
+	 * @param windowSize          The size of a Window to create from the channel.
+	 * @param capacity            The capacity of the LeastRecentlyUsedCache.
+	 * @param closeChannelOnClose Whether to close the underlying channel when this reader is closed.
+	 * @throws IllegalArgumentException if the channel is null or is not in blocking mode,
+	 *                                  or the window size or capacity is less than one.
+	 */
+	public ChannelReader(final ReadableByteChannel channel, final int windowSize,
+						 final int capacity, final boolean closeChannelOnClose) {
+		this(channel, windowSize, TwoLevelCache.create(
+				new LeastRecentlyUsedCache(capacity), new TempFileCache()),
+				closeChannelOnClose);
+	}
+
+	/**
+	 * Constructs a ChannelReader from a ReadableByteChannel, using the window size
+	 * and {@link WindowCache} provided.
+	 *
+	 * @param channel    The ReadableByteChannel to read from.
+	 * @param windowSize The size of a Window to create from the channel.
+	 * @param cache      The WindowCache to use.
+	 * @throws IllegalArgumentException if the channel or cache is null, the channel is not
+	 *                                  in blocking mode, or the window size is less than one.
+	 */
+	public ChannelReader(final ReadableByteChannel channel, final int windowSize,
+						 final WindowCache cache) {
+		this(channel, windowSize, cache, true);
+	}
+
+	/**
+	 * Constructs a ChannelReader from a ReadableByteChannel, using the window size
+	 * and {@link WindowCache} provided.
+	 *
+	 * @param channel             The ReadableByteChannel to read from.
+	 * @param windowSize          The size of a Window to create from the channel.
+	 * @param cache               The WindowCache to use.
+	 * @param closeChannelOnClose Whether to close the underlying channel when this reader is closed.
+	 * @throws IllegalArgumentException if the channel or cache is null, the channel is not
+	 *                                  in blocking mode, or the window size is less than one.
+	 */
+	public ChannelReader(final ReadableByteChannel channel, final int windowSize,
+						 final WindowCache cache, final boolean closeChannelOnClose) {
+		super(windowSize, cache);
+		ArgUtils.checkNullObject(channel, "channel");
+		if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+			throw new IllegalArgumentException("The channel must be in blocking mode.");
+		}
+		this.channel = channel;
+		this.closeChannelOnClose = closeChannelOnClose;
+	}
+
+	/**
+	 * Returns a window onto the data for a given position, reading the channel
+	 * up to that position if it has not already been read.
+	 *
+	 * @param position The position in the reader for which a Window is requested.
+	 * @return A Window onto the data for a given position, or null if there is no such position.
+	 * @throws IOException if an IO error occurred trying to create a new window.
+	 * @throws net.byteseek.io.reader.windows.WindowMissingException
+	 *             if the cache could not provide a Window for a position in the
+	 *             channel which has already been read.
+	 */
+	@Override
+	public final Window getWindow(final long position) throws IOException {
+		final Window window = super.getWindow(position);
+		if (window == null && position < nextReadPos && position >= 0) {
+			final String message = "Cache failed to provide a window at position: %d but we have already read up to: %d";
+			throw new WindowMissingException(String.format(message, position, nextReadPos));
+		}
+		return window;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowPos) throws IOException {
+		Window window = null;
+		while (nextReadPos <= windowPos && length == UNKNOWN_LENGTH) {
+			window = readNextWindow();
+			if (window != null && windowPos >= nextReadPos) { // If we still haven't reached the window
+				countWindowCreated(window);
+				cache.addWindow(window);                      // for the requested position, cache it.
+			}
+		}
+		if (windowPos >= nextReadPos) { // If we didn't manage to get to the window position, we can't return one.
+			window = null;
+		}
+		return window;
+	}
+
+	/**
+	 * Returns the total length of the channel.
+	 * <p>
+	 * Note that calling this method will cause the entire channel to be read and
+	 * cached in order to determine the length.
+	 *
+	 * @return The total length of the channel.
+	 * @throws IOException If any problem occurred reading the channel.
+	 */
+	@Override
+	public long length() throws IOException {
+		while (length == UNKNOWN_LENGTH) {
+			final Window window = readNextWindow();
+			if (window != null) {
+				countWindowCreated(window);
+				cache.addWindow(window);
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Reads the next Window from the channel directly into a window array,
+	 * setting the length once the end of the channel is reached.
+	 *
+	 * @return The next Window in the channel, or null if there were no more bytes.
+	 * @throws IOException If a problem occurred reading the channel.
+	 */
+	private Window readNextWindow() throws IOException {
+		final byte[] bytes = createWindowArray();
+		final int totalRead = IOUtils.readBytes(channel, bytes);
+		Window window = null;
+		if (totalRead > 0) {
+			window = new HardWindow(bytes, nextReadPos, totalRead);
+			nextReadPos += totalRead;
+		}
+		if (totalRead < windowSize) { // If we read less than the available array:
+			length = nextReadPos;     // then the length is whatever the nextReadPos is now.
+		}
+		return window;
+	}
+
+	/**
+	 * Sets a {@link WindowArrayPool} to read new Windows into, recycling the arrays
+	 * of Windows freed by the cache back into it, or null to stop pooling arrays.
+	 * <p>
+	 * Clients must not hold on to Windows after reading further than the capacity
+	 * of the cache, as their arrays may be reused for other Windows.
+	 *
+	 * @param pool The WindowArrayPool to use, or null if arrays should not be pooled.
+	 * @throws IllegalArgumentException if the array size of the pool is not the window size of this reader.
+	 */
+	@Override
+	public void useArrayPool(final WindowArrayPool pool) {
+		super.useArrayPool(pool);
+	}
+
+	/**
+	 * Closes the underlying channel if required, and clears any cache associated
+	 * with it in this WindowReader.
+	 *
+	 * @throws IOException If a problem occurred closing the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (closeChannelOnClose) {
+				channel.close();
+			}
+		} finally {
+			super.close();
+		}
+	}
+
+	/**
+	 * Returns the channel read by this WindowReader.
+	 *
+	 * @return The channel read by this WindowReader.
+	 */
+	public final ReadableByteChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[channel:" + channel + " cache:" + cache + ']';
+	}
+
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A {@link WindowReader} which gives access to the bytes of a CharSequence, such as a
+ * StringBuilder or a CharBuffer, encoding it one window at a time as the windows are read.
+ * Unlike the {@link StringReader}, which encodes the whole string up front, a search can
+ * start as soon as the reader is constructed, and only the windows held in the cache are in
+ * memory, however long the sequence is.
+ * <p>
+ * Each window encodes a fixed number of chars, except that a surrogate pair is never split
+ * between windows.  As the number of bytes a char encodes to can vary, the reader records a
+ * checkpoint of the char index and byte position at which each window starts, as it encodes
+ * them in order.  Reading a position encodes any windows before it which have not been encoded
+ * yet, recording their checkpoints, and windows evicted from the cache are re-encoded from their
+ * checkpoint.  Finding the length of the reader encodes the whole sequence once to count its
+ * bytes, unless the charset encodes every char to the same number of bytes, as UTF-16BE does.
+ * <p>
+ * Unmappable and malformed chars are replaced, as {@link String#getBytes(Charset)} does.
+ * Charsets whose encoding of a char depends on what came before it, such as UTF-16 with its
+ * byte order mark, cannot be encoded window by window; use UTF-16BE or UTF-16LE instead.
+ * <p>
+ * The CharSequence must not change while it is being read.  This reader is thread-safe,
+ * as its methods synchronize on the reader.
+ *
+ * @author Matt Palmer
+ */
+public final class CharSequenceReader implements WindowReader {
+
+	private final static int NO_BYTE_AT_POSITION = -1;
+	private final static int INITIAL_CHECKPOINTS = 64;
+	private final static String SURROGATE_PAIR = "\uD83D\uDE00";
+
+	private final CharSequence sequence;
+	private final Charset charset;
+	private final int charsPerWindow;
+	private final WindowCache cache;
+	private final CharsetEncoder encoder;
+	private final int fixedBytesPerChar;
+	private final ByteBuffer encodeBuffer;
+
+	// Checkpoints of the char index and byte position at which each encoded window starts.
+	// There is one more entry than the number of windows encoded, giving where the next one starts.
+	private int[] charStarts;
+	private long[] byteStarts;
+	private int windowCount;
+
+	private Window lastWindow;
+
+	/**
+	 * Constructs a CharSequenceReader using the platform default charset.
+	 *
+	 * @param sequence The CharSequence to read.
+	 * @throws IllegalArgumentException if the sequence is null.
+	 */
+	public CharSequenceReader(final CharSequence sequence) {
+		this(sequence, Charset.defaultCharset());
+	}
+
+	/**
+	 * Constructs a CharSequenceReader using the charset given, encoding 4096 chars into
+	 * each window, and caching the last 32 windows used in a {@link LeastRecentlyUsedCache}.
+	 *
+	 * @param sequence The CharSequence to read.
+	 * @param charset  The charset to encode the sequence with.
+	 * @throws IllegalArgumentException if the sequence or charset is null, or the charset
+	 *                                  cannot encode chars independently of each other.
+	 */
+	public CharSequenceReader(final CharSequence sequence, final Charset charset) {
+		this(sequence, charset, AbstractReader.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructs a CharSequenceReader using the charset given, encoding the number of chars
+	 * given into each window, and caching the last 32 windows used in a {@link LeastRecentlyUsedCache}.
+	 *
+	 * @param sequence       The CharSequence to read.
+	 * @param charset        The charset to encode the sequence with.
+	 * @param charsPerWindow The number of chars to encode into each window.
+	 * @throws IllegalArgumentException if the sequence or charset is null, the chars per window
+	 *                                  is less than two, or the charset cannot encode chars
+	 *                                  independently of each other.
+	 */
+	public CharSequenceReader(final CharSequence sequence, final Charset charset, final int charsPerWindow) {
+		this(sequence, charset, charsPerWindow, new LeastRecentlyUsedCache(AbstractReader.DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * Constructs a CharSequenceReader using the charset given, encoding the number of chars
+	 * given into each window, and caching windows in the cache supplied.
+	 *
+	 * @param sequence       The CharSequence to read.
+	 * @param charset        The charset to encode the sequence with.
+	 * @param charsPerWindow The number of chars to encode into each window.
+	 * @param cache          The cache of windows to use.
+	 * @throws IllegalArgumentException if the sequence, charset or cache is null, the chars per
+	 *                                  window is less than two, or the charset cannot encode
+	 *                                  chars independently of each other.
+	 */
+	public CharSequenceReader(final CharSequence sequence, final Charset charset,
+							  final int charsPerWindow, final WindowCache cache) {
+		ArgUtils.checkNullObject(sequence, "sequence");
+		ArgUtils.checkNullObject(charset, "charset");
+		ArgUtils.checkNullObject(cache, "cache");
+		if (charsPerWindow < 2) { // a window must be able to hold a surrogate pair.
+			throw new IllegalArgumentException("The chars per window must be at least two: " + charsPerWindow);
+		}
+		this.sequence = sequence;
+		this.charset = charset;
+		this.charsPerWindow = charsPerWindow;
+		this.cache = cache;
+		this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+										   .onUnmappableCharacter(CodingErrorAction.REPLACE);
+		checkStatelessEncoding(charset);
+		this.fixedBytesPerChar = getFixedBytesPerChar(charset, encoder);
+		this.encodeBuffer = ByteBuffer.allocate((int) Math.ceil(encoder.maxBytesPerChar() * charsPerWindow));
+		this.charStarts = new int[INITIAL_CHECKPOINTS + 1];
+		this.byteStarts = new long[INITIAL_CHECKPOINTS + 1];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized int readByte(final long position) throws IOException {
+		final Window window = getWindow(position);
+		return window == null? NO_BYTE_AT_POSITION
+							 : window.getByte((int) (position - window.getWindowPosition())) & 0xFF;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Any windows before the position which have not been encoded yet are encoded
+	 * to find where the window containing the position starts.
+	 */
+	@Override
+	public synchronized Window getWindow(final long position) throws IOException {
+		if (position < 0) {
+			return null;
+		}
+		Window window = lastWindow;
+		if (window != null && position >= window.getWindowPosition() &&
+							  position < window.getNextWindowPosition()) {
+			return window;
+		}
+		window = encodeUpTo(position);
+		if (window == null) {
+			if (position >= byteStarts[windowCount]) {
+				return null;
+			}
+			final int windowIndex = getWindowIndex(position);
+			window = cache.getWindow(byteStarts[windowIndex]);
+			if (window == null) {
+				window = encodeWindow(windowIndex);
+				cache.addWindow(window);
+			}
+		} else {
+			cache.addWindow(window);
+		}
+		lastWindow = window;
+		return window;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized int getWindowOffset(final long position) {
+		encodeUpTo(position);
+		return (int) (position - byteStarts[getWindowIndex(position)]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Unless the charset encodes every char to the same number of bytes, the first call
+	 * encodes any of the sequence not encoded yet to count its bytes.
+	 */
+	@Override
+	public synchronized long length() {
+		if (fixedBytesPerChar > 0) {
+			return (long) sequence.length() * fixedBytesPerChar;
+		}
+		encodeUpTo(Long.MAX_VALUE);
+		return byteStarts[windowCount];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<Window> iterator() {
+		return new WindowIterator();
+	}
+
+	/**
+	 * Clears the cache of encoded windows.
+	 *
+	 * @throws IOException If a problem occurred clearing the cache.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		lastWindow = null;
+		cache.clear();
+	}
+
+	/**
+	 * Returns the index of the char in the sequence whose encoding contains the byte at the
+	 * position given.  For example, the position of a match in this reader can be turned back
+	 * into an index in the sequence.
+	 *
+	 * @param position The position of a byte in this reader.
+	 * @return The index of the char whose encoding contains the byte, or -1 if there is no
+	 *         byte at that position.  If the byte is part of the encoding of a surrogate pair,
+	 *         the index of the high surrogate is returned.
+	 */
+	public synchronized int getCharIndex(final long position) {
+		encodeUpTo(position);
+		if (position < 0 || position >= byteStarts[windowCount]) {
+			return -1;
+		}
+		final int windowIndex = getWindowIndex(position);
+		final int windowEnd = charStarts[windowIndex + 1];
+		long bytePosition = byteStarts[windowIndex];
+		int charIndex = charStarts[windowIndex];
+		while (charIndex < windowEnd) {
+			final int charCount = Character.isHighSurrogate(sequence.charAt(charIndex)) &&
+								  charIndex + 1 < windowEnd? 2 : 1;
+			bytePosition += encode(charIndex, charIndex + charCount);
+			if (position < bytePosition) {
+				break;
+			}
+			charIndex += charCount;
+		}
+		return charIndex;
+	}
+
+	/**
+	 * Returns the CharSequence being read.
+	 *
+	 * @return The CharSequence being read.
+	 */
+	public CharSequence getCharSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the charset used to encode the sequence.
+	 *
+	 * @return The charset used to encode the sequence.
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[charset: " + charset + " chars: " + sequence.length() +
+											" chars per window: " + charsPerWindow + " cache: " + cache + ']';
+	}
+
+	/**
+	 * Encodes windows which have not been encoded yet in order, recording their checkpoints,
+	 * until a window containing the position given has been encoded, or the whole sequence has.
+	 *
+	 * @param position The position to encode windows up to.
+	 * @return The window containing the position if it was encoded by this call, or null otherwise.
+	 */
+	private Window encodeUpTo(final long position) {
+		Window window = null;
+		final int sequenceLength = sequence.length();
+		while (byteStarts[windowCount] <= position && charStarts[windowCount] < sequenceLength) {
+			final int windowIndex = windowCount;
+			final int charStart = charStarts[windowIndex];
+			int charEnd = (int) Math.min((long) charStart + charsPerWindow, sequenceLength);
+			// Don't split a surrogate pair between two windows:
+			if (charEnd < sequenceLength && Character.isHighSurrogate(sequence.charAt(charEnd - 1))) {
+				charEnd--;
+			}
+			if (windowIndex + 1 == charStarts.length) {
+				charStarts = Arrays.copyOf(charStarts, charStarts.length * 2);
+				byteStarts = Arrays.copyOf(byteStarts, byteStarts.length * 2);
+			}
+			charStarts[windowIndex + 1] = charEnd;
+			window = encodeWindow(windowIndex);
+			byteStarts[windowIndex + 1] = byteStarts[windowIndex] + window.length();
+			windowCount = windowIndex + 1;
+		}
+		return window != null && position >= window.getWindowPosition() &&
+								 position < window.getNextWindowPosition()? window : null;
+	}
+
+	/**
+	 * Encodes a window whose char range is already known into a new window.
+	 *
+	 * @param windowIndex The index of the window to encode.
+	 * @return A window holding the bytes of the encoded chars.
+	 */
+	private Window encodeWindow(final int windowIndex) {
+		final int length = encode(charStarts[windowIndex], charStarts[windowIndex + 1]);
+		final byte[] bytes = Arrays.copyOf(encodeBuffer.array(), length);
+		return new HardWindow(bytes, byteStarts[windowIndex], length);
+	}
+
+	/**
+	 * Encodes a range of chars into the encode buffer, returning the number of bytes they encode to.
+	 *
+	 * @param charStart The index of the first char to encode.
+	 * @param charEnd   The index after the last char to encode.
+	 * @return The number of bytes the chars encode to, which are at the start of the encode buffer.
+	 */
+	private int encode(final int charStart, final int charEnd) {
+		encodeBuffer.clear();
+		encoder.reset();
+		encoder.encode(CharBuffer.wrap(sequence, charStart, charEnd), encodeBuffer, true);
+		encoder.flush(encodeBuffer);
+		return encodeBuffer.position();
+	}
+
+	/**
+	 * Returns the index of the encoded window containing the position, which must be
+	 * less than the number of bytes encoded so far.
+	 *
+	 * @param position The position to find the window for.
+	 * @return The index of the window containing the position.
+	 */
+	private int getWindowIndex(final long position) {
+		int low = 0;
+		int high = windowCount - 1;
+		while (low < high) {
+			final int middle = (low + high + 1) >>> 1;
+			if (byteStarts[middle] <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Checks that a charset encodes each char independently of the chars before it,
+	 * by encoding a char twice in one go and comparing it with encoding it once.
+	 *
+	 * @param charset The charset to check.
+	 * @throws IllegalArgumentException if the encoding of a char depends on those before it.
+	 */
+	private static void checkStatelessEncoding(final Charset charset) {
+		final ByteBuffer once = charset.encode("a");
+		final ByteBuffer twice = charset.encode("aa");
+		if (twice.remaining() != once.remaining() * 2) {
+			throw new IllegalArgumentException("The charset " + charset + " cannot encode chars independently " +
+											   "of each other, so cannot be encoded a window at a time.");
+		}
+	}
+
+	/**
+	 * Returns the number of bytes every char encodes to, or zero if chars encode to
+	 * different numbers of bytes.  A charset which cannot encode a surrogate pair replaces
+	 * both chars with a single replacement, so it does not encode every char to the same
+	 * number of bytes, even if all the chars it can encode are the same size.
+	 *
+	 * @param charset The charset to encode with.
+	 * @param encoder The encoder of the charset.
+	 * @return The number of bytes every char encodes to, or zero if it varies.
+	 */
+	private static int getFixedBytesPerChar(final Charset charset, final CharsetEncoder encoder) {
+		final float maxBytes = encoder.maxBytesPerChar();
+		if (maxBytes == encoder.averageBytesPerChar() && maxBytes == (int) maxBytes &&
+			charset.encode(SURROGATE_PAIR).remaining() == 2 * (int) maxBytes) {
+			return (int) maxBytes;
+		}
+		return 0;
+	}
+
+	/**
+	 * An iterator of {@link Window}s over this reader, encoding windows as it goes.
+	 */
+	private class WindowIterator implements Iterator<Window> {
+
+		private long position = 0;
+
+		@Override
+		public boolean hasNext() {
+			try {
+				return getWindow(position) != null;
+			} catch (final IOException ex) {
+				return false;
+			}
+		}
+
+		@Override
+		public Window next() {
+			try {
+				final Window window = getWindow(position);
+				if (window != null) {
+					position = window.getNextWindowPosition();
+					return window;
+				}
+			} catch (final IOException throwNoSuchElementExceptionInstead) {
+			}
+			throw new NoSuchElementException();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Cannot remove a window from a reader.");
+		}
+	}
+
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.byteseek.io.reader.windows.ByteBufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader which presents a list of byte arrays or ByteBuffers, of any sizes,
+ * as a single contiguous sequence of bytes, one after the other.  Each chunk is a
+ * window of the reader, so no bytes are copied.  For example, the payloads of captured
+ * packets can be searched as the stream they reassemble into, without first concatenating
+ * them into one array.  Searchers already read across window boundaries when a match
+ * spans two chunks.
+ * <p>
+ * Chunks can be added at any time, extending the reader:
+ * <pre>
+ *   final ChunkedReader reader = new ChunkedReader();
+ *   while (capture.hasNext()) {
+ *       reader.add(capture.nextPayload());
+ *       ...search from where the last search ended...
+ *   }
+ * </pre>
+ * A byte array chunk is wrapped, not copied, and must not be changed after it is added.
+ * A ByteBuffer chunk covers the bytes between its position and limit when it is added;
+ * later changes to the position and limit of the buffer do not affect the reader.
+ * Empty chunks are ignored.
+ * <p>
+ * Chunks can be added by one thread while other threads read from the reader.
+ * Readers see chunks from the moment they are added.
+ *
+ * @author Matt Palmer
+ */
+public final class ChunkedReader implements WindowReader {
+
+	private final static int NO_BYTE_AT_POSITION = -1;
+	private final static int INITIAL_CAPACITY = 16;
+
+	// The arrays are only replaced and written to under the lock on this reader, before the
+	// chunk count is written.  Entries up to the chunk count read first are always valid:
+	private Window[] chunks;
+	private long[] chunkStarts; // one more entry than chunks, the last being the total length.
+	private volatile int chunkCount;
+
+	private volatile int lastChunk;
+
+	/**
+	 * Constructs an empty ChunkedReader, to which chunks can be added.
+	 */
+	public ChunkedReader() {
+		chunks = new Window[INITIAL_CAPACITY];
+		chunkStarts = new long[INITIAL_CAPACITY + 1];
+	}
+
+	/**
+	 * Constructs a ChunkedReader from the byte arrays given, in the order given.
+	 *
+	 * @param chunks The byte arrays to present as a single sequence of bytes.
+	 * @throws IllegalArgumentException if the chunks are null or contain a null array.
+	 */
+	public ChunkedReader(final byte[]... chunks) {
+		this();
+		ArgUtils.checkNullObject(chunks, "chunks");
+		for (final byte[] chunk : chunks) {
+			add(chunk);
+		}
+	}
+
+	/**
+	 * Constructs a ChunkedReader from the ByteBuffers given, in the order given.
+	 *
+	 * @param chunks The ByteBuffers to present as a single sequence of bytes.
+	 * @throws IllegalArgumentException if the chunks are null or contain a null buffer.
+	 */
+	public ChunkedReader(final ByteBuffer... chunks) {
+		this();
+		ArgUtils.checkNullObject(chunks, "chunks");
+		for (final ByteBuffer chunk : chunks) {
+			add(chunk);
+		}
+	}
+
+	/**
+	 * Adds a byte array to the end of the reader.  The array is not copied.
+	 *
+	 * @param chunk The byte array to add.
+	 * @return The position in the reader at which the chunk starts.
+	 * @throws IllegalArgumentException if the chunk is null.
+	 */
+	public long add(final byte[] chunk) {
+		ArgUtils.checkNullByteArray(chunk, "chunk");
+		return addChunk(chunk, null, chunk.length);
+	}
+
+	/**
+	 * Adds a range of a byte array to the end of the reader.  The array is not copied.
+	 *
+	 * @param chunk  The byte array to add a range of.
+	 * @param offset The offset into the array at which the range starts.
+	 * @param length The length of the range.
+	 * @return The position in the reader at which the chunk starts.
+	 * @throws IllegalArgumentException if the chunk is null.
+	 * @throws IndexOutOfBoundsException if the range is not inside the array, or is empty.
+	 */
+	public long add(final byte[] chunk, final int offset, final int length) {
+		ArgUtils.checkNullByteArray(chunk, "chunk");
+		ArgUtils.checkIndexOutOfBounds(chunk.length, offset, offset + length);
+		if (offset == 0) {
+			return addChunk(chunk, null, length);
+		}
+		return addChunk(null, ByteBuffer.wrap(chunk, offset, length).slice(), length);
+	}
+
+	/**
+	 * Adds the bytes between the position and limit of a ByteBuffer to the end of
+	 * the reader.  The bytes are not copied.  The position of the buffer is not changed.
+	 *
+	 * @param chunk The ByteBuffer to add.
+	 * @return The position in the reader at which the chunk starts.
+	 * @throws IllegalArgumentException if the chunk is null.
+	 */
+	public long add(final ByteBuffer chunk) {
+		ArgUtils.checkNullObject(chunk, "chunk");
+		return addChunk(null, chunk.slice(), chunk.remaining());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int readByte(final long position) throws IOException {
+		final int count = chunkCount;
+		if (position < 0 || position >= chunkStarts[count]) {
+			return NO_BYTE_AT_POSITION;
+		}
+		final int chunk = getChunk(position, count);
+		return chunks[chunk].getByte((int) (position - chunkStarts[chunk])) & 0xFF;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The window returned is the chunk containing the position.
+	 */
+	@Override
+	public Window getWindow(final long position) {
+		final int count = chunkCount;
+		if (position < 0 || position >= chunkStarts[count]) {
+			return null;
+		}
+		return chunks[getChunk(position, count)];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getWindowOffset(final long position) {
+		return (int) (position - chunkStarts[getChunk(position, chunkCount)]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The length grows as chunks are added.
+	 */
+	@Override
+	public long length() {
+		final int count = chunkCount;
+		return chunkStarts[count];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<Window> iterator() {
+		return new WindowIterator();
+	}
+
+	/**
+	 * Does nothing, as there is nothing to close.  The chunks remain readable.
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Returns the number of chunks in this reader.
+	 *
+	 * @return The number of chunks in this reader.
+	 */
+	public int getChunkCount() {
+		return chunkCount;
+	}
+
+	/**
+	 * Returns the position in this reader at which a chunk starts.
+	 *
+	 * @param chunk The index of the chunk, starting from zero.
+	 * @return The position in this reader at which the chunk starts.
+	 * @throws IndexOutOfBoundsException if there is no chunk with that index.
+	 */
+	public long getChunkStart(final int chunk) {
+		final int count = chunkCount;
+		ArgUtils.checkIndexOutOfBounds(count, chunk);
+		return chunkStarts[chunk];
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[length: " + length() + " chunks: " + chunkCount + ']';
+	}
+
+	/**
+	 * Adds a chunk as a window at the end of the reader, growing the arrays of chunks if
+	 * they are full.  The chunk count is written last, which makes the new chunk visible
+	 * to threads reading from the reader.
+	 *
+	 * @param array  The array of the chunk, starting at index zero, or null if it is a buffer.
+	 * @param buffer The buffer of the chunk, starting at index zero, or null if it is an array.
+	 * @param length The length of the chunk.
+	 * @return The position in the reader at which the chunk starts.
+	 */
+	private synchronized long addChunk(final byte[] array, final ByteBuffer buffer, final int length) {
+		final int count = chunkCount;
+		final long start = chunkStarts[count];
+		if (length > 0) {
+			if (count == chunks.length) {
+				chunks = Arrays.copyOf(chunks, count * 2);
+				chunkStarts = Arrays.copyOf(chunkStarts, count * 2 + 1);
+			}
+			chunks[count] = array != null? new HardWindow(array, start, length)
+										 : new ByteBufferWindow(buffer, start, length);
+			chunkStarts[count + 1] = start + length;
+			chunkCount = count + 1;
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the index of the chunk containing the position, which must be
+	 * less than the length of the reader.  Scans mostly stay within one chunk or move
+	 * to the next, so the last chunk found is checked first.
+	 *
+	 * @param position The position to find the chunk for.
+	 * @param count    The number of chunks to search in.
+	 * @return The index of the chunk containing the position.
+	 */
+	private int getChunk(final long position, final int count) {
+		final long[] starts = chunkStarts;
+		final int last = lastChunk;
+		if (last < count && position >= starts[last] && position < starts[last + 1]) {
+			return last;
+		}
+		int low = 0;
+		int high = count - 1;
+		while (low < high) {
+			final int middle = (low + high + 1) >>> 1;
+			if (starts[middle] <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		lastChunk = low;
+		return low;
+	}
+
+	/**
+	 * An iterator of {@link Window}s over the chunks of this reader.
+	 */
+	private class WindowIterator implements Iterator<Window> {
+
+		private int chunk = 0;
+
+		@Override
+		public boolean hasNext() {
+			return chunk < chunkCount;
+		}
+
+		@Override
+		public Window next() {
+			final int count = chunkCount;
+			if (chunk < count) {
+				return chunks[chunk++];
+			}
+			throw new NoSuchElementException();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Cannot remove a window from a reader.");
+		}
+	}
+
+}
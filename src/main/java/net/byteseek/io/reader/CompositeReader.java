@@ -0,0 +1,277 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader which presents several other WindowReaders as a single contiguous
+ * sequence of bytes, one after the other.  For example, a disk image split into
+ * <code>.001</code>, <code>.002</code>, ... files can be searched as a single image,
+ * including matches which cross from one segment into the next.
+ * <p>
+ * Each segment keeps its own reader and cache.  The windows returned are the windows of
+ * the segment readers, repositioned to start at their position in the composite reader,
+ * so no bytes are copied.  Windows never cross a segment boundary; searchers already read
+ * across window boundaries when a match spans them.
+ * <p>
+ * The lengths of the segments are read when the reader is constructed, so a reader over
+ * a stream will be read to its end at that point.  To use a range of a file as a segment,
+ * use a {@link SliceReader} over it.
+ * <p>
+ * A CompositeReader is as thread-safe as the segment readers it is composed of.
+ * Closing it closes all the segment readers.
+ *
+ * @author Matt Palmer
+ */
+public final class CompositeReader implements WindowReader {
+
+	private final static int NO_BYTE_AT_POSITION = -1;
+
+	private final WindowReader[] readers;
+	private final long[] segmentStarts; // one more entry than readers, the last being the total length.
+
+	private volatile int lastSegment;
+
+	/**
+	 * Constructs a CompositeReader from the readers given, in the order given.
+	 *
+	 * @param readers The readers to present as a single sequence of bytes.
+	 * @throws IOException If the length of a reader could not be determined.
+	 * @throws IllegalArgumentException if the readers are null, empty, or contain a null reader.
+	 */
+	public CompositeReader(final WindowReader... readers) throws IOException {
+		ArgUtils.checkNullOrEmptyArrayNoNullElements(readers, "readers");
+		this.readers = readers.clone();
+		this.segmentStarts = new long[readers.length + 1];
+		for (int segment = 0; segment < readers.length; segment++) {
+			segmentStarts[segment + 1] = segmentStarts[segment] + readers[segment].length();
+		}
+	}
+
+	/**
+	 * Constructs a CompositeReader from the list of readers given, in the order of the list.
+	 *
+	 * @param readers The readers to present as a single sequence of bytes.
+	 * @throws IOException If the length of a reader could not be determined.
+	 * @throws IllegalArgumentException if the readers are null, empty, or contain a null reader.
+	 */
+	public CompositeReader(final List<? extends WindowReader> readers) throws IOException {
+		this(readers == null? null : readers.toArray(new WindowReader[readers.size()]));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int readByte(final long position) throws IOException {
+		if (position < 0 || position >= segmentStarts[readers.length]) {
+			return NO_BYTE_AT_POSITION;
+		}
+		final int segment = getSegment(position);
+		return readers[segment].readByte(position - segmentStarts[segment]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The window returned is a window of the segment containing the position,
+	 * repositioned to its position in this reader.
+	 */
+	@Override
+	public Window getWindow(final long position) throws IOException {
+		if (position < 0 || position >= segmentStarts[readers.length]) {
+			return null;
+		}
+		final int segment = getSegment(position);
+		final long segmentStart = segmentStarts[segment];
+		final Window window = readers[segment].getWindow(position - segmentStart);
+		return window == null? null
+				: WindowUtils.reposition(window, segmentStart + window.getWindowPosition(), window.length());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getWindowOffset(final long position) {
+		final int segment = getSegment(position);
+		return readers[segment].getWindowOffset(position - segmentStarts[segment]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long length() {
+		return segmentStarts[readers.length];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<Window> iterator() {
+		return new WindowIterator();
+	}
+
+	/**
+	 * Closes all the segment readers.  If any of them fail to close, the others are
+	 * still closed, and the first exception is thrown once they have all been tried.
+	 *
+	 * @throws IOException If a problem occurred closing a segment reader.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException firstException = null;
+		for (final WindowReader reader : readers) {
+			try {
+				reader.close();
+			} catch (final IOException ex) {
+				if (firstException == null) {
+					firstException = ex;
+				}
+			}
+		}
+		if (firstException != null) {
+			throw firstException;
+		}
+	}
+
+	/**
+	 * Returns the number of segments in this reader.
+	 *
+	 * @return The number of segments in this reader.
+	 */
+	public int getSegmentCount() {
+		return readers.length;
+	}
+
+	/**
+	 * Returns the reader for a segment.
+	 *
+	 * @param segment The index of the segment, starting from zero.
+	 * @return The reader for the segment.
+	 * @throws IndexOutOfBoundsException if there is no segment with that index.
+	 */
+	public WindowReader getSegmentReader(final int segment) {
+		return readers[segment];
+	}
+
+	/**
+	 * Returns the position in this reader at which a segment starts.
+	 *
+	 * @param segment The index of the segment, starting from zero.
+	 * @return The position in this reader at which the segment starts.
+	 * @throws IndexOutOfBoundsException if there is no segment with that index.
+	 */
+	public long getSegmentStart(final int segment) {
+		ArgUtils.checkIndexOutOfBounds(readers.length, segment);
+		return segmentStarts[segment];
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[length: " + segmentStarts[readers.length] +
+				                            " segments: " + Arrays.toString(readers) + ']';
+	}
+
+	/**
+	 * Returns the index of the last segment which starts at or before the position.
+	 * Empty segments are skipped, as the next segment starts at the same position.
+	 * Scans mostly stay within one segment, so the last segment found is checked first.
+	 *
+	 * @param position The position to find the segment for.
+	 * @return The index of the segment containing the position.
+	 */
+	private int getSegment(final long position) {
+		final int last = lastSegment;
+		if (position >= segmentStarts[last] && position < segmentStarts[last + 1]) {
+			return last;
+		}
+		int low = 0;
+		int high = readers.length - 1;
+		while (low < high) {
+			final int middle = (low + high + 1) >>> 1;
+			if (segmentStarts[middle] <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		lastSegment = low;
+		return low;
+	}
+
+	/**
+	 * An iterator of {@link Window}s over all the segments of this reader.
+	 */
+	private class WindowIterator implements Iterator<Window> {
+
+		private long position = 0;
+
+		@Override
+		public boolean hasNext() {
+			try {
+				return getWindow(position) != null;
+			} catch (final IOException ex) {
+				return false;
+			}
+		}
+
+		@Override
+		public Window next() {
+			try {
+				final Window window = getWindow(position);
+				if (window != null) {
+					position += (long) window.length();
+					return window;
+				}
+			} catch (final IOException throwNoSuchElementExceptionInstead) {
+			}
+			throw new NoSuchElementException();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Cannot remove a window from a reader.");
+		}
+	}
+
+}
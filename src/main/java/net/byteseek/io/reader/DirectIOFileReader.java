@@ -0,0 +1,382 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.ByteBufferWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowBufferPool;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader extending {@link AbstractReader} which reads a file with direct I/O,
+ * bypassing the operating system page cache, for one-pass scans of very large files
+ * which would otherwise evict everything else from the page cache.  Reading directly
+ * also saves the kernel copying the data from the page cache into the reader.
+ * <p>
+ * The file is opened with the <code>com.sun.nio.file.ExtendedOpenOption.DIRECT</code>
+ * option (O_DIRECT on Linux), which is available from Java 10.  Direct I/O requires that
+ * reads start at positions aligned to the block size of the file system, into memory aligned
+ * to the block size, so the window size is rounded up to a multiple of the block size, and
+ * windows are read into aligned direct buffers, creating {@link ByteBufferWindow}s.
+ * Searchers which understand {@link net.byteseek.io.reader.windows.BufferWindow}s read these
+ * buffers directly; others copy them into arrays.
+ * <p>
+ * If direct I/O is not available, because the Java runtime does not support it, or the
+ * file system refuses it (as tmpfs does), the reader falls back to normal reads through
+ * the page cache into direct buffers.  {@link #isDirectIO()} tells you which is in use.
+ * <p>
+ * Each read has a high fixed cost without the page cache to read ahead, so the default window
+ * size is 1MB, and the cache should be small for a one-pass scan.  By default, the last 8 windows
+ * are cached in a {@link LeastRecentlyUsedCache}.  Allocating aligned direct buffers is slow,
+ * so the buffers of windows freed by the cache are recycled into a {@link WindowBufferPool}
+ * and read into again.  Clients must not hold on to windows after reading further than the
+ * capacity of the cache, or they can turn pooling off with {@link #useBufferPool(WindowBufferPool)}.
+ * Positional reads are used, so the reader is thread-safe as long as the {@link WindowCache}
+ * it uses is also thread-safe, and the cache holds more windows than the other threads read
+ * while any one thread is still using a window.
+ *
+ * @author Matt Palmer
+ */
+public class DirectIOFileReader extends AbstractReader {
+
+	/**
+	 * The default size of the windows read, before rounding to the block size.
+	 */
+	public static final int DEFAULT_DIRECT_WINDOW_SIZE = 1024 * 1024;
+
+	/**
+	 * The default number of windows cached.
+	 */
+	public static final int DEFAULT_DIRECT_CAPACITY = 8;
+
+	private static final int DEFAULT_BLOCK_SIZE = 4096;
+	private static final int BUFFER_POOL_CAPACITY = 4;
+	private static final OpenOption DIRECT_OPTION = findDirectOption();
+	private static final Method ALIGNED_SLICE = findAlignedSlice();
+
+	private final File file;
+	private final int blockSize;
+	private final long length;
+	private volatile FileChannel channel;
+	private volatile boolean directIO;
+
+	/**
+	 * Constructs a DirectIOFileReader which defaults to a window size of 1MB, rounded
+	 * up to the block size of the file system, caching the last 8 Windows in a
+	 * {@link LeastRecentlyUsedCache}.
+	 *
+	 * @param file The file to read from.
+	 * @throws IOException If the file could not be opened.
+	 * @throws IllegalArgumentException if the file passed in is null.
+	 */
+	public DirectIOFileReader(final File file) throws IOException {
+		this(file, DEFAULT_DIRECT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructs a DirectIOFileReader using the window size passed in, rounded up to the
+	 * block size of the file system, caching the last 8 Windows in a
+	 * {@link LeastRecentlyUsedCache}.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of the windows to read, before rounding to the block size.
+	 * @throws IOException If the file could not be opened.
+	 * @throws IllegalArgumentException if the file passed in is null, or the window size is less than one.
+	 */
+	public DirectIOFileReader(final File file, final int windowSize) throws IOException {
+		this(file, windowSize, new LeastRecentlyUsedCache(DEFAULT_DIRECT_CAPACITY));
+	}
+
+	/**
+	 * Constructs a DirectIOFileReader using the window size passed in, rounded up to the
+	 * block size of the file system, and the {@link WindowCache} supplied.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of the windows to read, before rounding to the block size.
+	 * @param cache The cache of Windows to use.
+	 * @throws IOException If the file could not be opened.
+	 * @throws IllegalArgumentException if the file or cache passed in is null, or the window size is less than one.
+	 */
+	public DirectIOFileReader(final File file, final int windowSize, final WindowCache cache) throws IOException {
+		this(file, getBlockSize(file), windowSize, cache);
+	}
+
+	private DirectIOFileReader(final File file, final int blockSize, final int windowSize,
+							   final WindowCache cache) throws IOException {
+		super(roundUp(windowSize, blockSize), cache);
+		this.file = file;
+		this.blockSize = blockSize;
+		final Path path = file.toPath();
+		FileChannel directChannel = null;
+		if (DIRECT_OPTION != null && ALIGNED_SLICE != null) {
+			try {
+				directChannel = FileChannel.open(path, StandardOpenOption.READ, DIRECT_OPTION);
+			} catch (final IOException ex) {
+				// The file system does not support direct I/O - fall back to normal reads.
+			} catch (final UnsupportedOperationException ex) {
+				// The platform does not support direct I/O - fall back to normal reads.
+			}
+		}
+		this.directIO = directChannel != null;
+		this.channel = directIO ? directChannel : FileChannel.open(path, StandardOpenOption.READ);
+		this.length = channel.size();
+		super.useBufferPool(new WindowBufferPool(this.windowSize, BUFFER_POOL_CAPACITY));
+	}
+
+	/**
+	 * Returns the length of the file.
+	 *
+	 * @return The length of the file accessed by the reader.
+	 */
+	@Override
+	public final long length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowStart) throws IOException {
+		if (windowStart >= 0 && windowStart < length) {
+			final ByteBuffer buffer = allocateBuffer(windowStart);
+			int totalRead;
+			try {
+				totalRead = readBytes(channel, buffer, windowStart);
+			} catch (final IOException ex) {
+				if (!directIO) {
+					throw ex;
+				}
+				fallBackToPageCache();
+				buffer.clear();
+				totalRead = readBytes(channel, buffer, windowStart);
+			}
+			if (totalRead > 0) {
+				return new ByteBufferWindow(buffer, windowStart, totalRead);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the {@link WindowBufferPool} to read windows into, recycling the buffers of
+	 * windows freed by the cache back into it, or null to stop pooling buffers.
+	 * By default, the reader has its own pool.  Buffers allocated outside this reader are
+	 * not aligned to the block size, so a pool should only be shared with other
+	 * DirectIOFileReaders on the same file system.
+	 *
+	 * @param pool The WindowBufferPool to use, or null if buffers should not be pooled.
+	 * @throws IllegalArgumentException if the buffer size of the pool is not the window size of this reader.
+	 */
+	@Override
+	public void useBufferPool(final WindowBufferPool pool) {
+		super.useBufferPool(pool);
+	}
+
+	/**
+	 * Returns whether the file is being read with direct I/O, bypassing the page cache.
+	 * This is false if direct I/O was not available when the file was opened, or if a
+	 * direct read failed and the reader fell back to normal reads.
+	 *
+	 * @return Whether the file is being read with direct I/O.
+	 */
+	public final boolean isDirectIO() {
+		return directIO;
+	}
+
+	/**
+	 * Returns the size of the windows read, which is the window size requested,
+	 * rounded up to a multiple of the block size.
+	 *
+	 * @return The size of the windows read.
+	 */
+	public final int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Returns the block size of the file system, which the window size is a multiple of.
+	 *
+	 * @return The block size of the file system.
+	 */
+	public final int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Returns the {@link java.io.File} object accessed by this WindowReader.
+	 *
+	 * @return The File object accessed by this WindowReader.
+	 */
+	public final File getFile() {
+		return file;
+	}
+
+	/**
+	 * Closes the underlying file, then clears any cache associated with this WindowReader.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			channel.close();
+		} finally {
+			super.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file:" + file + " length: " + length +
+				" direct I/O: " + directIO + " cache:" + cache + ']';
+	}
+
+	/**
+	 * Returns a buffer from the buffer pool if there is one available, or allocates a direct
+	 * buffer of the window size, aligned to the block size if reading with direct I/O.
+	 * Unless the pool is shared, its buffers were allocated by this method, so they are
+	 * aligned as long as the reader has not fallen back to reading through the page cache.
+	 */
+	private ByteBuffer allocateBuffer(final long windowStart) throws IOException {
+		final ByteBuffer pooled = borrowWindowBuffer(windowStart);
+		if (pooled != null) {
+			return pooled;
+		}
+		if (directIO) {
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(windowSize + blockSize);
+			try {
+				final ByteBuffer aligned = (ByteBuffer) ALIGNED_SLICE.invoke(buffer, blockSize);
+				aligned.limit(windowSize);
+				return aligned.slice();
+			} catch (final ReflectiveOperationException ex) {
+				throw new IOException("Could not align a buffer to " + blockSize + " bytes", ex);
+			}
+		}
+		return ByteBuffer.allocateDirect(windowSize);
+	}
+
+	/**
+	 * Replaces the direct channel with one reading through the page cache, if another thread
+	 * has not already done so.
+	 */
+	private synchronized void fallBackToPageCache() throws IOException {
+		if (directIO) {
+			final FileChannel directChannel = channel;
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			directIO = false;
+			directChannel.close();
+		}
+	}
+
+	/**
+	 * Reads bytes into the buffer from the position in the file given, until the
+	 * buffer is full or the end of the file is reached.  It does not try to read at the
+	 * end of the file, as the unaligned position would be rejected by direct I/O.
+	 */
+	private int readBytes(final FileChannel channel, final ByteBuffer buffer,
+						  final long fromPosition) throws IOException {
+		while (buffer.hasRemaining() && fromPosition + buffer.position() < length) {
+			if (channel.read(buffer, fromPosition + buffer.position()) <= 0) {
+				break;
+			}
+		}
+		return buffer.position();
+	}
+
+	private static int roundUp(final int windowSize, final int blockSize) {
+		ArgUtils.checkPositiveInteger(windowSize, "windowSize");
+		final int remainder = windowSize % blockSize;
+		return remainder == 0 ? windowSize : windowSize + blockSize - remainder;
+	}
+
+	/**
+	 * Returns the block size of the file store holding the file, using
+	 * <code>FileStore.getBlockSize()</code> where it is available (from Java 10),
+	 * or a default of 4096 bytes if not.
+	 */
+	private static int getBlockSize(final File file) throws IOException {
+		ArgUtils.checkNullObject(file, "file");
+		try {
+			final FileStore store = Files.getFileStore(file.toPath());
+			final Method getBlockSize = FileStore.class.getMethod("getBlockSize");
+			final long blockSize = (Long) getBlockSize.invoke(store);
+			return blockSize > 0 && blockSize <= DEFAULT_BLOCK_SIZE * 16 ? (int) blockSize : DEFAULT_BLOCK_SIZE;
+		} catch (final ReflectiveOperationException ex) {
+			return DEFAULT_BLOCK_SIZE;
+		} catch (final RuntimeException ex) {
+			return DEFAULT_BLOCK_SIZE;
+		}
+	}
+
+	/**
+	 * Returns the <code>com.sun.nio.file.ExtendedOpenOption.DIRECT</code> option,
+	 * or null if this Java runtime does not have it.
+	 */
+	private static OpenOption findDirectOption() {
+		try {
+			final Class<?> options = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+			for (final Object option : options.getEnumConstants()) {
+				if ("DIRECT".equals(((Enum<?>) option).name())) {
+					return (OpenOption) option;
+				}
+			}
+		} catch (final ClassNotFoundException ex) {
+			// No extended options in this Java runtime.
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the <code>ByteBuffer.alignedSlice(int)</code> method (from Java 9),
+	 * or null if this Java runtime does not have it.
+	 */
+	private static Method findAlignedSlice() {
+		try {
+			return ByteBuffer.class.getMethod("alignedSlice", int.class);
+		} catch (final NoSuchMethodException ex) {
+			return null;
+		}
+	}
+
+}
@@ -44,6 +44,7 @@ import net.byteseek.io.reader.windows.HardWindow;
 import net.byteseek.io.reader.windows.SoftWindow;
 import net.byteseek.io.reader.windows.SoftWindowRecovery;
 import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowArrayPool;
 import net.byteseek.utils.ArgUtils;
 
 /**
@@ -53,6 +54,11 @@ import net.byteseek.utils.ArgUtils;
  * garbage collector may have re-claimed their array under low memory conditions
  * previously).
  * <p>
+ * The byte arrays of new windows can be taken from a {@link WindowArrayPool}, which
+ * recycles the arrays of windows freed by the cache, using {@link #useArrayPool(WindowArrayPool)}.
+ * Alternatively, windows can grow while the file is read sequentially and shrink when
+ * it is read at random, using {@link #useAdaptiveWindowSizes(int)}.
+ * <p>
  * This class (like the underlying RandomAccessFile) is not thread-safe.
  * 
  * @author matt
@@ -216,7 +222,7 @@ public class FileReader extends AbstractReader implements SoftWindowRecovery {
 		if (windowStart >= 0) {
 			try {
 				randomAccessFile.seek(windowStart);
-				final byte[] bytes = new byte[windowSize];
+				final byte[] bytes = createWindowArray(windowStart);
 				final int totalRead = IOUtils.readBytes(randomAccessFile, bytes);
 				if (totalRead > 0) {
 					return useSoftWindows? new SoftWindow(bytes, windowStart, totalRead, this)
@@ -259,10 +265,40 @@ public class FileReader extends AbstractReader implements SoftWindowRecovery {
 		this.useSoftWindows = useSoftWindows;
 	}
 
+	/**
+	 * Sets a {@link WindowArrayPool} to read new Windows into, recycling the arrays
+	 * of Windows freed by the cache back into it, or null to stop pooling arrays.
+	 * A warm pool lets a scan through the file run without allocating new arrays.
+	 * <p>
+	 * Clients must not hold on to Windows after reading further than the capacity
+	 * of the cache, as their arrays may be reused for other Windows.
+	 *
+	 * @param pool The WindowArrayPool to use, or null if arrays should not be pooled.
+	 * @throws IllegalArgumentException if the array size of the pool is not the window size of this reader.
+	 */
+	@Override
+	public void useArrayPool(final WindowArrayPool pool) {
+		super.useArrayPool(pool);
+	}
+
+	/**
+	 * Makes windows grow while the file is read sequentially, up to the maximum window
+	 * size given, and shrink back towards the window size of this reader when it is read
+	 * at random.  This must be called before reading from the reader.
+	 *
+	 * @param maxWindowSize The largest size a window can grow to.
+	 * @throws IllegalArgumentException if the maximum window size is smaller than the window size.
+	 * @throws IllegalStateException if windows have already been read, or an array pool is in use.
+	 */
+	@Override
+	public void useAdaptiveWindowSizes(final int maxWindowSize) {
+		super.useAdaptiveWindowSizes(maxWindowSize);
+	}
+
 	@Override
 	public byte[] reloadWindowBytes(final Window window) throws IOException {
 		randomAccessFile.seek(window.getWindowPosition());
-		final byte[] bytes = new byte[windowSize];
+		final byte[] bytes = new byte[getWindowSize(window.getWindowPosition())];
 		IOUtils.readBytes(randomAccessFile, bytes);
 		return bytes;
 	}
@@ -0,0 +1,279 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowArrayPool;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader extending {@link AbstractReader} which gives random access to the
+ * uncompressed contents of gzip compressed data, without having to cache all the
+ * uncompressed data or write it to a temporary file.
+ * <p>
+ * As the data is decompressed, a checkpoint is recorded at the first deflate block boundary
+ * after each checkpoint interval (1 MB by default).  A checkpoint holds the position of the
+ * block in the compressed data and a copy of the preceding 32K of uncompressed data.  Any Window
+ * which is no longer cached can be regenerated by decompressing forwards from the nearest
+ * checkpoint before it, so the cost of a random access is bounded by the checkpoint interval.
+ * Windows read in sequence simply continue decompressing where the last one finished.
+ * <p>
+ * The memory used by the index is about 32K for each checkpoint interval of uncompressed data,
+ * in addition to the Windows held in the cache.  Checkpoints are only recorded for data which has
+ * been decompressed, so the first access to a position decompresses everything before it.
+ * Calling {@link #length()} decompresses the entire stream if its length is not yet known.
+ * <p>
+ * Concatenated gzip members are read as a single stream, and data after the last member
+ * is ignored.  The CRC of each member is not verified, but its length is.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public class GzipIndexedReader extends AbstractReader {
+
+	/**
+	 * The default number of uncompressed bytes between checkpoints.
+	 */
+	public static final long DEFAULT_CHECKPOINT_INTERVAL = 1024 * 1024;
+
+	private final SeekableByteChannel channel;
+	private final boolean closeChannelOnClose;
+	private final GzipInflater inflater;
+	private long length = UNKNOWN_LENGTH;
+	private byte[] skipBuffer;
+
+	/**
+	 * Constructs a GzipIndexedReader over a gzip file, using a default window size of 4096,
+	 * caching the last 32 most recently used Windows in a {@link LeastRecentlyUsedCache},
+	 * and recording a checkpoint every megabyte of uncompressed data.
+	 *
+	 * @param file The gzip file to read.
+	 * @throws IOException If the file could not be opened.
+	 * @throws IllegalArgumentException if the file is null.
+	 */
+	public GzipIndexedReader(final File file) throws IOException {
+		this(file, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructs a GzipIndexedReader over a gzip file, using the window size provided,
+	 * caching the last 32 most recently used Windows in a {@link LeastRecentlyUsedCache},
+	 * and recording a checkpoint every megabyte of uncompressed data.
+	 *
+	 * @param file       The gzip file to read.
+	 * @param windowSize The size of Window to create.
+	 * @throws IOException If the file could not be opened.
+	 * @throws IllegalArgumentException if the file is null, or the window size is less than one.
+	 */
+	public GzipIndexedReader(final File file, final int windowSize) throws IOException {
+		this(file, windowSize, new LeastRecentlyUsedCache(DEFAULT_CAPACITY), DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * Constructs a GzipIndexedReader over a gzip file, using the window size, cache and
+	 * checkpoint interval provided.
+	 *
+	 * @param file               The gzip file to read.
+	 * @param windowSize         The size of Window to create.
+	 * @param cache              The cache of Windows to use.
+	 * @param checkpointInterval The number of uncompressed bytes between checkpoints.
+	 * @throws IOException If the file could not be opened.
+	 * @throws IllegalArgumentException if the file or cache is null, or the window size
+	 *                                  or checkpoint interval is less than one.
+	 */
+	public GzipIndexedReader(final File file, final int windowSize, final WindowCache cache,
+							 final long checkpointInterval) throws IOException {
+		this(openChannel(file), windowSize, cache, checkpointInterval, true);
+	}
+
+	/**
+	 * Constructs a GzipIndexedReader over a channel containing gzip data, using a default
+	 * window size of 4096, caching the last 32 most recently used Windows in a
+	 * {@link LeastRecentlyUsedCache}, and recording a checkpoint every megabyte of uncompressed data.
+	 * The channel is closed when the reader is closed.
+	 *
+	 * @param channel The channel containing gzip data.
+	 * @throws IOException If the channel could not be positioned at its start.
+	 * @throws IllegalArgumentException if the channel is null.
+	 */
+	public GzipIndexedReader(final SeekableByteChannel channel) throws IOException {
+		this(channel, DEFAULT_WINDOW_SIZE, new LeastRecentlyUsedCache(DEFAULT_CAPACITY),
+			 DEFAULT_CHECKPOINT_INTERVAL, true);
+	}
+
+	/**
+	 * Constructs a GzipIndexedReader over a channel containing gzip data, using the window size,
+	 * cache and checkpoint interval provided.
+	 *
+	 * @param channel             The channel containing gzip data.
+	 * @param windowSize          The size of Window to create.
+	 * @param cache               The cache of Windows to use.
+	 * @param checkpointInterval  The number of uncompressed bytes between checkpoints.
+	 * @param closeChannelOnClose Whether to close the channel when this reader is closed.
+	 * @throws IOException If the channel could not be positioned at its start.
+	 * @throws IllegalArgumentException if the channel or cache is null, or the window size
+	 *                                  or checkpoint interval is less than one.
+	 */
+	public GzipIndexedReader(final SeekableByteChannel channel, final int windowSize, final WindowCache cache,
+							 final long checkpointInterval, final boolean closeChannelOnClose) throws IOException {
+		super(windowSize, cache);
+		ArgUtils.checkNullObject(channel, "channel");
+		ArgUtils.checkPositiveLong(checkpointInterval, "checkpointInterval");
+		this.channel = channel;
+		this.closeChannelOnClose = closeChannelOnClose;
+		this.inflater = new GzipInflater(channel, checkpointInterval);
+	}
+
+	private static SeekableByteChannel openChannel(final File file) throws IOException {
+		ArgUtils.checkNullObject(file, "file");
+		return Files.newByteChannel(file.toPath());
+	}
+
+	/**
+	 * Returns the length of the uncompressed data.  If the length is not yet known,
+	 * the rest of the data is decompressed (and indexed) to find it.
+	 *
+	 * @return The length of the uncompressed data.
+	 * @throws IOException If the data is not valid gzip data, or could not be read.
+	 */
+	@Override
+	public long length() throws IOException {
+		if (length == UNKNOWN_LENGTH) {
+			moveTo(Long.MAX_VALUE);
+		}
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowStart) throws IOException {
+		if (windowStart >= 0 && (length == UNKNOWN_LENGTH || windowStart < length)) {
+			moveTo(windowStart);
+			if (inflater.getOutputPosition() == windowStart) {
+				final byte[] bytes = createWindowArray();
+				final int totalRead = inflater.read(bytes, 0, windowSize);
+				if (totalRead < windowSize) {
+					length = windowStart + totalRead;
+				}
+				if (totalRead > 0) {
+					return new HardWindow(bytes, windowStart, totalRead);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Positions the inflater at the position given, restoring the nearest checkpoint
+	 * before it unless the inflater can simply carry on from where it is.
+	 * If the end of the data is reached first, the length is set.
+	 *
+	 * @param position The position in the uncompressed data to move to.
+	 * @throws IOException If the data is not valid gzip data, or could not be read.
+	 */
+	private void moveTo(final long position) throws IOException {
+		final long currentPosition = inflater.getOutputPosition();
+		final GzipInflater.Checkpoint checkpoint = inflater.getCheckpoint(position);
+		if (position < currentPosition || checkpoint.outputPosition > currentPosition) {
+			inflater.restore(checkpoint);
+		}
+		final long distance = position - inflater.getOutputPosition();
+		if (distance > 0) {
+			if (skipBuffer == null) {
+				skipBuffer = new byte[Math.max(windowSize, 8192)];
+			}
+			if (inflater.skip(distance, skipBuffer) < distance) {
+				length = inflater.getOutputPosition();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of checkpoints recorded in the index so far.
+	 * There is always a checkpoint at the start of the data.
+	 *
+	 * @return The number of checkpoints recorded in the index so far.
+	 */
+	public int getCheckpointCount() {
+		return inflater.getCheckpointCount();
+	}
+
+	/**
+	 * Sets a {@link WindowArrayPool} to decompress new Windows into, recycling the arrays
+	 * of Windows freed by the cache back into it, or null to stop pooling arrays.
+	 * <p>
+	 * Clients must not hold on to Windows after reading further than the capacity
+	 * of the cache, as their arrays may be reused for other Windows.
+	 *
+	 * @param pool The WindowArrayPool to use, or null if arrays should not be pooled.
+	 * @throws IllegalArgumentException if the array size of the pool is not the window size of this reader.
+	 */
+	@Override
+	public void useArrayPool(final WindowArrayPool pool) {
+		super.useArrayPool(pool);
+	}
+
+	/**
+	 * Closes the underlying channel if required, then clears any cache associated
+	 * with this WindowReader.
+	 *
+	 * @throws IOException If a problem occurred closing the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (closeChannelOnClose) {
+				channel.close();
+			}
+		} finally {
+			super.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[channel:" + channel + " checkpoints: " + getCheckpointCount() +
+				                            " cache:" + cache + ']';
+	}
+
+}
@@ -0,0 +1,633 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A gzip decompressor over a {@link java.nio.channels.SeekableByteChannel} which records
+ * checkpoints as it goes, from which decompression can later be restarted.  It is used by
+ * the {@link GzipIndexedReader} to provide random access into compressed data.
+ * <p>
+ * The java.util.zip.Inflater cannot stop at a deflate block boundary or restart at a bit
+ * offset in the compressed data, so this class implements the inflate algorithm itself
+ * (RFC 1951 and RFC 1952).  A checkpoint is taken at the first block boundary after each
+ * checkpoint interval of uncompressed data, recording the bit position of the next block
+ * in the compressed data and a copy of the last 32K of uncompressed data which the next
+ * blocks can refer back to.
+ * <p>
+ * Concatenated gzip members are decompressed as a single stream.  The length of each member
+ * is checked against its trailer, but the CRC is not verified, as decompression usually
+ * restarts part way through a member.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+final class GzipInflater {
+
+	private static final int DICTIONARY_SIZE = 32768;
+	private static final int DICTIONARY_MASK = DICTIONARY_SIZE - 1;
+	private static final int INPUT_BUFFER_SIZE = 65536;
+	private static final int MAX_BITS = 15;
+	private static final int FAST_BITS = 9;
+
+	// Decompression states:
+	private static final int MEMBER_START = 0;
+	private static final int BLOCK_START = 1;
+	private static final int STORED_BLOCK = 2;
+	private static final int HUFFMAN_BLOCK = 3;
+	private static final int MEMBER_END = 4;
+	private static final int FINISHED = 5;
+
+	// gzip header flags:
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	private static final int[] LENGTH_BASE = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+			35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+	private static final int[] LENGTH_EXTRA = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+			3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+	private static final int[] DISTANCE_BASE = { 1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+			257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577 };
+	private static final int[] DISTANCE_EXTRA = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+			7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+	private static final int[] CODE_LENGTH_ORDER = { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+	private static final Huffman FIXED_LITERALS;
+	private static final Huffman FIXED_DISTANCES;
+	static {
+		final byte[] lengths = new byte[288];
+		for (int symbol = 0; symbol < 288; symbol++) {
+			lengths[symbol] = (byte) (symbol < 144? 8 : symbol < 256? 9 : symbol < 280? 7 : 8);
+		}
+		FIXED_LITERALS = new Huffman(lengths, 0, 288);
+		final byte[] distances = new byte[30];
+		for (int symbol = 0; symbol < 30; symbol++) {
+			distances[symbol] = 5;
+		}
+		FIXED_DISTANCES = new Huffman(distances, 0, 30);
+	}
+
+	private final SeekableByteChannel channel;
+	private final long checkpointInterval;
+	private final List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+	private final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+	private final byte[] dictionary = new byte[DICTIONARY_SIZE];
+
+	// Compressed input state:
+	private long inputPosition;
+	private long bitBuffer;
+	private int bitCount;
+
+	// Decompression state:
+	private int state;
+	private boolean finalBlock;
+	private int storedRemaining;
+	private Huffman literals;
+	private Huffman distances;
+	private int copyLength;
+	private int copyDistance;
+	private long outputPosition;
+	private long memberStart;
+	private long nextCheckpoint;
+
+	/**
+	 * Constructs a GzipInflater over a channel containing gzip data, which takes
+	 * a checkpoint after each interval of uncompressed data.
+	 *
+	 * @param channel            The channel containing gzip compressed data.
+	 * @param checkpointInterval The number of uncompressed bytes between each checkpoint.
+	 * @throws IOException If the channel could not be positioned at its start.
+	 */
+	GzipInflater(final SeekableByteChannel channel, final long checkpointInterval) throws IOException {
+		this.channel = channel;
+		this.checkpointInterval = checkpointInterval;
+		restore(addCheckpoint());
+	}
+
+	/**
+	 * Decompresses bytes into the array provided from the current output position,
+	 * until the length requested has been read or the end of the data is reached.
+	 *
+	 * @param bytes  The array to decompress into.
+	 * @param offset The offset in the array to start writing at.
+	 * @param length The number of bytes to decompress.
+	 * @return The number of bytes decompressed, which is only less than the length
+	 *         requested if the end of the data was reached.
+	 * @throws IOException If the data is not valid gzip data, or could not be read.
+	 */
+	int read(final byte[] bytes, final int offset, final int length) throws IOException {
+		int position = offset;
+		final int end = offset + length;
+		while (position < end) {
+			switch (state) {
+				case MEMBER_START:  readHeader(); break;
+				case BLOCK_START:   readBlockHeader(); break;
+				case STORED_BLOCK:  position = readStored(bytes, position, end); break;
+				case HUFFMAN_BLOCK: position = readHuffman(bytes, position, end); break;
+				case MEMBER_END:    readTrailer(); break;
+				default:            return position - offset; // FINISHED
+			}
+		}
+		return position - offset;
+	}
+
+	/**
+	 * Decompresses and discards bytes until the output position has moved on by the
+	 * number of bytes given, or the end of the data is reached.
+	 *
+	 * @param count  The number of bytes to skip.
+	 * @param buffer A buffer to decompress into while skipping.
+	 * @return The number of bytes skipped.
+	 * @throws IOException If the data is not valid gzip data, or could not be read.
+	 */
+	long skip(final long count, final byte[] buffer) throws IOException {
+		long remaining = count;
+		while (remaining > 0) {
+			final int read = read(buffer, 0, (int) Math.min(remaining, buffer.length));
+			if (read == 0) {
+				break;
+			}
+			remaining -= read;
+		}
+		return count - remaining;
+	}
+
+	/**
+	 * Returns the position in the uncompressed data of the next byte to be read.
+	 *
+	 * @return The position in the uncompressed data of the next byte to be read.
+	 */
+	long getOutputPosition() {
+		return outputPosition;
+	}
+
+	/**
+	 * Returns true if the end of the compressed data has been reached.
+	 *
+	 * @return True if the end of the compressed data has been reached.
+	 */
+	boolean isFinished() {
+		return state == FINISHED;
+	}
+
+	/**
+	 * Returns the number of checkpoints recorded so far.
+	 *
+	 * @return The number of checkpoints recorded so far.
+	 */
+	int getCheckpointCount() {
+		return checkpoints.size();
+	}
+
+	/**
+	 * Returns the checkpoint with the highest output position at or before the position given.
+	 * There is always a checkpoint at the start of the data.
+	 *
+	 * @param position The position in the uncompressed data.
+	 * @return The closest checkpoint at or before the position.
+	 */
+	Checkpoint getCheckpoint(final long position) {
+		int low = 0;
+		int high = checkpoints.size() - 1;
+		while (low < high) {
+			final int middle = (low + high + 1) >>> 1;
+			if (checkpoints.get(middle).outputPosition <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return checkpoints.get(low);
+	}
+
+	/**
+	 * Restarts decompression from a checkpoint.
+	 *
+	 * @param checkpoint The checkpoint to restart from.
+	 * @throws IOException If the compressed data could not be read.
+	 */
+	void restore(final Checkpoint checkpoint) throws IOException {
+		inputPosition = checkpoint.bitPosition >>> 3;
+		input.clear();
+		input.limit(0);
+		bitBuffer = 0;
+		bitCount = 0;
+		dropBits((int) (checkpoint.bitPosition & 7));
+		state = checkpoint.state;
+		finalBlock = false;
+		copyLength = 0;
+		outputPosition = checkpoint.outputPosition;
+		memberStart = checkpoint.memberStart;
+		if (checkpoint.dictionary != null) {
+			System.arraycopy(checkpoint.dictionary, 0, dictionary, 0, DICTIONARY_SIZE);
+		}
+	}
+
+	/*
+	 * Records a checkpoint if the output position has passed the next checkpoint position.
+	 * It is only called at the start of a block or a member.
+	 */
+	private void checkpoint() {
+		if (outputPosition >= nextCheckpoint) {
+			addCheckpoint();
+		}
+	}
+
+	private Checkpoint addCheckpoint() {
+		final byte[] snapshot = outputPosition == memberStart? null : dictionary.clone();
+		final Checkpoint checkpoint = new Checkpoint(outputPosition, inputPosition * 8 - bitCount,
+				                                     state, memberStart, snapshot);
+		checkpoints.add(checkpoint);
+		nextCheckpoint = outputPosition + checkpointInterval;
+		return checkpoint;
+	}
+
+	/*
+	 * Reads a gzip member header.  If there is no more data, or only data which is not
+	 * a gzip member after the first member, decompression is finished.
+	 */
+	private void readHeader() throws IOException {
+		checkpoint();
+		ensureBits(16);
+		if (bitCount < 16 || (bitBuffer & 0xFFFF) != 0x8B1F) {
+			if (outputPosition == 0 && memberStart == 0 && inputPosition <= 2) {
+				throw new IOException("The data is not in gzip format.");
+			}
+			state = FINISHED; // ignore anything after the last member.
+			return;
+		}
+		dropBits(16);
+		if (getBits(8) != 8) {
+			throw new IOException("Unknown gzip compression method.");
+		}
+		final int flags = getBits(8);
+		skipBytes(6); // modification time, extra flags and operating system.
+		if ((flags & FEXTRA) != 0) {
+			skipBytes(getBits(16));
+		}
+		if ((flags & FNAME) != 0) {
+			skipZeroTerminated();
+		}
+		if ((flags & FCOMMENT) != 0) {
+			skipZeroTerminated();
+		}
+		if ((flags & FHCRC) != 0) {
+			skipBytes(2);
+		}
+		memberStart = outputPosition;
+		state = BLOCK_START;
+	}
+
+	private void readTrailer() throws IOException {
+		dropBits(bitCount & 7);
+		getBits(16); // CRC-32 is not verified.
+		getBits(16);
+		final long size = getBits(16) | ((long) getBits(16) << 16);
+		if (size != ((outputPosition - memberStart) & 0xFFFFFFFFL)) {
+			throw new IOException("The gzip member length " + size + " does not match the length decompressed: " +
+					              (outputPosition - memberStart));
+		}
+		state = MEMBER_START;
+	}
+
+	private void readBlockHeader() throws IOException {
+		checkpoint();
+		finalBlock = getBits(1) == 1;
+		final int type = getBits(2);
+		switch (type) {
+			case 0: {
+				dropBits(bitCount & 7);
+				final int length = getBits(16);
+				if (length != (~getBits(16) & 0xFFFF)) {
+					throw new IOException("Invalid stored block length.");
+				}
+				storedRemaining = length;
+				state = STORED_BLOCK;
+				break;
+			}
+			case 1: {
+				literals = FIXED_LITERALS;
+				distances = FIXED_DISTANCES;
+				state = HUFFMAN_BLOCK;
+				break;
+			}
+			case 2: {
+				readDynamicTables();
+				state = HUFFMAN_BLOCK;
+				break;
+			}
+			default: throw new IOException("Invalid deflate block type.");
+		}
+		endBlockIfEmpty();
+	}
+
+	private void readDynamicTables() throws IOException {
+		final int literalCount = getBits(5) + 257;
+		final int distanceCount = getBits(5) + 1;
+		final int codeLengthCount = getBits(4) + 4;
+		if (literalCount > 286 || distanceCount > 30) {
+			throw new IOException("Invalid dynamic block code counts.");
+		}
+		final byte[] lengths = new byte[19];
+		for (int index = 0; index < codeLengthCount; index++) {
+			lengths[CODE_LENGTH_ORDER[index]] = (byte) getBits(3);
+		}
+		final Huffman codeLengths = checkCode(new Huffman(lengths, 0, 19));
+		final byte[] codes = new byte[literalCount + distanceCount];
+		int index = 0;
+		while (index < codes.length) {
+			final int symbol = decode(codeLengths);
+			if (symbol < 16) {
+				codes[index++] = (byte) symbol;
+			} else {
+				final byte value;
+				final int repeat;
+				if (symbol == 16) {
+					if (index == 0) {
+						throw new IOException("Repeated code length with no previous length.");
+					}
+					value = codes[index - 1];
+					repeat = 3 + getBits(2);
+				} else {
+					value = 0;
+					repeat = symbol == 17? 3 + getBits(3) : 11 + getBits(7);
+				}
+				if (index + repeat > codes.length) {
+					throw new IOException("Too many code lengths in dynamic block.");
+				}
+				for (int count = 0; count < repeat; count++) {
+					codes[index++] = value;
+				}
+			}
+		}
+		if (codes[256] == 0) {
+			throw new IOException("Dynamic block has no end of block code.");
+		}
+		literals = checkCode(new Huffman(codes, 0, literalCount));
+		distances = checkCode(new Huffman(codes, literalCount, distanceCount));
+	}
+
+	private Huffman checkCode(final Huffman huffman) throws IOException {
+		if (huffman.oversubscribed) {
+			throw new IOException("Invalid dynamic block: a Huffman code is over-subscribed.");
+		}
+		return huffman;
+	}
+
+	private int readStored(final byte[] bytes, final int from, final int end) throws IOException {
+		int position = from;
+		final int stop = (int) Math.min(end, position + (long) storedRemaining);
+		while (position < stop) {
+			output(bytes, position++, (byte) getBits(8));
+		}
+		storedRemaining -= position - from;
+		endBlockIfEmpty();
+		return position;
+	}
+
+	private int readHuffman(final byte[] bytes, final int from, final int end) throws IOException {
+		int position = from;
+		while (position < end) {
+			if (copyLength > 0) {
+				final int stop = Math.min(end, position + copyLength);
+				copyLength -= stop - position;
+				while (position < stop) {
+					output(bytes, position++, dictionary[(int) (outputPosition - copyDistance) & DICTIONARY_MASK]);
+				}
+			} else {
+				final int symbol = decode(literals);
+				if (symbol < 256) {
+					output(bytes, position++, (byte) symbol);
+				} else if (symbol == 256) {
+					state = finalBlock? MEMBER_END : BLOCK_START;
+					break;
+				} else {
+					final int lengthCode = symbol - 257;
+					if (lengthCode >= LENGTH_BASE.length) {
+						throw new IOException("Invalid length code " + symbol);
+					}
+					copyLength = LENGTH_BASE[lengthCode] + getBits(LENGTH_EXTRA[lengthCode]);
+					final int distanceCode = decode(distances);
+					if (distanceCode >= DISTANCE_BASE.length) {
+						throw new IOException("Invalid distance code " + distanceCode);
+					}
+					copyDistance = DISTANCE_BASE[distanceCode] + getBits(DISTANCE_EXTRA[distanceCode]);
+					if (copyDistance > outputPosition - memberStart) {
+						throw new IOException("Invalid distance " + copyDistance + " at position " + outputPosition);
+					}
+				}
+			}
+		}
+		return position;
+	}
+
+	private void output(final byte[] bytes, final int position, final byte value) {
+		dictionary[(int) outputPosition++ & DICTIONARY_MASK] = value;
+		bytes[position] = value;
+	}
+
+	private void endBlockIfEmpty() {
+		if (state == STORED_BLOCK && storedRemaining == 0) {
+			state = finalBlock? MEMBER_END : BLOCK_START;
+		}
+	}
+
+	private int decode(final Huffman huffman) throws IOException {
+		ensureBits(MAX_BITS);
+		final int entry = huffman.fast[(int) bitBuffer & ((1 << FAST_BITS) - 1)];
+		final int length = entry & 15;
+		if (entry != 0 && length <= bitCount) {
+			dropBits(length);
+			return entry >>> 4;
+		}
+		// Slow canonical decode of codes longer than the fast table:
+		long bits = bitBuffer;
+		int code = 0;
+		int first = 0;
+		int index = 0;
+		for (int bitLength = 1; bitLength <= MAX_BITS && bitLength <= bitCount; bitLength++) {
+			code |= (int) bits & 1;
+			bits >>>= 1;
+			final int count = huffman.count[bitLength];
+			if (code - count < first) {
+				dropBits(bitLength);
+				return huffman.symbols[index + code - first];
+			}
+			index += count;
+			first = (first + count) << 1;
+			code <<= 1;
+		}
+		if (bitCount < MAX_BITS) {
+			throw new EOFException("Unexpected end of gzip data.");
+		}
+		throw new IOException("Invalid Huffman code.");
+	}
+
+	private int getBits(final int count) throws IOException {
+		if (count == 0) {
+			return 0;
+		}
+		ensureBits(count);
+		if (bitCount < count) {
+			throw new EOFException("Unexpected end of gzip data.");
+		}
+		final int value = (int) (bitBuffer & ((1L << count) - 1));
+		dropBits(count);
+		return value;
+	}
+
+	private void dropBits(final int count) throws IOException {
+		ensureBits(count);
+		bitBuffer >>>= count;
+		bitCount -= count;
+	}
+
+	private void ensureBits(final int count) throws IOException {
+		while (bitCount < count) {
+			final int value = nextByte();
+			if (value < 0) {
+				break;
+			}
+			bitBuffer |= (long) value << bitCount;
+			bitCount += 8;
+		}
+	}
+
+	private int nextByte() throws IOException {
+		if (!input.hasRemaining()) {
+			input.clear();
+			channel.position(inputPosition);
+			final int read = channel.read(input);
+			input.flip();
+			if (read <= 0) {
+				return -1;
+			}
+		}
+		inputPosition++;
+		return input.get() & 0xFF;
+	}
+
+	private void skipBytes(final int count) throws IOException {
+		for (int index = 0; index < count; index++) {
+			getBits(8);
+		}
+	}
+
+	private void skipZeroTerminated() throws IOException {
+		while (getBits(8) != 0) {
+			// skip until the zero terminator.
+		}
+	}
+
+	/**
+	 * A point in the gzip data from which decompression can be restarted.
+	 */
+	static final class Checkpoint {
+
+		final long outputPosition;
+		final long bitPosition;
+		final int state;
+		final long memberStart;
+		final byte[] dictionary;
+
+		Checkpoint(final long outputPosition, final long bitPosition, final int state,
+				   final long memberStart, final byte[] dictionary) {
+			this.outputPosition = outputPosition;
+			this.bitPosition = bitPosition;
+			this.state = state;
+			this.memberStart = memberStart;
+			this.dictionary = dictionary;
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + "[output position: " + outputPosition +
+					                            " bit position: " + bitPosition + ']';
+		}
+	}
+
+	/**
+	 * A canonical Huffman code, decoded using a lookup table for short codes,
+	 * and by counting codes of each length for longer codes.
+	 */
+	private static final class Huffman {
+
+		final int[] fast = new int[1 << FAST_BITS];
+		final short[] count = new short[MAX_BITS + 1];
+		final short[] symbols;
+		final boolean oversubscribed;
+
+		Huffman(final byte[] lengths, final int offset, final int number) {
+			symbols = new short[number];
+			for (int symbol = 0; symbol < number; symbol++) {
+				count[lengths[offset + symbol]]++;
+			}
+			count[0] = 0;
+			int left = 1;
+			for (int length = 1; length <= MAX_BITS && left >= 0; length++) {
+				left = (left << 1) - count[length];
+			}
+			oversubscribed = left < 0;
+			final int[] offsets = new int[MAX_BITS + 2];
+			final int[] nextCode = new int[MAX_BITS + 2];
+			int code = 0;
+			for (int length = 1; length <= MAX_BITS; length++) {
+				offsets[length + 1] = offsets[length] + count[length];
+				code = (code + count[length - 1]) << 1;
+				nextCode[length] = code;
+			}
+			for (int symbol = 0; symbol < number; symbol++) {
+				final int length = lengths[offset + symbol];
+				if (length != 0) {
+					symbols[offsets[length]++] = (short) symbol;
+					final int symbolCode = nextCode[length]++;
+					if (length <= FAST_BITS) {
+						final int reversed = Integer.reverse(symbolCode) >>> (32 - length);
+						for (int index = reversed; index < fast.length; index += 1 << length) {
+							fast[index] = (symbol << 4) | length;
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -70,6 +70,10 @@ import net.byteseek.utils.ArgUtils;
  * provide, then a {@link net.byteseek.io.reader.windows.WindowMissingException} will be thrown (this is a
  * RuntimeException, as it indicates a programming error).
  * <p>
+ * To search a stream forwards in memory bounded by the longest match plus the window size,
+ * use a {@link net.byteseek.io.reader.cache.HorizonCache} with a horizon of the maximum
+ * match length of the searcher, which frees windows once the search has passed them.
+ * <p>
  * This class depends on InputStream implementations, which are unlikely to be
  * thread-safe.
  * 
@@ -327,7 +331,7 @@ public class InputStreamReader extends AbstractReader {
 	protected Window createWindow(final long windowPos) throws IOException {
 		Window window = null;
 		while (nextReadPos <= windowPos && length == UNKNOWN_LENGTH) {
-			final byte[] bytes = new byte[windowSize];
+			final byte[] bytes = createWindowArray();
 			final int totalRead = IOUtils.readBytes(stream, bytes);
 			if (totalRead > 0) {
 				if (recovery == null) {
@@ -337,6 +341,7 @@ public class InputStreamReader extends AbstractReader {
 				}
 				nextReadPos += totalRead;
 				if (windowPos >= nextReadPos) {   // If we still haven't reached the window
+					countWindowCreated(window);
 					cache.addWindow(window); // for the requested position, cache it, as we'll go around again.
 				}
 			}
@@ -362,7 +367,7 @@ public class InputStreamReader extends AbstractReader {
 	@Override
 	public long length() throws IOException {
 		while (length == UNKNOWN_LENGTH) {
-			final byte[] bytes = new byte[windowSize];
+			final byte[] bytes = createWindowArray();
 			final int totalRead = IOUtils.readBytes(stream, bytes);
 			if (totalRead > 0) {
 				final Window lastWindow;
@@ -372,6 +377,7 @@ public class InputStreamReader extends AbstractReader {
 					lastWindow = new SoftWindow(bytes, nextReadPos, totalRead, recovery);
 				}
 				nextReadPos += totalRead;
+				countWindowCreated(lastWindow);
 				cache.addWindow(lastWindow);
 			}
 			// If we read less than the available array, we know the length.
@@ -415,10 +421,48 @@ public class InputStreamReader extends AbstractReader {
 	public void setSoftWindowRecovery(final SoftWindowRecovery recovery) {
 		this.recovery = recovery;
 	}
+
+	/**
+	 * Sets a {@link WindowArrayPool} to read new Windows into, recycling the arrays
+	 * of Windows freed by the cache back into it, or null to stop pooling arrays.
+	 * <p>
+	 * Clients must not hold on to Windows after reading further than the capacity
+	 * of the cache, as their arrays may be reused for other Windows.
+	 * <p>
+	 * If the cache is a {@link TwoLevelCache} with a {@link TempFileCache} as its secondary
+	 * cache, as it is by default, arrays are also recycled once the windows spilled into the
+	 * TempFileCache have been written to the temporary file, using its
+	 * {@link TempFileCache.WriteObserver}.  A cache which never frees windows, such as an
+	 * {@link net.byteseek.io.reader.cache.AllWindowsCache}, recycles nothing.
+	 *
+	 * @param pool The WindowArrayPool to use, or null if arrays should not be pooled.
+	 * @throws IllegalArgumentException if the array size of the pool is not the window size of this reader.
+	 */
+	@Override
+	public void useArrayPool(final WindowArrayPool pool) {
+		super.useArrayPool(pool);
+		if (cache instanceof TwoLevelCache) {
+			final WindowCache secondaryCache = ((TwoLevelCache) cache).getSecondaryCache();
+			if (secondaryCache instanceof TempFileCache) {
+				((TempFileCache) secondaryCache).setWriteObserver(pool == null? null : new WrittenArrayRecycler());
+			}
+		}
+	}
 	
 	@Override
 	public String toString() {
 		return getClass().getSimpleName() + "[stream:" + stream + " cache:" + cache + ']'; 
 	}
 
+	/**
+	 * Recycles the arrays of Windows written to a TempFileCache, which no longer references them.
+	 */
+	private final class WrittenArrayRecycler implements TempFileCache.WriteObserver {
+
+		@Override
+		public void windowWritten(final Window window) throws IOException {
+			recycleWindowArray(window);
+		}
+	}
+
 }
@@ -0,0 +1,265 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import net.byteseek.io.reader.cache.NoCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.ByteBufferWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader extending {@link AbstractReader} which memory maps a file,
+ * and provides {@link net.byteseek.io.reader.windows.ByteBufferWindow}s which are
+ * views directly onto the mapped file, rather than copies of the file contents.
+ * <p>
+ * A single memory mapping cannot be larger than Integer.MAX_VALUE, so the file is
+ * mapped in segments, each of which is a whole number of windows in size.  Windows
+ * never cross a segment boundary.  Segments are only mapped when a window in them is
+ * first requested.  This means that files larger than 2GB can be read.
+ * <p>
+ * By default, no {@link WindowCache} is used, as the operating system page cache
+ * already holds the file data, and creating a window onto a mapped segment is cheap.
+ * <p>
+ * Note that the searchers and matchers currently in byteseek operate on the byte array
+ * of a window.  A ByteBufferWindow copies its bytes into an array the first time one is
+ * requested from it, which is a memory copy rather than a system call to read the file.
+ * <p>
+ * Java provides no way to explicitly unmap a memory mapped file.  Closing this reader
+ * releases the mappings it holds, but the memory is only unmapped when they are garbage
+ * collected.
+ * 
+ * @author Matt Palmer
+ */
+public class MappedFileReader extends AbstractReader {
+
+	/**
+	 * The default size of a mapped segment of the file, unless a different value
+	 * is provided in the constructor.  It is rounded down to a whole number of windows.
+	 */
+	protected final static int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+	private final static String READ_ONLY = "r";
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final long length;
+	private final long segmentSize;
+	private final ByteBuffer[] segments;
+
+	/**
+	 * Constructs a MappedFileReader which defaults to a window size of 4096, 
+	 * with no caching of windows.
+	 *
+	 * @param file The file to read from.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file passed in is null.
+	 */
+	public MappedFileReader(final File file) throws FileNotFoundException {
+		this(file, DEFAULT_WINDOW_SIZE, DEFAULT_SEGMENT_SIZE, NoCache.NO_CACHE);
+	}
+
+	/**
+	 * Constructs a MappedFileReader using the window size passed in, with no 
+	 * caching of windows.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of the windows onto the mapped file.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file passed in is null, or the window size is less than one.
+	 */
+	public MappedFileReader(final File file, final int windowSize) throws FileNotFoundException {
+		this(file, windowSize, DEFAULT_SEGMENT_SIZE, NoCache.NO_CACHE);
+	}
+
+	/**
+	 * Constructs a MappedFileReader which defaults to a window size of 4096, 
+	 * with no caching of windows.
+	 *
+	 * @param path The path of the file to read from.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the path passed in is null.
+	 */
+	public MappedFileReader(final String path) throws FileNotFoundException {
+		this(path == null? null : new File(path), DEFAULT_WINDOW_SIZE, DEFAULT_SEGMENT_SIZE, NoCache.NO_CACHE);
+	}
+
+	/**
+	 * Constructs a MappedFileReader using the window size passed in, with no 
+	 * caching of windows.
+	 *
+	 * @param path The path of the file to read from.
+	 * @param windowSize The size of the windows onto the mapped file.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the path passed in is null, or the window size is less than one.
+	 */
+	public MappedFileReader(final String path, final int windowSize) throws FileNotFoundException {
+		this(path == null? null : new File(path), windowSize, DEFAULT_SEGMENT_SIZE, NoCache.NO_CACHE);
+	}
+
+	/**
+	 * Constructs a MappedFileReader using the window size and mapped segment size
+	 * passed in, with no caching of windows.  The segment size is rounded down to
+	 * a whole number of windows (with a minimum of one window).
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of the windows onto the mapped file.
+	 * @param segmentSize The size of each memory mapped segment of the file.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file passed in is null, or the window or segment
+	 *                                  size is less than one.
+	 */
+	public MappedFileReader(final File file, final int windowSize, final int segmentSize)
+			throws FileNotFoundException {
+		this(file, windowSize, segmentSize, NoCache.NO_CACHE);
+	}
+
+	/**
+	 * Constructs a MappedFileReader using the window size, mapped segment size and
+	 * {@link WindowCache} passed in.  The segment size is rounded down to a whole
+	 * number of windows (with a minimum of one window).
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of the windows onto the mapped file.
+	 * @param segmentSize The size of each memory mapped segment of the file.
+	 * @param cache The cache of Windows to use.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file or cache passed in is null, or the window 
+	 *                                  or segment size is less than one.
+	 */
+	public MappedFileReader(final File file, final int windowSize, final int segmentSize,
+							final WindowCache cache) throws FileNotFoundException {
+		super(windowSize, cache);
+		ArgUtils.checkNullObject(file, "file");
+		ArgUtils.checkPositiveInteger(segmentSize, "segmentSize");
+		this.file = file;
+		randomAccessFile = new RandomAccessFile(file, READ_ONLY);
+		channel = randomAccessFile.getChannel();
+		length = file.length();
+		final int windowsPerSegment = segmentSize > windowSize? segmentSize / windowSize : 1;
+		this.segmentSize = (long) windowsPerSegment * windowSize;
+		segments = new ByteBuffer[(int) ((length + this.segmentSize - 1) / this.segmentSize)];
+	}
+
+	/**
+	 * Returns the length of the file.
+	 *
+	 * @return The length of the file accessed by the reader.
+	 */
+	@Override
+	public final long length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowStart) throws IOException {
+		if (windowStart >= 0 && windowStart < length) {
+			final int segmentIndex = (int) (windowStart / segmentSize);
+			final int segmentOffset = (int) (windowStart - segmentIndex * segmentSize);
+			final long remaining = length - windowStart;
+			final int windowLength = remaining < windowSize? (int) remaining : windowSize;
+			final ByteBuffer windowBuffer = getSegment(segmentIndex).duplicate();
+			windowBuffer.position(segmentOffset);
+			windowBuffer.limit(segmentOffset + windowLength);
+			return new ByteBufferWindow(windowBuffer.slice(), windowStart, windowLength);
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the underlying {@link java.io.RandomAccessFile} and releases the mapped
+	 * segments of the file, then clears any cache associated with this WindowReader.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			synchronized (segments) {
+				for (int i = 0; i < segments.length; i++) {
+					segments[i] = null;
+				}
+			}
+			randomAccessFile.close();
+		} finally {
+			super.close();
+		}
+	}
+
+	/**
+	 * Returns the {@link java.io.File} object accessed by this WindowReader.
+	 *
+	 * @return The File object accessed by this WindowReader.
+	 */
+	public final File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the size of the memory mapped segments of the file.
+	 *
+	 * @return The size of the memory mapped segments of the file.
+	 */
+	public final long getSegmentSize() {
+		return segmentSize;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file:" + file + " length: " + length + 
+				                            " segment size: " + segmentSize + " cache:" + cache + ']';
+	}
+
+	private ByteBuffer getSegment(final int segmentIndex) throws IOException {
+		synchronized (segments) {
+			ByteBuffer segment = segments[segmentIndex];
+			if (segment == null) {
+				final long segmentStart = segmentIndex * segmentSize;
+				final long remaining = length - segmentStart;
+				final long mapSize = remaining < segmentSize? remaining : segmentSize;
+				segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, mapSize);
+				segments[segmentIndex] = segment;
+			}
+			return segment;
+		}
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.OverlapWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader which presents the windows of another WindowReader as {@link OverlapWindow}s,
+ * whose arrays also hold the bytes which follow each window, up to a fixed overlap.
+ * If the overlap is at least the length of the longest pattern being searched for, less one,
+ * any match which starts in a window also ends in the array of that window.  Searchers and
+ * matchers which recognise an OverlapWindow can then verify matches against its array alone,
+ * without falling back to reading across window boundaries, and each match is still found only
+ * once, in the window it starts in.  For example:
+ * <pre>
+ *   final int overlap = SearchUtils.getMaximumMatchLength(searcher) - 1;
+ *   final WindowReader reader = new OverlappingReader(new FileReader(file), overlap);
+ * </pre>
+ * <p>
+ * The positions and lengths of the windows are exactly those of the underlying reader;
+ * only their arrays are extended.  Each padded window is a copy of the bytes of a window
+ * and the start of the windows after it, so the padded windows are held in a cache of their
+ * own, which by default holds the last 32 windows used.  The cache of the underlying reader
+ * can be quite small, as it is only read from when a padded window is created.
+ * <p>
+ * This class is not thread-safe, unless both the underlying reader and the cache are.
+ *
+ * @author Matt Palmer
+ */
+public final class OverlappingReader implements WindowReader {
+
+	private final WindowReader reader;
+	private final int overlap;
+	private final WindowCache cache;
+
+	/**
+	 * Constructs an OverlappingReader over another reader, padding its windows with the
+	 * overlap given, caching the last 32 padded windows used in a {@link LeastRecentlyUsedCache}.
+	 *
+	 * @param reader  The reader whose windows are padded.
+	 * @param overlap The number of bytes following each window to add to its array.
+	 * @throws IllegalArgumentException if the reader is null or the overlap is negative.
+	 */
+	public OverlappingReader(final WindowReader reader, final int overlap) {
+		this(reader, overlap, new LeastRecentlyUsedCache(AbstractReader.DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * Constructs an OverlappingReader over another reader, padding its windows with the
+	 * overlap given, and caching padded windows in the cache supplied.
+	 *
+	 * @param reader  The reader whose windows are padded.
+	 * @param overlap The number of bytes following each window to add to its array.
+	 * @param cache   The cache of padded windows to use.
+	 * @throws IllegalArgumentException if the reader or cache is null, or the overlap is negative.
+	 */
+	public OverlappingReader(final WindowReader reader, final int overlap, final WindowCache cache) {
+		ArgUtils.checkNullObject(reader, "reader");
+		ArgUtils.checkNullObject(cache, "cache");
+		if (overlap < 0) {
+			throw new IllegalArgumentException("The overlap cannot be negative: " + overlap);
+		}
+		this.reader = reader;
+		this.overlap = overlap;
+		this.cache = cache;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int readByte(final long position) throws IOException {
+		return reader.readByte(position);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The window returned is an {@link OverlapWindow} with the same position and length
+	 * as the window of the underlying reader, whose array is padded with the bytes following
+	 * it.  The array holds exactly the bytes of the window and its overlap,
+	 * which is shorter than the overlap of this reader at the end of the reader.
+	 */
+	@Override
+	public Window getWindow(final long position) throws IOException {
+		final Window window = reader.getWindow(position);
+		if (window == null) {
+			return null;
+		}
+		final long windowPosition = window.getWindowPosition();
+		final Window padded = cache.getWindow(windowPosition);
+		if (padded != null) {
+			return padded;
+		}
+		final Window newWindow = createWindow(window);
+		cache.addWindow(newWindow);
+		return newWindow;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getWindowOffset(final long position) {
+		return reader.getWindowOffset(position);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long length() throws IOException {
+		return reader.length();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<Window> iterator() {
+		return new WindowIterator();
+	}
+
+	/**
+	 * Clears the cache of padded windows, and closes the underlying reader.
+	 *
+	 * @throws IOException If a problem occurred closing the underlying reader.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			cache.clear();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes following each window which are added to its array.
+	 *
+	 * @return The number of bytes following each window which are added to its array.
+	 */
+	public int getOverlap() {
+		return overlap;
+	}
+
+	/**
+	 * Returns the reader whose windows are padded.
+	 *
+	 * @return The reader whose windows are padded.
+	 */
+	public WindowReader getReader() {
+		return reader;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[overlap: " + overlap + " cache: " + cache + " reader: " + reader + ']';
+	}
+
+	/**
+	 * Creates an OverlapWindow holding the bytes of a window of the underlying reader,
+	 * followed by the bytes of the windows after it, up to the overlap.
+	 *
+	 * @param window The window of the underlying reader to pad.
+	 * @return An OverlapWindow over the bytes of the window, padded with the bytes after it.
+	 * @throws IOException If the windows of the underlying reader could not be read.
+	 */
+	private Window createWindow(final Window window) throws IOException {
+		final int length = window.length();
+		final byte[] bytes = new byte[length + overlap];
+		WindowUtils.getByteBuffer(window, 0, length).get(bytes, 0, length);
+		int padding = 0;
+		long nextPosition = window.getNextWindowPosition();
+		while (padding < overlap) {
+			final Window nextWindow = reader.getWindow(nextPosition);
+			if (nextWindow == null) {
+				break;
+			}
+			final int offset = (int) (nextPosition - nextWindow.getWindowPosition());
+			final int toCopy = Math.min(overlap - padding, nextWindow.length() - offset);
+			WindowUtils.getByteBuffer(nextWindow, offset, toCopy).get(bytes, length + padding, toCopy);
+			padding += toCopy;
+			nextPosition += toCopy;
+		}
+		// At the end of the reader, there may be fewer bytes to pad with than the overlap:
+		final byte[] windowBytes = padding < overlap? Arrays.copyOf(bytes, length + padding) : bytes;
+		return new OverlapWindow(windowBytes, window.getWindowPosition(), length, padding);
+	}
+
+	/**
+	 * An iterator of {@link Window}s over this reader.
+	 */
+	private class WindowIterator implements Iterator<Window> {
+
+		private long position = 0;
+
+		@Override
+		public boolean hasNext() {
+			try {
+				return getWindow(position) != null;
+			} catch (final IOException ex) {
+				return false;
+			}
+		}
+
+		@Override
+		public Window next() {
+			try {
+				final Window window = getWindow(position);
+				if (window != null) {
+					position = window.getNextWindowPosition();
+					return window;
+				}
+			} catch (final IOException throwNoSuchElementExceptionInstead) {
+			}
+			throw new NoSuchElementException();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Cannot remove a window from a reader.");
+		}
+	}
+
+}
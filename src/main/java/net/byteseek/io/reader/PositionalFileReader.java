@@ -0,0 +1,350 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import net.byteseek.io.reader.cache.ConcurrentClockCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.ByteBufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.SoftWindow;
+import net.byteseek.io.reader.windows.SoftWindowRecovery;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowBufferPool;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader extending {@link AbstractReader} which reads a file into cached
+ * byte arrays using positional reads on a {@link java.nio.channels.FileChannel}.
+ * <p>
+ * Unlike the {@link FileReader}, there is no shared file pointer which must be moved
+ * before each read, so this reader is thread-safe, as long as the {@link WindowCache}
+ * it uses is also thread-safe.  Many threads can search different parts of the same
+ * file at the same time, sharing a single open file and a single cache of windows.
+ * By default, it uses a {@link net.byteseek.io.reader.cache.ConcurrentClockCache}, so that
+ * threads looking up windows do not serialise on the cache.
+ * <p>
+ * Note that if a thread is interrupted while it is reading from a FileChannel, the channel
+ * is closed, and the reader can no longer be used by any thread.
+ * <p>
+ * It also implements the SoftWindowRecovery interface, which allows windows to reload
+ * their byte arrays when using SoftWindows.
+ * <p>
+ * It can also read windows into direct ByteBuffers, so window memory is held outside
+ * the Java heap.  Reading into a direct buffer also avoids the copy a FileChannel makes
+ * when reading into a heap buffer.  Searchers which understand
+ * {@link net.byteseek.io.reader.windows.BufferWindow}s read these buffers directly.
+ * Allocating direct buffers is slow, so the buffers of windows freed by the cache can be
+ * recycled using {@link #useBufferPool(WindowBufferPool)}.
+ *
+ * @author Matt Palmer
+ */
+public class PositionalFileReader extends AbstractReader implements SoftWindowRecovery {
+
+	private final static String READ_ONLY = "r";
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final long length;
+	private volatile boolean useSoftWindows;
+	private volatile boolean useDirectBuffers;
+
+	/**
+	 * Constructs a PositionalFileReader which defaults to a window size of 4096, caching
+	 * about the last 32 recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.ConcurrentClockCache}.
+	 *
+	 * @param file The file to read from.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file passed in is null.
+	 */
+	public PositionalFileReader(final File file) throws FileNotFoundException {
+		this(file, DEFAULT_WINDOW_SIZE, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a PositionalFileReader which defaults to a window size of 4096,
+	 * using the WindowCache passed in to cache Windows.  The cache must be thread-safe
+	 * if the reader is to be used by more than one thread.
+	 *
+	 * @param file  The file to read from.
+	 * @param cache The cache of Windows to use.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file or cache passed in is null.
+	 */
+	public PositionalFileReader(final File file, final WindowCache cache) throws FileNotFoundException {
+		this(file, DEFAULT_WINDOW_SIZE, cache);
+	}
+
+	/**
+	 * Constructs a PositionalFileReader using the window size passed in, caching
+	 * about the last 32 recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.ConcurrentClockCache}.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of the byte array to read from the file.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file passed in is null.
+	 */
+	public PositionalFileReader(final File file, final int windowSize) throws FileNotFoundException {
+		this(file, windowSize, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a PositionalFileReader using the window size passed in, caching
+	 * recently used Windows up to the capacity specified in a
+	 * {@link net.byteseek.io.reader.cache.ConcurrentClockCache}.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of the byte array to read from the file.
+	 * @param capacity The number of byte arrays to cache.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file passed in is null.
+	 */
+	public PositionalFileReader(final File file, final int windowSize, final int capacity)
+			throws FileNotFoundException {
+		this(file, windowSize, new ConcurrentClockCache(capacity));
+	}
+
+	/**
+	 * Constructs a PositionalFileReader which defaults to a window size of 4096, caching
+	 * about the last 32 recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.ConcurrentClockCache}.
+	 *
+	 * @param path The path of the file to read from.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the path passed in is null.
+	 */
+	public PositionalFileReader(final String path) throws FileNotFoundException {
+		this(path == null? null : new File(path), DEFAULT_WINDOW_SIZE, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a PositionalFileReader using the window size passed in, caching
+	 * about the last 32 recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.ConcurrentClockCache}.
+	 *
+	 * @param path The path of the file to read from.
+	 * @param windowSize The size of the byte array to read from the file.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the path passed in is null.
+	 */
+	public PositionalFileReader(final String path, final int windowSize) throws FileNotFoundException {
+		this(path == null? null : new File(path), windowSize, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a PositionalFileReader which reads the file into Windows of the
+	 * specified size, using the {@link WindowCache} supplied to cache them.  The cache
+	 * must be thread-safe if the reader is to be used by more than one thread.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of the byte array to read from the file.
+	 * @param cache The cache of Windows to use.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException If the file or cache passed in is null.
+	 */
+	public PositionalFileReader(final File file, final int windowSize, final WindowCache cache)
+			throws FileNotFoundException {
+		super(windowSize, cache);
+		ArgUtils.checkNullObject(file, "file");
+		this.file = file;
+		randomAccessFile = new RandomAccessFile(file, READ_ONLY);
+		channel = randomAccessFile.getChannel();
+		length = file.length();
+	}
+
+	/**
+	 * Returns the length of the file.
+	 *
+	 * @return The length of the file accessed by the reader.
+	 */
+	@Override
+	public final long length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowStart) throws IOException {
+		if (windowStart >= 0 && windowStart < length) {
+			if (useDirectBuffers) {
+				return createBufferWindow(windowStart);
+			}
+			final byte[] bytes = new byte[getWindowSize(windowStart)];
+			final int totalRead = readBytes(bytes, windowStart);
+			if (totalRead > 0) {
+				return useSoftWindows? new SoftWindow(bytes, windowStart, totalRead, this)
+						             : new HardWindow(bytes, windowStart, totalRead);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the underlying file, then clears any cache associated with this WindowReader.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			randomAccessFile.close();
+		} finally {
+			super.close();
+		}
+	}
+
+	/**
+	 * Returns the {@link java.io.File} object accessed by this WindowReader.
+	 *
+	 * @return The File object accessed by this WindowReader.
+	 */
+	public final File getFile() {
+		return file;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file:" + file + " length: " + length + " cache:" + cache + ']';
+	}
+
+	/**
+	 * Sets whether the reader creates SoftWindows, whose byte arrays can be reclaimed
+	 * by the garbage collector and reloaded from the file when needed.  Soft windows
+	 * are not used if the reader is reading into direct buffers.
+	 *
+	 * @param useSoftWindows Whether to create SoftWindows.
+	 */
+	public void useSoftWindows(final boolean useSoftWindows) {
+		this.useSoftWindows = useSoftWindows;
+	}
+
+	/**
+	 * Sets whether the reader reads windows into direct ByteBuffers allocated outside
+	 * the Java heap, creating {@link net.byteseek.io.reader.windows.ByteBufferWindow}s.
+	 * Only windows created after this is set are affected.  A new buffer is allocated for
+	 * each window unless a {@link WindowBufferPool} is also set.
+	 *
+	 * @param useDirectBuffers Whether to read windows into direct ByteBuffers.
+	 */
+	public void useDirectBuffers(final boolean useDirectBuffers) {
+		this.useDirectBuffers = useDirectBuffers;
+	}
+
+	/**
+	 * Sets a {@link WindowBufferPool} to read windows into when using direct buffers,
+	 * recycling the buffers of windows freed by the cache back into it, or null to stop
+	 * pooling buffers.
+	 * <p>
+	 * Clients must not hold on to Windows after reading further than the capacity
+	 * of the cache, as their buffers may be reused for other Windows.  When several
+	 * threads share the reader, the cache must hold more windows than the other threads
+	 * read while any one thread is still using a window.
+	 *
+	 * @param pool The WindowBufferPool to use, or null if buffers should not be pooled.
+	 * @throws IllegalArgumentException if the buffer size of the pool is not the window size of this reader.
+	 */
+	@Override
+	public void useBufferPool(final WindowBufferPool pool) {
+		super.useBufferPool(pool);
+	}
+
+	/**
+	 * Makes windows grow while the file is read sequentially, up to the maximum window
+	 * size given, and shrink back towards the window size of this reader when it is read
+	 * at random.  When several threads read the file at once, windows grow only while the
+	 * windows they create follow on from one another.
+	 * This must be called before reading from the reader.
+	 *
+	 * @param maxWindowSize The largest size a window can grow to.
+	 * @throws IllegalArgumentException if the maximum window size is smaller than the window size.
+	 * @throws IllegalStateException if windows have already been read.
+	 */
+	@Override
+	public void useAdaptiveWindowSizes(final int maxWindowSize) {
+		super.useAdaptiveWindowSizes(maxWindowSize);
+	}
+
+	@Override
+	public byte[] reloadWindowBytes(final Window window) throws IOException {
+		final byte[] bytes = new byte[getWindowSize(window.getWindowPosition())];
+		readBytes(bytes, window.getWindowPosition());
+		return bytes;
+	}
+
+	private Window createBufferWindow(final long windowStart) throws IOException {
+		final ByteBuffer pooled = borrowWindowBuffer(windowStart);
+		final ByteBuffer buffer = pooled != null? pooled : ByteBuffer.allocateDirect(getWindowSize(windowStart));
+		final int totalRead = readBytes(buffer, windowStart);
+		return totalRead > 0? new ByteBufferWindow(buffer, windowStart, totalRead) : null;
+	}
+
+	/**
+	 * Reads bytes into the array from the position in the file given, until the
+	 * array is full or the end of the file is reached.
+	 *
+	 * @param bytes The array to read into.
+	 * @param fromPosition The position in the file to read from.
+	 * @return The number of bytes read into the array.
+	 * @throws IOException If a problem occurs reading the file.
+	 */
+	private int readBytes(final byte[] bytes, final long fromPosition) throws IOException {
+		return readBytes(ByteBuffer.wrap(bytes), fromPosition);
+	}
+
+	/**
+	 * Reads bytes into the buffer from the position in the file given, until the
+	 * buffer is full or the end of the file is reached.
+	 *
+	 * @param buffer The buffer to read into, from its current position.
+	 * @param fromPosition The position in the file to read from.
+	 * @return The number of bytes read into the buffer.
+	 * @throws IOException If a problem occurs reading the file.
+	 */
+	private int readBytes(final ByteBuffer buffer, final long fromPosition) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, fromPosition + buffer.position()) < 0) {
+				break;
+			}
+		}
+		return buffer.position();
+	}
+
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader which decorates another WindowReader, reading ahead of a scan
+ * on a background thread so that I/O overlaps with matching.
+ * <p>
+ * The direction of a scan is detected from the windows requested.  If a window
+ * after the last window is requested, the scan is forwards, and the next windows
+ * after it are loaded in the background.  If a window before the last window is
+ * requested, the scan is backwards, and the windows before it are loaded.
+ * Each window after a window is loaded from the position following it, once it has loaded,
+ * so windows of different lengths, such as those of a reader using adaptive window sizes,
+ * are prefetched from their real start positions.
+ * Forward searches (e.g. <code>doSearchForwards</code>) and backward searches
+ * (e.g. <code>doSearchBackwards</code>) therefore both benefit, without the
+ * searchers having to know about prefetching.  If a window is requested which is
+ * still being loaded in the background, the request waits for that load to complete,
+ * rather than reading the same window again.
+ * <p>
+ * The reader being decorated MUST be safe to read from more than one thread at the same
+ * time, for example a {@link PositionalFileReader} or a {@link MappedFileReader}.
+ * A {@link FileReader} is not safe to use, as it moves a shared file pointer before each read.
+ * The decorated reader's cache should be able to hold at least the number of windows
+ * prefetched, or prefetched windows may be evicted before they are used.
+ * <p>
+ * The PrefetchReader itself is intended to be used by a single scanning thread.
+ * Closing it cancels any outstanding prefetches, shuts down the executor if it
+ * was created by this reader, and closes the reader it decorates.
+ *
+ * @author Matt Palmer
+ */
+public final class PrefetchReader implements WindowReader {
+
+	/**
+	 * The default number of windows to read ahead of a scan.
+	 */
+	public final static int DEFAULT_PREFETCH_WINDOWS = 4;
+
+	private final static int NO_BYTE_AT_POSITION = -1;
+	private final static long NO_WINDOW = -1;
+
+	private final WindowReader reader;
+	private final int prefetchWindows;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final ConcurrentMap<Long, PrefetchTask> pending;
+
+	private long lastWindowStart = NO_WINDOW;
+	private volatile boolean scanForwards = true;
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a PrefetchReader which reads the default number of windows ahead
+	 * of a scan, using its own background thread.
+	 *
+	 * @param reader The thread-safe WindowReader to prefetch windows from.
+	 * @throws IllegalArgumentException if the reader is null.
+	 */
+	public PrefetchReader(final WindowReader reader) {
+		this(reader, DEFAULT_PREFETCH_WINDOWS);
+	}
+
+	/**
+	 * Constructs a PrefetchReader which reads the number of windows specified
+	 * ahead of a scan, using its own background thread.
+	 *
+	 * @param reader          The thread-safe WindowReader to prefetch windows from.
+	 * @param prefetchWindows The number of windows to read ahead of a scan.
+	 * @throws IllegalArgumentException if the reader is null or the number of windows is less than one.
+	 */
+	public PrefetchReader(final WindowReader reader, final int prefetchWindows) {
+		this(reader, prefetchWindows, null);
+	}
+
+	/**
+	 * Constructs a PrefetchReader which reads the number of windows specified
+	 * ahead of a scan, using the executor provided to load them.  An executor
+	 * passed in is not shut down when this reader is closed.
+	 *
+	 * @param reader          The thread-safe WindowReader to prefetch windows from.
+	 * @param prefetchWindows The number of windows to read ahead of a scan.
+	 * @param executor        The executor to load windows with, or null if the reader
+	 *                        should create its own single background thread.
+	 * @throws IllegalArgumentException if the reader is null or the number of windows is less than one.
+	 */
+	public PrefetchReader(final WindowReader reader, final int prefetchWindows, final ExecutorService executor) {
+		ArgUtils.checkNullObject(reader, "reader");
+		ArgUtils.checkPositiveInteger(prefetchWindows, "prefetchWindows");
+		this.reader = reader;
+		this.prefetchWindows = prefetchWindows;
+		this.ownsExecutor = executor == null;
+		this.executor = ownsExecutor ? Executors.newSingleThreadExecutor(new PrefetchThreadFactory()) : executor;
+		this.pending = new ConcurrentHashMap<Long, PrefetchTask>(prefetchWindows * 4);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int readByte(final long position) throws IOException {
+		final Window window = getWindow(position);
+		if (window == null) {
+			return NO_BYTE_AT_POSITION;
+		}
+		return window.getByte(reader.getWindowOffset(position)) & 0xFF;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the window is being loaded in the background, this waits for it to load.
+	 * It then schedules loading of the windows following it in the direction of the scan.
+	 */
+	@Override
+	public Window getWindow(final long position) throws IOException {
+		if (position < 0) {
+			return null;
+		}
+		final long windowStart = position - reader.getWindowOffset(position);
+		Window window = null;
+		final Future<Window> prefetched = pending.remove(windowStart);
+		if (prefetched != null) {
+			window = waitFor(prefetched);
+		}
+		if (window == null || window.getWindowPosition() != windowStart) {
+			window = reader.getWindow(position);
+		}
+		if (window != null) {
+			if (windowStart != lastWindowStart) {
+				prefetch(window, windowStart > lastWindowStart);
+				lastWindowStart = windowStart;
+			}
+			if (position - windowStart >= window.length()) {
+				window = null;
+			}
+		}
+		return window;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getWindowOffset(final long position) {
+		return reader.getWindowOffset(position);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long length() throws IOException {
+		return reader.length();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<Window> iterator() {
+		return new WindowIterator();
+	}
+
+	/**
+	 * Cancels any outstanding prefetches, shuts down the executor if it was created
+	 * by this reader, and closes the reader being decorated.
+	 *
+	 * @throws IOException If a problem occurred closing the decorated reader.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		for (final Future<Window> future : pending.values()) {
+			future.cancel(false);
+		}
+		pending.clear();
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+		reader.close();
+	}
+
+	/**
+	 * Returns the reader decorated by this PrefetchReader.
+	 *
+	 * @return The reader decorated by this PrefetchReader.
+	 */
+	public WindowReader getReader() {
+		return reader;
+	}
+
+	/**
+	 * Returns the number of windows read ahead of a scan.
+	 *
+	 * @return The number of windows read ahead of a scan.
+	 */
+	public int getPrefetchWindows() {
+		return prefetchWindows;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[prefetch windows: " + prefetchWindows + " pending: " + pending.size() +
+				                            " reader: " + reader + ']';
+	}
+
+	/**
+	 * Schedules loading of the windows following a window in the direction of the scan,
+	 * and drops any prefetches which are no longer ahead of the scan.
+	 *
+	 * @param window   The window just requested.
+	 * @param forwards Whether the scan is moving forwards.
+	 */
+	private void prefetch(final Window window, final boolean forwards) {
+		scanForwards = forwards;
+		final long windowStart = window.getWindowPosition();
+		long lowest = windowStart;
+		long highest = Long.MAX_VALUE;
+		if (forwards) {
+			prefetchFollowing(window, prefetchWindows);
+		} else {
+			long nextStart = windowStart;
+			for (int count = 0; count < prefetchWindows && nextStart > 0; count++) {
+				nextStart -= 1 + reader.getWindowOffset(nextStart - 1);
+				schedule(nextStart, 0);
+			}
+			lowest = nextStart;
+			highest = windowStart;
+		}
+		final Iterator<Map.Entry<Long, PrefetchTask>> entries = pending.entrySet().iterator();
+		while (entries.hasNext()) {
+			final Map.Entry<Long, PrefetchTask> entry = entries.next();
+			final long position = entry.getKey();
+			if (position < lowest || position > highest) {
+				entry.getValue().cancel(false);
+				entries.remove();
+			}
+		}
+	}
+
+	/**
+	 * Schedules loading of the windows following a window in a forwards scan.  Each window
+	 * is loaded from the next window position of the window before it, so windows are not
+	 * assumed to be the same length.  Where the window before has not yet loaded, it
+	 * schedules the rest of the windows itself when it has.
+	 *
+	 * @param window The window to prefetch the windows following.
+	 * @param count  The number of windows to prefetch after it.
+	 */
+	private void prefetchFollowing(final Window window, final int count) {
+		Window previous = window;
+		for (int remaining = count - 1; remaining >= 0 && previous != null; remaining--) {
+			if (closed || !scanForwards) {
+				return;
+			}
+			final PrefetchTask task = schedule(previous.getNextWindowPosition(), remaining);
+			previous = task == null ? null : task.followWith(remaining);
+		}
+	}
+
+	/**
+	 * Schedules loading of a window, unless it is already pending.
+	 *
+	 * @param windowStart The position of the window to load.
+	 * @param following   The number of windows to prefetch after it once it has loaded.
+	 * @return The task loading the window, or null if it could not be scheduled.
+	 */
+	private PrefetchTask schedule(final long windowStart, final int following) {
+		final PrefetchTask task = pending.get(windowStart);
+		if (task != null) {
+			return task;
+		}
+		final PrefetchTask newTask = new PrefetchTask(windowStart, following);
+		final PrefetchTask existing = pending.putIfAbsent(windowStart, newTask);
+		if (existing != null) {
+			return existing;
+		}
+		try {
+			executor.execute(newTask);
+		} catch (final RejectedExecutionException closedExecutor) {
+			pending.remove(windowStart, newTask);
+			return null;
+		}
+		return newTask;
+	}
+
+	private Window waitFor(final Future<Window> prefetched) throws IOException {
+		if (prefetched.isCancelled()) {
+			return null;
+		}
+		try {
+			return prefetched.get();
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for a prefetched window", ex);
+		} catch (final ExecutionException ex) {
+			final Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Failed to prefetch a window", cause);
+		}
+	}
+
+	/**
+	 * Loads a window in the background, then prefetches the windows following it
+	 * from its next window position, if the scan is still moving forwards.
+	 */
+	private final class PrefetchTask extends FutureTask<Window> {
+
+		private volatile int following;
+
+		PrefetchTask(final long windowStart, final int following) {
+			super(new Callable<Window>() {
+				@Override
+				public Window call() throws IOException {
+					return reader.getWindow(windowStart);
+				}
+			});
+			this.following = following;
+		}
+
+		/**
+		 * Returns the window if it has loaded, or null if it has not.  If it has not,
+		 * the number of windows to prefetch after it when it loads is raised to the
+		 * number given.
+		 *
+		 * @param count The number of windows to prefetch after this one.
+		 * @return The window if it has loaded, or null if it has not or could not be loaded.
+		 */
+		Window followWith(final int count) {
+			if (count > following) {
+				following = count;
+			}
+			return getLoadedWindow();
+		}
+
+		@Override
+		protected void done() {
+			final Window window = getLoadedWindow();
+			if (window != null && following > 0) {
+				prefetchFollowing(window, following);
+			}
+		}
+
+		private Window getLoadedWindow() {
+			if (isDone() && !isCancelled()) {
+				try {
+					return get();
+				} catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} catch (final ExecutionException failureReportedWhenRequested) {
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Creates daemon threads, so an unclosed PrefetchReader does not stop the JVM exiting.
+	 */
+	private static final class PrefetchThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "byteseek-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * An iterator of {@link Window}s over this reader, which prefetches the windows ahead of it.
+	 */
+	private class WindowIterator implements Iterator<Window> {
+
+		private long position = 0;
+
+		@Override
+		public boolean hasNext() {
+			try {
+				return getWindow(position) != null;
+			} catch (final IOException ex) {
+				return false;
+			}
+		}
+
+		@Override
+		public Window next() {
+			try {
+				final Window window = getWindow(position);
+				if (window != null) {
+					position += (long) window.length();
+					return window;
+				}
+			} catch (final IOException throwNoSuchElementExceptionInstead) {
+			}
+			throw new NoSuchElementException();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Cannot remove a window from a reader.");
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read-only {@link SeekableByteChannel} over any WindowReader, so its bytes can be passed
+ * to code which reads channels, such as {@link java.security.MessageDigest#update(ByteBuffer)}
+ * or {@link java.nio.channels.FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}.
+ * <p>
+ * Bytes are copied into the buffers read into directly from the arrays of windows, or
+ * from the buffers of {@link net.byteseek.io.reader.windows.BufferWindow}s.  Writing to or
+ * truncating the channel throws a {@link NonWritableChannelException}.
+ * <p>
+ * Reading and positioning the channel synchronize on the channel, so only one read
+ * is in progress at a time.
+ */
+public final class ReaderByteChannel implements SeekableByteChannel {
+
+    private final WindowReader reader;
+    private final boolean closeReaderOnClose;
+
+    private long position;
+    private volatile boolean open = true;
+
+
+    /**
+     * Constructs a ReaderByteChannel from a WindowReader.  The underlying reader will
+     * be closed when this channel is closed.
+     *
+     * @param reader The WindowReader to back the channel.
+     * @throws java.lang.IllegalArgumentException if the reader is null.
+     */
+    public ReaderByteChannel(final WindowReader reader) {
+        this(reader, true);
+    }
+
+    /**
+     * Constructs a ReaderByteChannel from a WindowReader.
+     *
+     * @param reader The WindowReader to back the channel.
+     * @param closeReaderOnClose Whether the underlying reader is closed when this channel is closed.
+     * @throws java.lang.IllegalArgumentException if the reader is null.
+     */
+    public ReaderByteChannel(final WindowReader reader, final boolean closeReaderOnClose) {
+        ArgUtils.checkNullObject(reader, "reader");
+        this.reader = reader;
+        this.closeReaderOnClose = closeReaderOnClose;
+    }
+
+
+    @Override
+    public synchronized int read(final ByteBuffer dst) throws IOException {
+        checkOpen();
+        int totalRead = 0;
+        Window window;
+        while (dst.hasRemaining() && (window = reader.getWindow(position)) != null) {
+            final int offset = reader.getWindowOffset(position);
+            final int available = window.length() - offset;
+            final int toRead = available < dst.remaining() ? available : dst.remaining();
+            dst.put(WindowUtils.getByteBuffer(window, offset, toRead));
+            position  += toRead;
+            totalRead += toRead;
+        }
+        return totalRead == 0 && dst.hasRemaining() ? -1 : totalRead;
+    }
+
+    /**
+     * Throws a {@link NonWritableChannelException}, as the channel is read-only.
+     */
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Setting the position past the end of the reader is legal, but subsequent reads
+     * return -1 to indicate the end of the channel.
+     */
+    @Override
+    public synchronized SeekableByteChannel position(final long newPosition) throws IOException {
+        checkOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("The position cannot be negative: " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Note that for a reader over a stream, the entire stream is read to determine its size.
+     */
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return reader.length();
+    }
+
+    /**
+     * Throws a {@link NonWritableChannelException}, as the channel is read-only.
+     */
+    @Override
+    public SeekableByteChannel truncate(final long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (open) {
+            open = false;
+            if (closeReaderOnClose) {
+                reader.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[reader: " + reader + " position: " + position + " open: " + open + ']';
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+}
@@ -30,27 +30,20 @@
  */
 package net.byteseek.io.reader;
 
-import net.byteseek.io.reader.windows.Window;
-import net.byteseek.utils.ArgUtils;
-
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * An InputStream backed by a WindowReader.
+ * <p>
+ * All methods synchronize on the stream.  A single thread reading from the stream
+ * can use an {@link UnsynchronizedReaderInputStream} instead, which this class wraps.
  */
 public final class ReaderInputStream extends InputStream {
 
-    private final WindowReader reader;
-    private final boolean closeReaderOnClose;
-    private final boolean markSupported;
-
-    private long   pos;
-    private long   mark;
-    private Window currentWindow;
-    private int currentWindowLength;
-    private byte[] currentArray;
-    private int currentArrayPos;
+    private final UnsynchronizedReaderInputStream stream;
 
 
     /**
@@ -87,61 +80,51 @@ public final class ReaderInputStream extends InputStream {
      * @throws java.lang.IllegalArgumentException if the reader is null.
      */
     public ReaderInputStream(final WindowReader reader, boolean closeReaderOnClose, boolean markSupported) throws IOException {
-        ArgUtils.checkNullObject(reader, "reader");
-        this.reader = reader;
-        this.closeReaderOnClose = closeReaderOnClose;
-        this.markSupported      = markSupported;
-        setWindowForPosition(0L);
+        this.stream = new UnsynchronizedReaderInputStream(reader, closeReaderOnClose, markSupported);
     }
 
 
     @Override
     public synchronized int read() throws IOException {
-        if (pos > -1) {
-            final int readResult = currentArray[currentArrayPos] & 0xFF;
-            addStreamPosition(1);
-            return readResult;
-        }
-        return -1;
+        return stream.read();
     }
 
     @Override
     public synchronized int read(final byte[] b, final int off, final int len) throws IOException {
-        if (b == null) {
-            throw new NullPointerException();
-        } else if (off < 0 || len < 0 || len > b.length - off) {
-            throw new IndexOutOfBoundsException();
-        } else if (len == 0) {
-            return 0;
-        }
-
-        if (pos > -1) {
-            int available = currentWindowLength - currentArrayPos;
-            if (available >= len) { // buffer copy is completely inside current window.
-                System.arraycopy(currentArray, currentArrayPos, b, off, len);
-                addStreamPosition(len);
-                return len;
-            } else { // buffer copy may span more than one window (if there are more windows available...)
-                int copied = 0;
-                while (copied < len) {
-                    System.arraycopy(currentArray, currentArrayPos, b, off + copied, available);
-                    copied          += available;
-                    addStreamPosition(available);
-                    if (currentWindow == null) { // no more windows available...
-                        break;
-                    }
-                    final int remaining = len - copied;
-                    available = currentWindowLength > remaining ? remaining : currentWindowLength;
-                }
-                return copied;
-            }
-        }
-        return -1;
+        return stream.read(b, off, len);
+    }
+
+    /**
+     * Writes all the remaining bytes in this stream to an OutputStream, directly
+     * from the arrays of the windows of the reader.
+     * After this method returns, the stream is at its end.
+     *
+     * @param out The OutputStream to write the remaining bytes to.
+     * @return The number of bytes written.
+     * @throws IOException If a problem occurs reading or writing bytes.
+     * @throws IllegalArgumentException if the OutputStream is null.
+     */
+    public synchronized long transferTo(final OutputStream out) throws IOException {
+        return stream.transferTo(out);
+    }
+
+    /**
+     * Writes all the remaining bytes in this stream to a WritableByteChannel, directly
+     * from the arrays or buffers of the windows of the reader.
+     * After this method returns, the stream is at its end.
+     *
+     * @param channel The channel to write the remaining bytes to.
+     * @return The number of bytes written.
+     * @throws IOException If a problem occurs reading or writing bytes.
+     * @throws IllegalArgumentException if the channel is null.
+     */
+    public synchronized long transferTo(final WritableByteChannel channel) throws IOException {
+        return stream.transferTo(channel);
     }
 
     @Override
     public synchronized int available() throws IOException {
-        return pos > -1? currentWindowLength - currentArrayPos : 0;
+        return stream.available();
     }
 
     /**
@@ -158,39 +141,27 @@ public final class ReaderInputStream extends InputStream {
      */
     @Override
     public boolean markSupported() {
-        return markSupported;
+        return stream.markSupported();
     }
 
     @Override
     public synchronized void mark(int readAheadLimit) {
-        mark = pos;
+        stream.mark(readAheadLimit);
     }
 
     @Override
     public synchronized void reset() throws IOException {
-       if (markSupported) {
-           setWindowForPosition(mark);
-       } else {
-           super.reset(); // use default InputStream behaviour - throws an IO Exception.
-       }
+        stream.reset();
     }
 
     @Override
     public synchronized long skip(long n) throws IOException {
-        if (n <= 0 || pos < 0) {
-            return 0;
-        }
-        final long oldPos = pos;
-        setWindowForPosition(pos + n);
-        return currentWindow == null ? reader.length() - oldPos : n;
+        return stream.skip(n);
     }
 
     @Override
     public synchronized void close() throws IOException {
-        if (closeReaderOnClose) {
-            reader.close();
-            setNoMoreData();
-        }
+        stream.close();
     }
 
     /**
@@ -200,34 +171,7 @@ public final class ReaderInputStream extends InputStream {
      * @return The next read position in the stream, or -1 if there are no more bytes to consume.
      */
     synchronized long getNextReadPos() {
-        return pos;
-    }
-
-    private void setWindowForPosition(final long newPos) throws IOException {
-        currentWindow = reader.getWindow(newPos);
-        if (currentWindow == null) {
-            setNoMoreData();
-        } else {
-            pos                 = newPos;
-            currentWindowLength = currentWindow.length();
-            currentArray        = currentWindow.getArray();
-            currentArrayPos     = reader.getWindowOffset(newPos);
-        }
-    }
-
-    private void addStreamPosition(int moveBy) throws IOException {
-        currentArrayPos += moveBy;
-        pos             += moveBy;
-        if (currentArrayPos >= currentWindowLength) {
-            setWindowForPosition(pos);
-        }
-    }
-
-    private void setNoMoreData() {
-        pos                 = -1;
-        currentWindowLength = 0;
-        currentArray        = null;
-        currentArrayPos     = 0;
+        return stream.getNextReadPos();
     }
 
 }
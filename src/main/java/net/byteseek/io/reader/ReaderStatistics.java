@@ -0,0 +1,137 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+/**
+ * An immutable snapshot of the statistics of an {@link AbstractReader}, recording how
+ * often windows were found in its cache, how many windows were created, how many bytes
+ * they hold, and how long was spent creating them.
+ * <p>
+ * A high proportion of time spent creating windows compared to the total time of a scan
+ * indicates that the scan is limited by reading, rather than by matching.
+ *
+ * @author Matt Palmer
+ */
+public final class ReaderStatistics {
+
+	private final long cacheHits;
+	private final long cacheMisses;
+	private final long windowsCreated;
+	private final long bytesRead;
+	private final long createWindowNanos;
+
+	/**
+	 * Constructs a ReaderStatistics snapshot.
+	 *
+	 * @param cacheHits         The number of windows found in the cache.
+	 * @param cacheMisses       The number of windows not found in the cache.
+	 * @param windowsCreated    The number of windows created by the reader.
+	 * @param bytesRead         The number of bytes in the windows created by the reader.
+	 * @param createWindowNanos The time spent creating windows, in nanoseconds.
+	 */
+	public ReaderStatistics(final long cacheHits, final long cacheMisses, final long windowsCreated,
+							final long bytesRead, final long createWindowNanos) {
+		this.cacheHits = cacheHits;
+		this.cacheMisses = cacheMisses;
+		this.windowsCreated = windowsCreated;
+		this.bytesRead = bytesRead;
+		this.createWindowNanos = createWindowNanos;
+	}
+
+	/**
+	 * Returns the number of windows found in the cache of the reader.
+	 * Windows found because they were the last window used are not looked up in the
+	 * cache, so they are not counted.
+	 *
+	 * @return The number of windows found in the cache of the reader.
+	 */
+	public long getCacheHits() {
+		return cacheHits;
+	}
+
+	/**
+	 * Returns the number of windows not found in the cache of the reader,
+	 * each of which the reader then tried to create.
+	 *
+	 * @return The number of windows not found in the cache of the reader.
+	 */
+	public long getCacheMisses() {
+		return cacheMisses;
+	}
+
+	/**
+	 * Returns the proportion of cache lookups which found a window, from 0.0 to 1.0,
+	 * or zero if there were no lookups.
+	 *
+	 * @return The proportion of cache lookups which found a window.
+	 */
+	public double getCacheHitRatio() {
+		final long lookups = cacheHits + cacheMisses;
+		return lookups == 0? 0.0 : (double) cacheHits / lookups;
+	}
+
+	/**
+	 * Returns the number of windows created by the reader.
+	 *
+	 * @return The number of windows created by the reader.
+	 */
+	public long getWindowsCreated() {
+		return windowsCreated;
+	}
+
+	/**
+	 * Returns the number of bytes in the windows created by the reader,
+	 * which is the number of bytes read from its source.
+	 *
+	 * @return The number of bytes in the windows created by the reader.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Returns the time spent creating windows, in nanoseconds.
+	 *
+	 * @return The time spent creating windows, in nanoseconds.
+	 */
+	public long getCreateWindowNanos() {
+		return createWindowNanos;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[cache hits: " + cacheHits + " cache misses: " + cacheMisses +
+				                            " windows created: " + windowsCreated + " bytes read: " + bytesRead +
+				                            " create window nanos: " + createWindowNanos + ']';
+	}
+
+}
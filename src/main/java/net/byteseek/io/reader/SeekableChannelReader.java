@@ -0,0 +1,214 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+
+import net.byteseek.io.IOUtils;
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowArrayPool;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader extending {@link AbstractReader} which reads a
+ * {@link java.nio.channels.SeekableByteChannel} into cached byte arrays, for example a
+ * channel opened on a file in a custom {@link java.nio.file.FileSystem}.
+ * <p>
+ * As the channel can be positioned, any Window can be read again from the channel
+ * once it has left the cache, so the reader does not have to cache the entire channel
+ * as a {@link ChannelReader} must.  Bytes are read from the channel directly into
+ * the arrays of its Windows.
+ * <p>
+ * The length of the reader is the size of the channel when the reader was constructed.
+ * <p>
+ * This class is not thread-safe, as reading a Window changes the position of the channel.
+ *
+ * @author Matt Palmer
+ */
+public class SeekableChannelReader extends AbstractReader {
+
+	private final SeekableByteChannel channel;
+	private final boolean closeChannelOnClose;
+	private final long length;
+
+	/**
+	 * Constructs a SeekableChannelReader which defaults to a window size of 4096,
+	 * caching the last 32 most recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 *
+	 * @param channel The SeekableByteChannel to read from.
+	 * @throws IOException If the size of the channel could not be determined.
+	 * @throws IllegalArgumentException if the channel is null.
+	 */
+	public SeekableChannelReader(final SeekableByteChannel channel) throws IOException {
+		this(channel, DEFAULT_WINDOW_SIZE, new LeastRecentlyUsedCache(DEFAULT_CAPACITY), true);
+	}
+
+	/**
+	 * Constructs a SeekableChannelReader using the window size passed in,
+	 * caching the last 32 most recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 *
+	 * @param channel    The SeekableByteChannel to read from.
+	 * @param windowSize The size of the byte array to read from the channel.
+	 * @throws IOException If the size of the channel could not be determined.
+	 * @throws IllegalArgumentException if the channel is null or the window size is less than one.
+	 */
+	public SeekableChannelReader(final SeekableByteChannel channel, final int windowSize) throws IOException {
+		this(channel, windowSize, new LeastRecentlyUsedCache(DEFAULT_CAPACITY), true);
+	}
+
+	/**
+	 * Constructs a SeekableChannelReader using the window size passed in,
+	 * caching the most recently used Windows up to the capacity specified in a
+	 * {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 *
+	 * @param channel    The SeekableByteChannel to read from.
+	 * @param windowSize The size of the byte array to read from the channel.
+	 * @param capacity   The number of byte arrays to cache.
+	 * @throws IOException If the size of the channel could not be determined.
+	 * @throws IllegalArgumentException if the channel is null or the window size or capacity is less than one.
+	 */
+	public SeekableChannelReader(final SeekableByteChannel channel, final int windowSize,
+								 final int capacity) throws IOException {
+		this(channel, windowSize, new LeastRecentlyUsedCache(capacity), true);
+	}
+
+	/**
+	 * Constructs a SeekableChannelReader which defaults to a window size of 4096,
+	 * using the WindowCache passed in to cache Windows.
+	 *
+	 * @param channel The SeekableByteChannel to read from.
+	 * @param cache   The cache of Windows to use.
+	 * @throws IOException If the size of the channel could not be determined.
+	 * @throws IllegalArgumentException if the channel or cache is null.
+	 */
+	public SeekableChannelReader(final SeekableByteChannel channel, final WindowCache cache) throws IOException {
+		this(channel, DEFAULT_WINDOW_SIZE, cache, true);
+	}
+
+	/**
+	 * Constructs a SeekableChannelReader which reads the channel into Windows of the
+	 * specified size, using the WindowCache supplied to cache them.
+	 *
+	 * @param channel             The SeekableByteChannel to read from.
+	 * @param windowSize          The size of the byte array to read from the channel.
+	 * @param cache               The cache of Windows to use.
+	 * @param closeChannelOnClose Whether to close the underlying channel when this reader is closed.
+	 * @throws IOException If the size of the channel could not be determined.
+	 * @throws IllegalArgumentException if the channel or cache is null, or the window size is less than one.
+	 */
+	public SeekableChannelReader(final SeekableByteChannel channel, final int windowSize,
+								 final WindowCache cache, final boolean closeChannelOnClose) throws IOException {
+		super(windowSize, cache);
+		ArgUtils.checkNullObject(channel, "channel");
+		this.channel = channel;
+		this.closeChannelOnClose = closeChannelOnClose;
+		this.length = channel.size();
+	}
+
+	/**
+	 * Returns the length of the channel when the reader was constructed.
+	 *
+	 * @return The length of the channel read by the reader.
+	 */
+	@Override
+	public final long length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowStart) throws IOException {
+		if (windowStart >= 0 && windowStart < length) {
+			final byte[] bytes = createWindowArray();
+			final int totalRead = IOUtils.readBytes(channel, bytes, windowStart);
+			if (totalRead > 0) {
+				return new HardWindow(bytes, windowStart, totalRead);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Sets a {@link WindowArrayPool} to read new Windows into, recycling the arrays
+	 * of Windows freed by the cache back into it, or null to stop pooling arrays.
+	 * <p>
+	 * Clients must not hold on to Windows after reading further than the capacity
+	 * of the cache, as their arrays may be reused for other Windows.
+	 *
+	 * @param pool The WindowArrayPool to use, or null if arrays should not be pooled.
+	 * @throws IllegalArgumentException if the array size of the pool is not the window size of this reader.
+	 */
+	@Override
+	public void useArrayPool(final WindowArrayPool pool) {
+		super.useArrayPool(pool);
+	}
+
+	/**
+	 * Closes the underlying channel if required, then clears any cache associated
+	 * with this WindowReader.
+	 *
+	 * @throws IOException If a problem occurred closing the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (closeChannelOnClose) {
+				channel.close();
+			}
+		} finally {
+			super.close();
+		}
+	}
+
+	/**
+	 * Returns the channel read by this WindowReader.
+	 *
+	 * @return The channel read by this WindowReader.
+	 */
+	public final SeekableByteChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[channel:" + channel + " length: " + length + " cache:" + cache + ']';
+	}
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.ByteBufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader which is a view onto a range of bytes in another WindowReader,
+ * with positions starting from zero at the start of the range.  For example, a single
+ * partition of a disk image can be searched as if it were a reader of its own, and
+ * nested searches over the slice never see bytes outside it.
+ * <p>
+ * The slice shares the windows and cache of the reader it is a view of.  Windows which
+ * start inside the slice are repositioned without copying, and the last window is
+ * shortened so it ends at the end of the slice.  If the slice does not start at the
+ * beginning of a window in the underlying reader, its first window begins part way
+ * through a window in that reader.  A buffer window is sliced to provide it; the bytes of
+ * an array window are copied once into a new window, which the slice keeps.
+ * <p>
+ * A SliceReader is as thread-safe as the reader it is a view of.  By default, closing a
+ * slice does not close the underlying reader, as other slices or searches may still be using it.
+ *
+ * @author Matt Palmer
+ */
+public final class SliceReader implements WindowReader {
+
+	private final static int NO_BYTE_AT_POSITION = -1;
+
+	private final WindowReader reader;
+	private final long start;
+	private final long length;
+	private final boolean closeReaderOnClose;
+
+	private volatile Window firstWindow;
+
+	/**
+	 * Constructs a SliceReader onto a range of bytes in another reader.
+	 * Closing the slice does not close the reader.
+	 *
+	 * @param reader The reader to provide a view onto.
+	 * @param start  The position in the reader at which the slice starts.
+	 * @param length The length of the slice.  If the reader ends before the end of
+	 *               the slice, the slice is shortened to end where the reader does.
+	 * @throws IOException If the length of the reader could not be determined.
+	 * @throws IllegalArgumentException if the reader is null, or the start or length are negative.
+	 */
+	public SliceReader(final WindowReader reader, final long start, final long length) throws IOException {
+		this(reader, start, length, false);
+	}
+
+	/**
+	 * Constructs a SliceReader onto a range of bytes in another reader.
+	 *
+	 * @param reader             The reader to provide a view onto.
+	 * @param start              The position in the reader at which the slice starts.
+	 * @param length             The length of the slice.  If the reader ends before the end of
+	 *                           the slice, the slice is shortened to end where the reader does.
+	 * @param closeReaderOnClose Whether to close the reader when this slice is closed.
+	 * @throws IOException If the length of the reader could not be determined.
+	 * @throws IllegalArgumentException if the reader is null, or the start or length are negative.
+	 */
+	public SliceReader(final WindowReader reader, final long start, final long length,
+					   final boolean closeReaderOnClose) throws IOException {
+		ArgUtils.checkNullObject(reader, "reader");
+		if (start < 0 || length < 0) {
+			throw new IllegalArgumentException("The start and length of a slice cannot be negative: start = " +
+											   start + " length = " + length);
+		}
+		this.reader = reader;
+		this.start = start;
+		this.length = Math.max(0, Math.min(length, reader.length() - start));
+		this.closeReaderOnClose = closeReaderOnClose;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int readByte(final long position) throws IOException {
+		if (position < 0 || position >= length) {
+			return NO_BYTE_AT_POSITION;
+		}
+		return reader.readByte(start + position);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The window returned is a window of the underlying reader repositioned to its
+	 * position in the slice, and shortened if it extends past the end of the slice.
+	 */
+	@Override
+	public Window getWindow(final long position) throws IOException {
+		if (position < 0 || position >= length) {
+			return null;
+		}
+		final Window window = reader.getWindow(start + position);
+		if (window == null) {
+			return null;
+		}
+		final long windowStart = window.getWindowPosition();
+		if (windowStart < start) {
+			return getFirstWindow(window);
+		}
+		final long sliceWindowStart = windowStart - start;
+		final int sliceWindowLength = (int) Math.min(window.length(), length - sliceWindowStart);
+		return WindowUtils.reposition(window, sliceWindowStart, sliceWindowLength);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Positions in the first window of the slice are offsets from the start of the slice,
+	 * as that window begins at the start of the slice rather than where the underlying
+	 * window begins.
+	 */
+	@Override
+	public int getWindowOffset(final long position) {
+		final int startOffset = reader.getWindowOffset(start);
+		final int offset = reader.getWindowOffset(start + position);
+		// Only positions in the same underlying window as the start keep the same distance from its offset:
+		return offset - startOffset == position? (int) position : offset;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<Window> iterator() {
+		return new WindowIterator();
+	}
+
+	/**
+	 * Closes the underlying reader if this slice was constructed to do so,
+	 * otherwise the underlying reader remains open.
+	 *
+	 * @throws IOException If a problem occurred closing the underlying reader.
+	 */
+	@Override
+	public void close() throws IOException {
+		firstWindow = null;
+		if (closeReaderOnClose) {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns the reader this slice is a view onto.
+	 *
+	 * @return The reader this slice is a view onto.
+	 */
+	public WindowReader getReader() {
+		return reader;
+	}
+
+	/**
+	 * Returns the position in the underlying reader at which this slice starts.
+	 *
+	 * @return The position in the underlying reader at which this slice starts.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[start: " + start + " length: " + length + " reader: " + reader + ']';
+	}
+
+	/**
+	 * Returns the first window of the slice, which starts part way through a window of the
+	 * underlying reader.  A buffer window is sliced at the start of the slice; an array window
+	 * has its bytes copied, and the copy is kept for later requests.
+	 *
+	 * @param window The window in the underlying reader containing the start of the slice.
+	 * @return A window starting at the start of the slice.
+	 * @throws IOException If the bytes of the underlying window could not be read.
+	 */
+	private Window getFirstWindow(final Window window) throws IOException {
+		final int offset = (int) (start - window.getWindowPosition());
+		final int windowLength = (int) Math.min(window.length() - offset, length);
+		if (window instanceof BufferWindow) {
+			final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer().duplicate();
+			buffer.clear();
+			buffer.position(offset);
+			return new ByteBufferWindow(buffer.slice(), 0, windowLength);
+		}
+		Window first = firstWindow;
+		if (first == null) {
+			final byte[] bytes = new byte[windowLength];
+			System.arraycopy(window.getArray(), offset, bytes, 0, windowLength);
+			first = new HardWindow(bytes, 0, windowLength);
+			firstWindow = first;
+		}
+		return first;
+	}
+
+	/**
+	 * An iterator of {@link Window}s over this slice.
+	 */
+	private class WindowIterator implements Iterator<Window> {
+
+		private long position = 0;
+
+		@Override
+		public boolean hasNext() {
+			try {
+				return getWindow(position) != null;
+			} catch (final IOException ex) {
+				return false;
+			}
+		}
+
+		@Override
+		public Window next() {
+			try {
+				final Window window = getWindow(position);
+				if (window != null) {
+					position += (long) window.length();
+					return window;
+				}
+			} catch (final IOException throwNoSuchElementExceptionInstead) {
+			}
+			throw new NoSuchElementException();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Cannot remove a window from a reader.");
+		}
+	}
+
+}
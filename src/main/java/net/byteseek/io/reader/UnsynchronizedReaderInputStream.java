@@ -0,0 +1,318 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An InputStream backed by a WindowReader, which is not thread-safe.
+ * <p>
+ * It behaves as a {@link ReaderInputStream}, but without synchronizing each read, for
+ * a single thread pushing the contents of a reader out at speed, for example to hash it
+ * or to write it elsewhere.  Bytes are copied directly from the arrays of windows, and
+ * from the buffers of {@link BufferWindow}s without copying them into arrays first.
+ * <p>
+ * The {@link #transferTo(OutputStream)} and {@link #transferTo(WritableByteChannel)}
+ * methods write the remaining bytes of the stream window by window, without copying
+ * them into an intermediate buffer (except to write a direct or memory mapped buffer to
+ * an OutputStream, which can only accept arrays).
+ */
+public final class UnsynchronizedReaderInputStream extends InputStream {
+
+    private static final int TRANSFER_BUFFER_SIZE = 65536;
+
+    private final WindowReader reader;
+    private final boolean closeReaderOnClose;
+    private final boolean markSupported;
+
+    private long   pos;
+    private long   mark;
+    private Window currentWindow;
+    private int currentWindowLength;
+    private byte[] currentArray;
+    private ByteBuffer currentBuffer;
+    private int currentArrayPos;
+
+
+    /**
+     * Constructs an UnsynchronizedReaderInputStream from a WindowReader.  By default, the
+     * underlying reader will be closed when this input stream is closed.
+     *
+     * @param reader The WindowReader to back the InputStream.
+     * @throws IOException If the stream cannot acquire a window for position 0.
+     * @throws java.lang.IllegalArgumentException if the reader is null.
+     */
+    public UnsynchronizedReaderInputStream(final WindowReader reader) throws IOException {
+        this(reader, true);
+    }
+
+    /**
+     * Constructs an UnsynchronizedReaderInputStream from a WindowReader.
+     *
+     * @param reader The WindowReader to back the InputStream.
+     * @param closeReaderOnClose Whether the underlying reader is closed when this input stream is closed.
+     * @throws IOException If the stream cannot acquire a window for position 0.
+     * @throws java.lang.IllegalArgumentException if the reader is null.
+     */
+    public UnsynchronizedReaderInputStream(final WindowReader reader, final boolean closeReaderOnClose) throws IOException {
+        this(reader, closeReaderOnClose, true);
+    }
+
+    /**
+     * Constructs an UnsynchronizedReaderInputStream from a WindowReader.
+     *
+     * @param reader The WindowReader to back the InputStream.
+     * @param closeReaderOnClose Whether the underlying reader is closed when this input stream is closed
+     * @param markSupported Whether the stream will support mark() and reset().
+     * @throws IOException If the stream cannot acquire a window for position 0.
+     * @throws java.lang.IllegalArgumentException if the reader is null.
+     */
+    public UnsynchronizedReaderInputStream(final WindowReader reader, final boolean closeReaderOnClose,
+                                           final boolean markSupported) throws IOException {
+        ArgUtils.checkNullObject(reader, "reader");
+        this.reader = reader;
+        this.closeReaderOnClose = closeReaderOnClose;
+        this.markSupported      = markSupported;
+        setWindowForPosition(0L);
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        if (pos > -1) {
+            final int readResult = currentArray != null ? currentArray[currentArrayPos] & 0xFF
+                                                        : currentBuffer.get(currentArrayPos) & 0xFF;
+            addStreamPosition(1);
+            return readResult;
+        }
+        return -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+        if (pos < 0) {
+            return -1;
+        }
+        int copied = 0;
+        while (copied < len && pos > -1) {
+            final int available = currentWindowLength - currentArrayPos;
+            final int remaining = len - copied;
+            final int toCopy = available < remaining ? available : remaining;
+            if (currentArray != null) {
+                System.arraycopy(currentArray, currentArrayPos, b, off + copied, toCopy);
+            } else {
+                currentBuffer.position(currentArrayPos);
+                currentBuffer.get(b, off + copied, toCopy);
+            }
+            copied += toCopy;
+            addStreamPosition(toCopy);
+        }
+        return copied;
+    }
+
+    /**
+     * Writes all the remaining bytes in this stream to an OutputStream, window by window.
+     * The bytes of windows backed by arrays are written directly from those arrays.
+     * After this method returns, the stream is at its end.
+     *
+     * @param out The OutputStream to write the remaining bytes to.
+     * @return The number of bytes written.
+     * @throws IOException If a problem occurs reading or writing bytes.
+     * @throws IllegalArgumentException if the OutputStream is null.
+     */
+    public long transferTo(final OutputStream out) throws IOException {
+        ArgUtils.checkNullObject(out, "out");
+        long transferred = 0;
+        byte[] transferBuffer = null;
+        while (pos > -1) {
+            final int available = currentWindowLength - currentArrayPos;
+            if (currentArray != null) {
+                out.write(currentArray, currentArrayPos, available);
+            } else {
+                if (transferBuffer == null) {
+                    transferBuffer = new byte[TRANSFER_BUFFER_SIZE];
+                }
+                currentBuffer.position(currentArrayPos);
+                for (int written = 0; written < available; ) {
+                    final int toWrite = Math.min(available - written, TRANSFER_BUFFER_SIZE);
+                    currentBuffer.get(transferBuffer, 0, toWrite);
+                    out.write(transferBuffer, 0, toWrite);
+                    written += toWrite;
+                }
+            }
+            transferred += available;
+            addStreamPosition(available);
+        }
+        return transferred;
+    }
+
+    /**
+     * Writes all the remaining bytes in this stream to a WritableByteChannel, window by window.
+     * The bytes are written directly from the arrays or buffers of the windows.
+     * After this method returns, the stream is at its end.
+     *
+     * @param channel The channel to write the remaining bytes to.
+     * @return The number of bytes written.
+     * @throws IOException If a problem occurs reading or writing bytes.
+     * @throws IllegalArgumentException if the channel is null.
+     */
+    public long transferTo(final WritableByteChannel channel) throws IOException {
+        ArgUtils.checkNullObject(channel, "channel");
+        long transferred = 0;
+        while (pos > -1) {
+            final int available = currentWindowLength - currentArrayPos;
+            final ByteBuffer source = WindowUtils.getByteBuffer(currentWindow, currentArrayPos, available);
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+            transferred += available;
+            addStreamPosition(available);
+        }
+        return transferred;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return pos > -1? currentWindowLength - currentArrayPos : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * <b>WARNING</b>
+     * Mark <b>is only partially supported</b>, and <i>only if</i> the underlying WindowReader which backs this InputStream has a
+     * caching mechanism which can rewind far enough.  See {@link ReaderInputStream#markSupported()}.
+     */
+    @Override
+    public boolean markSupported() {
+        return markSupported;
+    }
+
+    @Override
+    public void mark(final int readAheadLimit) {
+        mark = pos;
+    }
+
+    @Override
+    public void reset() throws IOException {
+       if (markSupported) {
+           setWindowForPosition(mark);
+       } else {
+           super.reset(); // use default InputStream behaviour - throws an IO Exception.
+       }
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0 || pos < 0) {
+            return 0;
+        }
+        final long oldPos = pos;
+        setWindowForPosition(pos + n);
+        return currentWindow == null ? reader.length() - oldPos : n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closeReaderOnClose) {
+            reader.close();
+            setNoMoreData();
+        }
+    }
+
+    /**
+     * Returns the next read pos of the input stream reader.
+     * This method is provided mostly for testing purposes, and it is package protected.
+     * If we have read past the end of the stream, this value will be negative.
+     * @return The next read position in the stream, or -1 if there are no more bytes to consume.
+     */
+    long getNextReadPos() {
+        return pos;
+    }
+
+    private void setWindowForPosition(final long newPos) throws IOException {
+        currentWindow = reader.getWindow(newPos);
+        if (currentWindow == null) {
+            setNoMoreData();
+        } else {
+            pos                 = newPos;
+            currentWindowLength = currentWindow.length();
+            currentArrayPos     = reader.getWindowOffset(newPos);
+            if (currentWindow instanceof BufferWindow) {
+                final ByteBuffer buffer = ((BufferWindow) currentWindow).getByteBuffer();
+                if (buffer.hasArray() && buffer.arrayOffset() == 0) {
+                    currentArray  = buffer.array();
+                    currentBuffer = null;
+                } else {
+                    currentArray  = null;
+                    currentBuffer = buffer.duplicate();
+                }
+            } else {
+                currentArray  = currentWindow.getArray();
+                currentBuffer = null;
+            }
+        }
+    }
+
+    private void addStreamPosition(final int moveBy) throws IOException {
+        currentArrayPos += moveBy;
+        pos             += moveBy;
+        if (currentArrayPos >= currentWindowLength) {
+            setWindowForPosition(pos);
+        }
+    }
+
+    private void setNoMoreData() {
+        pos                 = -1;
+        currentWindow       = null;
+        currentWindowLength = 0;
+        currentArray        = null;
+        currentBuffer       = null;
+        currentArrayPos     = 0;
+    }
+
+}
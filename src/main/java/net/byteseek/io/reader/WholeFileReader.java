@@ -0,0 +1,238 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader for small files, which reads the whole file in a single read into
+ * one window.  There is no cache, no random access file held open, and no further reads
+ * however the file is searched, which makes it much cheaper than a {@link FileReader} for
+ * the small files which make up most of a typical file system.
+ * <p>
+ * A WholeFileReader can be reset to read another file, reusing its byte array, so
+ * scanning many small files needs only one reader and creates almost no garbage:
+ * <pre>
+ *   final WholeFileReader smallFiles = new WholeFileReader();
+ *   for (final File file : files) {
+ *       if (file.length() &lt;= smallFiles.getMaxFileSize()) {
+ *           smallFiles.reset(file);
+ *           search(smallFiles);
+ *       } else {
+ *           final FileReader reader = new FileReader(file);
+ *           ...
+ *       }
+ *   }
+ * </pre>
+ * <p>
+ * As the array is reused, windows obtained before the reader is reset hold the bytes
+ * of the new file, and must not be used after a reset.  Closing the reader forgets the
+ * current file, but it can still be reset to read another one.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public final class WholeFileReader implements WindowReader {
+
+	/**
+	 * The default maximum size of a file which can be read, 64 KB.
+	 */
+	public static final int DEFAULT_MAX_FILE_SIZE = 64 * 1024;
+
+	private static final int NO_BYTE_AT_POSITION = -1;
+
+	private final int maxFileSize;
+	private byte[] bytes;
+	private File file;
+	private Window window;
+	private int length;
+
+	/**
+	 * Constructs a WholeFileReader which can read files of up to 64 KB,
+	 * with no file to read until it is reset.
+	 */
+	public WholeFileReader() {
+		this(DEFAULT_MAX_FILE_SIZE);
+	}
+
+	/**
+	 * Constructs a WholeFileReader which can read files of up to the size given,
+	 * with no file to read until it is reset.
+	 *
+	 * @param maxFileSize The maximum size of a file which can be read.
+	 * @throws IllegalArgumentException if the maximum file size is less than one.
+	 */
+	public WholeFileReader(final int maxFileSize) {
+		ArgUtils.checkPositiveInteger(maxFileSize, "maxFileSize");
+		this.maxFileSize = maxFileSize;
+		this.bytes = new byte[0];
+	}
+
+	/**
+	 * Constructs a WholeFileReader which can read files of up to 64 KB,
+	 * reading the file given.
+	 *
+	 * @param file The file to read.
+	 * @throws IOException If the file could not be read.
+	 * @throws IllegalArgumentException if the file is null or larger than 64 KB.
+	 */
+	public WholeFileReader(final File file) throws IOException {
+		this(DEFAULT_MAX_FILE_SIZE);
+		reset(file);
+	}
+
+	/**
+	 * Reads the whole of the file given into this reader, replacing the file
+	 * it was reading before.  The byte array of the reader is only replaced if the file
+	 * is larger than any file read before.
+	 *
+	 * @param file The file to read.
+	 * @throws IOException If the file could not be read.
+	 * @throws IllegalArgumentException if the file is null or larger than the maximum file size.
+	 */
+	public void reset(final File file) throws IOException {
+		ArgUtils.checkNullObject(file, "file");
+		final long fileLength = file.length();
+		if (fileLength > maxFileSize) {
+			throw new IllegalArgumentException("The file " + file + " has length " + fileLength +
+											   " which is larger than the maximum file size " + maxFileSize);
+		}
+		close();
+		final int fileSize = (int) fileLength;
+		if (bytes.length < fileSize) {
+			bytes = new byte[fileSize];
+		}
+		final FileInputStream input = new FileInputStream(file);
+		try {
+			int totalRead = 0;
+			int read = 0;
+			while (read >= 0 && totalRead < fileSize) {
+				read = input.read(bytes, totalRead, fileSize - totalRead);
+				if (read > 0) {
+					totalRead += read;
+				}
+			}
+			this.length = totalRead;
+		} finally {
+			input.close();
+		}
+		this.file = file;
+		this.window = length > 0? new HardWindow(bytes, 0, length) : null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int readByte(final long position) {
+		return position >= 0 && position < length? bytes[(int) position] & 0xFF : NO_BYTE_AT_POSITION;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The single window of the whole file is returned for any position in the file.
+	 */
+	@Override
+	public Window getWindow(final long position) {
+		return position >= 0 && position < length? window : null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getWindowOffset(final long position) {
+		return (int) position;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<Window> iterator() {
+		return window == null? Collections.<Window>emptyIterator() : Collections.singletonList(window).iterator();
+	}
+
+	/**
+	 * Forgets the file being read.  The byte array is kept, so the reader
+	 * can be reset to read another file without allocating a new one.
+	 */
+	@Override
+	public void close() {
+		file = null;
+		window = null;
+		length = 0;
+	}
+
+	/**
+	 * Returns the file being read, or null if there is no file being read.
+	 *
+	 * @return The file being read, or null if there is no file being read.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the maximum size of a file which can be read.
+	 *
+	 * @return The maximum size of a file which can be read.
+	 */
+	public int getMaxFileSize() {
+		return maxFileSize;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file: " + file + " length: " + length +
+											" max file size: " + maxFileSize + ']';
+	}
+
+}
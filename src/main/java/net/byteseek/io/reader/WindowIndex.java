@@ -0,0 +1,146 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An index of the windows of a reader whose windows are not all the same size, mapping
+ * each position to the start and length of the window it falls in.  It replaces the
+ * arithmetic on a fixed window size which readers otherwise use to find the window for
+ * a position, so that caches (which look windows up by their start position) and
+ * searchers (which ask the reader for the offset of a position in its window) work
+ * unchanged over windows of varying size.
+ * <p>
+ * Windows recorded in the index never overlap.  Once recorded, a window keeps the same
+ * start and length for as long as the index exists, so a window re-created after it
+ * has been evicted from a cache covers exactly the same bytes as before.
+ * <p>
+ * The index holds an entry for each window recorded in it.
+ * It is thread-safe, as all its methods synchronize on the index.
+ *
+ * @author Matt Palmer
+ */
+final class WindowIndex {
+
+	/**
+	 * A constant returned when no window in the index contains a position.
+	 */
+	static final long NOT_INDEXED = -1;
+
+	private final TreeMap<Long, Integer> windows = new TreeMap<Long, Integer>();
+
+	/**
+	 * Returns the start position of the window containing the position given,
+	 * or {@link #NOT_INDEXED} if no window in the index contains it.
+	 *
+	 * @param position The position to find the window of.
+	 * @return The start position of the window containing the position, or NOT_INDEXED.
+	 */
+	synchronized long getWindowStart(final long position) {
+		final Map.Entry<Long, Integer> entry = windows.floorEntry(position);
+		if (entry != null && position < entry.getKey() + entry.getValue()) {
+			return entry.getKey();
+		}
+		return NOT_INDEXED;
+	}
+
+	/**
+	 * Returns the length of the window starting at the position given,
+	 * or zero if no window in the index starts there.
+	 *
+	 * @param windowStart The start position of a window.
+	 * @return The length of the window starting at that position, or zero if there isn't one.
+	 */
+	synchronized int getWindowLength(final long windowStart) {
+		final Integer length = windows.get(windowStart);
+		return length == null? 0 : length;
+	}
+
+	/**
+	 * Returns the start position of the first window after the position given,
+	 * or {@link #NOT_INDEXED} if there are no windows after it.
+	 *
+	 * @param position The position to find the next window after.
+	 * @return The start of the first window starting after the position, or NOT_INDEXED.
+	 */
+	synchronized long getNextWindowStart(final long position) {
+		final Long next = windows.higherKey(position);
+		return next == null? NOT_INDEXED : next;
+	}
+
+	/**
+	 * Records a window in the index.  The window must not overlap any window
+	 * already in the index.
+	 *
+	 * @param windowStart The start position of the window.
+	 * @param length      The length of the window.
+	 * @throws IllegalArgumentException if the window overlaps a window already in the index,
+	 *                                  or its start is negative or its length less than one.
+	 */
+	synchronized void add(final long windowStart, final int length) {
+		if (windowStart < 0 || length < 1) {
+			throw new IllegalArgumentException("Invalid window: start " + windowStart + " length " + length);
+		}
+		final Map.Entry<Long, Integer> previous = windows.floorEntry(windowStart);
+		final Long next = windows.higherKey(windowStart);
+		if ((previous != null && previous.getKey() + previous.getValue() > windowStart) ||
+			(next != null && windowStart + length > next)) {
+			throw new IllegalArgumentException("The window at " + windowStart + " with length " + length +
+											   " overlaps a window already in the index.");
+		}
+		windows.put(windowStart, length);
+	}
+
+	/**
+	 * Returns the number of windows in the index.
+	 *
+	 * @return The number of windows in the index.
+	 */
+	synchronized int size() {
+		return windows.size();
+	}
+
+	/**
+	 * Removes all windows from the index.
+	 */
+	synchronized void clear() {
+		windows.clear();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[windows: " + size() + ']';
+	}
+
+}
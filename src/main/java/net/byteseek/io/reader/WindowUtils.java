@@ -0,0 +1,102 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.ByteBufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * Static utility methods for readers which present the windows of other readers
+ * at different positions, such as the {@link CompositeReader}, or which present
+ * their bytes as buffers, such as the {@link ReaderByteChannel}, and for searchers
+ * which read the bytes of windows as buffers.
+ *
+ * @author Matt Palmer
+ */
+public final class WindowUtils {
+
+	private WindowUtils() {
+	}
+
+	/**
+	 * Returns a Window over the same bytes as the window passed in, but starting at a different
+	 * position, and possibly shorter.  The bytes are not copied.  If the window is a
+	 * {@link BufferWindow}, a BufferWindow over the same buffer is returned, so searchers which
+	 * read buffers directly still do so.
+	 *
+	 * @param window         The window to reposition.
+	 * @param windowPosition The position the new window starts at.
+	 * @param length         The length of the new window, which must not be longer than the window passed in.
+	 * @return A window over the same bytes, starting at the position given.
+	 * @throws IOException If the array of the window could not be obtained.
+	 */
+	static Window reposition(final Window window, final long windowPosition, final int length) throws IOException {
+		if (window.getWindowPosition() == windowPosition && window.length() == length) {
+			return window;
+		}
+		if (window instanceof BufferWindow) {
+			return new ByteBufferWindow(((BufferWindow) window).getByteBuffer(), windowPosition, length);
+		}
+		return new HardWindow(window.getArray(), windowPosition, length);
+	}
+
+	/**
+	 * Returns a ByteBuffer over a range of the bytes of a window, positioned at the first byte
+	 * of the range, with its limit after the last byte.  The bytes are not copied.  If the window
+	 * is a {@link BufferWindow}, a duplicate of its buffer is returned, so the bytes of a memory
+	 * mapped or direct buffer are not copied into an array on the Java heap.
+	 * <p>
+	 * Absolute indexes into the buffer are offsets into the window, so search loops which read
+	 * windows through this method read buffer and array windows with the same code, and cannot
+	 * have different search limits for each.
+	 *
+	 * @param window The window to obtain the bytes of.
+	 * @param offset The offset into the window of the first byte.
+	 * @param length The number of bytes from the offset.
+	 * @return A ByteBuffer positioned over the range of bytes in the window.
+	 * @throws IOException If the array of the window could not be obtained.
+	 */
+	public static ByteBuffer getByteBuffer(final Window window, final int offset, final int length) throws IOException {
+		if (window instanceof BufferWindow) {
+			final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer().duplicate();
+			buffer.limit(offset + length).position(offset);
+			return buffer;
+		}
+		return ByteBuffer.wrap(window.getArray(), offset, length);
+	}
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.IOException;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+import net.byteseek.utils.collections.LongLinkedHashMap;
+
+
+/**
+ * A {@link WindowCache} using the Adaptive Replacement Cache (ARC) policy of Megiddo and Modha,
+ * which resists being flushed by long sequential scans.
+ * <p>
+ * Windows which have been used only once since they entered the cache are held in one list,
+ * and windows which have been used more than once in another.  A scan only ever adds windows
+ * which are used once, so it cannot push out the windows which are used repeatedly, such as
+ * the header and trailer of a file being checked for signatures while it is scanned.
+ * The cache also remembers the positions (but not the bytes) of windows recently evicted
+ * from each list.  When one of these is added again, the cache adapts how much of its capacity
+ * goes to each list, so workloads which do re-use recent windows still keep them.
+ * <p>
+ * Windows are counted as used when they are got from the cache, or added when already in it.
+ * Subscribers are notified when a window is evicted.
+ * <p>
+ * This cache is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public final class AdaptiveReplacementCache extends AbstractFreeNotificationCache {
+
+    private static final Object GHOST = new Object();
+
+    private final int capacity;
+    private final LongLinkedHashMap<Window> usedOnce;          // T1 in the ARC paper.
+    private final LongLinkedHashMap<Window> usedMoreThanOnce;  // T2
+    private final LongLinkedHashMap<Object> evictedOnce;       // B1 - positions of windows evicted from T1.
+    private final LongLinkedHashMap<Object> evictedMoreThanOnce; // B2 - positions of windows evicted from T2.
+    private int targetUsedOnce; // p in the ARC paper: the target size of the used once list.
+
+
+    /**
+     * Creates an AdaptiveReplacementCache which holds up to the number of windows given.
+     * It also remembers the positions of up to the same number of evicted windows.
+     *
+     * @param capacity The number of Window objects to cache.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public AdaptiveReplacementCache(final int capacity) {
+        ArgUtils.checkPositiveInteger(capacity, "capacity");
+        this.capacity = capacity;
+        this.usedOnce = new LongLinkedHashMap<Window>(capacity + 1);
+        this.usedMoreThanOnce = new LongLinkedHashMap<Window>(capacity + 1);
+        this.evictedOnce = new LongLinkedHashMap<Object>(capacity + 1);
+        this.evictedMoreThanOnce = new LongLinkedHashMap<Object>(capacity + 1);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A window which is found becomes the most recently used window
+     * of those used more than once.
+     */
+    @Override
+    public Window getWindow(final long position) {
+        Window window = usedOnce.remove(position);
+        if (window == null) {
+            window = usedMoreThanOnce.remove(position);
+        }
+        if (window != null) {
+            usedMoreThanOnce.put(position, window);
+        }
+        return window;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the position of the window was recently evicted, the balance between windows used
+     * once and windows used more than once is adapted, and the window is added to those used
+     * more than once.  Otherwise, it is added to the windows used once.  If the cache is full,
+     * a window is evicted and subscribers are notified that it is free.
+     */
+    @Override
+    public void addWindow(final Window window) throws IOException {
+        final long position = window.getWindowPosition();
+        if (usedOnce.containsKey(position) || usedMoreThanOnce.containsKey(position)) {
+            getWindow(position);
+        } else if (evictedOnce.containsKey(position)) {
+            final int delta = Math.max(1, evictedMoreThanOnce.size() / evictedOnce.size());
+            targetUsedOnce = Math.min(capacity, targetUsedOnce + delta);
+            evictedOnce.remove(position);
+            replace(false);
+            usedMoreThanOnce.put(position, window);
+        } else if (evictedMoreThanOnce.containsKey(position)) {
+            final int delta = Math.max(1, evictedOnce.size() / evictedMoreThanOnce.size());
+            targetUsedOnce = Math.max(0, targetUsedOnce - delta);
+            evictedMoreThanOnce.remove(position);
+            replace(true);
+            usedMoreThanOnce.put(position, window);
+        } else {
+            final int usedOnceHistory = usedOnce.size() + evictedOnce.size();
+            if (usedOnceHistory == capacity) {
+                if (usedOnce.size() < capacity) {
+                    removeEldest(evictedOnce);
+                    replace(false);
+                } else {
+                    notifyWindowFree(removeEldest(usedOnce), this);
+                }
+            } else {
+                final int history = usedOnceHistory + usedMoreThanOnce.size() + evictedMoreThanOnce.size();
+                if (history >= capacity) {
+                    if (history >= 2 * capacity) {
+                        removeEldest(evictedMoreThanOnce);
+                    }
+                    replace(false);
+                }
+            }
+            usedOnce.put(position, window);
+        }
+    }
+
+
+    /**
+     * Clears all windows and evicted window positions from the cache.
+     * No notification of windows leaving the cache is made.
+     */
+    @Override
+    public void clear() {
+        usedOnce.clear();
+        usedMoreThanOnce.clear();
+        evictedOnce.clear();
+        evictedMoreThanOnce.clear();
+        targetUsedOnce = 0;
+    }
+
+
+    /**
+     * Returns the number of windows held in this cache.
+     *
+     * @return The number of windows held in this cache.
+     */
+    public int size() {
+        return usedOnce.size() + usedMoreThanOnce.size();
+    }
+
+
+    /**
+     * Returns the number of windows this cache can hold.
+     *
+     * @return The number of windows this cache can hold.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * If the cache is full, evicts the least recently used window from either the windows used
+     * once or the windows used more than once, depending on the target size of the windows used once,
+     * remembering its position.
+     *
+     * @param evictedMoreThanOnceHit Whether the window being added was recently evicted from the windows
+     *                               used more than once.
+     * @throws IOException If a subscriber to this cache throws an IOException on being notified.
+     */
+    private void replace(final boolean evictedMoreThanOnceHit) throws IOException {
+        if (usedOnce.size() + usedMoreThanOnce.size() < capacity) {
+            return;
+        }
+        final int usedOnceSize = usedOnce.size();
+        if (usedOnceSize > 0 && (usedOnceSize > targetUsedOnce || usedMoreThanOnce.isEmpty() ||
+                                 (evictedMoreThanOnceHit && usedOnceSize == targetUsedOnce))) {
+            final Window evicted = removeEldest(usedOnce);
+            evictedOnce.put(evicted.getWindowPosition(), GHOST);
+            notifyWindowFree(evicted, this);
+        } else {
+            final Window evicted = removeEldest(usedMoreThanOnce);
+            evictedMoreThanOnce.put(evicted.getWindowPosition(), GHOST);
+            notifyWindowFree(evicted, this);
+        }
+    }
+
+
+    private static <T> T removeEldest(final LongLinkedHashMap<T> map) {
+        final LongLinkedHashMap.MapEntry<T> eldest = map.iterator().next();
+        return map.remove(eldest.getKey());
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size: " + size() + " capacity: " + capacity +
+                                            " used once: " + usedOnce.size() + " used more than once: " + usedMoreThanOnce.size() +
+                                            " target used once: " + targetUsedOnce + ']';
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+
+/**
+ * A {@link WindowCache} bounded by the number of bytes in its windows, rather than
+ * the number of windows, drawing from a {@link MemoryBudget}.  The budget can belong
+ * to the cache alone, or be shared by the caches of many readers, in which case the
+ * least recently used windows of all those caches are evicted to keep within it.
+ * For example, to cap the memory used by all the readers of a scanner:
+ * <pre>
+ *   final MemoryBudget budget = new MemoryBudget(256 * 1024 * 1024);
+ *   ...
+ *   final WindowReader reader = new FileReader(file, new BudgetedCache(budget));
+ * </pre>
+ * <p>
+ * The size of a window is its length.  Subscribers are notified when a window is evicted.
+ * A window evicted to make room for a window added to this cache is notified before
+ * {@link #addWindow(Window)} returns.  A window evicted to make room in another cache sharing
+ * the budget is notified by the next operation on this cache, so subscribers are always
+ * notified on the thread using this cache, and can safely add the window to a cache which
+ * is not thread-safe, such as the secondary cache of a {@link TwoLevelCache}.
+ * Evicted windows are only held until then if the cache has subscribers, so a cache which
+ * nobody observes never keeps windows reachable outside the budget.
+ * <p>
+ * A BudgetedCache is thread-safe, as all its operations synchronize on its budget.
+ *
+ * @author Matt Palmer
+ */
+public final class BudgetedCache extends AbstractFreeNotificationCache {
+
+    private final MemoryBudget budget;
+    private final TLongObjectMap<MemoryBudget.Entry> entries;
+    private final List<Window> evictedWindows;
+    private long usedBytes;
+    private int observerCount;
+
+
+    /**
+     * Creates a BudgetedCache with its own budget of the number of bytes given.
+     *
+     * @param maxBytes The maximum number of bytes of windows to cache.
+     * @throws IllegalArgumentException if the maximum number of bytes is less than one.
+     */
+    public BudgetedCache(final long maxBytes) {
+        this(new MemoryBudget(maxBytes));
+    }
+
+
+    /**
+     * Creates a BudgetedCache drawing on the memory budget given, which can be shared
+     * with other BudgetedCaches.
+     *
+     * @param budget The memory budget to draw on.
+     * @throws IllegalArgumentException if the budget is null.
+     */
+    public BudgetedCache(final MemoryBudget budget) {
+        ArgUtils.checkNullObject(budget, "budget");
+        this.budget = budget;
+        this.entries = new TLongObjectHashMap<MemoryBudget.Entry>();
+        this.evictedWindows = new ArrayList<Window>();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Window getWindow(final long position) throws IOException {
+        Window window = null;
+        synchronized (budget) {
+            final MemoryBudget.Entry entry = entries.get(position);
+            if (entry != null) {
+                budget.touch(entry);
+                window = entry.window;
+            }
+        }
+        notifyEvictedWindows();
+        return window;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the budget is exceeded, the least recently used windows of all the caches
+     * sharing the budget are evicted until it is not.  A window larger than the entire
+     * budget is evicted as soon as it is added.
+     */
+    @Override
+    public void addWindow(final Window window) throws IOException {
+        final long windowPosition = window.getWindowPosition();
+        synchronized (budget) {
+            final MemoryBudget.Entry existing = entries.get(windowPosition);
+            if (existing != null) {
+                budget.touch(existing);
+            } else {
+                final MemoryBudget.Entry entry = new MemoryBudget.Entry(this, window);
+                entries.put(windowPosition, entry);
+                usedBytes += entry.bytes;
+                budget.add(entry);
+            }
+        }
+        notifyEvictedWindows();
+    }
+
+
+    /**
+     * Clears all windows from this cache, returning their bytes to the budget.
+     * No notification of windows leaving the cache is made, including windows
+     * evicted by other caches which have not been notified yet.
+     */
+    @Override
+    public void clear() {
+        synchronized (budget) {
+            for (final MemoryBudget.Entry entry : entries.valueCollection()) {
+                budget.remove(entry);
+            }
+            entries.clear();
+            evictedWindows.clear();
+            usedBytes = 0;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Subscribing synchronizes on the budget, as windows evicted by other caches are only
+     * held for notification while the cache has subscribers.
+     */
+    @Override
+    public void subscribe(final WindowObserver observer) {
+        synchronized (budget) {
+            super.subscribe(observer);
+            observerCount++;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Once the last subscriber unsubscribes, any evicted windows waiting to be notified are dropped.
+     */
+    @Override
+    public boolean unsubscribe(final WindowObserver observer) {
+        synchronized (budget) {
+            final boolean removed = super.unsubscribe(observer);
+            if (removed && --observerCount == 0) {
+                evictedWindows.clear();
+            }
+            return removed;
+        }
+    }
+
+
+    /**
+     * Returns the number of windows held in this cache.
+     *
+     * @return The number of windows held in this cache.
+     */
+    public int size() {
+        synchronized (budget) {
+            return entries.size();
+        }
+    }
+
+
+    /**
+     * Returns the number of bytes of windows held in this cache.
+     *
+     * @return The number of bytes of windows held in this cache.
+     */
+    public long getUsedBytes() {
+        synchronized (budget) {
+            return usedBytes;
+        }
+    }
+
+
+    /**
+     * Returns the memory budget this cache draws on.
+     *
+     * @return The memory budget this cache draws on.
+     */
+    public MemoryBudget getBudget() {
+        return budget;
+    }
+
+
+    /**
+     * Called by the budget when it evicts one of the windows of this cache.
+     * The window is removed, and if the cache has subscribers, it is queued to notify
+     * them on the next operation on this cache.  The budget lock is held by the caller.
+     *
+     * @param entry The entry evicted.
+     */
+    void evicted(final MemoryBudget.Entry entry) {
+        entries.remove(entry.window.getWindowPosition());
+        usedBytes -= entry.bytes;
+        if (observerCount > 0) {
+            evictedWindows.add(entry.window);
+        }
+    }
+
+
+    /**
+     * Returns the number of evicted windows waiting to be notified to subscribers.
+     *
+     * @return The number of evicted windows waiting to be notified to subscribers.
+     */
+    int getUnnotifiedCount() {
+        synchronized (budget) {
+            return evictedWindows.size();
+        }
+    }
+
+
+    /**
+     * Notifies subscribers of any windows evicted from this cache, outside the budget lock.
+     *
+     * @throws IOException If a subscriber throws an IOException on being notified.
+     */
+    private void notifyEvictedWindows() throws IOException {
+        final Window[] evicted;
+        synchronized (budget) {
+            if (evictedWindows.isEmpty()) {
+                return;
+            }
+            evicted = evictedWindows.toArray(new Window[evictedWindows.size()]);
+            evictedWindows.clear();
+        }
+        IOException exception = null;
+        for (final Window window : evicted) {
+            try {
+                notifyWindowFree(window, this);
+            } catch (IOException ex) {
+                exception = ex;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size: " + size() + " used bytes: " + getUsedBytes() +
+                                            " budget: " + budget + ']';
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+/**
+ * An immutable snapshot of the statistics of a {@link WindowCache}, recorded by
+ * an {@link InstrumentedCache}.
+ *
+ * @author Matt Palmer
+ */
+public final class CacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long windowsAdded;
+    private final long evictions;
+
+    /**
+     * Constructs a CacheStatistics snapshot.
+     *
+     * @param hits         The number of windows found in the cache.
+     * @param misses       The number of windows requested which were not in the cache.
+     * @param windowsAdded The number of windows added to the cache.
+     * @param evictions    The number of windows which left the cache.
+     */
+    public CacheStatistics(final long hits, final long misses, final long windowsAdded, final long evictions) {
+        this.hits = hits;
+        this.misses = misses;
+        this.windowsAdded = windowsAdded;
+        this.evictions = evictions;
+    }
+
+    /**
+     * Returns the number of windows found in the cache.
+     *
+     * @return The number of windows found in the cache.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of windows requested which were not in the cache.
+     *
+     * @return The number of windows requested which were not in the cache.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the proportion of requests which found a window, from 0.0 to 1.0,
+     * or zero if there were no requests.
+     *
+     * @return The proportion of requests which found a window.
+     */
+    public double getHitRatio() {
+        final long requests = hits + misses;
+        return requests == 0? 0.0 : (double) hits / requests;
+    }
+
+    /**
+     * Returns the number of windows added to the cache.
+     *
+     * @return The number of windows added to the cache.
+     */
+    public long getWindowsAdded() {
+        return windowsAdded;
+    }
+
+    /**
+     * Returns the number of windows which left the cache, as notified to its subscribers.
+     * Windows removed by clearing the cache are not counted.
+     *
+     * @return The number of windows which left the cache.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[hits: " + hits + " misses: " + misses +
+                                            " windows added: " + windowsAdded + " evictions: " + evictions + ']';
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A thread-safe {@link WindowCache} which holds on to the {@link net.byteseek.io.reader.windows.Window}
+ * objects which were recently used, using the clock (second chance) approximation to least recently
+ * used eviction.
+ * <p>
+ * Looking up a Window does not take any lock - it is a read from a concurrent map, followed by
+ * marking the Window as referenced.  This is the main difference from the {@link LeastRecentlyUsedCache},
+ * which must re-order a shared linked list on every lookup.  Adding a Window locks only one of a number
+ * of stripes, chosen by the position of the Window.  Each stripe has its own share of the capacity
+ * and its own clock hand.  When a stripe is full, the hand sweeps round the stripe, clearing the
+ * referenced flag of any Window it passes, until it finds a Window which has not been referenced
+ * since the hand last passed.  That Window is evicted.
+ * <p>
+ * Observers are notified that a Window is free after the stripe lock has been released, so
+ * an observer which does slow work (for example, writing the Window to another cache) does
+ * not block other threads adding Windows.  Observers should subscribe before the cache is shared
+ * between threads, as subscription itself is not synchronised.
+ *
+ * @author Matt Palmer
+ */
+public final class ConcurrentClockCache extends AbstractFreeNotificationCache {
+
+    private static final int DEFAULT_CONCURRENCY = 16;
+
+    private final ConcurrentMap<Long, Entry> windows;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int capacity;
+
+
+    /**
+     * Creates a ConcurrentClockCache using the provided capacity, and a default
+     * number of stripes (no more than the capacity).
+     *
+     * @param capacity The number of Window objects to cache.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public ConcurrentClockCache(final int capacity) {
+        this(capacity, DEFAULT_CONCURRENCY);
+    }
+
+
+    /**
+     * Creates a ConcurrentClockCache using the provided capacity and the number
+     * of threads expected to add Windows at the same time.  The number of stripes
+     * is the concurrency rounded up to a power of two, but is never greater than the capacity.
+     *
+     * @param capacity    The number of Window objects to cache.
+     * @param concurrency The number of threads expected to add Windows at the same time.
+     * @throws IllegalArgumentException if the capacity or concurrency is less than one.
+     */
+    public ConcurrentClockCache(final int capacity, final int concurrency) {
+        ArgUtils.checkPositiveInteger(capacity, "capacity");
+        ArgUtils.checkPositiveInteger(concurrency, "concurrency");
+        this.capacity = capacity;
+        int numStripes = 1;
+        while (numStripes < concurrency && numStripes * 2 <= capacity) {
+            numStripes <<= 1;
+        }
+        this.stripeMask = numStripes - 1;
+        this.stripes = new Stripe[numStripes];
+        final int stripeCapacity = capacity / numStripes;
+        final int remainder = capacity % numStripes;
+        for (int stripe = 0; stripe < numStripes; stripe++) {
+            stripes[stripe] = new Stripe(stripe < remainder ? stripeCapacity + 1 : stripeCapacity);
+        }
+        this.windows = new ConcurrentHashMap<Long, Entry>(capacity + 1, 0.75f, numStripes);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Window getWindow(final long position) {
+        final Entry entry = windows.get(position);
+        if (entry != null) {
+            entry.referenced = true;
+            return entry.window;
+        }
+        return null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addWindow(final Window window) throws IOException {
+        final Window evicted = stripeFor(window.getWindowPosition()).add(window);
+        if (evicted != null) {
+            notifyWindowFree(evicted, this);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        for (final Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+
+    /**
+     * Returns the number of Windows currently held in the cache.
+     *
+     * @return The number of Windows currently held in the cache.
+     */
+    public int size() {
+        return windows.size();
+    }
+
+
+    /**
+     * Returns the maximum number of Windows the cache will hold.
+     *
+     * @return The maximum number of Windows the cache will hold.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    private Stripe stripeFor(final long position) {
+        // Window positions are usually multiples of a power of two, so mix the bits before masking.
+        final int hash = (int) (position ^ (position >>> 32)) * 0x9E3779B9;
+        return stripes[(hash ^ (hash >>> 16)) & stripeMask];
+    }
+
+
+    /**
+     * A Window in the cache, with a flag recording whether it has been
+     * looked up since the clock hand last passed over it.
+     */
+    private static final class Entry {
+
+        private final Window window;
+        private volatile boolean referenced;
+
+        private Entry(final Window window) {
+            this.window = window;
+        }
+    }
+
+
+    /**
+     * A ring of cached Windows with its own clock hand.  All modifications of the ring,
+     * and of the shared map for positions belonging to this stripe, happen while holding
+     * the stripe lock.
+     */
+    private final class Stripe {
+
+        private final Entry[] ring;
+        private int size;
+        private int hand;
+
+        private Stripe(final int capacity) {
+            ring = new Entry[capacity];
+        }
+
+        private synchronized Window add(final Window window) {
+            final Long position = window.getWindowPosition();
+            if (windows.containsKey(position)) {
+                return null;
+            }
+            final Entry entry = new Entry(window);
+            if (size < ring.length) {
+                ring[size++] = entry;
+                windows.put(position, entry);
+                return null;
+            }
+            Entry victim = ring[hand];
+            while (victim.referenced) {
+                victim.referenced = false;
+                hand = (hand + 1) % ring.length;
+                victim = ring[hand];
+            }
+            windows.remove(victim.window.getWindowPosition());
+            ring[hand] = entry;
+            hand = (hand + 1) % ring.length;
+            windows.put(position, entry);
+            return victim.window;
+        }
+
+        private synchronized void clear() {
+            for (int i = 0; i < size; i++) {
+                windows.remove(ring[i].window.getWindowPosition());
+                ring[i] = null;
+            }
+            size = 0;
+            hand = 0;
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size: " + windows.size() + " capacity: " + capacity +
+                                            " stripes: " + stripes.length + ']';
+    }
+
+}
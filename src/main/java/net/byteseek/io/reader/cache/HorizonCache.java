@@ -0,0 +1,168 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * A {@link WindowCache} for reading a stream forwards, which only holds the windows
+ * within a fixed number of bytes (the horizon) behind the furthest window added to it.
+ * Windows entirely behind the horizon are freed as soon as a window is added beyond it,
+ * so the memory used to read forwards through a stream of any length is bounded by the
+ * horizon plus the window size.
+ * <p>
+ * To search a stream forwards, the horizon should be the maximum length of a match
+ * (see {@link net.byteseek.searcher.SearchUtils#getMaximumMatchLength(net.byteseek.searcher.Searcher)}).
+ * A forward search at a position only reads bytes from that position up to one byte past
+ * the longest match, and its search position never moves backwards, so it never needs
+ * a window which lies more than a match length behind the furthest byte it has read:
+ * <pre>
+ *   final Searcher&lt;SequenceMatcher&gt; searcher = ...
+ *   final WindowCache horizon = new HorizonCache(SearchUtils.getMaximumMatchLength(searcher));
+ *   final WindowReader reader = new InputStreamReader(stream, horizon);
+ * </pre>
+ * <p>
+ * Reading behind the horizon from an {@link net.byteseek.io.reader.InputStreamReader}
+ * throws a {@link net.byteseek.io.reader.windows.WindowMissingException}, so this cache
+ * must not be used to search backwards, or to revisit earlier positions in the stream.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public final class HorizonCache extends AbstractFreeNotificationCache {
+
+    private final long horizon;
+    private final TLongObjectMap<Window> windows;
+    private final Deque<Window> windowOrder;
+    private long furthestPosition;
+
+
+    /**
+     * Creates a HorizonCache which holds windows within the horizon given
+     * behind the furthest window added.
+     *
+     * @param horizon The number of bytes behind the furthest window added to keep windows for.
+     * @throws IllegalArgumentException if the horizon is negative.
+     */
+    public HorizonCache(final long horizon) {
+        if (horizon < 0) {
+            throw new IllegalArgumentException("The horizon cannot be negative: " + horizon);
+        }
+        this.horizon = horizon;
+        this.windows = new TLongObjectHashMap<Window>();
+        this.windowOrder = new ArrayDeque<Window>();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Window getWindow(final long position) throws IOException {
+        return windows.get(position);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Any windows which lie entirely behind the horizon of the furthest window added
+     * are freed.  If the window added is itself behind the horizon, it is freed immediately.
+     */
+    @Override
+    public void addWindow(final Window window) throws IOException {
+        final long windowPosition = window.getWindowPosition();
+        if (windowPosition > furthestPosition) {
+            furthestPosition = windowPosition;
+        }
+        final long horizonPosition = furthestPosition - horizon;
+        if (window.getNextWindowPosition() <= horizonPosition) {
+            notifyWindowFree(window, this);
+        } else if (!windows.containsKey(windowPosition)) {
+            windows.put(windowPosition, window);
+            windowOrder.addLast(window);
+        }
+        Window oldest;
+        while ((oldest = windowOrder.peekFirst()) != null &&
+               oldest.getNextWindowPosition() <= horizonPosition) {
+            windowOrder.removeFirst();
+            windows.remove(oldest.getWindowPosition());
+            notifyWindowFree(oldest, this);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        windows.clear();
+        windowOrder.clear();
+        furthestPosition = 0;
+    }
+
+
+    /**
+     * Returns the number of bytes behind the furthest window added for which windows are held.
+     *
+     * @return The number of bytes behind the furthest window added for which windows are held.
+     */
+    public long getHorizon() {
+        return horizon;
+    }
+
+
+    /**
+     * Returns the number of windows currently held.
+     *
+     * @return The number of windows currently held.
+     */
+    public int size() {
+        return windows.size();
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[horizon: " + horizon + " size: " + windows.size() +
+                                            " furthest position: " + furthestPosition + ']';
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.byteseek.io.reader.cache.WindowCache.WindowObserver;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A {@link WindowCache} which decorates another WindowCache, counting the hits, misses,
+ * windows added and evictions of the cache it decorates.  A snapshot of the counts can
+ * be taken at any time using {@link #getStatistics()}.
+ * <p>
+ * The counts are atomic, so an InstrumentedCache is as thread-safe as the cache it
+ * decorates, and each operation only adds a single atomic increment to it.  Any cache
+ * can be instrumented, including the primary or secondary caches of a {@link TwoLevelCache}:
+ * <pre>
+ *   final InstrumentedCache memory = InstrumentedCache.create(new LeastRecentlyUsedCache(32));
+ *   final InstrumentedCache disk   = InstrumentedCache.create(new TempFileCache());
+ *   final WindowCache cache = TwoLevelCache.create(memory, disk);
+ * </pre>
+ * <p>
+ * This class can only be constructed using a static method, as it subscribes as an
+ * observer to the cache it decorates, to count evictions and pass them on to its own
+ * subscribers.
+ *
+ * @author Matt Palmer
+ */
+public final class InstrumentedCache extends AbstractFreeNotificationCache implements WindowObserver {
+
+    /**
+     * A static constructor for InstrumentedCache, which avoids passing "this" in the
+     * cache constructor so it can subscribe to window free notifications from the
+     * cache it decorates.
+     *
+     * @param cache The cache to instrument.
+     * @return An InstrumentedCache decorating the cache.
+     * @throws IllegalArgumentException if the cache is null.
+     */
+    public static InstrumentedCache create(final WindowCache cache) {
+        final InstrumentedCache instrumented = new InstrumentedCache(cache);
+        cache.subscribe(instrumented);
+        return instrumented;
+    }
+
+    private final WindowCache cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong windowsAdded = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private InstrumentedCache(final WindowCache cache) {
+        ArgUtils.checkNullObject(cache, "cache");
+        this.cache = cache;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Window getWindow(final long position) throws IOException {
+        final Window window = cache.getWindow(position);
+        if (window == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return window;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addWindow(final Window window) throws IOException {
+        windowsAdded.incrementAndGet();
+        cache.addWindow(window);
+    }
+
+
+    /**
+     * Clears the cache this decorates.  The statistics are not reset.
+     */
+    @Override
+    public void clear() throws IOException {
+        cache.clear();
+    }
+
+
+    /**
+     * Counts a window leaving the decorated cache, and notifies the subscribers of this cache.
+     * <p>
+     * Every notification received comes from the decorated cache, as this cache only subscribes
+     * to that one.  Caches which wrap other caches may pass on the cache the window actually left
+     * as the fromCache, so it is not checked here.
+     *
+     * @param window The Window which is leaving the decorated cache.
+     * @param fromCache The WindowCache from which the Window is leaving.
+     * @throws IOException If a subscriber to this cache throws an IOException.
+     */
+    @Override
+    public void windowFree(final Window window, final WindowCache fromCache) throws IOException {
+        evictions.incrementAndGet();
+        notifyWindowFree(window, this);
+    }
+
+
+    /**
+     * Returns a snapshot of the statistics of the decorated cache.
+     *
+     * @return A snapshot of the statistics of the decorated cache.
+     */
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(hits.get(), misses.get(), windowsAdded.get(), evictions.get());
+    }
+
+
+    /**
+     * Resets all the statistics to zero.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        windowsAdded.set(0);
+        evictions.set(0);
+    }
+
+
+    /**
+     * Returns the cache decorated by this InstrumentedCache.
+     *
+     * @return The cache decorated by this InstrumentedCache.
+     */
+    public WindowCache getCache() {
+        return cache;
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[statistics: " + getStatistics() + " cache: " + cache + ']';
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * A budget of memory in bytes which the windows of one or more {@link BudgetedCache}s
+ * draw from.  When a window added to any of the caches takes the total over the budget,
+ * the least recently used windows across all the caches are evicted until it fits again.
+ * Sharing one budget between the caches of all the readers in a process caps the memory
+ * used by their windows, however many readers are open.
+ * <p>
+ * A MemoryBudget is thread-safe, and the caches drawing from it can be used by different
+ * threads.  The caches synchronize on their budget, so only one cache operation on a
+ * shared budget proceeds at a time.  Caches are only looked up when a reader needs a
+ * window other than the last one it used, so this is rarely a bottleneck.
+ *
+ * @author Matt Palmer
+ */
+public final class MemoryBudget {
+
+    private final long maxBytes;
+    private final Map<Entry, Entry> entries; // in access order, least recently used first.
+    private long usedBytes;
+
+    /**
+     * Constructs a MemoryBudget allowing up to the number of bytes given.
+     *
+     * @param maxBytes The maximum number of bytes of windows held by the caches using this budget.
+     * @throws IllegalArgumentException if the maximum number of bytes is less than one.
+     */
+    public MemoryBudget(final long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("The memory budget must be at least one byte: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<Entry, Entry>(64, 0.75f, true);
+    }
+
+    /**
+     * Returns the maximum number of bytes of windows held by the caches using this budget.
+     *
+     * @return The maximum number of bytes of windows held by the caches using this budget.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the number of bytes of windows currently held by the caches using this budget.
+     *
+     * @return The number of bytes of windows currently held by the caches using this budget.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the number of windows currently held by the caches using this budget.
+     *
+     * @return The number of windows currently held by the caches using this budget.
+     */
+    public synchronized int getWindowCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "[used bytes: " + usedBytes + " max bytes: " + maxBytes +
+                                            " windows: " + entries.size() + ']';
+    }
+
+    /**
+     * Marks an entry as the most recently used.  The caller must hold the lock on this budget.
+     *
+     * @param entry The entry which was used.
+     */
+    void touch(final Entry entry) {
+        entries.get(entry);
+    }
+
+    /**
+     * Adds an entry, then evicts the least recently used entries of all caches until the
+     * budget is no longer exceeded.  The caller must hold the lock on this budget.
+     *
+     * @param entry The entry to add.
+     */
+    void add(final Entry entry) {
+        entries.put(entry, entry);
+        usedBytes += entry.bytes;
+        final Iterator<Entry> leastRecentlyUsed = entries.keySet().iterator();
+        while (usedBytes > maxBytes && leastRecentlyUsed.hasNext()) {
+            final Entry evicted = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            usedBytes -= evicted.bytes;
+            evicted.owner.evicted(evicted);
+        }
+    }
+
+    /**
+     * Removes an entry without notifying its owner.  The caller must hold the lock on this budget.
+     *
+     * @param entry The entry to remove.
+     */
+    void remove(final Entry entry) {
+        if (entries.remove(entry) != null) {
+            usedBytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * A window held by a BudgetedCache, and the number of bytes it uses.
+     * Entries are compared by identity.
+     */
+    static final class Entry {
+
+        final BudgetedCache owner;
+        final Window window;
+        final int bytes;
+
+        Entry(final BudgetedCache owner, final Window window) {
+            this.owner = owner;
+            this.window = window;
+            this.bytes = window.length();
+        }
+    }
+
+}
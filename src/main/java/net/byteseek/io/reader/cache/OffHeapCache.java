@@ -0,0 +1,343 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+
+/**
+ * A {@link WindowCache} which holds the bytes of the most recently used
+ * {@link net.byteseek.io.reader.windows.Window}s outside the Java heap, in direct
+ * ByteBuffers.  It can hold far more windows than a heap cache without growing the heap
+ * or adding to garbage collection, and is intended as the secondary cache of a
+ * {@link TwoLevelCache}, between a small heap cache and a {@link TempFileCache}:
+ * <pre>
+ *   TwoLevelCache.create(new LeastRecentlyUsedCache(32),
+ *                        TwoLevelCache.create(new OffHeapCache(capacity, windowSize), new TempFileCache()));
+ * </pre>
+ * <p>
+ * The memory is divided into fixed size slots, each holding one window, which should be
+ * the window size of the reader.  Slots are carved from direct buffers of up to 64MB, which
+ * are only allocated as the cache fills.  When the cache is full, the least recently used
+ * window is evicted, and subscribers are notified that it is free.  A window longer than a
+ * slot cannot be held, so subscribers are notified that it is free as soon as it is added.
+ * The position, length and recency of each slot are held in primitive arrays, so millions
+ * of windows do not need millions of objects to track them.
+ * <p>
+ * Windows returned by this cache are copies of the bytes on the heap, as the slot they
+ * were read from can be re-used by another window while the copy is still in use.
+ * <p>
+ * The direct memory allocated is limited by the JVM, which may need the
+ * <code>-XX:MaxDirectMemorySize</code> option to hold a large cache.  The memory is
+ * released when the cache is cleared and the buffers are garbage collected.
+ * <p>
+ * This cache is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public final class OffHeapCache extends AbstractFreeNotificationCache {
+
+    private static final int MAX_SLAB_SIZE = 64 * 1024 * 1024;
+    private static final int NO_SLOT = -1;
+    private static final int INITIAL_SLOTS = 64;
+
+    private final long capacity;
+    private final int slotSize;
+    private final int maxSlots;
+    private final int slotsPerSlab;
+
+    private final TLongIntMap slotIndexes; // window position -> slot.
+    private ByteBuffer[] slabs;
+    private long[] slotPositions;
+    private int[] slotLengths;
+    private int[] previous; // towards the most recently used slot.
+    private int[] next;     // towards the least recently used slot.
+    private int usedSlots;
+    private int mostRecent = NO_SLOT;
+    private int leastRecent = NO_SLOT;
+
+
+    /**
+     * Constructs an OffHeapCache which can hold up to the capacity in bytes given,
+     * in slots of the size given.
+     *
+     * @param capacity The number of bytes of direct memory the cache can use.
+     * @param slotSize The size of each slot, which should be the window size of the reader using the cache.
+     * @throws IllegalArgumentException if the slot size is not positive, or the capacity is less than a slot.
+     */
+    public OffHeapCache(final long capacity, final int slotSize) {
+        ArgUtils.checkPositiveInteger(slotSize, "slotSize");
+        if (capacity < slotSize) {
+            throw new IllegalArgumentException("The capacity " + capacity + " must hold at least one slot of size " + slotSize);
+        }
+        this.slotSize = slotSize;
+        this.slotsPerSlab = Math.max(1, MAX_SLAB_SIZE / slotSize);
+        this.maxSlots = (int) Math.min(Integer.MAX_VALUE - 8, capacity / slotSize);
+        this.capacity = (long) maxSlots * slotSize;
+        this.slotIndexes = new TLongIntHashMap(INITIAL_SLOTS, 0.5f, Long.MIN_VALUE, NO_SLOT);
+        initialiseSlots();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The window returned is a copy on the heap of the bytes held off the heap.
+     */
+    @Override
+    public Window getWindow(final long position) {
+        final int slot = slotIndexes.get(position);
+        if (slot == NO_SLOT) {
+            return null;
+        }
+        makeMostRecent(slot);
+        return new HardWindow(copySlot(slot), position, slotLengths[slot]);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the cache is full, the least recently used window is evicted, and subscribers
+     * are notified that it is free.  If the window is longer than a slot, it is not held,
+     * and subscribers are notified that it is free immediately.
+     */
+    @Override
+    public void addWindow(final Window window) throws IOException {
+        final long windowPosition = window.getWindowPosition();
+        final int existingSlot = slotIndexes.get(windowPosition);
+        if (existingSlot != NO_SLOT) {
+            makeMostRecent(existingSlot);
+            return;
+        }
+        final int length = window.length();
+        if (length > slotSize) {
+            notifyWindowFree(window, this);
+            return;
+        }
+        Window evicted = null;
+        final int slot;
+        if (usedSlots < maxSlots) {
+            slot = newSlot();
+        } else {
+            slot = leastRecent;
+            evicted = new HardWindow(copySlot(slot), slotPositions[slot], slotLengths[slot]);
+            slotIndexes.remove(slotPositions[slot]);
+            unlink(slot);
+        }
+        writeSlot(slot, window);
+        slotPositions[slot] = windowPosition;
+        slotLengths[slot] = length;
+        slotIndexes.put(windowPosition, slot);
+        linkMostRecent(slot);
+        if (evicted != null) {
+            notifyWindowFree(evicted, this);
+        }
+    }
+
+
+    /**
+     * Clears all windows from the cache, and releases the direct buffers holding
+     * them for garbage collection.  No notification of windows leaving the cache
+     * is made.
+     */
+    @Override
+    public void clear() {
+        slotIndexes.clear();
+        initialiseSlots();
+    }
+
+
+    /**
+     * Returns the number of windows held in this cache.
+     *
+     * @return The number of windows held in this cache.
+     */
+    public int size() {
+        return usedSlots;
+    }
+
+
+    /**
+     * Returns the number of bytes of direct memory this cache can use.
+     *
+     * @return The number of bytes of direct memory this cache can use.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * Returns the size of each slot, which is the longest window the cache can hold.
+     *
+     * @return The size of each slot.
+     */
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+
+    /**
+     * Returns the number of bytes of direct memory currently allocated by this cache.
+     *
+     * @return The number of bytes of direct memory currently allocated by this cache.
+     */
+    public long getAllocatedBytes() {
+        long allocated = 0;
+        for (final ByteBuffer slab : slabs) {
+            if (slab != null) {
+                allocated += slab.capacity();
+            }
+        }
+        return allocated;
+    }
+
+
+    private void initialiseSlots() {
+        slabs = new ByteBuffer[(maxSlots + slotsPerSlab - 1) / slotsPerSlab];
+        final int initialSlots = Math.min(INITIAL_SLOTS, maxSlots);
+        slotPositions = new long[initialSlots];
+        slotLengths = new int[initialSlots];
+        previous = new int[initialSlots];
+        next = new int[initialSlots];
+        usedSlots = 0;
+        mostRecent = NO_SLOT;
+        leastRecent = NO_SLOT;
+    }
+
+
+    /**
+     * Allocates the next unused slot, growing the slot arrays and allocating
+     * a new slab of direct memory if required.
+     *
+     * @return The index of the new slot.
+     */
+    private int newSlot() {
+        final int slot = usedSlots++;
+        if (slot == slotPositions.length) {
+            final int newLength = (int) Math.min(maxSlots, slot * 2L);
+            slotPositions = Arrays.copyOf(slotPositions, newLength);
+            slotLengths = Arrays.copyOf(slotLengths, newLength);
+            previous = Arrays.copyOf(previous, newLength);
+            next = Arrays.copyOf(next, newLength);
+        }
+        final int slab = slot / slotsPerSlab;
+        if (slabs[slab] == null) {
+            final int slabSlots = Math.min(slotsPerSlab, maxSlots - slab * slotsPerSlab);
+            slabs[slab] = ByteBuffer.allocateDirect(slabSlots * slotSize);
+        }
+        return slot;
+    }
+
+
+    private ByteBuffer slotBuffer(final int slot) {
+        final ByteBuffer buffer = slabs[slot / slotsPerSlab].duplicate();
+        buffer.position((slot % slotsPerSlab) * slotSize);
+        return buffer;
+    }
+
+
+    private byte[] copySlot(final int slot) {
+        final byte[] bytes = new byte[slotLengths[slot]];
+        slotBuffer(slot).get(bytes);
+        return bytes;
+    }
+
+
+    private void writeSlot(final int slot, final Window window) throws IOException {
+        final ByteBuffer destination = slotBuffer(slot);
+        final int length = window.length();
+        if (window instanceof BufferWindow) {
+            final ByteBuffer source = ((BufferWindow) window).getByteBuffer().duplicate();
+            source.clear();
+            source.limit(length);
+            destination.put(source);
+        } else {
+            destination.put(window.getArray(), 0, length);
+        }
+    }
+
+
+    private void makeMostRecent(final int slot) {
+        if (slot != mostRecent) {
+            unlink(slot);
+            linkMostRecent(slot);
+        }
+    }
+
+
+    private void linkMostRecent(final int slot) {
+        previous[slot] = NO_SLOT;
+        next[slot] = mostRecent;
+        if (mostRecent != NO_SLOT) {
+            previous[mostRecent] = slot;
+        }
+        mostRecent = slot;
+        if (leastRecent == NO_SLOT) {
+            leastRecent = slot;
+        }
+    }
+
+
+    private void unlink(final int slot) {
+        final int before = previous[slot];
+        final int after = next[slot];
+        if (before == NO_SLOT) {
+            mostRecent = after;
+        } else {
+            next[before] = after;
+        }
+        if (after == NO_SLOT) {
+            leastRecent = before;
+        } else {
+            previous[after] = before;
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size: " + usedSlots + " slot size: " + slotSize +
+                                            " capacity: " + capacity + ']';
+    }
+
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A store of windows shared by all the readers opened on the same file, so a second
+ * reader of a file starts with the windows already read by the first.  Each reader
+ * is given its own {@link WindowCache} onto the windows of its file, for example:
+ * <pre>
+ *   final SharedWindowCache shared = new SharedWindowCache(256 * 1024 * 1024);
+ *   ...
+ *   final WindowReader identify = new FileReader(file, 4096, shared.getCache(file, 4096));
+ *   ...
+ *   final WindowReader search   = new FileReader(file, 4096, shared.getCache(file, 4096));
+ * </pre>
+ * <p>
+ * Files are identified by the file key of the file system where it has one (so links to
+ * the same file share windows), or by their canonical path if not.  Windows are only
+ * shared by readers using the same window size.  When a cache is requested, the size and
+ * last modified time of the file are compared with those seen when its windows were first
+ * cached, and if either has changed, the windows held for the file are discarded.
+ * A change to a file which keeps the same size and modified time cannot be detected.
+ * <p>
+ * All windows held for all files are bounded by a single {@link MemoryBudget}, evicting
+ * the least recently used windows of any file.  Files whose windows have all been evicted
+ * are forgotten whenever the number of files held doubles, so scanning millions of files
+ * does not leave an entry behind for each of them.  A reader whose file was forgotten
+ * registers its windows again the next time it adds one.  As windows are shared, subscribers
+ * to the caches given to readers are never notified that a window is free, since it may
+ * still be in use by another reader.  Hence readers with array pools never recycle
+ * shared windows.  Clearing one of those caches (which happens when a reader is closed)
+ * leaves the shared windows in place for the next reader.
+ * <p>
+ * Readers should not use SoftWindows with a shared cache, as a SoftWindow recovers its
+ * bytes from the reader which created it, which may already be closed.
+ * <p>
+ * A SharedWindowCache, and the caches it gives out, are thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public final class SharedWindowCache {
+
+    private static final int MIN_SWEEP_THRESHOLD = 16;
+
+    private final MemoryBudget budget;
+    private final Map<FileKey, FileWindows> files;
+    private int sweepThreshold = MIN_SWEEP_THRESHOLD;
+
+
+    /**
+     * Creates a SharedWindowCache holding up to the number of bytes of windows given.
+     *
+     * @param maxBytes The maximum number of bytes of windows to hold across all files.
+     * @throws IllegalArgumentException if the maximum number of bytes is less than one.
+     */
+    public SharedWindowCache(final long maxBytes) {
+        this(new MemoryBudget(maxBytes));
+    }
+
+
+    /**
+     * Creates a SharedWindowCache drawing on the memory budget given, which can be
+     * shared with other {@link BudgetedCache}s.
+     *
+     * @param budget The memory budget to draw on.
+     * @throws IllegalArgumentException if the budget is null.
+     */
+    public SharedWindowCache(final MemoryBudget budget) {
+        ArgUtils.checkNullObject(budget, "budget");
+        this.budget = budget;
+        this.files = new HashMap<FileKey, FileWindows>();
+    }
+
+
+    /**
+     * Returns a cache for a reader of the file with the window size given, sharing the
+     * windows of all other readers of the same file using the same window size.
+     * If the file has changed size or modified time since its windows were cached,
+     * they are discarded first.
+     *
+     * @param file       The file which the reader will read.
+     * @param windowSize The window size of the reader.
+     * @return A WindowCache sharing the windows of other readers of the file.
+     * @throws IOException If the attributes of the file could not be read.
+     * @throws IllegalArgumentException if the file is null or the window size is less than one.
+     */
+    public WindowCache getCache(final File file, final int windowSize) throws IOException {
+        ArgUtils.checkNullObject(file, "file");
+        ArgUtils.checkPositiveInteger(windowSize, "windowSize");
+        final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        final FileKey key = new FileKey(getIdentity(file, attributes), windowSize);
+        FileWindows discard = null;
+        final FileWindows windows;
+        synchronized (files) {
+            final FileWindows existing = files.get(key);
+            if (existing != null && existing.isVersion(attributes)) {
+                windows = existing;
+            } else {
+                discard = existing;
+                windows = new FileWindows(attributes, new BudgetedCache(budget));
+                files.put(key, windows);
+                if (files.size() >= sweepThreshold) {
+                    sweepEmptyFiles(windows);
+                }
+            }
+        }
+        if (discard != null) {
+            discard.cache.clear();
+        }
+        return new ReaderCache(key, windows);
+    }
+
+
+    /**
+     * Discards all the windows held for a file, whatever window size they were read with.
+     * Caches already given to readers of the file no longer share windows with readers
+     * opened afterwards.
+     *
+     * @param file The file to discard windows for.
+     * @throws IOException If the attributes of the file could not be read.
+     * @throws IllegalArgumentException if the file is null.
+     */
+    public void invalidate(final File file) throws IOException {
+        ArgUtils.checkNullObject(file, "file");
+        final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        final Object identity = getIdentity(file, attributes);
+        final Map<FileKey, FileWindows> discard = new HashMap<FileKey, FileWindows>();
+        synchronized (files) {
+            for (final Map.Entry<FileKey, FileWindows> entry : files.entrySet()) {
+                if (entry.getKey().identity.equals(identity)) {
+                    discard.put(entry.getKey(), entry.getValue());
+                }
+            }
+            files.keySet().removeAll(discard.keySet());
+        }
+        for (final FileWindows windows : discard.values()) {
+            windows.cache.clear();
+        }
+    }
+
+
+    /**
+     * Discards all the windows held for all files.
+     */
+    public void clear() {
+        final FileWindows[] discard;
+        synchronized (files) {
+            discard = files.values().toArray(new FileWindows[files.size()]);
+            files.clear();
+        }
+        for (final FileWindows windows : discard) {
+            windows.cache.clear();
+        }
+    }
+
+
+    /**
+     * Returns the number of files (and window sizes) which windows are held for,
+     * including files whose windows have all been evicted but which have not been forgotten yet.
+     *
+     * @return The number of files (and window sizes) which windows are held for.
+     */
+    public int getFileCount() {
+        synchronized (files) {
+            return files.size();
+        }
+    }
+
+
+    /**
+     * Returns the memory budget bounding the windows of all files.
+     *
+     * @return The memory budget bounding the windows of all files.
+     */
+    public MemoryBudget getBudget() {
+        return budget;
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[files: " + getFileCount() + " budget: " + budget + ']';
+    }
+
+
+    /**
+     * Forgets the files whose windows have all been evicted, other than the windows just
+     * created, and sets the number of files at which to sweep again to double the number left.
+     * The files lock is held by the caller.
+     *
+     * @param created The windows just created for a file, which are not swept.
+     */
+    private void sweepEmptyFiles(final FileWindows created) {
+        final Iterator<FileWindows> iterator = files.values().iterator();
+        while (iterator.hasNext()) {
+            final FileWindows windows = iterator.next();
+            if (windows != created && windows.cache.size() == 0) {
+                windows.swept = true;
+                iterator.remove();
+            }
+        }
+        sweepThreshold = Math.max(MIN_SWEEP_THRESHOLD, files.size() * 2);
+    }
+
+
+    /**
+     * Registers the windows of a file again after they were swept, as a reader of the file
+     * is adding windows to them, unless windows have since been created for the file.
+     *
+     * @param key     The key of the file.
+     * @param windows The windows of the file which were swept.
+     */
+    private void registerSwept(final FileKey key, final FileWindows windows) {
+        synchronized (files) {
+            if (windows.swept) {
+                windows.swept = false;
+                if (!files.containsKey(key)) {
+                    files.put(key, windows);
+                }
+            }
+        }
+    }
+
+
+    private static Object getIdentity(final File file, final BasicFileAttributes attributes) throws IOException {
+        final Object fileKey = attributes.fileKey();
+        return fileKey != null ? fileKey : file.getCanonicalPath();
+    }
+
+
+    /**
+     * Identifies the windows of a file read with a window size.
+     */
+    private static final class FileKey {
+
+        private final Object identity;
+        private final int windowSize;
+
+        FileKey(final Object identity, final int windowSize) {
+            this.identity = identity;
+            this.windowSize = windowSize;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (other instanceof FileKey) {
+                final FileKey key = (FileKey) other;
+                return windowSize == key.windowSize && identity.equals(key.identity);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return identity.hashCode() * 31 + windowSize;
+        }
+    }
+
+
+    /**
+     * The windows held for a file, and the version of the file they were read from.
+     */
+    private static final class FileWindows {
+
+        private final long size;
+        private final FileTime lastModified;
+        private final BudgetedCache cache;
+        private volatile boolean swept;
+
+        FileWindows(final BasicFileAttributes attributes, final BudgetedCache cache) {
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime();
+            this.cache = cache;
+        }
+
+        boolean isVersion(final BasicFileAttributes attributes) {
+            return size == attributes.size() && lastModified.equals(attributes.lastModifiedTime());
+        }
+    }
+
+
+    /**
+     * The cache given to a reader, sharing the windows of its file.  It never notifies
+     * its subscribers, and clearing it does not discard the shared windows.
+     * If the windows of its file were swept, adding a window registers them again.
+     */
+    private final class ReaderCache extends AbstractFreeNotificationCache {
+
+        private final FileKey key;
+        private final FileWindows windows;
+        private final BudgetedCache shared;
+
+        ReaderCache(final FileKey key, final FileWindows windows) {
+            this.key = key;
+            this.windows = windows;
+            this.shared = windows.cache;
+        }
+
+        @Override
+        public Window getWindow(final long position) throws IOException {
+            return shared.getWindow(position);
+        }
+
+        @Override
+        public void addWindow(final Window window) throws IOException {
+            shared.addWindow(window);
+            if (windows.swept) {
+                registerSwept(key, windows);
+            }
+        }
+
+        @Override
+        public void clear() {
+            // The windows are shared with other readers, so they are not discarded.
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[shared: " + shared + ']';
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.IOException;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A {@link WindowCache} which makes any other WindowCache safe to use from more
+ * than one thread, by synchronizing all access to it.  Observers of this cache are
+ * notified when a {@link net.byteseek.io.reader.windows.Window} leaves the cache it wraps.
+ * <p>
+ * This class can only be constructed using a static method, as it subscribes as an
+ * observer to the cache passed in.  We do not want to have subscription happening in
+ * its constructor, as this may allow an invalid "this" reference to escape if an
+ * error occurs during construction.
+ * <p>
+ * All threads serialise on this cache, so it is only suitable where the cost of looking
+ * up a window is small compared to the work done with it.  The wrapped cache should not
+ * be used directly once it has been wrapped.
+ *
+ * @author Matt Palmer
+ */
+public final class SynchronizedCache extends AbstractFreeNotificationCache implements WindowCache.WindowObserver {
+
+    /**
+     * A static constructor for SynchronizedCache, which avoids passing "this" in the
+     * cache constructor so it can subscribe to window free notifications from the
+     * cache it wraps.
+     *
+     * @param cache The cache to synchronize access to.
+     * @return A SynchronizedCache wrapping the cache.
+     * @throws IllegalArgumentException if the cache is null.
+     */
+    public static SynchronizedCache create(final WindowCache cache) {
+        ArgUtils.checkNullObject(cache, "cache");
+        final SynchronizedCache synchronizedCache = new SynchronizedCache(cache);
+        cache.subscribe(synchronizedCache);
+        return synchronizedCache;
+    }
+
+    private final WindowCache cache;
+
+    private SynchronizedCache(final WindowCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Window getWindow(final long position) throws IOException {
+        return cache.getWindow(position);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addWindow(final Window window) throws IOException {
+        cache.addWindow(window);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void clear() throws IOException {
+        cache.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void subscribe(final WindowObserver observer) {
+        super.subscribe(observer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean unsubscribe(final WindowObserver observer) {
+        return super.unsubscribe(observer);
+    }
+
+    /**
+     * Implementation of the {@link WindowObserver} method to receive
+     * notification that a Window is freed from the wrapped cache, which
+     * notifies any observers of this cache.
+     *
+     * @param window The Window which is leaving the wrapped cache.
+     * @param fromCache The WindowCache from which the Window is leaving.
+     */
+    @Override
+    public void windowFree(final Window window, final WindowCache fromCache) throws IOException {
+        notifyWindowFree(window, this);
+    }
+
+    /**
+     * Returns the cache wrapped by this SynchronizedCache.
+     *
+     * @return WindowCache The cache wrapped by this SynchronizedCache.
+     */
+    public WindowCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[cache: " + cache + ']';
+    }
+
+}
@@ -28,17 +28,30 @@
  * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
  * POSSIBILITY OF SUCH DAMAGE.
  */
- 
+
 package net.byteseek.io.reader.cache;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import gnu.trove.map.TLongObjectMap;
-import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
 import net.byteseek.io.IOUtils;
 import net.byteseek.io.reader.windows.*;
+import net.byteseek.utils.ArgUtils;
 
 
 /**
@@ -46,17 +59,70 @@ import net.byteseek.io.reader.windows.*;
  * into a temporary file for later retrieval.  It maintains a map of the start positions
  * of each window against the position in the file where the Window was stored.
  * <p>
+ * The temporary file is memory mapped in regions, and windows are read back as
+ * {@link ByteBufferWindow}s directly onto the mapping, so a cache hit does not allocate
+ * or copy a byte array.  Space in the file is allocated so that a window never crosses
+ * a region boundary.  Windows larger than a region are read and written through the file
+ * channel instead.
+ * <p>
+ * Windows added to the cache are written to the file by a background thread, so the
+ * thread adding them does not wait for the write.  Until a window has been written,
+ * it is returned from memory.  If the writer falls too far behind, the thread adding
+ * windows writes them itself, so unwritten windows cannot use an unbounded amount of memory.
+ * Once a window has been written, the cache no longer references its array, although it
+ * still holds the window.  A {@link WriteObserver} can be set to be told about windows
+ * written to the file when the next window is added, so a reader spilling windows into this
+ * cache can recycle their arrays.  Subscribers are only notified when a window leaves the cache.
+ * The position, file position and length of each window are held in primitive arrays,
+ * rather than an object per window, as a cache may hold millions of windows.
+ * <p>
  * A temporary file is only created if a Window is added to the cache, and it is
- * deleted when the cache is cleared.
+ * deleted when the cache is cleared.  The cache can also be {@link #reset()}, which
+ * forgets all the windows but keeps the temporary file, re-using its space for the
+ * windows added afterwards.
+ * <p>
+ * This cache is not thread-safe, other than for its own background writing.
  * 
  * @author Matt Palmer
  */
 public final class TempFileCache extends AbstractFreeNotificationCache implements SoftWindowRecovery {
 
-    private final TLongObjectMap<WindowInfo> windowPositions;
+    /**
+     * The default size of the regions of the temporary file which are memory mapped.
+     */
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The number of windows which can be waiting to be written before the thread adding
+     * windows writes them itself.
+     */
+    public static final int MAX_PENDING_WRITES = 32;
+
+    private static final int NO_WINDOW = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
     private final File tempDir;
+    private final int regionSize;
+
+    // Window metadata: window position -> index into the file positions and lengths arrays.
+    private final TLongIntMap windowIndexes;
+    private long[] filePositions;
+    private int[] lengths;
+    private int windowCount;
+
+    // Windows not yet written to the file, keyed by window position:
+    private final ConcurrentMap<Long, byte[]> pending;
+    private ThreadPoolExecutor writer;
+    private volatile IOException writeException;
+
+    // Windows written to the file, whose write observer has not yet been told:
+    private final Queue<Window> written = new ConcurrentLinkedQueue<Window>();
+    private volatile WriteObserver writeObserver;
+
     private File tempFile;
     private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer[] regions;
     private long nextFilePos;
 
     /**
@@ -75,59 +141,146 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
      * @throws java.lang.IllegalArgumentException if the tempdir supplied is not a directory.
      */
     public TempFileCache(final File tempDir) {
-        windowPositions = new TLongObjectHashMap<WindowInfo>();
-        this.tempDir = tempDir;
+        this(tempDir, DEFAULT_REGION_SIZE);
+    }
+
+
+    /**
+     * Constructs a TempFileCache which creates temporary files in the directory specified,
+     * memory mapping them in regions of the size given.
+     * If the file is null, then temporary files will be created in the default temp directory.
+     *
+     * @param tempDir    The directory to create temporary files in.
+     * @param regionSize The size of each memory mapped region of the temporary file.
+     * @throws java.lang.IllegalArgumentException if the tempdir supplied is not a directory,
+     *                                            or the region size is not positive.
+     */
+    public TempFileCache(final File tempDir, final int regionSize) {
         if (tempDir != null && !tempDir.isDirectory()) {
             throw new IllegalArgumentException("The temp dir file supplied is not a directory: " + tempDir.getAbsolutePath());
         }
+        ArgUtils.checkPositiveInteger(regionSize, "regionSize");
+        this.tempDir = tempDir;
+        this.regionSize = regionSize;
+        this.windowIndexes = new TLongIntHashMap(INITIAL_CAPACITY, 0.5f, Long.MIN_VALUE, NO_WINDOW);
+        this.filePositions = new long[INITIAL_CAPACITY];
+        this.lengths = new int[INITIAL_CAPACITY];
+        this.pending = new ConcurrentHashMap<Long, byte[]>();
+        this.regions = new MappedByteBuffer[0];
     }
     
     
     /**
      * {@inheritDoc}
+     * <p>
+     * Windows which have been written to the file are returned as {@link ByteBufferWindow}s
+     * onto the memory mapped file.  These windows must not be used after the cache is reset
+     * or cleared, as the space they view may be re-used.
      */
     @Override
     public Window getWindow(final long position) throws IOException {
-        Window window = null;
-        final WindowInfo info = windowPositions.get(position);
-        if (info != null) {
-            final byte[] array = new byte[info.length];
-            IOUtils.readBytes(file, array, info.filePosition);
-            window = new SoftWindow(array, position, info.length, this);
+        final int index = windowIndexes.get(position);
+        if (index == NO_WINDOW) {
+            return null;
         }
-        return window;
+        final int length = lengths[index];
+        final byte[] unwritten = pending.get(position);
+        if (unwritten != null) {
+            // The array of the window added may be recycled once it is written, so return a copy:
+            return new HardWindow(unwritten.clone(), position, length);
+        }
+        final long filePosition = filePositions[index];
+        if (length <= regionSize) {
+            final ByteBuffer buffer = regions[(int) (filePosition / regionSize)].duplicate();
+            final int regionOffset = (int) (filePosition % regionSize);
+            buffer.limit(regionOffset + length).position(regionOffset);
+            return new ByteBufferWindow(buffer.slice(), position, length);
+        }
+        return new SoftWindow(readBytes(filePosition, length), position, length, this);
     }
 
     
     /**
      * {@inheritDoc}
+     * <p>
+     * Space for the window is allocated in the file immediately, and the window is
+     * written to it in the background.  The write observer, if there is one, is told
+     * about any windows written to the file since the last window was added.
+     *
+     * @throws IOException if a window added earlier failed to write to the file.
      */
     @Override
     public void addWindow(final Window window) throws IOException {
+        checkWriteException();
         final long windowPosition = window.getWindowPosition();
-        final WindowInfo info = windowPositions.get(windowPosition);
-        if (info == null) {
+        if (windowIndexes.get(windowPosition) == NO_WINDOW) {
             createFileIfNotExists();
-            file.seek(nextFilePos);
-            file.write(window.getArray(), 0, window.length());
-            windowPositions.put(windowPosition,
-                                new WindowInfo(window.length(), nextFilePos));
-            nextFilePos += window.length();
+            final int length = window.length();
+            final long filePosition = allocate(length);
+            final int index = windowCount++;
+            if (index == lengths.length) {
+                filePositions = Arrays.copyOf(filePositions, index * 2);
+                lengths = Arrays.copyOf(lengths, index * 2);
+            }
+            filePositions[index] = filePosition;
+            lengths[index] = length;
+            windowIndexes.put(windowPosition, index);
+            final byte[] bytes = window.getArray();
+            pending.put(windowPosition, bytes);
+            writer.execute(new WindowWriter(window, bytes, filePosition, length,
+                                            length <= regionSize? regions[(int) (filePosition / regionSize)] : null));
         }
+        notifyWrittenWindows();
     }
 
     
     /**
      * Clears the map of Window positions to their position and size in the file,
-     * and deletes the temporary file if it exists.
+     * and deletes the temporary file if it exists.  Any windows not yet written
+     * to the file are discarded.
      */
     @Override
     public void clear() throws IOException {
-        windowPositions.clear();
+        forgetWindows();
         deleteFileIfExists();
     }
+
+
+    /**
+     * Forgets all the windows in the cache, but keeps the temporary file, so
+     * windows added afterwards re-use the space in it.  Any windows not yet written
+     * to the file are discarded.  No notification of windows leaving the cache is made,
+     * as with {@link #clear()}.
+     *
+     * @throws IOException if the background writer was interrupted while finishing its current write.
+     */
+    public void reset() throws IOException {
+        forgetWindows();
+    }
     
     
+    /**
+     * Sets a {@link WriteObserver} to be told about windows once they have been written
+     * to the temporary file, or null to stop observing writes.  The observer is called
+     * by the thread adding windows, not the background writer.
+     *
+     * @param observer The WriteObserver to tell about written windows, or null.
+     */
+    public void setWriteObserver(final WriteObserver observer) {
+        this.writeObserver = observer;
+    }
+
+
+    /**
+     * Returns the {@link WriteObserver} of this cache, or null if there isn't one.
+     *
+     * @return The WriteObserver of this cache, or null if there isn't one.
+     */
+    public WriteObserver getWriteObserver() {
+        return writeObserver;
+    }
+
+
     /**
      * Returns the temporary file backing this cache object.
      * 
@@ -136,18 +289,124 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
     public File getTempFile() {
         return tempFile;
     }
-    
+
+
+    /**
+     * Returns the number of windows held in this cache.
+     *
+     * @return The number of windows held in this cache.
+     */
+    public int size() {
+        return windowCount;
+    }
+
+
+    /**
+     * Returns the number of windows which have not yet been written to the temporary file.
+     *
+     * @return The number of windows which have not yet been written to the temporary file.
+     */
+    public int getPendingWriteCount() {
+        return pending.size();
+    }
+
+
+    @Override
+    public byte[] reloadWindowBytes(final Window window) throws IOException {
+        final long position = window.getWindowPosition();
+        final int index = windowIndexes.get(position);
+        if (index != NO_WINDOW) {
+            final byte[] unwritten = pending.get(position);
+            return unwritten != null? unwritten.clone() : readBytes(filePositions[index], lengths[index]);
+        }
+        throw new WindowMissingException("No window exists in the cache for the window: " + window);
+    }
+
     
     private void createFileIfNotExists() throws IOException {
         if (tempFile == null) {
-            windowPositions.clear();
-            nextFilePos = 0;
+            forgetWindows();
             tempFile = tempDir == null? IOUtils.createTempFile()
                                       : IOUtils.createTempFile(tempDir);
             file = new RandomAccessFile(tempFile, "rw");
+            channel = file.getChannel();
+        }
+        if (writer == null) {
+            writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                                            new ArrayBlockingQueue<Runnable>(MAX_PENDING_WRITES),
+                                            new WriterThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
         }
     }
-    
+
+
+    /**
+     * Allocates space in the file for a window.  Windows which fit in a region never
+     * cross into the next region, and the region is mapped if it is not already.
+     * Larger windows are placed at the start of the next free region, and are not mapped.
+     *
+     * @param length The length of the window to allocate space for.
+     * @return The position in the file the window will be written to.
+     * @throws IOException If a region of the file could not be mapped.
+     */
+    private long allocate(final int length) throws IOException {
+        final long regionStart = nextFilePos - nextFilePos % regionSize;
+        long filePosition = nextFilePos;
+        if (nextFilePos + length > regionStart + regionSize && nextFilePos != regionStart) {
+            filePosition = regionStart + regionSize;
+        }
+        nextFilePos = filePosition + length;
+        if (length <= regionSize) {
+            final int region = (int) (filePosition / regionSize);
+            if (region >= regions.length) {
+                regions = Arrays.copyOf(regions, region + 1);
+            }
+            if (regions[region] == null) {
+                regions[region] = channel.map(FileChannel.MapMode.READ_WRITE, (long) region * regionSize, regionSize);
+            }
+        } else if (nextFilePos % regionSize != 0) {
+            nextFilePos += regionSize - nextFilePos % regionSize;
+        }
+        return filePosition;
+    }
+
+
+    private byte[] readBytes(final long filePosition, final int length) throws IOException {
+        final byte[] array = new byte[length];
+        final ByteBuffer buffer = ByteBuffer.wrap(array);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, filePosition + buffer.position()) < 0) {
+                throw new WindowMissingException("The temporary file ended before the window at file position " +
+                                                 filePosition + " with length " + length);
+            }
+        }
+        return array;
+    }
+
+
+    /**
+     * Stops the background writer, waiting for any write in progress to finish, so that
+     * it cannot write into space which is about to be re-used, and forgets all windows.
+     */
+    private void forgetWindows() throws IOException {
+        pending.clear();
+        if (writer != null) {
+            writer.shutdownNow();
+            try {
+                writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for the temp file writer to stop", ex);
+            } finally {
+                writer = null;
+            }
+        }
+        written.clear();
+        windowIndexes.clear();
+        windowCount = 0;
+        nextFilePos = 0;
+        writeException = null;
+    }
+
 
     private void deleteFileIfExists() throws IOException {
         if (tempFile != null) {
@@ -158,6 +417,8 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
                 fileCloseException = ex;
             } finally {
                 file = null;
+                channel = null;
+                regions = new MappedByteBuffer[0];
                 tempFile.delete();
                 tempFile = null;
                 nextFilePos = 0;
@@ -168,35 +429,112 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
         }
     }
 
-    @Override
-    public byte[] reloadWindowBytes(final Window window) throws IOException {
-        final WindowInfo info = windowPositions.get(window.getWindowPosition());
-        if (info != null) {
-            final byte[] array = new byte[info.length];
-            IOUtils.readBytes(file, array, info.filePosition);
-            return array;
+
+    private void notifyWrittenWindows() throws IOException {
+        final WriteObserver observer = writeObserver;
+        Window window;
+        while ((window = written.poll()) != null) {
+            if (observer != null) {
+                observer.windowWritten(window);
+            }
+        }
+    }
+
+
+    private void checkWriteException() throws IOException {
+        final IOException exception = writeException;
+        if (exception != null) {
+            throw new IOException("A window failed to write to the temporary file " + tempFile, exception);
         }
-        throw new WindowMissingException("No window exists in the cache for the window: " + window);
     }
 
 
     /**
-     * A utility class recording the length of a Window and the position in 
-     * the temporary file it exists at.
+     * Writes a window into the temporary file, through the memory mapped region if it fits
+     * in one, and then removes it from the pending windows.  If the write fails, the window
+     * stays pending, so it can still be read, and the failure is reported by the next window added.
+     * A window written successfully is queued for the write observer, if there is one.
      */
-    private static final class WindowInfo {
-        
-        final int length;
-        final long filePosition;  
-        
-        public WindowInfo(final int limit, final long filePosition) {
-            this.length = limit;
+    private final class WindowWriter implements Runnable {
+
+        private final Window window;
+        private final long windowPosition;
+        private final byte[] bytes;
+        private final long filePosition;
+        private final int length;
+        private final MappedByteBuffer region;
+
+        WindowWriter(final Window window, final byte[] bytes, final long filePosition,
+                     final int length, final MappedByteBuffer region) {
+            this.window = window;
+            this.windowPosition = window.getWindowPosition();
+            this.bytes = bytes;
             this.filePosition = filePosition;
+            this.length = length;
+            this.region = region;
+        }
+
+        @Override
+        public void run() {
+            if (pending.get(windowPosition) != bytes) {
+                return; // the cache was reset or cleared since the window was added.
+            }
+            try {
+                if (region != null) {
+                    final ByteBuffer buffer = region.duplicate();
+                    buffer.position((int) (filePosition % regionSize));
+                    buffer.put(bytes, 0, length);
+                } else {
+                    final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, filePosition + buffer.position());
+                    }
+                }
+                if (pending.remove(windowPosition, bytes) && writeObserver != null) {
+                    written.add(window);
+                }
+            } catch (IOException ex) {
+                writeException = ex;
+            }
         }
-    } 
+    }
+
+
+    /**
+     * An observer of windows written to the temporary file of a TempFileCache.
+     * The cache still holds the windows, but no longer references their arrays.
+     * Unlike a {@link WindowObserver}, it is not told that a window has left the cache.
+     */
+    public interface WriteObserver {
+
+        /**
+         * Tells the observer that a window has been written to the temporary file,
+         * and the cache no longer references its array.
+         *
+         * @param window The Window written to the temporary file.
+         * @throws IOException If the observer has a problem processing the window.
+         */
+        void windowWritten(Window window) throws IOException;
+    }
+
+
+    /**
+     * Creates daemon threads, so an uncleared TempFileCache does not stop the JVM exiting.
+     */
+    private static final class WriterThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "byteseek-temp-file-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     
 	@Override
 	public String toString() {
-		return getClass().getSimpleName() + "[temp file: " + tempFile + " window positions recorded:" + windowPositions.size() + ']';  
+		return getClass().getSimpleName() + "[temp file: " + tempFile + " window positions recorded:" + windowCount +
+				                            " pending writes: " + pending.size() + ']';
 	}
 }
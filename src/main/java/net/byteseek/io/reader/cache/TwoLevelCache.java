@@ -132,6 +132,8 @@ import java.io.IOException;
      * cache, then it is automatically added to the secondary cache.
      * If it leaves the secondary cache, then any observer of this cache
      * is notified that the Window is no longer cached at all by this cache.
+     * The notification comes from this cache, so a TwoLevelCache can itself be
+     * the primary or secondary cache of another one.
      * 
      * @param window The Window which is leaving either the primary or secondary cache.
      * @param fromCache The WindowCache from which the Window is leaving.
@@ -142,7 +144,7 @@ import java.io.IOException;
         if (fromCache == primaryCache) {
             secondaryCache.addWindow(window);
         } else if (fromCache == secondaryCache) {
-            notifyWindowFree(window, fromCache);
+            notifyWindowFree(window, this);
         }
     }
     
@@ -33,10 +33,31 @@
  * A set of caching strategies for net.byteseek.io.reader.Window.windows.
  * <p>
  * Most caches are in-memory caches, holding the Windows within memory.
- * There is also a temporary file disk cache.  Finally, there are two
+ * There is also a temporary file disk cache, which reads windows through a memory
+ * mapping of the file and writes them in the background, and an OffHeapCache
+ * which holds windows in direct memory outside the Java heap.  Finally, there are two
  * caches which use more than one cache to achieve their strategy:
  * DoubleCache and TwoLevelCache.
  * <p>
+ * The AdaptiveReplacementCache resists being flushed by sequential scans, keeping windows
+ * which are used repeatedly (such as the header of a file) while scanned windows pass through.
+ * <p>
+ * Any cache can be decorated with an InstrumentedCache, which counts its hits, misses,
+ * additions and evictions.
+ * <p>
+ * The BudgetedCache is bounded by the bytes it holds rather than by a count of windows.
+ * Several BudgetedCaches can share a single MemoryBudget, which evicts the least recently
+ * used window across all of them, bounding the memory used by many readers together.
+ * A SharedWindowCache gives readers of the same file caches which share their windows,
+ * so a second reader of a file starts warm, discarding them if the file changes.
+ * <p>
+ * The HorizonCache only holds windows within a fixed distance behind the furthest window
+ * read, letting a forward search of a stream of any length run in bounded memory.
+ * <p>
+ * Most caches are not thread-safe.  The ConcurrentClockCache can be shared by
+ * threads reading from the same reader, and the SynchronizedCache makes any
+ * other cache safe to share, at the cost of serialising access to it.
+ * <p>
  * Note that various readers (and the TempFileCache) can use SoftWindows,
  * which allow the garbage collector to reclaim memory in low-memory conditions.
  * Therefore, even in-memory caches (depending on how the reader is configured)
@@ -43,7 +43,53 @@
  * applications which are processing byte sources quickly, SoftWindows will help to prevent
  * OutOfMemoryErrors.
  * <p>
+ * The MappedFileReader memory maps a file in segments, providing ByteBufferWindows which
+ * are views directly onto the mapped file.  It does not need a cache, as the operating
+ * system page cache already holds the file data.
+ * <p>
+ * The FileReader and PositionalFileReader can use adaptive window sizes, growing windows
+ * while a file is scanned sequentially and shrinking them for random access.
+ * <p>
+ * The WholeFileReader reads a small file into a single window in one read, with no cache,
+ * and can be reset to read the next file, reusing its array.
+ * <p>
+ * The DirectIOFileReader reads files with direct I/O where the platform supports it,
+ * bypassing the page cache, so one-pass scans of huge files do not evict other data from it.
+ * <p>
+ * The PositionalFileReader can be shared by many threads searching the same file, and
+ * the PrefetchReader decorates a thread-safe reader, loading windows ahead of a scan
+ * in the background so that reading overlaps with searching.
+ * <p>
+ * NIO channels can be read directly without adapting them into input streams.  The
+ * SeekableChannelReader reads any SeekableByteChannel with random access, and the
+ * ChannelReader reads a forward-only ReadableByteChannel, caching it as it goes.
+ * <p>
+ * The CompositeReader presents several readers, such as the segments of a split image,
+ * as one contiguous sequence of bytes, so a single search can cover all of them.
+ * A SliceReader is a view onto a range of another reader, sharing its windows and
+ * cache, with positions starting from zero at the start of the range.  The ChunkedReader
+ * presents a list of byte arrays or ByteBuffers as one sequence of bytes, each chunk being
+ * a window, and chunks can be added to it as they arrive.
+ * <p>
+ * The OverlappingReader pads the windows of another reader with the bytes which follow them,
+ * so that searchers can match patterns which cross into the next window from a single array.
+ * <p>
+ * The AsynchronousFileReader implements the AsyncWindowReader interface, reading windows
+ * with an AsynchronousFileChannel and passing them to a CompletionHandler or Future when
+ * they arrive, so no thread blocks waiting for a read.
+ * <p>
+ * The GzipIndexedReader gives random access into gzip compressed data.  It records
+ * checkpoints in the compressed data as it decompresses, so later reads only have to
+ * decompress from the nearest checkpoint before the position wanted.
+ * <p>
+ * The CharSequenceReader encodes a CharSequence one window at a time as it is read,
+ * recording where each window starts in both chars and bytes, so long sequences can be
+ * searched without encoding them all up front.
+ * <p>
  * In addition, the ReaderInputStream adapts any WindowReader into an InputStream, to allow the
- * cached windows to be used with other classes which expect input streams.
+ * cached windows to be used with other classes which expect input streams.  The
+ * UnsynchronizedReaderInputStream does the same for a single thread without locking, and
+ * both can transfer their remaining bytes to an OutputStream or channel directly from the
+ * windows.  The ReaderByteChannel adapts any WindowReader into a read-only SeekableByteChannel.
  */
 package net.byteseek.io.reader;
\ No newline at end of file
@@ -0,0 +1,60 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.windows;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Window} whose bytes are held in a {@link java.nio.ByteBuffer}, which may be
+ * a direct buffer, a memory mapped buffer, or a buffer onto memory outside the Java heap.
+ * <p>
+ * Searchers and matchers which know about BufferWindows can read their bytes directly from
+ * the buffer, rather than calling {@link #getArray()}, which may have to copy the bytes
+ * of the Window into a new byte array on the Java heap.
+ * <p>
+ * Index zero in the buffer is the first byte of the Window, and index {@link #length()} - 1
+ * is the last.  Clients must not alter the contents of the buffer, and must only use absolute
+ * indexes (or a duplicate of the buffer) to read from it, as the buffer may be shared.
+ *
+ * @author Matt Palmer
+ */
+public interface BufferWindow extends Window {
+
+    /**
+     * Returns the ByteBuffer backing this Window.  Index zero in the buffer is the
+     * start of the Window.
+     *
+     * @return The ByteBuffer backing this Window.
+     */
+    ByteBuffer getByteBuffer();
+
+}
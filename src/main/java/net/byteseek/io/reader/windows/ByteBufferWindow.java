@@ -0,0 +1,184 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.windows;
+
+import java.nio.ByteBuffer;
+
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A ByteBufferWindow is a {@link Window} onto a region of a {@link java.nio.ByteBuffer},
+ * for example a slice of a memory mapped file.  Reading bytes from the Window using
+ * {@link #getByte(int)} reads them directly from the buffer, without any copying.
+ * <p>
+ * The buffer passed in must begin at the start of the Window - position zero in the
+ * buffer is the first byte of the Window.  The buffer is not copied, and its position
+ * and limit are not used or altered by this Window, as all reads use absolute indexes.
+ * <p>
+ * As the {@link Window} interface also requires a byte array, a call to {@link #getArray()}
+ * will return the array backing the buffer if it has an accessible array starting at the
+ * beginning of the Window.  Otherwise (for example, with a direct or memory mapped buffer),
+ * the bytes of the Window are copied into a new byte array the first time it is requested,
+ * and that array is returned on subsequent calls.
+ * <p>
+ * A ByteBufferWindow can be shared between threads, as long as the buffer it wraps
+ * is not modified.  If more than one thread requests the array at the same time
+ * before it has been created, each may create its own copy.
+ *
+ * @author Matt Palmer
+ */
+public final class ByteBufferWindow implements BufferWindow {
+
+    private final ByteBuffer buffer;
+    private final long windowPosition;
+    private final int length;
+    private volatile byte[] bytes;
+
+    /**
+     * Constructs a ByteBufferWindow using the ByteBuffer provided, recording the position
+     * in the WindowReader from which the bytes were read, and the length of the Window.
+     *
+     * @param buffer The ByteBuffer to wrap, whose index zero is the start of the Window.
+     * @param windowPosition The position at which the Window starts.
+     * @param length The length of the Window.
+     * @throws IllegalArgumentException if the buffer is null.
+     */
+    public ByteBufferWindow(final ByteBuffer buffer, final long windowPosition, final int length) {
+        ArgUtils.checkNullObject(buffer, "buffer");
+        this.buffer = buffer;
+        this.windowPosition = windowPosition;
+        this.length = length;
+    }
+
+    /**
+     * Gets a byte from the Window relative to the start of the Window (not
+     * relative to the start of the WindowReader), reading directly from the
+     * underlying ByteBuffer.
+     *
+     * @param position The position in the Window to read a byte from.
+     * @return The byte at that position in the Window.
+     * @throws IndexOutOfBoundsException
+     *             if the position is less than zero, or past the limit of the
+     *             ByteBuffer which backs this Window.
+     */
+    @Override
+    public byte getByte(final int position) {
+        return buffer.get(position);
+    }
+
+    /**
+     * Returns a byte array containing the bytes of this Window.  If the ByteBuffer
+     * has an accessible backing array which starts at the beginning of the Window,
+     * then that array is returned.  Otherwise, the bytes of the Window are copied
+     * into a new byte array on the first call, which is returned on subsequent calls.
+     * <p>
+     * Clients should not alter the array returned by this method.
+     *
+     * @return A byte array containing the bytes of this Window.
+     */
+    @Override
+    public byte[] getArray() {
+        byte[] array = bytes;
+        if (array == null) {
+            if (buffer.hasArray() && buffer.arrayOffset() == 0) {
+                array = buffer.array();
+            } else {
+                array = new byte[length];
+                final ByteBuffer source = buffer.duplicate();
+                source.clear();
+                source.get(array, 0, length);
+            }
+            bytes = array;
+        }
+        return array;
+    }
+
+    /**
+     * Returns the ByteBuffer backing this Window.  Index zero in the buffer is the
+     * start of the Window.  Clients should not alter the contents of the buffer, and
+     * should use absolute indexes or a duplicate of the buffer to read from it.
+     *
+     * @return The ByteBuffer backing this Window.
+     */
+    @Override
+    public ByteBuffer getByteBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the position in the WindowReader that this Window was read from.
+     *
+     * @return The position in the WindowReader that this Window was read from.
+     */
+    @Override
+    public long getWindowPosition() {
+        return windowPosition;
+    }
+
+    /**
+     * Returns the final position in this window.  It is equivalent
+     * to the window position plus the length of the window, minus one.
+     *
+     * @return the last position in this window.
+     */
+    @Override
+    public long getWindowEndPosition() {
+        return windowPosition + length - 1;
+    }
+
+    /**
+     * Returns the starting position of the window after this one.  It is
+     * equivalent to the window position plus the length of this window.
+     *
+     * @return The starting position of the window after this one.
+     */
+    @Override
+    public long getNextWindowPosition() {
+        return windowPosition + length;
+    }
+
+    /**
+     * Returns the length of the Window.
+     *
+     * @return The length of the Window.
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[buffer: " + buffer +
+                                            " window length:" + length + " window pos:" + windowPosition + ']';
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.windows;
+
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * An OverlapWindow is a {@link Window} whose byte array also holds the bytes which follow
+ * it in the {@link net.byteseek.io.reader.WindowReader}, up to a fixed overlap, as created by
+ * an {@link net.byteseek.io.reader.OverlappingReader}.  The length of the window, its position
+ * and the position of the next window are just as for any other window, so windows do not
+ * overlap when iterating over a reader.  But a searcher or matcher which knows about the overlap
+ * can read the bytes of a match starting in this window from its array alone, even if the
+ * match runs into the next window.
+ * <p>
+ * Unlike a {@link HardWindow}, the bytes of the array after the length of the window are
+ * valid bytes of the reader, up to the length plus the overlap.  The overlap is shorter
+ * than requested at the end of the reader, where there are fewer bytes left to pad with.
+ *
+ * @author Matt Palmer
+ */
+public final class OverlapWindow implements Window {
+
+	private final byte[] bytes;
+	private final long windowPosition;
+	private final int length;
+	private final int overlap;
+
+	/**
+	 * Constructs an OverlapWindow using the byte array provided, which holds the bytes of the
+	 * window followed by the bytes of the overlap.
+	 *
+	 * @param bytes          The byte array to wrap.
+	 * @param windowPosition The position at which the Window starts.
+	 * @param length         The length of the window.
+	 * @param overlap        The number of bytes following the window which are also in the array.
+	 * @throws IllegalArgumentException if the array is null, the length or overlap is negative,
+	 *                                  or the array is shorter than the length plus the overlap.
+	 */
+	public OverlapWindow(final byte[] bytes, final long windowPosition, final int length, final int overlap) {
+		ArgUtils.checkNullByteArray(bytes, "bytes");
+		if (length < 0 || overlap < 0 || bytes.length < length + overlap) {
+			throw new IllegalArgumentException("The array of length " + bytes.length +
+					" cannot hold a window of length " + length + " and an overlap of " + overlap);
+		}
+		this.bytes = bytes;
+		this.windowPosition = windowPosition;
+		this.length = length;
+		this.overlap = overlap;
+	}
+
+	/**
+	 * Returns the number of bytes in the array of a window which are valid bytes of
+	 * the reader: the length of the window, plus the overlap for an OverlapWindow.
+	 *
+	 * @param window The window to get the number of valid bytes of.
+	 * @return The number of bytes in the array of the window which are valid bytes of the reader.
+	 */
+	public static int getSearchableLength(final Window window) {
+		return window instanceof OverlapWindow ? ((OverlapWindow) window).getPaddedLength() : window.length();
+	}
+
+	/**
+	 * Gets a byte from the Window relative to the start of the Window.  Bytes in the
+	 * overlap, after the length of the window, can also be read.
+	 *
+	 * @param position The position in the Window to read a byte from.
+	 * @return The byte at that position in the Window.
+	 * @throws IndexOutOfBoundsException
+	 *             if the position is less than zero, or past the end of the
+	 *             byte array which backs this Window.
+	 */
+	@Override
+	public byte getByte(final int position) {
+		return bytes[position];
+	}
+
+	/**
+	 * Returns the array of bytes backing this Window, including the overlap.
+	 * Clients should not alter the array returned by this method.
+	 *
+	 * @return The byte array which backs this Window.
+	 */
+	@Override
+	public byte[] getArray() {
+		return bytes;
+	}
+
+	@Override
+	public long getWindowPosition() {
+		return windowPosition;
+	}
+
+	@Override
+	public long getWindowEndPosition() {
+		return windowPosition + length - 1;
+	}
+
+	@Override
+	public long getNextWindowPosition() {
+		return windowPosition + length;
+	}
+
+	/**
+	 * Returns the length of the Window, not including the overlap.
+	 *
+	 * @return The length of the Window.
+	 */
+	@Override
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Returns the number of bytes following the window which are also held in its array.
+	 *
+	 * @return The number of bytes following the window which are also held in its array.
+	 */
+	public int getOverlap() {
+		return overlap;
+	}
+
+	/**
+	 * Returns the length of the window plus the overlap.
+	 *
+	 * @return The length of the window plus the overlap.
+	 */
+	public int getPaddedLength() {
+		return length + overlap;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[bytes length: " + bytes.length + " window length:" + length +
+				" overlap: " + overlap + " window pos:" + windowPosition + ']';
+	}
+
+}
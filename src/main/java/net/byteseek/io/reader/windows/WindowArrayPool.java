@@ -0,0 +1,157 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.windows;
+
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A bounded pool of byte arrays of a fixed size, which a {@link net.byteseek.io.reader.WindowReader}
+ * can create the arrays of its {@link HardWindow}s from.  Once a Window has left the cache
+ * of the reader, its array can be recycled back into the pool and handed out again to back
+ * a new Window, rather than allocating a new array for every Window read.
+ * <p>
+ * Once a pool is warm, a sequential scan through a reader can run without allocating
+ * any new arrays, and the memory held in reserve by the pool is never more than its
+ * capacity multiplied by the array size.  A pool can be shared between readers which
+ * use the same window size, so many short-lived readers can reuse the same arrays.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public final class WindowArrayPool {
+
+	private final int arraySize;
+	private final byte[][] arrays;
+	private int size;
+
+	/**
+	 * Constructs a WindowArrayPool holding up to capacity arrays of the size given.
+	 *
+	 * @param arraySize The size of the arrays in the pool, which must match the window size of any reader using it.
+	 * @param capacity  The maximum number of unused arrays to hold in the pool.
+	 * @throws IllegalArgumentException if the array size or capacity is less than one.
+	 */
+	public WindowArrayPool(final int arraySize, final int capacity) {
+		ArgUtils.checkPositiveInteger(arraySize, "arraySize");
+		ArgUtils.checkPositiveInteger(capacity, "capacity");
+		this.arraySize = arraySize;
+		this.arrays = new byte[capacity][];
+	}
+
+	/**
+	 * Returns an array from the pool if one is available, or a newly allocated array if not.
+	 * The contents of a recycled array are whatever they were when it was recycled.
+	 *
+	 * @return A byte array of the array size of this pool.
+	 */
+	public byte[] borrowArray() {
+		synchronized (this) {
+			if (size > 0) {
+				final byte[] array = arrays[--size];
+				arrays[size] = null;
+				return array;
+			}
+		}
+		return new byte[arraySize];
+	}
+
+	/**
+	 * Returns an array to the pool, as long as it is the same size as the arrays in the pool,
+	 * it is not already in the pool, and the pool is not already full.
+	 * <p>
+	 * The array must not be in use by anything else after it has been recycled.
+	 *
+	 * @param array The array to recycle.
+	 * @return True if the array was added to the pool.
+	 */
+	public boolean recycleArray(final byte[] array) {
+		if (array != null && array.length == arraySize) {
+			synchronized (this) {
+				if (size < arrays.length) {
+					for (int index = 0; index < size; index++) {
+						if (arrays[index] == array) {
+							return false;
+						}
+					}
+					arrays[size++] = array;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all the arrays currently held in the pool.
+	 */
+	public synchronized void clear() {
+		for (int index = 0; index < size; index++) {
+			arrays[index] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of arrays currently held in the pool.
+	 *
+	 * @return The number of arrays currently held in the pool.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the maximum number of arrays the pool will hold.
+	 *
+	 * @return The maximum number of arrays the pool will hold.
+	 */
+	public int getCapacity() {
+		return arrays.length;
+	}
+
+	/**
+	 * Returns the size of the arrays in the pool.
+	 *
+	 * @return The size of the arrays in the pool.
+	 */
+	public int getArraySize() {
+		return arraySize;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[array size: " + arraySize + " size: " + size() +
+				                            " capacity: " + arrays.length + ']';
+	}
+
+}
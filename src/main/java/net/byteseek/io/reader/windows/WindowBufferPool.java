@@ -0,0 +1,165 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.windows;
+
+import java.nio.ByteBuffer;
+
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A bounded pool of direct ByteBuffers of a fixed size, which a {@link net.byteseek.io.reader.WindowReader}
+ * can read the buffers of its {@link ByteBufferWindow}s into.  Once a Window has left the cache
+ * of the reader, its buffer can be recycled back into the pool and handed out again to back
+ * a new Window, rather than allocating a new direct buffer for every Window read.
+ * <p>
+ * Allocating direct buffers is far slower than allocating arrays, and the memory they use
+ * is only released once the garbage collector finds them, so a scan which allocates a new one
+ * for every window can exhaust the direct memory available long before the heap fills.
+ * <p>
+ * Unlike a {@link WindowArrayPool}, the pool does not allocate buffers itself, as readers
+ * may need them allocated in a particular way, for example aligned to the block size
+ * of a file system.  If no buffer is available from the pool, the reader allocates one.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public final class WindowBufferPool {
+
+	private final int bufferSize;
+	private final ByteBuffer[] buffers;
+	private int size;
+
+	/**
+	 * Constructs a WindowBufferPool holding up to capacity direct buffers of the size given.
+	 *
+	 * @param bufferSize The capacity of the buffers in the pool, which must match the window size of any reader using it.
+	 * @param capacity   The maximum number of unused buffers to hold in the pool.
+	 * @throws IllegalArgumentException if the buffer size or capacity is less than one.
+	 */
+	public WindowBufferPool(final int bufferSize, final int capacity) {
+		ArgUtils.checkPositiveInteger(bufferSize, "bufferSize");
+		ArgUtils.checkPositiveInteger(capacity, "capacity");
+		this.bufferSize = bufferSize;
+		this.buffers = new ByteBuffer[capacity];
+	}
+
+	/**
+	 * Returns a cleared buffer from the pool if one is available, or null if the pool is empty.
+	 * The contents of a recycled buffer are whatever they were when it was recycled.
+	 *
+	 * @return A cleared direct ByteBuffer of the buffer size of this pool, or null if the pool is empty.
+	 */
+	public ByteBuffer borrowBuffer() {
+		final ByteBuffer buffer;
+		synchronized (this) {
+			if (size == 0) {
+				return null;
+			}
+			buffer = buffers[--size];
+			buffers[size] = null;
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool, as long as it is a writable direct buffer with the
+	 * same capacity as the buffers in the pool, it is not already in the pool,
+	 * and the pool is not already full.
+	 * <p>
+	 * The buffer must not be in use by anything else after it has been recycled.
+	 *
+	 * @param buffer The buffer to recycle.
+	 * @return True if the buffer was added to the pool.
+	 */
+	public boolean recycleBuffer(final ByteBuffer buffer) {
+		if (buffer != null && buffer.isDirect() && !buffer.isReadOnly() && buffer.capacity() == bufferSize) {
+			synchronized (this) {
+				if (size < buffers.length) {
+					for (int index = 0; index < size; index++) {
+						if (buffers[index] == buffer) {
+							return false;
+						}
+					}
+					buffers[size++] = buffer;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all the buffers currently held in the pool.
+	 */
+	public synchronized void clear() {
+		for (int index = 0; index < size; index++) {
+			buffers[index] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of buffers currently held in the pool.
+	 *
+	 * @return The number of buffers currently held in the pool.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the maximum number of buffers the pool will hold.
+	 *
+	 * @return The maximum number of buffers the pool will hold.
+	 */
+	public int getCapacity() {
+		return buffers.length;
+	}
+
+	/**
+	 * Returns the capacity of the buffers in the pool.
+	 *
+	 * @return The capacity of the buffers in the pool.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[buffer size: " + bufferSize + " size: " + size() +
+				                            " capacity: " + buffers.length + ']';
+	}
+
+}
@@ -37,5 +37,18 @@
  * to a byte array containing the data.  SoftWindows use a SoftReference to the
  * array, and have an implementation of SoftWindowRecovery to re-load the data if
  * the garbage collector has reclaimed it.
+ * <p>
+ * A ByteBufferWindow wraps a region of a ByteBuffer, such as a memory mapped file,
+ * reading bytes directly from the buffer.  It only copies its data into a byte array
+ * if an array is requested from it.
+ * <p>
+ * Windows whose bytes are held in a ByteBuffer implement the BufferWindow interface,
+ * which lets searchers and matchers read from the buffer directly.  The buffer can be
+ * a direct buffer, so window memory does not have to live on the Java heap.
+ * <p>
+ * A WindowArrayPool holds a bounded number of byte arrays which readers can create
+ * HardWindows from, so the arrays of windows freed from a cache can be reused.
+ * <p>
+ * An OverlapWindow also holds the bytes following it in its array, up to a fixed overlap.
  */
 package net.byteseek.io.reader.windows;
\ No newline at end of file
@@ -55,12 +55,19 @@ import net.byteseek.utils.ArgUtils;
  * <p>
  * For very short lists of SequenceMatchers, it is possible that it may even be 
  * faster than more complex MultiSequenceMatchers.
+ * <p>
+ * Matching backwards reads the bytes backwards from the match position, as the
+ * {@link TrieMultiSequenceMatcher} does, so a sequence matches backwards if its
+ * reverse ends at the match position.  A {@link MultiSequenceReverseMatcher} over
+ * this matcher therefore matches backwards the original sequences ending there,
+ * which is how the multi-sequence searchers verify matches when searching forwards.
  *
  * @author Matt Palmer.
  */
 public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
 
     private final List<SequenceMatcher> matchers;
+    private final List<SequenceMatcher> reversedMatchers;
     private final int minimumLength;
     private final int maximumLength;
 
@@ -86,6 +93,7 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
             final SequenceMatcher sequence = new ByteSequenceMatcher(bytes);
             matchers.add(sequence);
         }
+        reversedMatchers = MultiSequenceUtils.reverseMatchers(matchers);
         if (matchers.isEmpty()) {
             minimumLength = 0;
             maximumLength = 0;
@@ -120,6 +128,7 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
         for (final SequenceMatcher matcher : matchers) {
             ArgUtils.checkNullObject(matcher, "a matcher in the matchersToUse collection");
         }
+        reversedMatchers = MultiSequenceUtils.reverseMatchers(matchers);
         if (matchers.isEmpty()) {
             minimumLength = 0;
             maximumLength = 0;
@@ -165,10 +174,9 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
             final int matchPosition) {
         List<SequenceMatcher> result = Collections.emptyList();         
         final long noOfBytes = bytes.length;
-        //FIXME: bounds checking doesn't look right.
-        if (matchPosition >= minimumLength - 1 && matchPosition + minimumLength < noOfBytes) {
+        if (matchPosition >= 0 && matchPosition + minimumLength <= noOfBytes) {
             final List<SequenceMatcher> localMatchers = matchers;
-            if (matchPosition + maximumLength < noOfBytes) {
+            if (matchPosition + maximumLength <= noOfBytes) {
                 for (final SequenceMatcher sequence : localMatchers) {
                     if (sequence.matchesNoBoundsCheck(bytes, matchPosition)) {
                         if (result.isEmpty()) {
@@ -200,9 +208,12 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
             final long matchPosition) throws IOException {
         List<SequenceMatcher> result = Collections.emptyList();         
         final List<SequenceMatcher> localMatchers = matchers;
+        final List<SequenceMatcher> localReversed = reversedMatchers;
         final long onePastMatchPosition = matchPosition + 1;
-        for (final SequenceMatcher sequence : localMatchers) {
-            if (sequence.matches(reader, onePastMatchPosition - sequence.length())) {
+        for (int index = 0; index < localReversed.size(); index++) {
+            final SequenceMatcher reversed = localReversed.get(index);
+            if (reversed.matches(reader, onePastMatchPosition - reversed.length())) {
+                final SequenceMatcher sequence = localMatchers.get(index);
                 if (result.isEmpty()) {
                     result = new ArrayList<SequenceMatcher>(2);
                 }
@@ -223,10 +234,13 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
         final int noOfBytes = bytes.length;
         if (matchPosition >= minimumLength - 1 && matchPosition < noOfBytes) {
             final List<SequenceMatcher> localMatchers = matchers;
+            final List<SequenceMatcher> localReversed = reversedMatchers;
             final int onePastMatchPosition = matchPosition + 1;
             if (onePastMatchPosition >= maximumLength) {
-                for (final SequenceMatcher sequence : localMatchers) {
-                    if (sequence.matchesNoBoundsCheck(bytes, onePastMatchPosition - sequence.length())) {
+                for (int index = 0; index < localReversed.size(); index++) {
+                    final SequenceMatcher reversed = localReversed.get(index);
+                    if (reversed.matchesNoBoundsCheck(bytes, onePastMatchPosition - reversed.length())) {
+                        final SequenceMatcher sequence = localMatchers.get(index);
                         if (result.isEmpty()) {
                             result = new ArrayList<SequenceMatcher>(2);
                         }
@@ -234,8 +248,10 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
                     }
                 }
             } else {
-                for (final SequenceMatcher sequence : localMatchers) {
-                    if (sequence.matches(bytes, onePastMatchPosition - sequence.length())) {
+                for (int index = 0; index < localReversed.size(); index++) {
+                    final SequenceMatcher reversed = localReversed.get(index);
+                    if (reversed.matches(bytes, onePastMatchPosition - reversed.length())) {
+                        final SequenceMatcher sequence = localMatchers.get(index);
                         if (result.isEmpty()) {
                             result = new ArrayList<SequenceMatcher>(2);
                         }
@@ -270,9 +286,9 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
     @Override      
     public SequenceMatcher firstMatch(final byte[] bytes, final int matchPosition) {
         final long noOfBytes = bytes.length;
-        if (matchPosition >= minimumLength - 1 && matchPosition + minimumLength < noOfBytes) {
+        if (matchPosition >= 0 && matchPosition + minimumLength <= noOfBytes) {
             final List<SequenceMatcher> localMatchers = matchers;
-            if (matchPosition + maximumLength < noOfBytes) {
+            if (matchPosition + maximumLength <= noOfBytes) {
                 for (final SequenceMatcher sequence : localMatchers) {
                     if (sequence.matchesNoBoundsCheck(bytes, matchPosition)) {
                         return sequence;
@@ -297,9 +313,12 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
     public SequenceMatcher firstMatchBackwards(final WindowReader reader, 
             final long matchPosition) throws IOException {
         final List<SequenceMatcher> localMatchers = matchers;
+        final List<SequenceMatcher> localReversed = reversedMatchers;
         final long onePastMatchPosition = matchPosition + 1;
-        for (final SequenceMatcher sequence : localMatchers) {
-            if (sequence.matches(reader, onePastMatchPosition - sequence.length())) {
+        for (int index = 0; index < localReversed.size(); index++) {
+            final SequenceMatcher reversed = localReversed.get(index);
+            if (reversed.matches(reader, onePastMatchPosition - reversed.length())) {
+                final SequenceMatcher sequence = localMatchers.get(index);
                 return sequence;
             }
         }            
@@ -315,16 +334,21 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
         final int noOfBytes = bytes.length;
         if (matchPosition >= minimumLength - 1 && matchPosition < noOfBytes) {
             final List<SequenceMatcher> localMatchers = matchers;
+            final List<SequenceMatcher> localReversed = reversedMatchers;
             final int onePastMatchPosition = matchPosition + 1;
             if (onePastMatchPosition >= maximumLength) {
-                for (final SequenceMatcher sequence : localMatchers) {
-                    if (sequence.matchesNoBoundsCheck(bytes, onePastMatchPosition - sequence.length())) {
+                for (int index = 0; index < localReversed.size(); index++) {
+                    final SequenceMatcher reversed = localReversed.get(index);
+                    if (reversed.matchesNoBoundsCheck(bytes, onePastMatchPosition - reversed.length())) {
+                        final SequenceMatcher sequence = localMatchers.get(index);
                         return sequence;
                     }
                 }
             } else {
-                for (final SequenceMatcher sequence : localMatchers) {
-                    if (sequence.matches(bytes, onePastMatchPosition - sequence.length())) {
+                for (int index = 0; index < localReversed.size(); index++) {
+                    final SequenceMatcher reversed = localReversed.get(index);
+                    if (reversed.matches(bytes, onePastMatchPosition - reversed.length())) {
+                        final SequenceMatcher sequence = localMatchers.get(index);
                         return sequence;
                     }
                 }            
@@ -356,9 +380,9 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
     @Override
     public boolean matches(final byte[] bytes, final int matchPosition) {
         final int noOfBytes = bytes.length;
-        if (matchPosition >= minimumLength - 1 && matchPosition + minimumLength < noOfBytes) {
+        if (matchPosition >= 0 && matchPosition + minimumLength <= noOfBytes) {
             final List<SequenceMatcher> localMatchers = matchers;
-            if (matchPosition + maximumLength < noOfBytes) {
+            if (matchPosition + maximumLength <= noOfBytes) {
                 for (final SequenceMatcher sequence : localMatchers) {
                     if (sequence.matchesNoBoundsCheck(bytes, matchPosition)) {
                         return true;
@@ -381,13 +405,13 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
      */ 
     @Override
     public boolean matchesBackwards(final WindowReader reader, final long matchPosition) throws IOException { 
-        final List<SequenceMatcher> localMatchers = matchers;
+        final List<SequenceMatcher> localReversed = reversedMatchers;
         final long onePastMatchPosition = matchPosition + 1;
-        for (final SequenceMatcher sequence : localMatchers) {
-            if (sequence.matches(reader, onePastMatchPosition - sequence.length())) {
+        for (final SequenceMatcher reversed : localReversed) {
+            if (reversed.matches(reader, onePastMatchPosition - reversed.length())) {
                 return true;
             }
-        }            
+        }
         return false; 
     }
 
@@ -399,20 +423,20 @@ public final class ListMultiSequenceMatcher implements MultiSequenceMatcher {
     public boolean matchesBackwards(final byte[] bytes, final int matchPosition) {
         final int noOfBytes = bytes.length;
         if (matchPosition >= minimumLength - 1 && matchPosition < noOfBytes) {
-            final List<SequenceMatcher> localMatchers = matchers;
+            final List<SequenceMatcher> localReversed = reversedMatchers;
             final int onePastMatchPosition = matchPosition + 1;
             if (onePastMatchPosition >= maximumLength) {
-                for (final SequenceMatcher sequence : localMatchers) {
-                    if (sequence.matchesNoBoundsCheck(bytes, onePastMatchPosition - sequence.length())) {
+                for (final SequenceMatcher reversed : localReversed) {
+                    if (reversed.matchesNoBoundsCheck(bytes, onePastMatchPosition - reversed.length())) {
                         return true;
                     }
                 }
             } else {
-                for (final SequenceMatcher sequence : localMatchers) {
-                    if (sequence.matches(bytes, onePastMatchPosition - sequence.length())) {
+                for (final SequenceMatcher reversed : localReversed) {
+                    if (reversed.matches(bytes, onePastMatchPosition - reversed.length())) {
                         return true;
                     }
-                }            
+                }
             }
         }
         return false; 
@@ -32,6 +32,7 @@
 package net.byteseek.matcher.sequence;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -40,6 +41,7 @@ import java.util.List;
 import java.util.NoSuchElementException;
 
 import net.byteseek.utils.ByteUtils;
+import net.byteseek.io.reader.windows.BufferWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.bytes.ByteMatcher;
@@ -454,11 +456,22 @@ public final class ByteMatcherSequenceMatcher implements SequenceMatcher {
         while (window != null) {
             final int offset = reader.getWindowOffset(matchPosition + bytesMatchedSoFar);
             final int endPos = Math.min(window.length(), offset + localLength - bytesMatchedSoFar);
-            final byte[] array = window.getArray();
-            for (int windowPos = offset; windowPos < endPos; windowPos++) {
-                final ByteMatcher byteMatcher = matchList[checkPos++];
-                if (!byteMatcher.matches(array[windowPos])) {
-                    return false;
+            if (window instanceof BufferWindow) {
+                // Read directly from the window buffer, rather than copying it into an array:
+                final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer();
+                for (int windowPos = offset; windowPos < endPos; windowPos++) {
+                    final ByteMatcher byteMatcher = matchList[checkPos++];
+                    if (!byteMatcher.matches(buffer.get(windowPos))) {
+                        return false;
+                    }
+                }
+            } else {
+                final byte[] array = window.getArray();
+                for (int windowPos = offset; windowPos < endPos; windowPos++) {
+                    final ByteMatcher byteMatcher = matchList[checkPos++];
+                    if (!byteMatcher.matches(array[windowPos])) {
+                        return false;
+                    }
                 }
             }
             if (checkPos >= matchEnd) {
@@ -928,15 +941,25 @@ public final class ByteMatcherSequenceMatcher implements SequenceMatcher {
             int matchPos = matchEnd;
             int bytesMatchedSoFar = 0;
             while (window != null) {
-                final byte[] source = window.getArray();            
                 final int offset = reader.getWindowOffset(matchPosition + bytesMatchedSoFar);
                 final int finalWindowIndex = window.length();
                 final int finalMatchIndex = offset + matchLength - bytesMatchedSoFar;
                 final int sourceEnd = finalWindowIndex < finalMatchIndex?
                                       finalWindowIndex : finalMatchIndex;
-                for (int sourcePos = offset; sourcePos < sourceEnd; sourcePos++) {
-                    if (!matchArray[matchPos--].matches(source[sourcePos])) {
-                        return false;
+                if (window instanceof BufferWindow) {
+                    // Read directly from the window buffer, rather than copying it into an array:
+                    final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer();
+                    for (int sourcePos = offset; sourcePos < sourceEnd; sourcePos++) {
+                        if (!matchArray[matchPos--].matches(buffer.get(sourcePos))) {
+                            return false;
+                        }
+                    }
+                } else {
+                    final byte[] source = window.getArray();
+                    for (int sourcePos = offset; sourcePos < sourceEnd; sourcePos++) {
+                        if (!matchArray[matchPos--].matches(source[sourcePos])) {
+                            return false;
+                        }
                     }
                 }
                 if (matchPos < matchStart) {
@@ -32,6 +32,7 @@
 package net.byteseek.matcher.sequence;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -39,6 +40,8 @@ import java.util.List;
 import java.util.NoSuchElementException;
 
 import net.byteseek.utils.ByteUtils;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.OverlapWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.bytes.ByteMatcher;
@@ -298,15 +301,26 @@ public final class ByteSequenceMatcher implements SequenceMatcher {
         int matchPos = matchStart;
         int bytesMatchedSoFar = 0;
         while (window != null) {
-            final byte[] source = window.getArray();    
             final int offset = reader.getWindowOffset(matchPosition + bytesMatchedSoFar);
-            final int finalWindowIndex = window.length();
+            // The array of an OverlapWindow also holds the bytes following the window:
+            final int finalWindowIndex = OverlapWindow.getSearchableLength(window);
             final int finalMatchIndex = offset + matchLength - bytesMatchedSoFar;
             final int sourceEnd = finalWindowIndex < finalMatchIndex?
                                   finalWindowIndex : finalMatchIndex;
-            for (int sourcePos = offset; sourcePos < sourceEnd; sourcePos++) {
-                if (source[sourcePos] != matchArray[matchPos++]) {
-                    return false;
+            if (window instanceof BufferWindow) {
+                // Read directly from the window buffer, rather than copying it into an array:
+                final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer();
+                for (int sourcePos = offset; sourcePos < sourceEnd; sourcePos++) {
+                    if (buffer.get(sourcePos) != matchArray[matchPos++]) {
+                        return false;
+                    }
+                }
+            } else {
+                final byte[] source = window.getArray();
+                for (int sourcePos = offset; sourcePos < sourceEnd; sourcePos++) {
+                    if (source[sourcePos] != matchArray[matchPos++]) {
+                        return false;
+                    }
                 }
             }
             if (matchPos >= matchEnd) {
@@ -589,15 +603,26 @@ public final class ByteSequenceMatcher implements SequenceMatcher {
             int matchPos = matchEnd;
             int bytesMatchedSoFar = 0;
             while (window != null) {
-                final byte[] source = window.getArray();            
                 final int offset = reader.getWindowOffset(matchPosition + bytesMatchedSoFar);
-                final int finalWindowIndex = window.length();
+                // The array of an OverlapWindow also holds the bytes following the window:
+                final int finalWindowIndex = OverlapWindow.getSearchableLength(window);
                 final int finalMatchIndex = offset + matchLength - bytesMatchedSoFar;
                 final int sourceEnd = finalWindowIndex < finalMatchIndex?
                                       finalWindowIndex : finalMatchIndex;
-                for (int sourcePos = offset; sourcePos < sourceEnd; sourcePos++) {
-                    if (source[sourcePos] != matchArray[matchPos--]) {
-                        return false;
+                if (window instanceof BufferWindow) {
+                    // Read directly from the window buffer, rather than copying it into an array:
+                    final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer();
+                    for (int sourcePos = offset; sourcePos < sourceEnd; sourcePos++) {
+                        if (buffer.get(sourcePos) != matchArray[matchPos--]) {
+                            return false;
+                        }
+                    }
+                } else {
+                    final byte[] source = window.getArray();
+                    for (int sourcePos = offset; sourcePos < sourceEnd; sourcePos++) {
+                        if (source[sourcePos] != matchArray[matchPos--]) {
+                            return false;
+                        }
                     }
                 }
                 if (matchPos < matchStart) {
@@ -0,0 +1,320 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher;
+
+import java.io.IOException;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.byteseek.io.reader.AsyncWindowReader;
+import net.byteseek.io.reader.CompletionFuture;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * Searches an {@link AsyncWindowReader} forwards with a {@link Searcher}, without blocking
+ * any thread while windows are read.
+ * <p>
+ * The search suspends at window boundaries.  It asks the reader for the windows it needs
+ * next, and resumes on the thread which completes the last of them, so many searches can
+ * share a small pool of threads without a thread blocked for each one.  Each step searches
+ * up to the end of one window, once the windows holding the longest match which could
+ * start in it have arrived, so the searcher itself never has to wait for a window.
+ * <p>
+ * The searcher must have a known maximum match length (see
+ * {@link SearchUtils#getMaximumMatchLength(Searcher)}).  The searcher is used by each
+ * search in turn, so it must be safe to use from more than one thread, as the searchers
+ * in this library are once they have been prepared.
+ *
+ * @param <T> The type of object returned on a match by the Searcher.
+ * @author Matt Palmer
+ */
+public final class AsyncSearcher<T> {
+
+    private final Searcher<T> searcher;
+    private final int maximumMatchLength;
+
+
+    /**
+     * Constructs an AsyncSearcher which searches with the searcher given.
+     *
+     * @param searcher The searcher to search with.
+     * @throws IllegalArgumentException if the searcher is null, or its maximum match length is not known.
+     */
+    public AsyncSearcher(final Searcher<T> searcher) {
+        this.maximumMatchLength = SearchUtils.getMaximumMatchLength(searcher);
+        this.searcher = searcher;
+        searcher.prepareForwards();
+    }
+
+
+    /**
+     * Searches forwards from the position given to the end of the reader, returning
+     * a Future which completes with the results at the first position which matches,
+     * or with no results if there is no match.
+     *
+     * @param reader       The reader to search in.
+     * @param fromPosition The position to search forwards from.
+     * @return A Future which completes with the search results.
+     * @throws IllegalArgumentException if the reader is null.
+     */
+    public Future<List<SearchResult<T>>> searchForwards(final AsyncWindowReader reader, final long fromPosition) {
+        final CompletionFuture<List<SearchResult<T>>> future = new CompletionFuture<List<SearchResult<T>>>();
+        searchForwards(reader, fromPosition, Long.MAX_VALUE, null, future);
+        return future;
+    }
+
+
+    /**
+     * Searches forwards between the positions given, passing the results at the first
+     * position which matches, or no results if there is no match, to the handler.
+     *
+     * @param <A>          The type of the attachment.
+     * @param reader       The reader to search in.
+     * @param fromPosition The position to search forwards from.
+     * @param toPosition   The last position a match can start at.
+     * @param attachment   An object to pass to the handler, which can be null.
+     * @param handler      The handler to pass the results, or any failure, to.
+     * @throws IllegalArgumentException if the reader or handler is null.
+     */
+    public <A> void searchForwards(final AsyncWindowReader reader, final long fromPosition, final long toPosition,
+                                   final A attachment,
+                                   final CompletionHandler<List<SearchResult<T>>, ? super A> handler) {
+        ArgUtils.checkNullObject(reader, "reader");
+        ArgUtils.checkNullObject(handler, "handler");
+        new ForwardSearch<A>(reader, fromPosition > 0 ? fromPosition : 0, toPosition, attachment, handler).resume();
+    }
+
+
+    /**
+     * Returns the searcher used to search.
+     *
+     * @return The searcher used to search.
+     */
+    public Searcher<T> getSearcher() {
+        return searcher;
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[searcher: " + searcher + ']';
+    }
+
+
+    /**
+     * The state of one search, which is only ever advanced by one thread at a time.
+     */
+    private final class ForwardSearch<A> implements CompletionHandler<Window, AtomicInteger> {
+
+        private static final int WAITING   = 0;
+        private static final int SUSPENDED = 1;
+        private static final int ARRIVED   = 2;
+
+        private final AsyncWindowReader reader;
+        private final long toPosition;
+        private final A attachment;
+        private final CompletionHandler<List<SearchResult<T>>, ? super A> handler;
+        private final LoadedWindows loaded;
+        private long searchPosition;
+        private boolean endOfData;
+
+        ForwardSearch(final AsyncWindowReader reader, final long fromPosition, final long toPosition,
+                      final A attachment, final CompletionHandler<List<SearchResult<T>>, ? super A> handler) {
+            this.reader = reader;
+            this.toPosition = toPosition;
+            this.attachment = attachment;
+            this.handler = handler;
+            this.loaded = new LoadedWindows(reader);
+            this.searchPosition = fromPosition;
+        }
+
+        /**
+         * Searches each window whose matches can be found in the windows loaded, until
+         * there is a result, the search ends, or a window must be read.  If a read completes
+         * before the request for it returns, the search carries on in the same loop rather
+         * than recursing, so a run of cached windows does not build up the stack.
+         */
+        void resume() {
+            try {
+                while (true) {
+                    if (searchPosition > toPosition) {
+                        handler.completed(SearchUtils.<T>noResults(), attachment);
+                        return;
+                    }
+                    loaded.removeBefore(searchPosition);
+                    final long nextWindowPosition = nextWindowNeeded();
+                    if (nextWindowPosition < 0) {
+                        if (loaded.isEmpty()) {
+                            handler.completed(SearchUtils.<T>noResults(), attachment);
+                            return;
+                        }
+                        final Window window = loaded.first();
+                        final long windowEnd = window.getWindowPosition() + window.length() - 1;
+                        final long searchTo = windowEnd < toPosition ? windowEnd : toPosition;
+                        final List<SearchResult<T>> results = searcher.searchForwards(loaded, searchPosition, searchTo);
+                        if (!results.isEmpty()) {
+                            handler.completed(results, attachment);
+                            return;
+                        }
+                        searchPosition = searchTo + 1;
+                    } else {
+                        final AtomicInteger state = new AtomicInteger(WAITING);
+                        reader.getWindow(nextWindowPosition, state, this);
+                        if (state.compareAndSet(WAITING, SUSPENDED)) {
+                            return; // the thread completing the read resumes the search.
+                        }
+                    }
+                }
+            } catch (final IOException ex) {
+                handler.failed(ex, attachment);
+            } catch (final RuntimeException ex) {
+                handler.failed(ex, attachment);
+            }
+        }
+
+        @Override
+        public void completed(final Window window, final AtomicInteger state) {
+            if (window == null) {
+                endOfData = true;
+            } else {
+                loaded.add(window);
+            }
+            if (!state.compareAndSet(WAITING, ARRIVED)) {
+                resume();
+            }
+        }
+
+        @Override
+        public void failed(final Throwable exc, final AtomicInteger state) {
+            handler.failed(exc, attachment);
+        }
+
+        /**
+         * Returns the position of the next window to read before the window at the search
+         * position can be searched, or -1 if the windows needed are loaded.  The search may
+         * read up to one byte past a match starting at the end of the window.
+         */
+        private long nextWindowNeeded() {
+            if (loaded.isEmpty()) {
+                return endOfData ? -1 : searchPosition;
+            }
+            final Window first = loaded.first();
+            final long lastPositionRead = first.getWindowPosition() + first.length() - 1 + maximumMatchLength;
+            final long nextPosition = loaded.last().getNextWindowPosition();
+            return endOfData || nextPosition > lastPositionRead ? -1 : nextPosition;
+        }
+    }
+
+
+    /**
+     * A WindowReader over the contiguous windows loaded by a search, which the
+     * searcher reads synchronously.
+     */
+    private static final class LoadedWindows implements WindowReader {
+
+        private final AsyncWindowReader reader;
+        private final List<Window> windows = new ArrayList<Window>(4);
+
+        LoadedWindows(final AsyncWindowReader reader) {
+            this.reader = reader;
+        }
+
+        void add(final Window window) {
+            windows.add(window);
+        }
+
+        void removeBefore(final long position) {
+            int remove = 0;
+            while (remove < windows.size() && windows.get(remove).getNextWindowPosition() <= position) {
+                remove++;
+            }
+            windows.subList(0, remove).clear();
+        }
+
+        boolean isEmpty() {
+            return windows.isEmpty();
+        }
+
+        Window first() {
+            return windows.get(0);
+        }
+
+        Window last() {
+            return windows.get(windows.size() - 1);
+        }
+
+        @Override
+        public Window getWindow(final long position) {
+            for (int i = 0; i < windows.size(); i++) {
+                final Window window = windows.get(i);
+                if (position >= window.getWindowPosition() && position < window.getNextWindowPosition()) {
+                    return window;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public int readByte(final long position) throws IOException {
+            final Window window = getWindow(position);
+            return window == null ? -1 : window.getByte(reader.getWindowOffset(position)) & 0xFF;
+        }
+
+        @Override
+        public int getWindowOffset(final long position) {
+            return reader.getWindowOffset(position);
+        }
+
+        @Override
+        public long length() throws IOException {
+            return reader.length();
+        }
+
+        @Override
+        public Iterator<Window> iterator() {
+            return Collections.unmodifiableList(windows).iterator();
+        }
+
+        @Override
+        public void close() {
+            // The windows belong to the asynchronous reader, which is closed by its owner.
+        }
+    }
+
+}
@@ -38,6 +38,11 @@ import java.util.List;
 
 import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.bytes.ByteMatcherSearcher;
+import net.byteseek.searcher.bytes.ByteSearcher;
+import net.byteseek.searcher.multisequence.AbstractMultiSequenceSearcher;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.utils.ArgUtils;
 
 /**
  * A static utility class holding useful methods in processing searches and
@@ -270,4 +275,33 @@ public final class SearchUtils {
 		return newResults;
 	}
 
+	/**
+	 * Returns the maximum length of a match found by a {@link Searcher}, which bounds how
+	 * far behind the furthest byte read a forward search can look.  This can be used as
+	 * the horizon of a {@link net.byteseek.io.reader.cache.HorizonCache} to search
+	 * a stream forwards in bounded memory.
+	 * <p>
+	 * The length is known for sequence, multi-sequence and byte searchers.  It is
+	 * not known for a {@link MatcherSearcher}, as a Matcher can match a variable length.
+	 *
+	 * @param searcher
+	 *            The Searcher to get the maximum match length of.
+	 * @return The maximum length of a match found by the Searcher.
+	 * @throws IllegalArgumentException
+	 *             if the searcher is null, or the maximum length of its matches is not known.
+	 */
+	public static int getMaximumMatchLength(final Searcher<?> searcher) {
+		ArgUtils.checkNullObject(searcher, "searcher");
+		if (searcher instanceof AbstractSequenceSearcher) {
+			return ((AbstractSequenceSearcher) searcher).getMatcher().length();
+		}
+		if (searcher instanceof AbstractMultiSequenceSearcher) {
+			return ((AbstractMultiSequenceSearcher) searcher).getMatcher().getMaximumLength();
+		}
+		if (searcher instanceof ByteSearcher || searcher instanceof ByteMatcherSearcher) {
+			return 1;
+		}
+		throw new IllegalArgumentException("The maximum match length of the searcher is not known: " + searcher);
+	}
+
 }
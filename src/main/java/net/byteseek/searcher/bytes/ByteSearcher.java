@@ -31,6 +31,7 @@
 
 package net.byteseek.searcher.bytes;
 
+import net.byteseek.io.reader.windows.BufferWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.bytes.OneByteMatcher;
@@ -40,6 +41,7 @@ import net.byteseek.searcher.SearchUtils;
 import net.byteseek.utils.ArgUtils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -78,7 +80,6 @@ public final class ByteSearcher extends AbstractSearcher<Byte> {
         Window window;
         // While we have a window to search in:
         while ( searchPosition <= toPosition && (window = reader.getWindow(searchPosition)) != null) {
-            final byte[] array = window.getArray();
 
             // Determine start and end points in the search for this window:
             final int  startWindowSearchPosition = reader.getWindowOffset(searchPosition);
@@ -93,12 +94,26 @@ public final class ByteSearcher extends AbstractSearcher<Byte> {
             //      the array search method anyway, plus the array search method does bounds
             //      checking on the result, which may enable array bounds optimizations.
 
-            // Search in the window array:
-            for (int arraySearchPosition = startWindowSearchPosition;
-                     arraySearchPosition <= endWindowSearchPosition; arraySearchPosition++) {
-                if (array[arraySearchPosition] == searchByte) {
-                    final long matchPosition = searchPosition + arraySearchPosition - startWindowSearchPosition;
-                    return SearchUtils.singleResult(matchPosition, resultValue);
+            if (window instanceof BufferWindow) {
+                // Read directly from the window buffer, rather than copying it into an array:
+                final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer();
+                // Search in the window buffer:
+                for (int arraySearchPosition = startWindowSearchPosition;
+                         arraySearchPosition <= endWindowSearchPosition; arraySearchPosition++) {
+                    if (buffer.get(arraySearchPosition) == searchByte) {
+                        final long matchPosition = searchPosition + arraySearchPosition - startWindowSearchPosition;
+                        return SearchUtils.singleResult(matchPosition, resultValue);
+                    }
+                }
+            } else {
+                final byte[] array = window.getArray();
+                // Search in the window array:
+                for (int arraySearchPosition = startWindowSearchPosition;
+                         arraySearchPosition <= endWindowSearchPosition; arraySearchPosition++) {
+                    if (array[arraySearchPosition] == searchByte) {
+                        final long matchPosition = searchPosition + arraySearchPosition - startWindowSearchPosition;
+                        return SearchUtils.singleResult(matchPosition, resultValue);
+                    }
                 }
             }
 
@@ -132,7 +147,6 @@ public final class ByteSearcher extends AbstractSearcher<Byte> {
         Window window;
         // While we have a window to search in:
         while ( searchPosition >= toPosition && (window = reader.getWindow(searchPosition)) != null) {
-            final byte[] array = window.getArray();
 
             // Calculate safe start and end positions in the window array:
             final int  startWindowSearchPosition = reader.getWindowOffset(searchPosition);
@@ -145,12 +159,26 @@ public final class ByteSearcher extends AbstractSearcher<Byte> {
             //      the array search method anyway, plus the array search method does bounds
             //      checking on the result, which may enable array bounds optimizations.
 
-            // Search in the window array:
-            for (int arraySearchPosition = startWindowSearchPosition;
-                 arraySearchPosition >= endWindowSearchPosition; arraySearchPosition--) {
-                if (array[arraySearchPosition] == searchByte) {
-                    final long matchPosition = searchPosition - (startWindowSearchPosition - arraySearchPosition);
-                    return SearchUtils.singleResult(matchPosition, resultValue);
+            if (window instanceof BufferWindow) {
+                // Read directly from the window buffer, rather than copying it into an array:
+                final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer();
+                // Search in the window buffer:
+                for (int arraySearchPosition = startWindowSearchPosition;
+                     arraySearchPosition >= endWindowSearchPosition; arraySearchPosition--) {
+                    if (buffer.get(arraySearchPosition) == searchByte) {
+                        final long matchPosition = searchPosition - (startWindowSearchPosition - arraySearchPosition);
+                        return SearchUtils.singleResult(matchPosition, resultValue);
+                    }
+                }
+            } else {
+                final byte[] array = window.getArray();
+                // Search in the window array:
+                for (int arraySearchPosition = startWindowSearchPosition;
+                     arraySearchPosition >= endWindowSearchPosition; arraySearchPosition--) {
+                    if (array[arraySearchPosition] == searchByte) {
+                        final long matchPosition = searchPosition - (startWindowSearchPosition - arraySearchPosition);
+                        return SearchUtils.singleResult(matchPosition, resultValue);
+                    }
                 }
             }
 
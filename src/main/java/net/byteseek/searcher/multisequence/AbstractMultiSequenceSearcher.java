@@ -34,6 +34,7 @@ package net.byteseek.searcher.multisequence;
 import java.io.IOException;
 import java.util.List;
 
+import net.byteseek.io.reader.windows.OverlapWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.multisequence.MultiSequenceMatcher;
@@ -62,6 +63,11 @@ import net.byteseek.utils.ArgUtils;
  * </ul>
  * which require the implementor to use the reader interface on the sequence for
  * matching (or otherwise provide for searching sequences which cross window boundaries).
+ * <p>
+ * Searchers which can read directly from the {@link java.nio.ByteBuffer} of a
+ * {@link net.byteseek.io.reader.windows.BufferWindow} can override {@link #searchesBuffer(Window)},
+ * so that those windows are always searched using these methods, rather than by
+ * asking them for a byte array, which may copy the window onto the heap.
  * 
  * @author Matt Palmer
  */
@@ -92,6 +98,23 @@ public abstract class AbstractMultiSequenceSearcher extends AbstractSearcher<Seq
     public MultiSequenceMatcher getMatcher() {
         return sequences;
     }
+
+    
+    /**
+     * Returns true if a window should be searched using the doSearchForwards and
+     * doSearchBackwards methods, reading directly from its buffer, rather than by
+     * searching the byte array of the window.
+     * <p>
+     * This implementation always returns false.  Searchers whose doSearch methods read
+     * directly from {@link net.byteseek.io.reader.windows.BufferWindow}s should override
+     * it to return true for those windows.
+     *
+     * @param window The window to search.
+     * @return true if the window should be searched using the doSearch methods.
+     */
+    protected boolean searchesBuffer(final Window window) {
+        return false;
+    }
     
     
     /**
@@ -131,11 +154,16 @@ public abstract class AbstractMultiSequenceSearcher extends AbstractSearcher<Seq
             final int windowLength = window.length();
             final int arrayStartPosition = reader.getWindowOffset(searchPosition);  
             final int arrayLastPosition = windowLength - 1;             
-            if (arrayStartPosition + longestMatchEndPosition <= arrayLastPosition) {
+            // An OverlapWindow has the bytes following the window in its array too:
+            final int searchableLastPosition = OverlapWindow.getSearchableLength(window) - 1;
+            if (arrayStartPosition + longestMatchEndPosition <= searchableLastPosition &&
+                !searchesBuffer(window)) {
 
                 // Find the last point in the array where the sequence still fits
                 // inside the array, or the toPosition if it is smaller.
-                final int lastMatchingPosition = arrayLastPosition - longestMatchEndPosition;
+                // Matches starting past the end of the window are found in the next window.
+                final int lastMatchingPosition = Math.min(searchableLastPosition - longestMatchEndPosition,
+                                                          arrayLastPosition);
                 final long distanceToEnd = toPosition - windowStartPosition;                
                 final int arrayMaxPosition = distanceToEnd < lastMatchingPosition?
                                        (int) distanceToEnd : lastMatchingPosition; 
@@ -156,6 +184,12 @@ public abstract class AbstractMultiSequenceSearcher extends AbstractSearcher<Seq
                 if (searchPosition > toPosition) {
                     return SearchUtils.noResults();
                 }
+
+                // If the array had every position in the window, there is nothing
+                // left which crosses into the next window:
+                if (lastMatchingPosition == arrayLastPosition) {
+                    continue;
+                }
             }
 
             // From the current search position, the sequence could cross over in to
@@ -252,7 +286,8 @@ public abstract class AbstractMultiSequenceSearcher extends AbstractSearcher<Seq
             // It may not if the start position of the window is already close
             // to the end of the window, or the sequence is long (potentially
             // could be longer than any single window - but mostly won't be):
-            if (searchStartPosition - smallestMatchEndPosition >= searchEndPosition) {
+            final boolean searchBuffer = searchesBuffer(window);
+            if (searchStartPosition - smallestMatchEndPosition >= searchEndPosition && !searchBuffer) {
 
                 // Search backwards in the byte array of the window:
                 final byte[] array = window.getArray();
@@ -282,7 +317,11 @@ public abstract class AbstractMultiSequenceSearcher extends AbstractSearcher<Seq
             
             // Search back to the first position in the previous window where any 
             // of the sequences might still cross over into the current window.
-            final long lastCrossingPosition = windowStartPosition - longestMatchEndPosition;
+            // A buffer which is searched directly is never searched as an array, so just search back to the
+            // start of the window, or the final search position if it comes first.
+            final long lastCrossingPosition = !searchBuffer? windowStartPosition - longestMatchEndPosition :
+                                              finalSearchPosition > windowStartPosition?
+                                              finalSearchPosition : windowStartPosition;
             final List<SearchResult<SequenceMatcher>> readerResult =
                     doSearchBackwards(reader, searchPosition, lastCrossingPosition);
             
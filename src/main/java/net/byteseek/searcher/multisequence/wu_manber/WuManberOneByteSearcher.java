@@ -31,11 +31,14 @@
 package net.byteseek.searcher.multisequence.wu_manber;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
 
+import net.byteseek.io.reader.windows.BufferWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.WindowUtils;
 import net.byteseek.matcher.multisequence.MultiSequenceMatcher;
 import net.byteseek.matcher.sequence.SequenceMatcher;
 import net.byteseek.searcher.SearchResult;
@@ -135,7 +138,6 @@ public class WuManberOneByteSearcher extends AbstractWuManberSearcher {
                (window = reader.getWindow(searchPosition)) != null) {
 
             // Initialise array search:
-            final byte[] array = window.getArray();
             final int arrayStartPosition = reader.getWindowOffset(searchPosition);
             final int arrayEndPosition = window.length() - 1;
             final long distanceToEnd = finalPosition - window.getWindowPosition();     
@@ -143,10 +145,12 @@ public class WuManberOneByteSearcher extends AbstractWuManberSearcher {
                                      (int) distanceToEnd : arrayEndPosition;
             int arraySearchPosition = arrayStartPosition;            
 
-            // Search forwards in this array:
+            // Read from the window array or buffer with the same search limits:
+            final ByteBuffer buffer = WindowUtils.getByteBuffer(window, 0, window.length());
+            // Search forwards in this buffer:
             while (arraySearchPosition <= lastSearchPosition) {
 
-                final int safeShift = safeShifts[array[arraySearchPosition] & 0xFF];
+                final int safeShift = safeShifts[buffer.get(arraySearchPosition) & 0xFF];
                 if (safeShift == 0) {
                     // see if we have a match:
                     final long matchEndPosition = searchPosition + arraySearchPosition - arrayStartPosition;
@@ -238,18 +242,19 @@ public class WuManberOneByteSearcher extends AbstractWuManberSearcher {
                (window = reader.getWindow(searchPosition)) != null) {
 
             // Initialise the window search:
-            final byte[] array = window.getArray();
             final int arrayStartPosition = reader.getWindowOffset(searchPosition);   
             final long distanceToEnd = toPosition - window.getWindowPosition();
             final int lastSearchPosition = distanceToEnd > 0?
                                      (int) distanceToEnd : 0;
             int arraySearchPosition = arrayStartPosition;
 
-            // Search using the byte array for shifts, using the WindowReader
+            // Read from the window array or buffer with the same search limits:
+            final ByteBuffer buffer = WindowUtils.getByteBuffer(window, 0, window.length());
+            // Search using the buffer for shifts, using the WindowReader
             // for verifiying the sequence with the sequences:          
             while (arraySearchPosition >= lastSearchPosition) {
 
-                final int safeShift = safeShifts[array[arraySearchPosition] & 0xFF];
+                final int safeShift = safeShifts[buffer.get(arraySearchPosition) & 0xFF];
                 if (safeShift == 0) {
 
                     // The first byte matched - verify the rest of the sequences.
@@ -273,6 +278,17 @@ public class WuManberOneByteSearcher extends AbstractWuManberSearcher {
 
     }
     
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This searcher reads directly from the buffers of BufferWindows.
+     */
+    @Override
+    protected boolean searchesBuffer(final Window window) {
+        return window instanceof BufferWindow;
+    }
+
+
     @Override
     public String toString() {
     	return getClass().getSimpleName() + "[block size: " + blockSize + " sequences:" + sequences + ']'; 
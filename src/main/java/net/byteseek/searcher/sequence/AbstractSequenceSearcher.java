@@ -34,6 +34,7 @@ package net.byteseek.searcher.sequence;
 import java.io.IOException;
 import java.util.List;
 
+import net.byteseek.io.reader.windows.OverlapWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.sequence.SequenceMatcher;
@@ -61,6 +62,11 @@ import net.byteseek.utils.ArgUtils;
  * </ul>
  * which require the implementor to use the reader interface on the sequence for
  * matching (or otherwise provide for searching sequences which cross window boundaries).
+ * <p>
+ * Searchers which can read directly from the {@link java.nio.ByteBuffer} of a
+ * {@link net.byteseek.io.reader.windows.BufferWindow} can override {@link #searchesBuffer(Window)},
+ * so that those windows are always searched using these methods, rather than by
+ * asking them for a byte array, which may copy the window onto the heap.
  * 
  * @author Matt Palmer
  */
@@ -91,6 +97,23 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
     public SequenceMatcher getMatcher() {
         return matcher;
     }
+
+    
+    /**
+     * Returns true if a window should be searched using the doSearchForwards and
+     * doSearchBackwards methods, reading directly from its buffer, rather than by
+     * searching the byte array of the window.
+     * <p>
+     * This implementation always returns false.  Searchers whose doSearch methods read
+     * directly from {@link net.byteseek.io.reader.windows.BufferWindow}s should override
+     * it to return true for those windows.
+     *
+     * @param window The window to search.
+     * @return true if the window should be searched using the doSearch methods.
+     */
+    protected boolean searchesBuffer(final Window window) {
+        return false;
+    }
     
     
     /**
@@ -131,11 +154,16 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
             final int windowLength = window.length();
             final int arrayStartPosition = reader.getWindowOffset(searchPosition);  
             final int arrayLastPosition = windowLength - 1;             
-            if (arrayStartPosition + lastSequencePosition <= arrayLastPosition) {
+            // An OverlapWindow has the bytes following the window in its array too:
+            final int searchableLastPosition = OverlapWindow.getSearchableLength(window) - 1;
+            if (arrayStartPosition + lastSequencePosition <= searchableLastPosition &&
+                !searchesBuffer(window)) {
 
                 // Find the last point in the array where the sequence still fits
                 // inside the array, or the toPosition if it is smaller.
-                final int lastMatchingPosition = arrayLastPosition - lastSequencePosition;
+                // Matches starting past the end of the window are found in the next window.
+                final int lastMatchingPosition = Math.min(searchableLastPosition - lastSequencePosition,
+                                                          arrayLastPosition);
                 final long distanceToEnd = toPosition - windowStartPosition;                
                 final int arrayMaxPosition = distanceToEnd < lastMatchingPosition?
                                        (int) distanceToEnd : lastMatchingPosition; 
@@ -157,6 +185,12 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
                 if (searchPosition > toPosition) {
                     return SearchUtils.noResults();
                 }
+
+                // If the array had every position in the window, there is nothing
+                // left which crosses into the next window:
+                if (lastMatchingPosition == arrayLastPosition) {
+                    continue;
+                }
             }
 
             // From the current search position, the sequence crosses over in to
@@ -243,11 +277,12 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
             final long windowStartPosition = window.getWindowPosition();
             final int arrayStartSearchPosition = reader.getWindowOffset(searchPosition);              
             final int arrayLastPosition = window.length() - 1;                         
-            
+            final boolean searchBuffer = searchesBuffer(window);
+
             // Does the sequence fit into the searchable bytes of this window 
             // from the current search position?  If it does, we can search
             // directly on the byte array of this window, which is faster:
-            if (arrayStartSearchPosition + lastSequencePosition <= arrayLastPosition) {
+            if (arrayStartSearchPosition + lastSequencePosition <= arrayLastPosition && !searchBuffer) {
 
                 // Search either up to the beginning of the array, or the final
                 // search position, if it happens to fall past the start of this window:
@@ -293,8 +328,14 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
                     windowStartPosition + arrayLastPosition - lastSequencePosition;
             final long firstFitPosition = firstPossibleFitPosition < searchPosition?
                                           firstPossibleFitPosition : searchPosition;
-            final long searchToPosition = firstFitPosition > windowStartPosition?
-                                          firstFitPosition : windowStartPosition;
+            final long windowSearchToPosition = firstFitPosition > windowStartPosition?
+                                                firstFitPosition : windowStartPosition;
+
+            // A buffer which is searched directly is never searched as an array, so search back to the
+            // start of the window, or the final search position if it comes first:
+            final long searchToPosition = !searchBuffer? windowSearchToPosition :
+                                          finalSearchPosition > windowStartPosition?
+                                          finalSearchPosition : windowStartPosition;
             
             final List<SearchResult<SequenceMatcher>> readerResult =
                     doSearchBackwards(reader, searchPosition, searchToPosition);
@@ -32,11 +32,14 @@
 package net.byteseek.searcher.sequence.horspool;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
+import net.byteseek.io.reader.windows.BufferWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.WindowUtils;
 import net.byteseek.matcher.bytes.AnyByteMatcher;
 import net.byteseek.matcher.bytes.ByteMatcher;
 import net.byteseek.matcher.sequence.SequenceMatcher;
@@ -176,27 +179,28 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
                (window = reader.getWindow(searchPosition)) != null) {
             
             // Initialise array search:
-            final byte[] array = window.getArray();
             final int arrayStartPosition = reader.getWindowOffset(searchPosition);
             final int arrayEndPosition = window.length() - 1;
             final int lastMatcherPosition = matcher.length() - 1;
-            final long distanceToEnd = finalPosition - window.getWindowPosition() + lastMatcherPosition;     
+            final long distanceToEnd = toPosition - window.getWindowPosition() + lastMatcherPosition;
             final int lastSearchPosition = distanceToEnd < arrayEndPosition?
                                      (int) distanceToEnd : arrayEndPosition;
             int arraySearchPosition = arrayStartPosition;            
                         
-            // Search forwards in this array:
-            ARRAY_SEARCH: while (arraySearchPosition <= lastSearchPosition) {
+            // Read from the window array or buffer with the same search limits:
+            final ByteBuffer buffer = WindowUtils.getByteBuffer(window, 0, window.length());
+            // Search forwards in this buffer:
+            BUFFER_SEARCH: while (arraySearchPosition <= lastSearchPosition) {
 
                 // Shift forwards until we match the last position in the sequence,
                 // or we run out of search space.
-                byte currentByte = array[arraySearchPosition];
+                byte currentByte = buffer.get(arraySearchPosition);
                 while (!endOfSequence.matches(currentByte)) {
                     arraySearchPosition += safeShifts[currentByte & 0xff];
                     if (arraySearchPosition > lastSearchPosition) {
-                        break ARRAY_SEARCH; // outside the array, move on.
+                        break BUFFER_SEARCH; // outside the buffer, move on.
                     }
-                    currentByte = array[arraySearchPosition];                
+                    currentByte = buffer.get(arraySearchPosition);                
                 }
 
                 // The last byte matched - verify there is a complete match:
@@ -205,7 +209,7 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
                 if (verifier.matches(reader, matchPosition)) {
                     return SearchUtils.singleResult(matchPosition, matcher); // match found.
                 }
-                
+            
                 // No match was found - shift forward by the shift for the current byte:
                 arraySearchPosition += safeShifts[currentByte & 0xff];
             } 
@@ -288,35 +292,36 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
                (window = reader.getWindow(searchPosition))!= null) {
             
             // Initialise the window search:
-            final byte[] array = window.getArray();
             final int arrayStartPosition = reader.getWindowOffset(searchPosition);   
             final long distanceToEnd = toPosition - window.getWindowPosition();
             final int lastSearchPosition = distanceToEnd > 0?
                                      (int) distanceToEnd : 0;
             int arraySearchPosition = arrayStartPosition;
             
-            // Search using the byte array for shifts, using the WindowReader
+            // Read from the window array or buffer with the same search limits:
+            final ByteBuffer buffer = WindowUtils.getByteBuffer(window, 0, window.length());
+            // Search using the buffer for shifts, using the WindowReader
             // for verifiying the sequence with the matcher:          
-            ARRAY_SEARCH: while (arraySearchPosition >= lastSearchPosition) {
-                
+            BUFFER_SEARCH: while (arraySearchPosition >= lastSearchPosition) {
+            
                 // Shift backwards until we match the first position in the sequence,
                 // or we run out of search space.
-                byte currentByte = array[arraySearchPosition];
+                byte currentByte = buffer.get(arraySearchPosition);
                 while (!startOfSequence.matches(currentByte)) {
                     arraySearchPosition -= safeShifts[currentByte & 0xff];
                     if (arraySearchPosition < lastSearchPosition) {
-                        break ARRAY_SEARCH;
+                        break BUFFER_SEARCH;
                     }
-                    currentByte = array[arraySearchPosition];
+                    currentByte = buffer.get(arraySearchPosition);
                 }
-                
+            
                 // The first byte matched - verify there is a complete match.
                 final int totalShift = arrayStartPosition - arraySearchPosition;
                 final long sequencePosition = searchPosition - totalShift;
                 if (verifier == null || verifier.matches(reader, sequencePosition + 1)) {
                     return SearchUtils.singleResult(sequencePosition, matcher); // match found.
                 }
-                
+            
                 // No match was found - shift backward by the shift for the current byte:
                 arraySearchPosition -= safeShifts[currentByte & 0xff];                
             }
@@ -329,6 +334,17 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
     }
 
     
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This searcher reads directly from the buffers of BufferWindows.
+     */
+    @Override
+    protected boolean searchesBuffer(final Window window) {
+        return window instanceof BufferWindow;
+    }
+
+
     /**
      * {@inheritDoc}
      */
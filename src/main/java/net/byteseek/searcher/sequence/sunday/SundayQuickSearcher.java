@@ -32,11 +32,14 @@
 package net.byteseek.searcher.sequence.sunday;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
+import net.byteseek.io.reader.windows.BufferWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.WindowUtils;
 import net.byteseek.matcher.bytes.ByteMatcher;
 import net.byteseek.matcher.sequence.SequenceMatcher;
 import net.byteseek.utils.lazy.DoubleCheckImmutableLazyObject;
@@ -130,7 +133,6 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
                (window = reader.getWindow(searchPosition + length)) != null) {
             
             // Initialise array search:
-            final byte[] array = window.getArray();
             final int arrayStartPosition = reader.getWindowOffset(searchPosition + length);
             final int arrayEndPosition = window.length() - 1;
             final long distanceToEnd = toPosition - window.getWindowPosition() + length ;
@@ -138,28 +140,35 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
                                 (int) distanceToEnd : arrayEndPosition;
             int arraySearchPosition = arrayStartPosition;
             
-            // Search fowards in the array using the reader interface to match.
+            // Read from the window array or buffer with the same search limits:
+            final ByteBuffer buffer = WindowUtils.getByteBuffer(window, 0, window.length());
+            // Search fowards in the buffer using the reader interface to match.
             // The loop does not check the final position, as we shift on the byte
             // after the sequence (so would get an IndexOutOfBoundsException in the final position).
             while (arraySearchPosition < finalPosition) {
                 if (sequence.matches(reader, searchPosition)) {
                     return SearchUtils.singleResult(searchPosition, sequence);
                 }
-                final int shift = safeShifts[array[arraySearchPosition] & 0xFF];
+                final int shift = safeShifts[buffer.get(arraySearchPosition) & 0xFF];
                 searchPosition += shift;
                 arraySearchPosition += shift;
             }
 
             // Check final position if necessary:
-            if (arraySearchPosition == finalPosition ||
-                searchPosition == toPosition) {
+            if (arraySearchPosition == finalPosition) {
                 if (sequence.matches(reader, searchPosition)) {
                     return SearchUtils.singleResult(searchPosition, sequence);
                 }
-                searchPosition += safeShifts[array[arraySearchPosition] & 0xFF];
+                searchPosition += safeShifts[buffer.get(arraySearchPosition) & 0xFF];
             }
         }
 
+        // If there is no window after the sequence, the sequence may still end
+        // at the very end of the reader:
+        if (searchPosition <= toPosition && sequence.matches(reader, searchPosition)) {
+            return SearchUtils.singleResult(searchPosition, sequence);
+        }
+
         return SearchUtils.noResults();
     }
     
@@ -210,7 +219,7 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
             final long fromPosition, final long toPosition ) throws IOException {
         
          // Initialise 
-        final int[] safeShifts = forwardInfo.get();
+        final int[] safeShifts = backwardInfo.get();
         final SequenceMatcher sequence = getMatcher();
         long searchPosition = fromPosition;
         
@@ -223,7 +232,6 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
                (window = reader.getWindow(searchPosition - 1)) != null) {
             
             // Initialise array search:
-            final byte[] array = window.getArray();
             final int arrayStartPosition = reader.getWindowOffset(searchPosition - 1);
             
             // Search to the beginning of the array, or the final search position,
@@ -233,14 +241,16 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
                                          (int) endRelativeToWindow : 0;
             int arraySearchPosition = arrayStartPosition;
             
-            // Search backwards in the array using the reader interface to match.
+            // Read from the window array or buffer with the same search limits:
+            final ByteBuffer buffer = WindowUtils.getByteBuffer(window, 0, window.length());
+            // Search backwards in the buffer using the reader interface to match.
             // The loop does not check the final position, as we shift on the byte
             // before it.
             while (arraySearchPosition > arrayEndSearchPosition) {
                 if (sequence.matches(reader, searchPosition)) {
                     return SearchUtils.singleResult(searchPosition, sequence);
                 }
-                final int shift = safeShifts[array[arraySearchPosition] & 0xFF];
+                final int shift = safeShifts[buffer.get(arraySearchPosition) & 0xFF];
                 searchPosition -= shift;
                 arraySearchPosition -= shift;
             }
@@ -251,14 +261,35 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
                 if (sequence.matches(reader, searchPosition)) {
                     return SearchUtils.singleResult(searchPosition, sequence);
                 }
-                searchPosition -= safeShifts[array[arraySearchPosition] & 0xFF];
+                // The byte to shift on is in the previous window - nothing left to search:
+                if (arraySearchPosition < 0) {
+                    break;
+                }
+                searchPosition -= safeShifts[buffer.get(arraySearchPosition) & 0xFF];
             }
         }
+
+        // If there is no window before the sequence, the sequence may still
+        // start at the very start of the reader:
+        if (searchPosition == 0 && toPosition <= 0 && sequence.matches(reader, 0)) {
+            return SearchUtils.singleResult(0, sequence);
+        }
         
         return SearchUtils.noResults();
     }
 
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This searcher reads directly from the buffers of BufferWindows.
+     */
+    @Override
+    protected boolean searchesBuffer(final Window window) {
+        return window instanceof BufferWindow;
+    }
+
+
     /**
      * {@inheritDoc}
      */
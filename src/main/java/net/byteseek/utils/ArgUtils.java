@@ -285,5 +285,11 @@ public final class ArgUtils {
 		if (number < 1) {
 			throw new IllegalArgumentException(String.format(POSITIVE_INTEGER + ' ' + description, number));		}
 	}
+
+	public static void checkPositiveLong(final long number, final String description) {
+		if (number < 1) {
+			throw new IllegalArgumentException(String.format(POSITIVE_INTEGER + ' ' + description, number));
+		}
+	}
 	
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.SearchUtils;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that readers with adaptive window sizes grow windows when read sequentially,
+ * shrink them when read at random, and always return the bytes of the file.
+ *
+ * @author Matt Palmer
+ */
+public class AdaptiveWindowSizeTest {
+
+	private static final int WINDOW_SIZE = 128;
+	private static final int MAX_WINDOW_SIZE = 4096;
+	private static final String NEEDLE = "needle";
+
+	private File file;
+	private byte[] bytes;
+
+	@Before
+	public void createFile() throws IOException {
+		bytes = new byte[MAX_WINDOW_SIZE * 10 + 1000];
+		new Random(11).nextBytes(bytes);
+		for (int position = 100; position < bytes.length - NEEDLE.length(); position += 1531) {
+			System.arraycopy(NEEDLE.getBytes("US-ASCII"), 0, bytes, position, NEEDLE.length());
+		}
+		file = File.createTempFile("adaptive", ".bin", new File(System.getProperty("user.dir"), "target"));
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaximumSmallerThanWindowSize() throws IOException {
+		final FileReader reader = new FileReader(file, WINDOW_SIZE);
+		try {
+			reader.useAdaptiveWindowSizes(WINDOW_SIZE - 1);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSetAfterReading() throws IOException {
+		final FileReader reader = new FileReader(file, WINDOW_SIZE);
+		try {
+			reader.readByte(0);
+			reader.useAdaptiveWindowSizes(MAX_WINDOW_SIZE);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testSequentialWindowsGrow() throws IOException {
+		final FileReader reader = new FileReader(file, WINDOW_SIZE);
+		reader.useAdaptiveWindowSizes(MAX_WINDOW_SIZE);
+		assertTrue(reader.isAdaptiveWindowSize());
+		try {
+			final List<Integer> lengths = new ArrayList<Integer>();
+			long position = 0;
+			for (final Window window : reader) {
+				assertEquals(position, window.getWindowPosition());
+				assertWindowBytes(window);
+				lengths.add(window.length());
+				position = window.getNextWindowPosition();
+			}
+			assertEquals(bytes.length, position);
+			final int[] expected = {128, 256, 512, 1024, 2048, 4096, 4096};
+			for (int index = 0; index < expected.length; index++) {
+				assertEquals(expected[index], (int) lengths.get(index));
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testRandomAccessShrinks() throws IOException {
+		final FileReader reader = new FileReader(file, WINDOW_SIZE);
+		reader.useAdaptiveWindowSizes(MAX_WINDOW_SIZE);
+		try {
+			for (long position = 0; position < MAX_WINDOW_SIZE * 4; position += WINDOW_SIZE) {
+				reader.getWindow(position);
+			}
+			final long[] probes = {MAX_WINDOW_SIZE * 9 + 5, MAX_WINDOW_SIZE * 7 + 77, MAX_WINDOW_SIZE * 5 + 300,
+								   MAX_WINDOW_SIZE * 8 + 3000, MAX_WINDOW_SIZE * 6 + 1000, MAX_WINDOW_SIZE * 10 + 10};
+			int lastLength = MAX_WINDOW_SIZE;
+			for (final long probe : probes) {
+				final Window window = reader.getWindow(probe);
+				assertWindowBytes(window);
+				assertEquals(probe - window.getWindowPosition(), reader.getWindowOffset(probe));
+				assertTrue(window.length() <= lastLength);
+				lastLength = window.length();
+			}
+			assertEquals(WINDOW_SIZE, lastLength);
+			final Random random = new Random(3);
+			for (int i = 0; i < 2000; i++) {
+				final int position = random.nextInt(bytes.length);
+				assertEquals(bytes[position] & 0xFF, reader.readByte(position));
+			}
+			assertEquals(-1, reader.readByte(bytes.length));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testGrowthClippedByIndexedWindow() throws IOException {
+		final FileReader reader = new FileReader(file, WINDOW_SIZE);
+		reader.useAdaptiveWindowSizes(MAX_WINDOW_SIZE);
+		try {
+			final Window later = reader.getWindow(1536);
+			assertEquals(1536, later.getWindowPosition());
+			assertEquals(WINDOW_SIZE, later.length());
+			final int[] expected = {128, 256, 512, 640};
+			long position = 0;
+			for (final int length : expected) {
+				final Window window = reader.getWindow(position);
+				assertEquals(position, window.getWindowPosition());
+				assertEquals(length, window.length());
+				assertWindowBytes(window);
+				position = window.getNextWindowPosition();
+			}
+			assertEquals(1536, position);
+			assertSame(later, reader.getWindow(position));
+			// The window growing into the later window was clipped to 640 bytes, so a window at
+			// the end it would have had without clipping does not follow on from it:
+			final Window afterClipped = reader.getWindow(1920);
+			assertEquals(1920, afterClipped.getWindowPosition());
+			assertEquals(256, afterClipped.length());
+			assertWindowBytes(afterClipped);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testSearchesFindSameMatches() throws IOException {
+		final Searcher<SequenceMatcher> searcher = new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher(NEEDLE));
+		final List<Long> expected = matchPositions(searcher, new ByteArrayReader(bytes));
+		final FileReader fileReader = new FileReader(file, WINDOW_SIZE);
+		fileReader.useAdaptiveWindowSizes(MAX_WINDOW_SIZE);
+		final PositionalFileReader positionalReader = new PositionalFileReader(file, WINDOW_SIZE);
+		positionalReader.useDirectBuffers(true);
+		positionalReader.useAdaptiveWindowSizes(MAX_WINDOW_SIZE * 2);
+		for (final WindowReader reader : new WindowReader[] {fileReader, positionalReader}) {
+			try {
+				assertEquals(expected, matchPositions(searcher, reader));
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	private void assertWindowBytes(final Window window) throws IOException {
+		final long start = window.getWindowPosition();
+		for (int offset = 0; offset < window.length(); offset++) {
+			assertEquals(bytes[(int) start + offset], window.getByte(offset));
+		}
+	}
+
+	private List<Long> matchPositions(final Searcher<SequenceMatcher> searcher, final WindowReader reader)
+			throws IOException {
+		final List<Long> positions = new ArrayList<Long>();
+		for (final SearchResult<SequenceMatcher> result : SearchUtils.searchAllForwards(searcher, reader)) {
+			positions.add(result.getMatchPosition());
+		}
+		return positions;
+	}
+
+}
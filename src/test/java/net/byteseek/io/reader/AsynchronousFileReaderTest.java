@@ -0,0 +1,130 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.byteseek.io.reader.cache.ConcurrentClockCache;
+import net.byteseek.io.reader.windows.Window;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AsynchronousFileReaderTest {
+
+    private static final int WINDOW_SIZE = 127;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullFile() throws IOException {
+        new AsynchronousFileReader(null);
+    }
+
+    @Test
+    public void testReadWindowFutures() throws Exception {
+        final File file = UnsynchronizedReaderInputStreamTest.getFile();
+        final byte[] expected = UnsynchronizedReaderInputStreamTest.readFile(file);
+        final AsynchronousFileReader reader = new AsynchronousFileReader(file, WINDOW_SIZE);
+        try {
+            assertEquals(expected.length, reader.length());
+            for (int position = 0; position < expected.length; position += 50) {
+                final Window window = reader.getWindow(position).get();
+                assertEquals(position - position % WINDOW_SIZE, window.getWindowPosition());
+                assertEquals(expected[position], window.getByte(reader.getWindowOffset(position)));
+            }
+            final Window last = reader.getWindow(expected.length - 1).get();
+            assertEquals(expected.length, last.getNextWindowPosition());
+            assertNull(reader.getWindow(expected.length).get());
+            assertNull(reader.getWindow(-1).get());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testCompletionHandlers() throws Exception {
+        final File file = UnsynchronizedReaderInputStreamTest.getFile();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final AsynchronousFileReader reader = new AsynchronousFileReader(file, WINDOW_SIZE,
+                                                                         new ConcurrentClockCache(8), executor);
+        try {
+            final int requests = 20;
+            final CountDownLatch done = new CountDownLatch(requests);
+            final AtomicReference<Window> first = new AtomicReference<Window>();
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            for (int i = 0; i < requests; i++) {
+                reader.getWindow(WINDOW_SIZE * 3 + i, "attachment", new CompletionHandler<Window, String>() {
+                    @Override
+                    public void completed(final Window window, final String attachment) {
+                        assertEquals("attachment", attachment);
+                        if (!first.compareAndSet(null, window) && first.get() != window) {
+                            failure.set(new AssertionError("The window was read more than once"));
+                        }
+                        done.countDown();
+                    }
+                    @Override
+                    public void failed(final Throwable exc, final String attachment) {
+                        failure.set(exc);
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertNull(failure.get());
+            assertEquals(WINDOW_SIZE * 3, first.get().getWindowPosition());
+        } finally {
+            reader.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadAfterClose() throws Exception {
+        final AsynchronousFileReader reader = new AsynchronousFileReader(UnsynchronizedReaderInputStreamTest.getFile());
+        reader.close();
+        try {
+            reader.getWindow(0).get();
+            fail("Expected an ExecutionException reading a closed reader");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowMissingException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ChannelReader over a forward-only channel.
+ *
+ * @author Matt Palmer
+ */
+public class ChannelReaderTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullChannel() {
+		new ChannelReader(null);
+	}
+
+	@Test
+	public void testNonBlockingChannel() throws IOException {
+		final Pipe pipe = Pipe.open();
+		try {
+			pipe.source().configureBlocking(false);
+			new ChannelReader(pipe.source());
+			fail("Expected an IllegalArgumentException for a non-blocking channel");
+		} catch (IllegalArgumentException expected) {
+		} finally {
+			pipe.source().close();
+			pipe.sink().close();
+		}
+	}
+
+	@Test
+	public void testReadsAllBytes() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] expected = readFile(file);
+		for (final int windowSize : new int[] { 1, 127, 4096, expected.length, expected.length + 1 }) {
+			final ChannelReader reader = new ChannelReader(openChannel(file), windowSize, 4, true);
+			try {
+				// Read backwards from the end, so the whole channel must be read and cached first:
+				for (int position = expected.length - 1; position >= 0; position -= 7) {
+					assertEquals("Byte at " + position + " window size " + windowSize,
+							     expected[position] & 0xFF, reader.readByte(position));
+				}
+				assertEquals(expected.length, reader.length());
+				assertTrue(reader.readByte(expected.length) < 0);
+				assertNull(reader.getWindow(expected.length));
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	@Test
+	public void testLengthReadsWholeChannel() throws IOException {
+		final File file = getFile("/TestASCII.zip");
+		final ChannelReader reader = new ChannelReader(openChannel(file));
+		try {
+			assertEquals(file.length(), reader.length());
+			final Window window = reader.getWindow(0);
+			assertEquals(0, window.getWindowPosition());
+			assertEquals(readFile(file)[0], window.getByte(0));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test(expected = WindowMissingException.class)
+	public void testWindowMissingFromCache() throws IOException {
+		final ChannelReader reader = new ChannelReader(openChannel(getFile("/TestASCII.txt")), 127,
+				                                       new LeastRecentlyUsedCache(2));
+		try {
+			reader.readByte(127 * 10);
+			reader.readByte(0);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testCloseChannel() throws IOException {
+		final ReadableByteChannel channel = openChannel(getFile("/TestASCII.txt"));
+		new ChannelReader(channel, false).close();
+		assertTrue(channel.isOpen());
+		new ChannelReader(channel).close();
+		assertFalse(channel.isOpen());
+	}
+
+	private ReadableByteChannel openChannel(final File file) throws IOException {
+		return Channels.newChannel(new FileInputStream(file));
+	}
+
+	private byte[] readFile(final File file) throws IOException {
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		return bytes;
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
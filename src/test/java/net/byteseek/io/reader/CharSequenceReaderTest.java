@@ -0,0 +1,162 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.SearchUtils;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the CharSequenceReader encodes sequences window by window into the same bytes
+ * as encoding the whole string, and only encodes as far as it has been read.
+ *
+ * @author Matt Palmer
+ */
+public class CharSequenceReaderTest {
+
+	private static final int CHARS_PER_WINDOW = 101;
+	private static final String NEEDLE = "caf\u00e9 \u6771\u4eac";
+	private static final String[] CHARSETS = {"UTF-8", "UTF-16BE", "ISO-8859-1", "US-ASCII"};
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullSequence() {
+		new CharSequenceReader(null, Charset.forName("UTF-8"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCharsetWithByteOrderMark() {
+		new CharSequenceReader("abc", Charset.forName("UTF-16"));
+	}
+
+	@Test
+	public void testSameBytesAsString() throws IOException {
+		final String string = createText();
+		for (final String charsetName : CHARSETS) {
+			final Charset charset = Charset.forName(charsetName);
+			final byte[] expected = string.getBytes(charset);
+			final CharSequenceReader reader = new CharSequenceReader(new StringBuilder(string), charset, CHARS_PER_WINDOW);
+			long position = 0;
+			for (final Window window : reader) {
+				assertEquals(charsetName, position, window.getWindowPosition());
+				for (int offset = 0; offset < window.length(); offset++) {
+					assertEquals(charsetName, expected[(int) position + offset], window.getByte(offset));
+				}
+				position = window.getNextWindowPosition();
+			}
+			assertEquals(charsetName, expected.length, position);
+			assertEquals(charsetName, expected.length, reader.length());
+			for (int index = expected.length - 1; index >= 0; index -= 7) {
+				assertEquals(expected[index] & 0xFF, reader.readByte(index));
+				assertEquals(index - reader.getWindow(index).getWindowPosition(), reader.getWindowOffset(index));
+			}
+			assertEquals(-1, reader.readByte(expected.length));
+			assertNull(reader.getWindow(expected.length));
+			assertEquals(expected.length, new CharSequenceReader(string, charset, CHARS_PER_WINDOW).length());
+		}
+	}
+
+	@Test
+	public void testSearchAndCharIndexes() throws IOException {
+		final String string = createText();
+		final Charset charset = Charset.forName("UTF-8");
+		final Searcher<SequenceMatcher> searcher = new BoyerMooreHorspoolSearcher(
+				new ByteSequenceMatcher(NEEDLE.getBytes(charset)));
+		final CharSequenceReader reader = new CharSequenceReader(string, charset, CHARS_PER_WINDOW);
+		final List<Integer> charIndexes = new ArrayList<Integer>();
+		for (final SearchResult<SequenceMatcher> result : SearchUtils.searchAllForwards(searcher, reader)) {
+			charIndexes.add(reader.getCharIndex(result.getMatchPosition()));
+		}
+		final List<Integer> expected = new ArrayList<Integer>();
+		for (int index = string.indexOf(NEEDLE); index >= 0; index = string.indexOf(NEEDLE, index + 1)) {
+			expected.add(index);
+		}
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, charIndexes);
+		assertEquals(-1, reader.getCharIndex(reader.length()));
+	}
+
+	@Test
+	public void testEncodesLazily() throws IOException {
+		final String string = createText();
+		final int[] furthestChar = new int[1];
+		final CharSequence sequence = new CharSequence() {
+			@Override
+			public int length() {
+				return string.length();
+			}
+			@Override
+			public char charAt(final int index) {
+				furthestChar[0] = Math.max(furthestChar[0], index);
+				return string.charAt(index);
+			}
+			@Override
+			public CharSequence subSequence(final int start, final int end) {
+				furthestChar[0] = Math.max(furthestChar[0], end - 1);
+				return string.subSequence(start, end);
+			}
+		};
+		final CharSequenceReader reader = new CharSequenceReader(sequence, Charset.forName("UTF-8"), CHARS_PER_WINDOW);
+		assertEquals(string.getBytes("UTF-8")[0] & 0xFF, reader.readByte(0));
+		assertTrue(furthestChar[0] < CHARS_PER_WINDOW);
+		reader.length();
+		assertEquals(string.length() - 1, furthestChar[0]);
+	}
+
+	/**
+	 * Creates text with one, two, three and four byte UTF-8 characters, including surrogate
+	 * pairs which fall on window boundaries, and the needle at several places.
+	 */
+	private static String createText() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			builder.append("line ").append(i).append(": \u00fcber \u00e7a \u4e2d\u6587 \ud83d\ude00 ");
+			if (i % 37 == 0) {
+				builder.append(NEEDLE);
+			}
+		}
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.SearchUtils;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ChunkedReader over byte array and buffer chunks of uneven sizes,
+ * including chunks added after reading has started.
+ *
+ * @author Matt Palmer
+ */
+public class ChunkedReaderTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullChunk() {
+		new ChunkedReader().add((byte[]) null);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testRangeOutsideArray() {
+		new ChunkedReader().add(new byte[10], 5, 6);
+	}
+
+	@Test
+	public void testEmptyReader() throws IOException {
+		final ChunkedReader reader = new ChunkedReader(new byte[0]);
+		assertEquals(0, reader.length());
+		assertEquals(0, reader.getChunkCount());
+		assertNull(reader.getWindow(0));
+		assertEquals(-1, reader.readByte(0));
+		assertFalse(reader.iterator().hasNext());
+	}
+
+	@Test
+	public void testChunksOfUnevenSizes() throws IOException {
+		final byte[] bytes = readTestFile();
+		final ChunkedReader reader = chunk(bytes, new Random(7));
+		assertEquals(bytes.length, reader.length());
+		assertTrue(reader.getChunkCount() > 100);
+
+		long position = 0;
+		int chunk = 0;
+		boolean bufferWindows = false;
+		for (final Window window : reader) {
+			assertEquals(position, window.getWindowPosition());
+			assertEquals(position, reader.getChunkStart(chunk++));
+			bufferWindows |= window instanceof BufferWindow;
+			position = window.getNextWindowPosition();
+		}
+		assertTrue(bufferWindows);
+		assertEquals(bytes.length, position);
+
+		for (int index = 0; index < bytes.length; index++) {
+			assertEquals(bytes[index] & 0xFF, reader.readByte(index));
+			final Window window = reader.getWindow(index);
+			assertEquals(index - window.getWindowPosition(), reader.getWindowOffset(index));
+		}
+		assertEquals(-1, reader.readByte(bytes.length));
+		assertNull(reader.getWindow(bytes.length));
+
+		final SequenceMatcher sequence = new ByteSequenceMatcher("Midsommer");
+		assertSameMatches(new BoyerMooreHorspoolSearcher(sequence), bytes, reader);
+		assertSameMatches(new SundayQuickSearcher(sequence), bytes, reader);
+	}
+
+	@Test
+	public void testChunksAddedIncrementally() throws IOException {
+		final byte[] needle = "needle".getBytes("US-ASCII");
+		final Searcher<SequenceMatcher> searcher = new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher(needle));
+		final ChunkedReader reader = new ChunkedReader();
+		assertEquals(0, reader.add(new byte[] {1, 2, 3, 'n', 'e', 'e'}));
+		assertTrue(searcher.searchForwards(reader).isEmpty());
+
+		final ByteBuffer buffer = ByteBuffer.wrap(new byte[] {9, 9, 'd', 'l', 'e', 4});
+		buffer.position(2);
+		assertEquals(6, reader.add(buffer));
+		assertEquals(2, buffer.position());
+		assertEquals(10, reader.length());
+		assertEquals(3, searcher.searchForwards(reader).get(0).getMatchPosition());
+
+		assertEquals(10, reader.add(new byte[0]));
+		assertEquals(2, reader.getChunkCount());
+		assertEquals(10, reader.add(new byte[] {0, 'n', 'e', 'e', 'd', 'l', 'e', 0}, 1, 6));
+		assertEquals(16, reader.length());
+		assertEquals(10, searcher.searchForwards(reader, 4).get(0).getMatchPosition());
+	}
+
+	private void assertSameMatches(final Searcher<SequenceMatcher> searcher, final byte[] bytes,
+								   final WindowReader reader) throws IOException {
+		final List<Long> expected = matchPositions(searcher, new ByteArrayReader(bytes));
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, matchPositions(searcher, reader));
+	}
+
+	private List<Long> matchPositions(final Searcher<SequenceMatcher> searcher, final WindowReader reader)
+			throws IOException {
+		final List<Long> positions = new ArrayList<Long>();
+		for (final SearchResult<SequenceMatcher> result : SearchUtils.searchAllForwards(searcher, reader)) {
+			positions.add(result.getMatchPosition());
+		}
+		return positions;
+	}
+
+	/**
+	 * Splits the bytes into chunks of random sizes, alternating between byte arrays,
+	 * ranges of byte arrays, heap buffers and direct buffers.
+	 */
+	private ChunkedReader chunk(final byte[] bytes, final Random random) {
+		final ChunkedReader reader = new ChunkedReader();
+		int position = 0;
+		int kind = 0;
+		while (position < bytes.length) {
+			final int length = Math.min(1 + random.nextInt(1000), bytes.length - position);
+			switch (kind++ % 4) {
+				case 0: {
+					final byte[] chunk = new byte[length];
+					System.arraycopy(bytes, position, chunk, 0, length);
+					reader.add(chunk);
+					break;
+				}
+				case 1: {
+					reader.add(bytes, position, length);
+					break;
+				}
+				case 2: {
+					final ByteBuffer buffer = ByteBuffer.wrap(bytes, position, length);
+					reader.add(buffer);
+					break;
+				}
+				default: {
+					final ByteBuffer buffer = ByteBuffer.allocateDirect(length + 10);
+					buffer.position(10);
+					buffer.put(bytes, position, length);
+					buffer.position(10);
+					reader.add(buffer);
+				}
+			}
+			position += length;
+		}
+		return reader;
+	}
+
+	private byte[] readTestFile() throws IOException {
+		return UnsynchronizedReaderInputStreamTest.readFile(
+				new File(ChunkedReaderTest.class.getResource("/TestASCII.txt").getPath()));
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.BackwardSearchIterator;
+import net.byteseek.searcher.ForwardSearchIterator;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the CompositeReader over a file split into segments read by different kinds of reader,
+ * with segment boundaries falling inside matches.
+ *
+ * @author Matt Palmer
+ */
+public class CompositeReaderTest {
+
+	private static final String SEQUENCE = "Midsommer";
+
+	private byte[] expected;
+	private List<File> tempFiles;
+	private CompositeReader reader;
+
+	@Before
+	public void setUp() throws IOException {
+		expected = readFile(getFile("/TestASCII.txt"));
+		final List<Long> matches = bruteForce(SEQUENCE);
+		final int firstSplit = (int) (long) matches.get(0) + 3;
+		final int secondSplit = (int) (long) matches.get(matches.size() / 2) + 5;
+		tempFiles = new ArrayList<File>();
+		reader = new CompositeReader(
+				new FileReader(writeTempFile(0, firstSplit), 127),
+				new FileReader(getFile("/TestEmpty.empty")),
+				new MappedFileReader(writeTempFile(firstSplit, secondSplit), 256),
+				new ByteArrayReader(Arrays.copyOfRange(expected, secondSplit, expected.length)));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		reader.close();
+		for (final File file : tempFiles) {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullReaders() throws IOException {
+		new CompositeReader((WindowReader[]) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoReaders() throws IOException {
+		new CompositeReader(new ArrayList<WindowReader>());
+	}
+
+	@Test
+	public void testReadBytes() throws IOException {
+		assertEquals(expected.length, reader.length());
+		assertEquals(4, reader.getSegmentCount());
+		for (int position = 0; position < expected.length; position++) {
+			assertEquals("Byte at " + position, expected[position] & 0xFF, reader.readByte(position));
+		}
+		final Random random = new Random(13);
+		for (int count = 0; count < 5000; count++) {
+			final int position = random.nextInt(expected.length);
+			assertEquals("Byte at " + position, expected[position] & 0xFF, reader.readByte(position));
+		}
+		assertTrue(reader.readByte(-1) < 0);
+		assertTrue(reader.readByte(expected.length) < 0);
+		assertNull(reader.getWindow(-1));
+		assertNull(reader.getWindow(expected.length));
+	}
+
+	@Test
+	public void testWindows() throws IOException {
+		long position = 0;
+		boolean bufferWindows = false;
+		for (final Window window : reader) {
+			assertEquals(position, window.getWindowPosition());
+			assertEquals(0, reader.getWindowOffset(position));
+			bufferWindows |= window instanceof BufferWindow;
+			for (int offset = 0; offset < window.length(); offset++) {
+				assertEquals("Byte at " + (position + offset), expected[(int) position + offset], window.getByte(offset));
+				assertEquals(offset, reader.getWindowOffset(position + offset));
+			}
+			position = window.getNextWindowPosition();
+		}
+		assertEquals(expected.length, position);
+		assertTrue("Mapped segment windows are still buffer windows", bufferWindows);
+	}
+
+	@Test
+	public void testSearchAcrossSegments() throws IOException {
+		final SequenceMatcher matcher = new ByteSequenceMatcher(SEQUENCE);
+		final List<Long> matches = bruteForce(SEQUENCE);
+		final List<Long> backwardMatches = new ArrayList<Long>(matches);
+		Collections.reverse(backwardMatches);
+		final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+		searchers.add(new BoyerMooreHorspoolSearcher(matcher));
+		searchers.add(new SundayQuickSearcher(matcher));
+		for (final Searcher<SequenceMatcher> searcher : searchers) {
+			assertEquals("Forwards " + searcher, matches, searchForwards(searcher));
+			assertEquals("Backwards " + searcher, backwardMatches, searchBackwards(searcher));
+		}
+	}
+
+	private List<Long> searchForwards(final Searcher<SequenceMatcher> searcher) {
+		final List<Long> positions = new ArrayList<Long>();
+		final ForwardSearchIterator<SequenceMatcher> iterator = new ForwardSearchIterator<SequenceMatcher>(searcher, reader);
+		while (iterator.hasNext()) {
+			for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+				positions.add(result.getMatchPosition());
+			}
+		}
+		return positions;
+	}
+
+	private List<Long> searchBackwards(final Searcher<SequenceMatcher> searcher) throws IOException {
+		final List<Long> positions = new ArrayList<Long>();
+		final BackwardSearchIterator<SequenceMatcher> iterator = new BackwardSearchIterator<SequenceMatcher>(searcher, reader);
+		while (iterator.hasNext()) {
+			for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+				positions.add(result.getMatchPosition());
+			}
+		}
+		return positions;
+	}
+
+	private List<Long> bruteForce(final String sequence) {
+		final byte[] pattern = sequence.getBytes();
+		final List<Long> positions = new ArrayList<Long>();
+		for (int position = 0; position <= expected.length - pattern.length; position++) {
+			int index = 0;
+			while (index < pattern.length && expected[position + index] == pattern[index]) {
+				index++;
+			}
+			if (index == pattern.length) {
+				positions.add((long) position);
+			}
+		}
+		return positions;
+	}
+
+	private File writeTempFile(final int from, final int to) throws IOException {
+		final File file = File.createTempFile("segment", ".bin");
+		tempFiles.add(file);
+		final FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(expected, from, to - from);
+		} finally {
+			output.close();
+		}
+		return file;
+	}
+
+	private byte[] readFile(final File file) throws IOException {
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		return bytes;
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchUtils;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DirectIOFileReaderTest {
+
+    private File file;
+    private byte[] bytes;
+
+    @Before
+    public void createFile() throws IOException {
+        bytes = new byte[4096 * 20 + 1234];
+        new Random(5).nextBytes(bytes);
+        System.arraycopy("needle".getBytes("US-ASCII"), 0, bytes, 4096 * 3 - 2, 6);
+        System.arraycopy("needle".getBytes("US-ASCII"), 0, bytes, bytes.length - 6, 6);
+        file = File.createTempFile("direct", ".bin", new File(System.getProperty("user.dir"), "target"));
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullFile() throws IOException {
+        new DirectIOFileReader(null);
+    }
+
+    @Test
+    public void testReadsAlignedBufferWindows() throws IOException {
+        final DirectIOFileReader reader = new DirectIOFileReader(file, 1000);
+        try {
+            assertEquals(bytes.length, reader.length());
+            assertEquals("The window size is rounded up to the block size",
+                         0, reader.getWindowSize() % reader.getBlockSize());
+            assertTrue(reader.getWindowSize() >= 1000);
+            for (int position = 0; position < bytes.length; position += 7) {
+                assertEquals(bytes[position] & 0xFF, reader.readByte(position));
+            }
+            assertEquals(bytes[bytes.length - 1] & 0xFF, reader.readByte(bytes.length - 1));
+            assertEquals(-1, reader.readByte(bytes.length));
+            final Window window = reader.getWindow(0);
+            assertTrue(window instanceof BufferWindow);
+            assertEquals(reader.getWindowSize(), window.length());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testRecyclesBuffers() throws IOException {
+        final DirectIOFileReader reader = new DirectIOFileReader(file, 4096, new LeastRecentlyUsedCache(2));
+        try {
+            assertNotNull("Buffers are pooled by default", reader.getBufferPool());
+            for (int position = 0; position < bytes.length; position++) {
+                assertEquals(bytes[position] & 0xFF, reader.readByte(position));
+            }
+            assertTrue("Buffers were recycled", reader.getBufferPool().size() > 0);
+            for (int position = bytes.length - 1; position >= 0; position--) {
+                assertEquals(bytes[position] & 0xFF, reader.readByte(position));
+            }
+            reader.useBufferPool(null);
+            assertNull(reader.getBufferPool());
+            assertEquals(bytes[0] & 0xFF, reader.readByte(0));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testDefaultWindowSize() throws IOException {
+        final DirectIOFileReader reader = new DirectIOFileReader(file);
+        try {
+            assertTrue(reader.getWindowSize() >= DirectIOFileReader.DEFAULT_DIRECT_WINDOW_SIZE);
+            assertEquals(reader.getWindowSize(), reader.getBufferPool().getBufferSize());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testSearch() throws IOException {
+        final Searcher<SequenceMatcher> searcher = new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher("needle"));
+        final DirectIOFileReader reader = new DirectIOFileReader(file);
+        try {
+            assertEquals(4096 * 3 - 2, searcher.searchForwards(reader).get(0).getMatchPosition());
+            assertEquals(2, SearchUtils.searchAllForwards(searcher, reader).size());
+        } finally {
+            reader.close();
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.windows.Window;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the GzipIndexedReader gives random access to gzip compressed data,
+ * regenerating windows from its checkpoints.
+ *
+ * @author Matt Palmer
+ */
+public class GzipIndexedReaderTest {
+
+	@Test
+	public void testRandomAccess() throws IOException {
+		final byte[] expected = createTestData();
+		final File file = writeGzip(Deflater.DEFAULT_COMPRESSION, expected);
+		try {
+			for (final int windowSize : new int[] { 1000, 4096 }) {
+				final GzipIndexedReader reader = new GzipIndexedReader(file, windowSize,
+						new LeastRecentlyUsedCache(2), 64 * 1024);
+				try {
+					assertReadsForwards(expected, reader);
+					assertTrue("Checkpoints recorded", reader.getCheckpointCount() > expected.length / (128 * 1024));
+					final int checkpoints = reader.getCheckpointCount();
+					assertReadsBackwards(expected, reader);
+					assertReadsRandomly(expected, reader);
+					assertEquals("No more checkpoints once indexed", checkpoints, reader.getCheckpointCount());
+				} finally {
+					reader.close();
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testRandomAccessBeforeIndexed() throws IOException {
+		final byte[] expected = createTestData();
+		final File file = writeGzip(Deflater.BEST_SPEED, expected);
+		try {
+			final GzipIndexedReader reader = new GzipIndexedReader(file, 512,
+					new LeastRecentlyUsedCache(1), 32 * 1024);
+			try {
+				assertReadsRandomly(expected, reader);
+				assertReadsBackwards(expected, reader);
+				assertEquals(expected.length, reader.length());
+			} finally {
+				reader.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testLength() throws IOException {
+		final byte[] expected = createTestData();
+		final File file = writeGzip(Deflater.DEFAULT_COMPRESSION, expected);
+		try {
+			final GzipIndexedReader reader = new GzipIndexedReader(file, 4096,
+					new LeastRecentlyUsedCache(8), 8192);
+			try {
+				assertEquals(expected.length, reader.length());
+				assertTrue(reader.getCheckpointCount() > 1);
+				assertNull(reader.getWindow(expected.length));
+				assertEquals(expected[expected.length - 1] & 0xFF, reader.readByte(expected.length - 1));
+			} finally {
+				reader.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testConcatenatedMembers() throws IOException {
+		final byte[] first = "A short member, which compresses using fixed Huffman codes.".getBytes();
+		final byte[] second = createTestData();
+		final byte[] third = new byte[0];
+		final byte[] fourth = "The last member is stored without compression.".getBytes();
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(first);
+		expected.write(second);
+		expected.write(fourth);
+		final File file = File.createTempFile("byteseek", ".gz");
+		final OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(gzip(Deflater.DEFAULT_COMPRESSION, first));
+			out.write(gzip(Deflater.BEST_COMPRESSION, second));
+			out.write(gzip(Deflater.DEFAULT_COMPRESSION, third));
+			out.write(gzip(Deflater.NO_COMPRESSION, fourth));
+		} finally {
+			out.close();
+		}
+		try {
+			final GzipIndexedReader reader = new GzipIndexedReader(file, 777,
+					new LeastRecentlyUsedCache(2), 16 * 1024);
+			try {
+				assertReadsForwards(expected.toByteArray(), reader);
+				assertReadsBackwards(expected.toByteArray(), reader);
+			} finally {
+				reader.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testEmptyData() throws IOException {
+		final File file = writeGzip(Deflater.DEFAULT_COMPRESSION, new byte[0]);
+		try {
+			final GzipIndexedReader reader = new GzipIndexedReader(file);
+			try {
+				assertNull(reader.getWindow(0));
+				assertEquals(0, reader.length());
+			} finally {
+				reader.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotGzip() throws IOException {
+		final GzipIndexedReader reader = new GzipIndexedReader(getFile("/TestASCII.txt"));
+		try {
+			reader.getWindow(0);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedData() throws IOException {
+		final byte[] compressed = gzip(Deflater.DEFAULT_COMPRESSION, createTestData());
+		final File file = File.createTempFile("byteseek", ".gz");
+		final OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(compressed, 0, compressed.length / 2);
+		} finally {
+			out.close();
+		}
+		try {
+			final GzipIndexedReader reader = new GzipIndexedReader(file);
+			try {
+				reader.length();
+			} finally {
+				reader.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullFile() throws IOException {
+		new GzipIndexedReader((File) null);
+	}
+
+	private void assertReadsForwards(final byte[] expected, final WindowReader reader) throws IOException {
+		long position = 0;
+		Window window;
+		while ((window = reader.getWindow(position)) != null) {
+			assertWindow(expected, window);
+			position += window.length();
+		}
+		assertEquals(expected.length, position);
+	}
+
+	private void assertReadsBackwards(final byte[] expected, final WindowReader reader) throws IOException {
+		for (int position = expected.length - 1; position >= 0; position -= 997) {
+			assertWindow(expected, reader.getWindow(position));
+		}
+	}
+
+	private void assertReadsRandomly(final byte[] expected, final WindowReader reader) throws IOException {
+		final Random random = new Random(11);
+		for (int count = 0; count < 200; count++) {
+			final int position = random.nextInt(expected.length);
+			assertEquals("Byte at " + position, expected[position] & 0xFF, reader.readByte(position));
+		}
+	}
+
+	private void assertWindow(final byte[] expected, final Window window) throws IOException {
+		final int start = (int) window.getWindowPosition();
+		for (int index = 0; index < window.length(); index++) {
+			assertEquals("Byte at " + (start + index), expected[start + index], window.getByte(index));
+		}
+	}
+
+	/*
+	 * Text, which compresses well with long distances, followed by random bytes
+	 * which deflate stores without compression, followed by more text.
+	 */
+	private byte[] createTestData() throws IOException {
+		final byte[] text = readFile(getFile("/TestASCII.txt"));
+		final byte[] random = new byte[70000];
+		new Random(3).nextBytes(random);
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		data.write(text);
+		data.write(text);
+		data.write(random);
+		data.write(text);
+		return data.toByteArray();
+	}
+
+	private File writeGzip(final int level, final byte[] data) throws IOException {
+		final File file = File.createTempFile("byteseek", ".gz");
+		final OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(gzip(level, data));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private byte[] gzip(final int level, final byte[] data) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final GZIPOutputStream out = new GZIPOutputStream(bytes) {
+			{
+				def.setLevel(level);
+			}
+		};
+		out.write(data);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private byte[] readFile(final File file) throws IOException {
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		return bytes;
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
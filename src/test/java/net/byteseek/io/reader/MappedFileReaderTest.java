@@ -0,0 +1,219 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.byteseek.io.reader.windows.ByteBufferWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.BackwardSearchIterator;
+import net.byteseek.searcher.ForwardSearchIterator;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the MappedFileReader against the bytes of the underlying file, using a variety
+ * of window and mapped segment sizes.
+ *
+ * @author Matt Palmer
+ */
+public class MappedFileReaderTest {
+
+	private final static int[] WINDOW_SIZES  = new int[] { 1, 7, 255, 4096, 4097, 65536 };
+	private final static int[] SEGMENT_SIZES = new int[] { 4096, 10000, 1 << 30 };
+
+	@Test
+	public void testLengthAndIterateWindows() throws IOException {
+		for (final String resource : new String[] { "/TestASCII.txt", "/TestASCII.zip", "/TestEmpty.empty" }) {
+			final File file = getFile(resource);
+			for (final int windowSize : WINDOW_SIZES) {
+				for (final int segmentSize : SEGMENT_SIZES) {
+					final MappedFileReader reader = new MappedFileReader(file, windowSize, segmentSize);
+					try {
+						assertEquals("length " + reader, file.length(), reader.length());
+						long totalLength = 0;
+						for (final Window window : reader) {
+							assertEquals("window position", totalLength, window.getWindowPosition());
+							assertTrue("Window is a ByteBufferWindow", window instanceof ByteBufferWindow);
+							totalLength += window.length();
+						}
+						assertEquals("sum of window lengths " + reader, file.length(), totalLength);
+					} finally {
+						reader.close();
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testWindowBytesSameAsFile() throws IOException {
+		final File file = getFile("/TestASCII.zip");
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			for (final int windowSize : WINDOW_SIZES) {
+				for (final int segmentSize : SEGMENT_SIZES) {
+					final MappedFileReader reader = new MappedFileReader(file, windowSize, segmentSize);
+					try {
+						for (final Window window : reader) {
+							final byte[] fileBytes = new byte[window.length()];
+							raf.seek(window.getWindowPosition());
+							raf.readFully(fileBytes);
+							final byte[] array = window.getArray();
+							for (int i = 0; i < fileBytes.length; i++) {
+								assertEquals("array byte at " + i + " in " + window, fileBytes[i], array[i]);
+								assertEquals("window byte at " + i + " in " + window, fileBytes[i], window.getByte(i));
+							}
+						}
+					} finally {
+						reader.close();
+					}
+				}
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test
+	public void testReadByte() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] fileBytes = readFile(file);
+		final MappedFileReader reader = new MappedFileReader(file, 1000, 3000);
+		try {
+			for (int position = 0; position < fileBytes.length; position++) {
+				assertEquals("byte at " + position, fileBytes[position] & 0xFF, reader.readByte(position));
+			}
+			assertEquals("no byte before start", -1, reader.readByte(-1));
+			assertEquals("no byte after end", -1, reader.readByte(fileBytes.length));
+			assertNull("No window before 0", reader.getWindow(-1));
+			assertNull("No window after length", reader.getWindow(fileBytes.length));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testSearchSameAsFileReader() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final Searcher<SequenceMatcher> searcher =
+				new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher("Midsommer"));
+		final FileReader fileReader = new FileReader(file);
+		try {
+			final List<Long> expectedForwards  = searchForwards(searcher, fileReader);
+			final List<Long> expectedBackwards = searchBackwards(searcher, fileReader);
+			assertFalse("Some matches found", expectedForwards.isEmpty());
+			for (final int windowSize : WINDOW_SIZES) {
+				final MappedFileReader reader = new MappedFileReader(file, windowSize, 2 * windowSize);
+				try {
+					assertEquals("Forward matches " + reader, expectedForwards, searchForwards(searcher, reader));
+					assertEquals("Backward matches " + reader, expectedBackwards, searchBackwards(searcher, reader));
+				} finally {
+					reader.close();
+				}
+			}
+		} finally {
+			fileReader.close();
+		}
+	}
+
+	@Test
+	public void testCloseBeforeReading() throws IOException {
+		final MappedFileReader reader = new MappedFileReader(getFile("/TestASCII.zip"));
+		reader.close();
+		try {
+			reader.getWindow(0);
+			fail("Expected IOException");
+		} catch (IOException expected) {}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullFile() throws IOException {
+		new MappedFileReader((File) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullCache() throws IOException {
+		new MappedFileReader(getFile("/TestASCII.txt"), 4096, 4096, null);
+	}
+
+	private List<Long> searchForwards(final Searcher<SequenceMatcher> searcher, final WindowReader reader) {
+		final List<Long> positions = new ArrayList<Long>();
+		final ForwardSearchIterator<SequenceMatcher> iterator =
+				new ForwardSearchIterator<SequenceMatcher>(searcher, reader);
+		while (iterator.hasNext()) {
+			for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+				positions.add(result.getMatchPosition());
+			}
+		}
+		return positions;
+	}
+
+	private List<Long> searchBackwards(final Searcher<SequenceMatcher> searcher, final WindowReader reader) throws IOException {
+		final List<Long> positions = new ArrayList<Long>();
+		final BackwardSearchIterator<SequenceMatcher> iterator =
+				new BackwardSearchIterator<SequenceMatcher>(searcher, reader);
+		while (iterator.hasNext()) {
+			for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+				positions.add(result.getMatchPosition());
+			}
+		}
+		return positions;
+	}
+
+	private byte[] readFile(final File file) throws IOException {
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		return bytes;
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.byteseek.io.reader.windows.OverlapWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.multisequence.ListMultiSequenceMatcher;
+import net.byteseek.matcher.multisequence.MultiSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.ForwardSearchIterator;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.SearchUtils;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.multisequence.set_horspool.SetHorspoolSearcher;
+import net.byteseek.searcher.multisequence.wu_manber.WuManberOneByteSearcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the OverlappingReader pads the windows of readers with the bytes following them,
+ * and that sequence and multi-sequence searches over padded windows find each match once.
+ *
+ * @author Matt Palmer
+ */
+public class OverlappingReaderTest {
+
+	private static final int WINDOW_SIZE = 127;
+	private static final int OVERLAP = 20;
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullReader() {
+		new OverlappingReader(null, OVERLAP);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeOverlap() {
+		new OverlappingReader(new ByteArrayReader(new byte[10]), -1);
+	}
+
+	@Test
+	public void testWindowsArePadded() throws IOException {
+		final File file = UnsynchronizedReaderInputStreamTest.getFile();
+		final byte[] bytes = UnsynchronizedReaderInputStreamTest.readFile(file);
+		for (final WindowReader reader : UnsynchronizedReaderInputStreamTest.readers(file)) {
+			final OverlappingReader overlapping = new OverlappingReader(reader, OVERLAP);
+			assertEquals(reader.length(), overlapping.length());
+			long position = 0;
+			for (final Window window : overlapping) {
+				assertTrue(window instanceof OverlapWindow);
+				final OverlapWindow overlapWindow = (OverlapWindow) window;
+				assertEquals(position, window.getWindowPosition());
+				assertEquals(reader.getWindow(position).length(), window.length());
+				final int expectedOverlap = (int) Math.min(OVERLAP, bytes.length - window.getNextWindowPosition());
+				assertEquals(expectedOverlap, overlapWindow.getOverlap());
+				assertEquals(window.length() + expectedOverlap, OverlapWindow.getSearchableLength(window));
+				final byte[] array = window.getArray();
+				assertEquals(overlapWindow.getPaddedLength(), array.length);
+				for (int index = 0; index < array.length; index++) {
+					assertEquals(bytes[(int) position + index], array[index]);
+				}
+				assertSame(window, overlapping.getWindow(position + 1));
+				position = window.getNextWindowPosition();
+			}
+			assertEquals(bytes.length, position);
+			overlapping.close();
+		}
+	}
+
+	@Test
+	public void testMatchesAcrossWindowBoundaries() throws IOException {
+		final byte[] data = randomData();
+		final byte[] pattern = new byte[OVERLAP + 1];
+		System.arraycopy(data, WINDOW_SIZE * 3 - 10, pattern, 0, pattern.length);
+		final SequenceMatcher matcher = new ByteSequenceMatcher(pattern);
+		final WindowReader reader = new OverlappingReader(windowedReader(data), OVERLAP);
+		assertTrue(matcher.matches(reader, WINDOW_SIZE * 3 - 10));
+		assertFalse(matcher.matches(reader, WINDOW_SIZE * 3 - 9));
+		final byte[] reversed = new byte[pattern.length];
+		for (int index = 0; index < pattern.length; index++) {
+			reversed[index] = pattern[pattern.length - 1 - index];
+		}
+		assertTrue(new ByteSequenceMatcher(reversed).reverse().matches(reader, WINDOW_SIZE * 3 - 10));
+	}
+
+	@Test
+	public void testSearchesFindEachMatchOnce() throws IOException {
+		final byte[] data = randomData();
+		final byte[] pattern = "a pattern crossing windows".getBytes("US-ASCII");
+		for (int position = WINDOW_SIZE - 13; position < data.length - pattern.length; position += WINDOW_SIZE + 3) {
+			System.arraycopy(pattern, 0, data, position, pattern.length);
+		}
+		final SequenceMatcher sequence = new ByteSequenceMatcher(pattern);
+		assertSearch(new BoyerMooreHorspoolSearcher(sequence), data);
+		assertSearch(new SundayQuickSearcher(sequence), data);
+	}
+
+	@Test
+	public void testMultiSequenceSearchesFindEachMatchOnce() throws IOException {
+		final byte[] data = randomData();
+		final byte[][] patterns = new byte[][] { "a pattern crossing windows".getBytes("US-ASCII"),
+												 "short one".getBytes("US-ASCII") };
+		final List<Long> expected = new ArrayList<Long>();
+		for (int window = 1; window < 39; window++) {
+			final byte[] pattern = patterns[window % 2];
+			final int position = WINDOW_SIZE * window - pattern.length / 2;
+			System.arraycopy(pattern, 0, data, position, pattern.length);
+			expected.add((long) position);
+		}
+		final List<SequenceMatcher> sequences = new ArrayList<SequenceMatcher>();
+		for (final byte[] pattern : patterns) {
+			sequences.add(new ByteSequenceMatcher(pattern));
+		}
+		final MultiSequenceMatcher matcher = new ListMultiSequenceMatcher(sequences);
+		assertMultiSequenceSearch(new WuManberOneByteSearcher(matcher), data, expected);
+		assertMultiSequenceSearch(new SetHorspoolSearcher(matcher), data, expected);
+	}
+
+	private void assertMultiSequenceSearch(final Searcher<SequenceMatcher> searcher, final byte[] data,
+										   final List<Long> expected) throws IOException {
+		assertEquals(expected, matchPositions(searcher, windowedReader(data)));
+		final int overlap = SearchUtils.getMaximumMatchLength(searcher) - 1;
+		for (final int readerOverlap : new int[] {overlap, overlap + 50, overlap - 5, 0}) {
+			final WindowReader reader = new OverlappingReader(windowedReader(data), readerOverlap);
+			assertEquals(searcher + " overlap " + readerOverlap, expected, matchPositions(searcher, reader));
+		}
+	}
+
+	private void assertSearch(final Searcher<SequenceMatcher> searcher, final byte[] data) throws IOException {
+		final List<Long> expected = matchPositions(searcher, windowedReader(data));
+		assertFalse(expected.isEmpty());
+		final int overlap = SearchUtils.getMaximumMatchLength(searcher) - 1;
+		for (final int readerOverlap : new int[] {overlap, overlap + 50, overlap - 5, 0}) {
+			final WindowReader reader = new OverlappingReader(windowedReader(data), readerOverlap);
+			assertEquals("Overlap " + readerOverlap, expected, matchPositions(searcher, reader));
+		}
+		final List<Long> fromMiddle = new ArrayList<Long>();
+		final List<SearchResult<SequenceMatcher>> results =
+				searcher.searchForwards(new OverlappingReader(windowedReader(data), overlap),
+										expected.get(2) - 5, expected.get(2) + 5);
+		for (final SearchResult<SequenceMatcher> result : results) {
+			fromMiddle.add(result.getMatchPosition());
+		}
+		assertEquals(expected.subList(2, 3), fromMiddle);
+	}
+
+	private List<Long> matchPositions(final Searcher<SequenceMatcher> searcher, final WindowReader reader) {
+		final List<Long> positions = new ArrayList<Long>();
+		final ForwardSearchIterator<SequenceMatcher> iterator = new ForwardSearchIterator<SequenceMatcher>(searcher, reader);
+		while (iterator.hasNext()) {
+			for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+				positions.add(result.getMatchPosition());
+			}
+		}
+		return positions;
+	}
+
+	private static byte[] randomData() {
+		final byte[] data = new byte[WINDOW_SIZE * 40 + 17];
+		new Random(21).nextBytes(data);
+		return data;
+	}
+
+	private static WindowReader windowedReader(final byte[] data) {
+		return new InputStreamReader(new ByteArrayInputStream(data), WINDOW_SIZE);
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.ForwardSearchIterator;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the PositionalFileReader, including sharing a single reader between threads.
+ *
+ * @author Matt Palmer
+ */
+public class PositionalFileReaderTest {
+
+	private final static int[] WINDOW_SIZES = new int[] { 1, 7, 255, 4096, 4097, 65536 };
+	private final static int NUM_THREADS = 8;
+
+	@Test
+	public void testLengthAndWindowBytes() throws IOException {
+		for (final String resource : new String[] { "/TestASCII.txt", "/TestASCII.zip", "/TestEmpty.empty" }) {
+			final File file = getFile(resource);
+			final byte[] fileBytes = readFile(file);
+			for (final int windowSize : WINDOW_SIZES) {
+				final PositionalFileReader reader = new PositionalFileReader(file, windowSize);
+				try {
+					assertEquals("length " + reader, fileBytes.length, reader.length());
+					long totalLength = 0;
+					for (final Window window : reader) {
+						final byte[] array = window.getArray();
+						for (int i = 0; i < window.length(); i++) {
+							assertEquals("byte at " + i + " in " + window,
+									     fileBytes[(int) window.getWindowPosition() + i], array[i]);
+						}
+						totalLength += window.length();
+					}
+					assertEquals("sum of window lengths " + reader, fileBytes.length, totalLength);
+					assertNull("No window before 0", reader.getWindow(-1));
+					assertNull("No window after length", reader.getWindow(fileBytes.length));
+				} finally {
+					reader.close();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSoftRecovery() throws IOException {
+		final PositionalFileReader reader = new PositionalFileReader(getFile("/TestASCII.zip"), 1000);
+		try {
+			for (final Window window : reader) {
+				final byte[] original = window.getArray();
+				final byte[] recovered = reader.reloadWindowBytes(window);
+				for (int i = 0; i < window.length(); i++) {
+					assertEquals("Recovered byte at " + i + " in " + window, original[i], recovered[i]);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testConcurrentReadByte() throws Exception {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] fileBytes = readFile(file);
+		final PositionalFileReader reader = new PositionalFileReader(file, 127, 4);
+		final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try {
+			final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int thread = 0; thread < NUM_THREADS; thread++) {
+				final long seed = thread;
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						final Random random = new Random(seed);
+						int mismatches = 0;
+						for (int count = 0; count < 20000; count++) {
+							final int position = random.nextInt(fileBytes.length);
+							if (reader.readByte(position) != (fileBytes[position] & 0xFF)) {
+								mismatches++;
+							}
+						}
+						return mismatches;
+					}
+				}));
+			}
+			for (final Future<Integer> result : results) {
+				assertEquals("No mismatched bytes", 0, result.get().intValue());
+			}
+		} finally {
+			executor.shutdown();
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testConcurrentSearches() throws Exception {
+		final File file = getFile("/TestASCII.txt");
+		final Searcher<SequenceMatcher> searcher =
+				new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher("Midsommer"));
+		final FileReader fileReader = new FileReader(file);
+		final List<Long> expected = searchForwards(searcher, fileReader);
+		fileReader.close();
+
+		final PositionalFileReader reader = new PositionalFileReader(file, 509, 8);
+		final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try {
+			final List<Future<List<Long>>> results = new ArrayList<Future<List<Long>>>();
+			for (int thread = 0; thread < NUM_THREADS; thread++) {
+				results.add(executor.submit(new Callable<List<Long>>() {
+					@Override
+					public List<Long> call() throws Exception {
+						return searchForwards(searcher, reader);
+					}
+				}));
+			}
+			for (final Future<List<Long>> result : results) {
+				assertEquals("Same matches", expected, result.get());
+			}
+		} finally {
+			executor.shutdown();
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testCloseBeforeReading() throws IOException {
+		final PositionalFileReader reader = new PositionalFileReader(getFile("/TestASCII.zip"));
+		reader.close();
+		try {
+			reader.getWindow(0);
+			fail("Expected IOException");
+		} catch (IOException expected) {}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullFile() throws IOException {
+		new PositionalFileReader((File) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullCache() throws IOException {
+		new PositionalFileReader(getFile("/TestASCII.txt"), 4096, null);
+	}
+
+	private List<Long> searchForwards(final Searcher<SequenceMatcher> searcher, final WindowReader reader) {
+		final List<Long> positions = new ArrayList<Long>();
+		final ForwardSearchIterator<SequenceMatcher> iterator =
+				new ForwardSearchIterator<SequenceMatcher>(searcher, reader);
+		while (iterator.hasNext()) {
+			for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+				positions.add(result.getMatchPosition());
+			}
+		}
+		return positions;
+	}
+
+	private byte[] readFile(final File file) throws IOException {
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		return bytes;
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.BackwardSearchIterator;
+import net.byteseek.searcher.ForwardSearchIterator;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the PrefetchReader returns the same windows and search results
+ * as the reader it decorates, whichever direction it is scanned in.
+ *
+ * @author Matt Palmer
+ */
+public class PrefetchReaderTest {
+
+	private final static int[] WINDOW_SIZES = new int[] { 7, 255, 4096, 4097 };
+	private final static int[] PREFETCH_WINDOWS = new int[] { 1, 4, 16 };
+
+	@Test
+	public void testForwardsAndBackwardsBytes() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] fileBytes = readFile(file);
+		for (final int windowSize : WINDOW_SIZES) {
+			for (final int prefetch : PREFETCH_WINDOWS) {
+				final PrefetchReader reader = new PrefetchReader(new PositionalFileReader(file, windowSize), prefetch);
+				try {
+					assertEquals(fileBytes.length, reader.length());
+					long total = 0;
+					for (final Window window : reader) {
+						assertWindowBytes(fileBytes, window);
+						total += window.length();
+					}
+					assertEquals("Iterated all bytes " + reader, fileBytes.length, total);
+
+					for (int position = fileBytes.length - 1; position >= 0; position -= 13) {
+						assertEquals("Byte at " + position + " " + reader,
+								     fileBytes[position] & 0xFF, reader.readByte(position));
+					}
+					assertNull(reader.getWindow(-1));
+					assertNull(reader.getWindow(fileBytes.length));
+					assertEquals(-1, reader.readByte(fileBytes.length));
+				} finally {
+					reader.close();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSearchesMatchUndecoratedReader() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final Searcher<SequenceMatcher> searcher = new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher("Midsommer"));
+		final FileReader fileReader = new FileReader(file);
+		final List<Long> forwards = searchForwards(searcher, fileReader);
+		final List<Long> backwards = searchBackwards(searcher, fileReader);
+		fileReader.close();
+		assertFalse(forwards.isEmpty());
+
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (final int windowSize : WINDOW_SIZES) {
+				final PrefetchReader reader = new PrefetchReader(new PositionalFileReader(file, windowSize), 8, executor);
+				try {
+					assertEquals("Forwards " + reader, forwards, searchForwards(searcher, reader));
+					assertEquals("Backwards " + reader, backwards, searchBackwards(searcher, reader));
+				} finally {
+					reader.close();
+				}
+			}
+			assertFalse("Executor passed in is not shut down", executor.isShutdown());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testPrefetchesFromStartOfAdaptiveWindows() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] fileBytes = readFile(file);
+		final PositionalFileReader decorated = new PositionalFileReader(file, 128);
+		decorated.useAdaptiveWindowSizes(4096);
+		final RecordingReader recording = new RecordingReader(decorated);
+		final PrefetchReader reader = new PrefetchReader(recording, 4);
+		try {
+			long position = 0;
+			int largest = 0;
+			for (final Window window : reader) {
+				assertEquals(position, window.getWindowPosition());
+				assertWindowBytes(fileBytes, window);
+				largest = Math.max(largest, window.length());
+				position = window.getNextWindowPosition();
+			}
+			assertEquals(fileBytes.length, position);
+			assertEquals("Windows grew during the scan", 4096, largest);
+			for (final long requested : recording.getPositions()) {
+				if (requested < fileBytes.length) {
+					assertEquals("Window requested from its start", requested,
+							     decorated.getWindow(requested).getWindowPosition());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testCloseClosesDecoratedReader() throws IOException {
+		final PositionalFileReader decorated = new PositionalFileReader(getFile("/TestASCII.zip"), 1024);
+		final PrefetchReader reader = new PrefetchReader(decorated);
+		assertNotNull(reader.getWindow(0));
+		reader.close();
+		try {
+			decorated.getWindow(1024 * 10);
+			fail("Expected IOException from closed reader");
+		} catch (IOException expected) {}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullReader() {
+		new PrefetchReader(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroPrefetchWindows() throws IOException {
+		final PositionalFileReader decorated = new PositionalFileReader(getFile("/TestASCII.zip"));
+		try {
+			new PrefetchReader(decorated, 0);
+		} finally {
+			decorated.close();
+		}
+	}
+
+	/**
+	 * A WindowReader which records the positions of the windows requested from it.
+	 */
+	private static final class RecordingReader implements WindowReader {
+
+		private final WindowReader reader;
+		private final List<Long> positions = new ArrayList<Long>();
+
+		RecordingReader(final WindowReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public int readByte(final long position) throws IOException {
+			return reader.readByte(position);
+		}
+
+		@Override
+		public Window getWindow(final long position) throws IOException {
+			synchronized (positions) {
+				positions.add(position);
+			}
+			return reader.getWindow(position);
+		}
+
+		@Override
+		public int getWindowOffset(final long position) {
+			return reader.getWindowOffset(position);
+		}
+
+		@Override
+		public long length() throws IOException {
+			return reader.length();
+		}
+
+		@Override
+		public Iterator<Window> iterator() {
+			return reader.iterator();
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+
+		List<Long> getPositions() {
+			synchronized (positions) {
+				return new ArrayList<Long>(positions);
+			}
+		}
+	}
+
+	private void assertWindowBytes(final byte[] fileBytes, final Window window) throws IOException {
+		final byte[] array = window.getArray();
+		for (int i = 0; i < window.length(); i++) {
+			assertEquals("byte at " + i + " in " + window, fileBytes[(int) window.getWindowPosition() + i], array[i]);
+		}
+	}
+
+	private List<Long> searchForwards(final Searcher<SequenceMatcher> searcher, final WindowReader reader) {
+		final List<Long> positions = new ArrayList<Long>();
+		final ForwardSearchIterator<SequenceMatcher> iterator = new ForwardSearchIterator<SequenceMatcher>(searcher, reader);
+		while (iterator.hasNext()) {
+			for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+				positions.add(result.getMatchPosition());
+			}
+		}
+		return positions;
+	}
+
+	private List<Long> searchBackwards(final Searcher<SequenceMatcher> searcher, final WindowReader reader) throws IOException {
+		final List<Long> positions = new ArrayList<Long>();
+		final BackwardSearchIterator<SequenceMatcher> iterator = new BackwardSearchIterator<SequenceMatcher>(searcher, reader);
+		while (iterator.hasNext()) {
+			for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+				positions.add(result.getMatchPosition());
+			}
+		}
+		return positions;
+	}
+
+	private byte[] readFile(final File file) throws IOException {
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		return bytes;
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
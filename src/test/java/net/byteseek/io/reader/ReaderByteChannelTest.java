@@ -0,0 +1,98 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReaderByteChannelTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullReader() {
+        new ReaderByteChannel(null);
+    }
+
+    @Test
+    public void testReadHeapAndDirectBuffers() throws IOException {
+        final File file = UnsynchronizedReaderInputStreamTest.getFile();
+        final byte[] expected = UnsynchronizedReaderInputStreamTest.readFile(file);
+        for (final WindowReader reader : UnsynchronizedReaderInputStreamTest.readers(file)) {
+            final ReaderByteChannel channel = new ReaderByteChannel(reader);
+            try {
+                assertEquals(expected.length, channel.size());
+                final ByteBuffer all = ByteBuffer.allocate(expected.length);
+                final ByteBuffer chunk = ByteBuffer.allocateDirect(1000);
+                int read;
+                while ((read = channel.read(chunk)) >= 0) {
+                    assertTrue(read > 0);
+                    chunk.flip();
+                    all.put(chunk);
+                    chunk.clear();
+                }
+                assertArrayEquals(expected, all.array());
+                assertEquals(expected.length, channel.position());
+
+                channel.position(expected.length - 10);
+                final ByteBuffer tail = ByteBuffer.allocate(100);
+                assertEquals(10, channel.read(tail));
+                assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 10, expected.length),
+                                  Arrays.copyOf(tail.array(), 10));
+                assertEquals(-1, channel.read(tail));
+                assertEquals(0, channel.read(ByteBuffer.allocate(0)));
+            } finally {
+                channel.close();
+            }
+            assertFalse(channel.isOpen());
+        }
+    }
+
+    @Test(expected = NonWritableChannelException.class)
+    public void testWrite() throws IOException {
+        new ReaderByteChannel(new StringReader("abc")).write(ByteBuffer.allocate(1));
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void testReadClosed() throws IOException {
+        final ReaderByteChannel channel = new ReaderByteChannel(new StringReader("abc"));
+        channel.close();
+        channel.read(ByteBuffer.allocate(1));
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the statistics recorded by readers extending AbstractReader.
+ *
+ * @author Matt Palmer
+ */
+public class ReaderStatisticsTest {
+
+	private static final int WINDOW_SIZE = 127;
+
+	@Test
+	public void testFileReaderStatistics() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final long length = file.length();
+		final long windows = (length + WINDOW_SIZE - 1) / WINDOW_SIZE;
+		final FileReader reader = new FileReader(file, WINDOW_SIZE, new LeastRecentlyUsedCache(4));
+		try {
+			assertStatistics(reader.getStatistics(), 0, 0, 0, 0);
+			for (long position = 0; position < length; position++) {
+				reader.readByte(position);
+			}
+			assertStatistics(reader.getStatistics(), 0, windows, windows, length);
+			assertTrue(reader.getStatistics().getCreateWindowNanos() > 0);
+
+			reader.readByte(length - WINDOW_SIZE * 2); // in the cache, but not the last window.
+			assertStatistics(reader.getStatistics(), 1, windows, windows, length);
+			assertEquals(1.0 / (windows + 1), reader.getStatistics().getCacheHitRatio(), 0.0000001);
+
+			reader.readByte(windows * WINDOW_SIZE); // no window to create past the end.
+			assertStatistics(reader.getStatistics(), 1, windows + 1, windows, length);
+
+			reader.resetStatistics();
+			assertStatistics(reader.getStatistics(), 0, 0, 0, 0);
+			assertEquals(0, reader.getStatistics().getCreateWindowNanos());
+			assertEquals(0.0, reader.getStatistics().getCacheHitRatio(), 0.0);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testStreamReaderCountsReadAheadWindows() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final long length = file.length();
+		final long windows = (length + WINDOW_SIZE - 1) / WINDOW_SIZE;
+		final InputStreamReader reader = new InputStreamReader(new FileInputStream(file), WINDOW_SIZE);
+		try {
+			reader.readByte(WINDOW_SIZE * 10);
+			assertStatistics(reader.getStatistics(), 0, 1, 11, WINDOW_SIZE * 11);
+			assertEquals(length, reader.length());
+			assertEquals(windows, reader.getStatistics().getWindowsCreated());
+			assertEquals(length, reader.getStatistics().getBytesRead());
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void assertStatistics(final ReaderStatistics statistics, final long hits, final long misses,
+								  final long windowsCreated, final long bytesRead) {
+		assertEquals(statistics.toString(), hits, statistics.getCacheHits());
+		assertEquals(statistics.toString(), misses, statistics.getCacheMisses());
+		assertEquals(statistics.toString(), windowsCreated, statistics.getWindowsCreated());
+		assertEquals(statistics.toString(), bytesRead, statistics.getBytesRead());
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
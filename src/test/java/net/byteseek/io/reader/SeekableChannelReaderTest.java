@@ -0,0 +1,132 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.Random;
+
+import net.byteseek.io.reader.cache.NoCache;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowArrayPool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the SeekableChannelReader over channels opened on files.
+ *
+ * @author Matt Palmer
+ */
+public class SeekableChannelReaderTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullChannel() throws IOException {
+		new SeekableChannelReader(null);
+	}
+
+	@Test
+	public void testRandomAccess() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] expected = readFile(file);
+		final Random random = new Random(7);
+		for (final int windowSize : new int[] { 1, 127, 4096, expected.length + 1 }) {
+			final SeekableChannelReader reader = new SeekableChannelReader(openChannel(file), windowSize, 3);
+			try {
+				assertEquals(expected.length, reader.length());
+				for (int count = 0; count < 5000; count++) {
+					final int position = random.nextInt(expected.length);
+					assertEquals("Byte at " + position + " window size " + windowSize,
+							     expected[position] & 0xFF, reader.readByte(position));
+				}
+				assertTrue(reader.readByte(expected.length) < 0);
+				assertTrue(reader.readByte(-1) < 0);
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	@Test
+	public void testWindowsWithoutCache() throws IOException {
+		final File file = getFile("/TestASCII.zip");
+		final byte[] expected = readFile(file);
+		final SeekableChannelReader reader = new SeekableChannelReader(openChannel(file), 1000, NoCache.NO_CACHE, true);
+		try {
+			reader.useArrayPool(new WindowArrayPool(1000, 2));
+			long position = 0;
+			for (final Window window : reader) {
+				assertEquals(position, window.getWindowPosition());
+				for (int i = 0; i < window.length(); i++) {
+					assertEquals(expected[(int) position + i], window.getByte(i));
+				}
+				position += window.length();
+			}
+			assertEquals(expected.length, position);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testCloseChannel() throws IOException {
+		final SeekableByteChannel channel = openChannel(getFile("/TestASCII.txt"));
+		new SeekableChannelReader(channel, 4096, NoCache.NO_CACHE, false).close();
+		assertTrue(channel.isOpen());
+		new SeekableChannelReader(channel).close();
+		assertFalse(channel.isOpen());
+	}
+
+	private SeekableByteChannel openChannel(final File file) throws IOException {
+		return Files.newByteChannel(file.toPath());
+	}
+
+	private byte[] readFile(final File file) throws IOException {
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		return bytes;
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.BackwardSearchIterator;
+import net.byteseek.searcher.ForwardSearchIterator;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the SliceReader over readers with array windows and buffer windows,
+ * with slices which start and end both on and off window boundaries.
+ *
+ * @author Matt Palmer
+ */
+public class SliceReaderTest {
+
+	private static final int WINDOW_SIZE = 127;
+	private static final String SEQUENCE = "Midsommer";
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullReader() throws IOException {
+		new SliceReader(null, 0, 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeStart() throws IOException {
+		new SliceReader(new ByteArrayReader(new byte[10]), -1, 5);
+	}
+
+	@Test
+	public void testLengthLimitedByReader() throws IOException {
+		final WindowReader reader = new ByteArrayReader(new byte[10]);
+		assertEquals(5, new SliceReader(reader, 5, 100).length());
+		assertEquals(0, new SliceReader(reader, 20, 100).length());
+		assertNull(new SliceReader(reader, 20, 100).getWindow(0));
+	}
+
+	@Test
+	public void testSlices() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] bytes = readFile(file);
+		final List<Long> matches = bruteForce(bytes, SEQUENCE);
+		final long matchStart = matches.get(1);
+		final long[][] ranges = new long[][] {
+				{ 0, bytes.length },
+				{ WINDOW_SIZE * 3, WINDOW_SIZE * 10 },
+				{ 100, 1000 },
+				{ 5, 50 },
+				{ matchStart + 2, matchStart + 5000 },
+				{ bytes.length - 300, bytes.length } };
+		for (final long[] range : ranges) {
+			final WindowReader fileReader = new FileReader(file, WINDOW_SIZE);
+			final WindowReader mappedReader = new MappedFileReader(file, WINDOW_SIZE);
+			try {
+				assertSlice(new SliceReader(fileReader, range[0], range[1] - range[0]), bytes, range);
+				assertSlice(new SliceReader(mappedReader, range[0], range[1] - range[0]), bytes, range);
+			} finally {
+				fileReader.close();
+				mappedReader.close();
+			}
+		}
+	}
+
+	@Test
+	public void testNestedSlices() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] bytes = readFile(file);
+		final WindowReader reader = new FileReader(file, WINDOW_SIZE);
+		try {
+			final SliceReader outer = new SliceReader(reader, 1000, 20000);
+			assertSlice(new SliceReader(outer, 333, 4000), bytes, new long[] { 1333, 5333 });
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testClose() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final FileReader reader = new FileReader(file, WINDOW_SIZE);
+		new SliceReader(reader, 10, 10).close();
+		assertTrue(reader.readByte(0) >= 0);
+		new SliceReader(reader, 10, 10, true).close();
+		try {
+			reader.readByte(100000);
+			fail("Expected the underlying reader to be closed.");
+		} catch (final IOException expected) {
+		}
+	}
+
+	private void assertSlice(final SliceReader slice, final byte[] bytes, final long[] range) throws IOException {
+		final String description = slice.toString();
+		final long start = range[0];
+		final long length = range[1] - range[0];
+		assertEquals(description, length, slice.length());
+		for (int position = 0; position < length; position++) {
+			assertEquals(description + " byte at " + position, bytes[(int) start + position] & 0xFF, slice.readByte(position));
+		}
+		assertTrue(slice.readByte(-1) < 0);
+		assertTrue(slice.readByte(length) < 0);
+		assertNull(slice.getWindow(length));
+
+		long position = 0;
+		for (final Window window : slice) {
+			assertEquals(description, position, window.getWindowPosition());
+			assertTrue(description, window.getNextWindowPosition() <= length);
+			for (int offset = 0; offset < window.length(); offset++) {
+				assertEquals(description + " offset at " + (position + offset), offset, slice.getWindowOffset(position + offset));
+				assertEquals(description + " window byte at " + (position + offset),
+						     bytes[(int) (start + position) + offset], window.getByte(offset));
+			}
+			position = window.getNextWindowPosition();
+		}
+		assertEquals(description, length, position);
+
+		final List<Long> expected = new ArrayList<Long>();
+		for (final Long match : bruteForce(bytes, SEQUENCE)) {
+			if (match >= start && match + SEQUENCE.length() <= range[1]) {
+				expected.add(match - start);
+			}
+		}
+		final List<Long> expectedBackwards = new ArrayList<Long>(expected);
+		Collections.reverse(expectedBackwards);
+		final SequenceMatcher matcher = new ByteSequenceMatcher(SEQUENCE);
+		final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+		searchers.add(new BoyerMooreHorspoolSearcher(matcher));
+		searchers.add(new SundayQuickSearcher(matcher));
+		for (final Searcher<SequenceMatcher> searcher : searchers) {
+			assertEquals("Forwards " + searcher + " " + description, expected, searchForwards(searcher, slice));
+			assertEquals("Backwards " + searcher + " " + description, expectedBackwards, searchBackwards(searcher, slice));
+		}
+	}
+
+	private List<Long> searchForwards(final Searcher<SequenceMatcher> searcher, final WindowReader reader) {
+		final List<Long> positions = new ArrayList<Long>();
+		final ForwardSearchIterator<SequenceMatcher> iterator = new ForwardSearchIterator<SequenceMatcher>(searcher, reader);
+		while (iterator.hasNext()) {
+			for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+				positions.add(result.getMatchPosition());
+			}
+		}
+		return positions;
+	}
+
+	private List<Long> searchBackwards(final Searcher<SequenceMatcher> searcher, final WindowReader reader) throws IOException {
+		final List<Long> positions = new ArrayList<Long>();
+		final BackwardSearchIterator<SequenceMatcher> iterator = new BackwardSearchIterator<SequenceMatcher>(searcher, reader);
+		while (iterator.hasNext()) {
+			for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+				positions.add(result.getMatchPosition());
+			}
+		}
+		return positions;
+	}
+
+	private List<Long> bruteForce(final byte[] bytes, final String sequence) {
+		final byte[] pattern = sequence.getBytes();
+		final List<Long> positions = new ArrayList<Long>();
+		for (int position = 0; position <= bytes.length - pattern.length; position++) {
+			int index = 0;
+			while (index < pattern.length && bytes[position + index] == pattern[index]) {
+				index++;
+			}
+			if (index == pattern.length) {
+				positions.add((long) position);
+			}
+		}
+		return positions;
+	}
+
+	private byte[] readFile(final File file) throws IOException {
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		return bytes;
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
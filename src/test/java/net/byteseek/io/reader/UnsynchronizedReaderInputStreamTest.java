@@ -0,0 +1,154 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UnsynchronizedReaderInputStreamTest {
+
+    private static final int WINDOW_SIZE = 127;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullReader() throws IOException {
+        new UnsynchronizedReaderInputStream(null);
+    }
+
+    @Test
+    public void testReadArrayAndBufferWindows() throws IOException {
+        final File file = getFile();
+        final byte[] expected = readFile(file);
+        for (final WindowReader reader : readers(file)) {
+            final UnsynchronizedReaderInputStream in = new UnsynchronizedReaderInputStream(reader);
+            try {
+                final byte[] bytes = new byte[expected.length];
+                assertEquals(expected[0] & 0xFF, in.read());
+                bytes[0] = expected[0];
+                int total = 1;
+                int chunk = 1;
+                int read;
+                while ((read = in.read(bytes, total, Math.min(chunk, bytes.length - total))) > 0) {
+                    total += read;
+                    chunk = chunk * 3 + 1;
+                }
+                assertEquals(expected.length, total);
+                assertArrayEquals(expected, bytes);
+                assertEquals(-1, in.read());
+                assertEquals(-1, in.read(bytes, 0, 10));
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void testTransferToOutputStream() throws IOException {
+        final File file = getFile();
+        final byte[] expected = readFile(file);
+        for (final WindowReader reader : readers(file)) {
+            final UnsynchronizedReaderInputStream in = new UnsynchronizedReaderInputStream(reader);
+            try {
+                assertEquals(10, in.skip(10));
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(expected.length - 10, in.transferTo(out));
+                assertArrayEquals(Arrays.copyOfRange(expected, 10, expected.length), out.toByteArray());
+                assertEquals(-1, in.read());
+                assertEquals(0, in.transferTo(out));
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void testTransferToChannel() throws IOException {
+        final File file = getFile();
+        final byte[] expected = readFile(file);
+        for (final WindowReader reader : readers(file)) {
+            final ReaderInputStream in = new ReaderInputStream(reader);
+            try {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(expected.length, in.transferTo(Channels.newChannel(out)));
+                assertArrayEquals(expected, out.toByteArray());
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void testMarkAndReset() throws IOException {
+        final File file = getFile();
+        final byte[] expected = readFile(file);
+        final UnsynchronizedReaderInputStream in = new UnsynchronizedReaderInputStream(new FileReader(file, WINDOW_SIZE));
+        try {
+            in.skip(200);
+            in.mark(0);
+            final byte[] first = new byte[300];
+            assertEquals(300, in.read(first));
+            in.reset();
+            assertEquals(200, in.getNextReadPos());
+            assertEquals(expected[200] & 0xFF, in.read());
+            assertArrayEquals(Arrays.copyOfRange(expected, 200, 500), first);
+        } finally {
+            in.close();
+        }
+    }
+
+    static WindowReader[] readers(final File file) throws IOException {
+        return new WindowReader[] {new FileReader(file, WINDOW_SIZE), new MappedFileReader(file, WINDOW_SIZE)};
+    }
+
+    static File getFile() {
+        return new File(UnsynchronizedReaderInputStreamTest.class.getResource("/TestASCII.txt").getPath());
+    }
+
+    static byte[] readFile(final File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        return bytes;
+    }
+
+}
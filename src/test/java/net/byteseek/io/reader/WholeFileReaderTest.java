@@ -0,0 +1,123 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.searcher.SearchUtils;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the WholeFileReader reads files into a single window, and can be reset to
+ * read other files, reusing its array.
+ *
+ * @author Matt Palmer
+ */
+public class WholeFileReaderTest {
+
+	private static final int MAX_FILE_SIZE = 128 * 1024;
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullFile() throws IOException {
+		new WholeFileReader((File) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFileTooLarge() throws IOException {
+		new WholeFileReader(getFile("/TestASCII.txt"));
+	}
+
+	@Test
+	public void testReadsWholeFile() throws IOException {
+		final File file = getFile("/TestASCII.zip");
+		final byte[] bytes = UnsynchronizedReaderInputStreamTest.readFile(file);
+		final WholeFileReader reader = new WholeFileReader(file);
+		assertEquals(bytes.length, reader.length());
+		assertSame(file, reader.getFile());
+		final Window window = reader.getWindow(bytes.length / 2);
+		assertEquals(0, window.getWindowPosition());
+		assertEquals(bytes.length, window.length());
+		assertSame(window, reader.getWindow(0));
+		assertNull(reader.getWindow(bytes.length));
+		assertNull(reader.getWindow(-1));
+		for (int position = 0; position < bytes.length; position++) {
+			assertEquals(bytes[position] & 0xFF, reader.readByte(position));
+		}
+		assertEquals(-1, reader.readByte(bytes.length));
+		final Iterator<Window> windows = reader.iterator();
+		assertSame(window, windows.next());
+		assertFalse(windows.hasNext());
+	}
+
+	@Test
+	public void testResetReusesArray() throws IOException {
+		final WholeFileReader reader = new WholeFileReader(MAX_FILE_SIZE);
+		assertEquals(0, reader.length());
+		assertNull(reader.getWindow(0));
+
+		reader.reset(getFile("/TestASCII.txt"));
+		final byte[] array = reader.getWindow(0).getArray();
+		final BoyerMooreHorspoolSearcher searcher = new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher("Midsommer"));
+		final int matches = SearchUtils.searchAllForwards(searcher, reader).size();
+		assertEquals(SearchUtils.searchAllForwards(searcher, new FileReader(getFile("/TestASCII.txt"))).size(), matches);
+		assertTrue(matches > 0);
+
+		final File zip = getFile("/TestASCII.zip");
+		reader.reset(zip);
+		assertEquals(zip.length(), reader.length());
+		assertSame("A smaller file is read into the same array", array, reader.getWindow(0).getArray());
+		assertEquals(UnsynchronizedReaderInputStreamTest.readFile(zip)[100] & 0xFF, reader.readByte(100));
+
+		reader.reset(getFile("/TestEmpty.empty"));
+		assertEquals(0, reader.length());
+		assertNull(reader.getWindow(0));
+		assertFalse(reader.iterator().hasNext());
+
+		reader.close();
+		assertNull(reader.getFile());
+		reader.reset(zip);
+		assertEquals(zip.length(), reader.length());
+	}
+
+	private static File getFile(final String resourceName) {
+		return new File(WholeFileReaderTest.class.getResource(resourceName).getPath());
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveReplacementCacheTest {
+
+    private static final byte[] ARRAY = new byte[16];
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new AdaptiveReplacementCache(0);
+    }
+
+    @Test
+    public void testAddAndGet() throws IOException {
+        final AdaptiveReplacementCache cache = new AdaptiveReplacementCache(8);
+        final Set<Long> freed = subscribe(cache);
+        assertNull(cache.getWindow(0));
+        for (int i = 0; i < 8; i++) {
+            cache.addWindow(window(i));
+        }
+        assertEquals(8, cache.size());
+        assertTrue(freed.isEmpty());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i * ARRAY.length, cache.getWindow(i * ARRAY.length).getWindowPosition());
+        }
+        for (int i = 8; i < 100; i++) {
+            cache.addWindow(window(i));
+            assertEquals(8, cache.size());
+            assertEquals(i - 7, freed.size());
+        }
+        for (final Long position : freed) {
+            assertNull(cache.getWindow(position));
+        }
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.getWindow(99 * ARRAY.length));
+    }
+
+    @Test
+    public void testScanResistance() throws IOException {
+        final AdaptiveReplacementCache adaptive = new AdaptiveReplacementCache(8);
+        final LeastRecentlyUsedCache leastRecentlyUsed = new LeastRecentlyUsedCache(8);
+        for (final WindowCache cache : new WindowCache[] { adaptive, leastRecentlyUsed }) {
+            // The header and trailer windows are checked more than once:
+            useWindow(cache, 0);
+            useWindow(cache, 1000);
+            useWindow(cache, 0);
+            useWindow(cache, 1000);
+            // A scan uses every other window once:
+            for (int i = 1; i < 1000; i++) {
+                useWindow(cache, i);
+            }
+        }
+        assertNotNull("Header survives scan", adaptive.getWindow(0));
+        assertNotNull("Trailer survives scan", adaptive.getWindow(1000 * ARRAY.length));
+        assertNull(leastRecentlyUsed.getWindow(0));
+        assertNull(leastRecentlyUsed.getWindow(1000 * ARRAY.length));
+    }
+
+    @Test
+    public void testRecentlyEvictedWindowIsPromoted() throws IOException {
+        final AdaptiveReplacementCache cache = new AdaptiveReplacementCache(4);
+        useWindow(cache, 100);
+        useWindow(cache, 100);
+        for (int i = 0; i < 5; i++) {
+            useWindow(cache, i);
+        }
+        assertNull(cache.getWindow(1 * ARRAY.length));
+        useWindow(cache, 1); // a miss on a remembered position adapts the cache.
+        for (int i = 10; i < 20; i++) {
+            useWindow(cache, i);
+        }
+        assertNotNull("Re-used window is kept", cache.getWindow(1 * ARRAY.length));
+        assertNotNull("Window used twice is kept", cache.getWindow(100 * ARRAY.length));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void testWithReader() throws IOException {
+        final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        final byte[] bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        final Random random = new Random(3);
+        final FileReader reader = new FileReader(file, 127, new AdaptiveReplacementCache(16));
+        try {
+            for (int count = 0; count < 20000; count++) {
+                final int position = count % 3 == 0? random.nextInt(127) : random.nextInt(bytes.length);
+                assertEquals("Byte at " + position, bytes[position] & 0xFF, reader.readByte(position));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void useWindow(final WindowCache cache, final int index) throws IOException {
+        if (cache.getWindow(index * ARRAY.length) == null) {
+            cache.addWindow(window(index));
+        }
+    }
+
+    private Set<Long> subscribe(final WindowCache cache) {
+        final Set<Long> freed = new HashSet<Long>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                assertTrue(freed.add(window.getWindowPosition()));
+            }
+        });
+        return freed;
+    }
+
+    private Window window(final int index) {
+        return new HardWindow(ARRAY, index * ARRAY.length, ARRAY.length);
+    }
+
+}
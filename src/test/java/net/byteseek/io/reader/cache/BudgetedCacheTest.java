@@ -0,0 +1,217 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BudgetedCacheTest {
+
+    private static final byte[] ARRAY = new byte[16];
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroBudget() {
+        new BudgetedCache(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullBudget() {
+        new BudgetedCache(null);
+    }
+
+    @Test
+    public void testByteBound() throws IOException {
+        final BudgetedCache cache = new BudgetedCache(ARRAY.length * 4);
+        final List<Window> freed = subscribe(cache);
+        for (int i = 0; i < 4; i++) {
+            cache.addWindow(window(i));
+        }
+        assertEquals(4, cache.size());
+        assertEquals(ARRAY.length * 4, cache.getUsedBytes());
+        assertNotNull(cache.getWindow(0)); // window 0 is now the most recently used.
+        cache.addWindow(window(4));
+        assertEquals(4, cache.size());
+        assertEquals(1, freed.size());
+        assertEquals(ARRAY.length, freed.get(0).getWindowPosition());
+        assertNull(cache.getWindow(ARRAY.length));
+        assertNotNull(cache.getWindow(0));
+
+        cache.addWindow(new HardWindow(new byte[100], 1000, 100));
+        assertEquals("A window larger than the budget empties the cache", 0, cache.size());
+        assertEquals(6, freed.size());
+        assertEquals(1000, freed.get(5).getWindowPosition());
+
+        cache.addWindow(window(0));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBudget().getUsedBytes());
+    }
+
+    @Test
+    public void testSharedBudget() throws IOException {
+        final MemoryBudget budget = new MemoryBudget(ARRAY.length * 4);
+        final BudgetedCache first = new BudgetedCache(budget);
+        final BudgetedCache second = new BudgetedCache(budget);
+        final List<Window> firstFreed = subscribe(first);
+        final List<Window> secondFreed = subscribe(second);
+        for (int i = 0; i < 4; i++) {
+            first.addWindow(window(i));
+        }
+        second.addWindow(window(10));
+        second.addWindow(window(11));
+        assertEquals(2, first.size());
+        assertEquals(2, second.size());
+        assertEquals(ARRAY.length * 4, budget.getUsedBytes());
+        assertEquals(4, budget.getWindowCount());
+        assertTrue("Other caches are not notified on the evicting thread", firstFreed.isEmpty());
+        assertTrue(secondFreed.isEmpty());
+        assertNull(first.getWindow(0));
+        assertEquals(2, firstFreed.size());
+        assertEquals(0, firstFreed.get(0).getWindowPosition());
+        assertEquals(ARRAY.length, firstFreed.get(1).getWindowPosition());
+
+        first.clear();
+        assertEquals(ARRAY.length * 2, budget.getUsedBytes());
+        assertNotNull(second.getWindow(10 * ARRAY.length));
+    }
+
+    @Test
+    public void testEvictionsOnlyHeldForSubscribers() throws IOException {
+        final MemoryBudget budget = new MemoryBudget(ARRAY.length * 2);
+        final BudgetedCache unobserved = new BudgetedCache(budget);
+        final BudgetedCache observed = new BudgetedCache(budget);
+        final BudgetedCache evicting = new BudgetedCache(budget);
+        final List<Window> freed = subscribe(observed);
+        unobserved.addWindow(window(0));
+        observed.addWindow(window(1));
+        evicting.addWindow(window(2));
+        evicting.addWindow(window(3));
+        assertEquals(0, unobserved.size());
+        assertEquals(0, observed.size());
+        assertEquals("Windows nobody observes are not held", 0, unobserved.getUnnotifiedCount());
+        assertEquals(1, observed.getUnnotifiedCount());
+        assertNull(observed.getWindow(0));
+        assertEquals(1, freed.size());
+        assertEquals(0, observed.getUnnotifiedCount());
+
+        final WindowCache.WindowObserver observer = new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                fail("Unsubscribed observers are not notified");
+            }
+        };
+        unobserved.subscribe(observer);
+        unobserved.addWindow(window(4));
+        evicting.addWindow(window(5));
+        evicting.addWindow(window(6));
+        assertEquals(1, unobserved.getUnnotifiedCount());
+        assertTrue(unobserved.unsubscribe(observer));
+        assertEquals("Unsubscribing the last observer drops held windows", 0, unobserved.getUnnotifiedCount());
+        assertNull(unobserved.getWindow(0));
+    }
+
+    @Test
+    public void testReadersSharingBudget() throws Exception {
+        final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        final byte[] bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        final MemoryBudget budget = new MemoryBudget(4096 * 10);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int thread = 0; thread < 4; thread++) {
+            final int seed = thread;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final FileReader reader = new FileReader(file, 4096, new BudgetedCache(budget));
+                        try {
+                            final Random random = new Random(seed);
+                            for (int count = 0; count < 5000; count++) {
+                                final int position = random.nextInt(bytes.length);
+                                assertEquals(bytes[position] & 0xFF, reader.readByte(position));
+                            }
+                        } finally {
+                            reader.close();
+                        }
+                    } catch (Throwable ex) {
+                        failure.set(ex);
+                    }
+                }
+            }));
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals("Closed readers return their bytes", 0, budget.getUsedBytes());
+    }
+
+    private List<Window> subscribe(final WindowCache cache) {
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                freed.add(window);
+            }
+        });
+        return freed;
+    }
+
+    private Window window(final int index) {
+        return new HardWindow(ARRAY, index * ARRAY.length, ARRAY.length);
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentClockCacheTest {
+
+    private static final byte[] ARRAY = new byte[16];
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new ConcurrentClockCache(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroConcurrency() {
+        new ConcurrentClockCache(10, 0);
+    }
+
+    @Test
+    public void testAddAndGet() throws IOException {
+        final ConcurrentClockCache cache = new ConcurrentClockCache(64, 1);
+        assertNull(cache.getWindow(0));
+        for (int i = 0; i < 64; i++) {
+            cache.addWindow(window(i));
+        }
+        assertEquals(64, cache.size());
+        for (int i = 0; i < 64; i++) {
+            final Window window = cache.getWindow(i * ARRAY.length);
+            assertNotNull("Window " + i, window);
+            assertEquals(i * ARRAY.length, window.getWindowPosition());
+        }
+        assertNull(cache.getWindow(1));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.getWindow(0));
+    }
+
+    @Test
+    public void testStripedCacheNeverExceedsCapacity() throws IOException {
+        final ConcurrentClockCache cache = new ConcurrentClockCache(64);
+        for (int i = 0; i < 1000; i++) {
+            cache.addWindow(window(i));
+            assertTrue(cache.size() <= cache.getCapacity());
+            assertNotNull(cache.getWindow(i * ARRAY.length));
+        }
+    }
+
+    @Test
+    public void testAddSamePositionTwice() throws IOException {
+        final ConcurrentClockCache cache = new ConcurrentClockCache(4);
+        final Window first = window(0);
+        cache.addWindow(first);
+        cache.addWindow(window(0));
+        assertEquals(1, cache.size());
+        assertSame(first, cache.getWindow(0));
+    }
+
+    @Test
+    public void testEvictionNotifiesObservers() throws IOException {
+        final ConcurrentClockCache cache = new ConcurrentClockCache(10, 1);
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                assertSame(cache, fromCache);
+                freed.add(window);
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            cache.addWindow(window(i));
+        }
+        assertTrue(freed.isEmpty());
+
+        // Reference window 0, so the clock gives it a second chance and evicts window 1 instead.
+        assertNotNull(cache.getWindow(0));
+        cache.addWindow(window(10));
+        assertEquals(1, freed.size());
+        assertEquals(ARRAY.length, freed.get(0).getWindowPosition());
+        assertNotNull(cache.getWindow(0));
+        assertNull(cache.getWindow(ARRAY.length));
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    public void testConcurrentAddsNeverExceedCapacity() throws Exception {
+        final int capacity = 100;
+        final ConcurrentClockCache cache = new ConcurrentClockCache(capacity, 8);
+        final AtomicInteger freed = new AtomicInteger();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                freed.incrementAndGet();
+            }
+        });
+        final int numThreads = 8;
+        final int windowsPerThread = 5000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int thread = 0; thread < numThreads; thread++) {
+            final int base = thread * windowsPerThread;
+            final Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < windowsPerThread; i++) {
+                            final Window window = window(base + i);
+                            cache.addWindow(window);
+                            final Window cached = cache.getWindow(window.getWindowPosition());
+                            if (cached != null && cached.getWindowPosition() != window.getWindowPosition()) {
+                                throw new AssertionError("Wrong window returned: " + cached);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+            threads.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertTrue(cache.size() <= capacity);
+        assertEquals(numThreads * windowsPerThread, cache.size() + freed.get());
+    }
+
+    private static Window window(final int index) {
+        return new HardWindow(ARRAY, index * ARRAY.length, ARRAY.length);
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowMissingException;
+import net.byteseek.matcher.multisequence.ListMultiSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.ForwardSearchIterator;
+import net.byteseek.searcher.MatcherSearcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.SearchUtils;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.multisequence.set_horspool.SetHorspoolSearcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HorizonCacheTest {
+
+    private static final int WINDOW_SIZE = 256;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeHorizon() {
+        new HorizonCache(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownMatchLength() {
+        SearchUtils.getMaximumMatchLength(new MatcherSearcher(new ByteSequenceMatcher("abc")));
+    }
+
+    @Test
+    public void testMaximumMatchLength() {
+        final List<SequenceMatcher> sequences = new ArrayList<SequenceMatcher>();
+        sequences.add(new ByteSequenceMatcher("abc"));
+        sequences.add(new ByteSequenceMatcher("abcdefg"));
+        assertEquals(7, SearchUtils.getMaximumMatchLength(new SetHorspoolSearcher(new ListMultiSequenceMatcher(sequences))));
+        assertEquals(3, SearchUtils.getMaximumMatchLength(new SundayQuickSearcher(sequences.get(0))));
+    }
+
+    @Test
+    public void testWindowsBehindHorizonAreFreed() throws IOException {
+        final HorizonCache cache = new HorizonCache(100);
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                freed.add(window);
+            }
+        });
+        final byte[] array = new byte[WINDOW_SIZE];
+        for (int i = 0; i < 5; i++) {
+            cache.addWindow(new HardWindow(array, i * WINDOW_SIZE, WINDOW_SIZE));
+            assertTrue(cache.size() <= 2);
+        }
+        assertEquals(3, freed.size());
+        assertNull(cache.getWindow(2 * WINDOW_SIZE));
+        assertNotNull(cache.getWindow(3 * WINDOW_SIZE));
+        assertNotNull(cache.getWindow(4 * WINDOW_SIZE));
+
+        cache.addWindow(new HardWindow(array, 0, WINDOW_SIZE));
+        assertEquals("A window behind the horizon is freed immediately", 4, freed.size());
+        assertNull(cache.getWindow(0));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testReadingBehindHorizon() throws IOException {
+        final InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(new byte[WINDOW_SIZE * 8]),
+                                                               WINDOW_SIZE, new HorizonCache(10));
+        reader.readByte(WINDOW_SIZE * 7);
+        try {
+            reader.readByte(WINDOW_SIZE);
+            fail("Expected a WindowMissingException reading behind the horizon");
+        } catch (WindowMissingException expected) {
+        }
+    }
+
+    @Test
+    public void testStreamingSearches() throws IOException {
+        final byte[] data = new byte[WINDOW_SIZE * 200];
+        new Random(17).nextBytes(data);
+        final byte[] pattern = "a pattern longer than one window of the stream, which it crosses".getBytes("US-ASCII");
+        final byte[] longPattern = new byte[WINDOW_SIZE * 2 + 10];
+        Arrays.fill(longPattern, (byte) 'x');
+        for (int position = 1000; position < data.length - longPattern.length; position += 3333) {
+            System.arraycopy(pattern, 0, data, position, pattern.length);
+        }
+        System.arraycopy(longPattern, 0, data, WINDOW_SIZE * 150 - 5, longPattern.length);
+
+        final SequenceMatcher sequence = new ByteSequenceMatcher(pattern);
+        final SequenceMatcher longSequence = new ByteSequenceMatcher(longPattern);
+        assertStreamingSearch(new BoyerMooreHorspoolSearcher(sequence), data);
+        assertStreamingSearch(new SundayQuickSearcher(sequence), data);
+        assertStreamingSearch(new BoyerMooreHorspoolSearcher(longSequence), data);
+    }
+
+    private void assertStreamingSearch(final Searcher<SequenceMatcher> searcher, final byte[] data) throws IOException {
+        final List<Long> expected = matchPositions(searcher, new InputStreamReader(
+                new ByteArrayInputStream(data), WINDOW_SIZE, new LeastRecentlyUsedCache(1000)));
+        final HorizonCache horizon = new HorizonCache(SearchUtils.getMaximumMatchLength(searcher));
+        final int[] maxSize = new int[1];
+        final WindowCache measured = new AbstractFreeNotificationCache() {
+            @Override
+            public Window getWindow(final long position) throws IOException {
+                return horizon.getWindow(position);
+            }
+            @Override
+            public void addWindow(final Window window) throws IOException {
+                horizon.addWindow(window);
+                maxSize[0] = Math.max(maxSize[0], horizon.size());
+            }
+            @Override
+            public void clear() {
+                horizon.clear();
+            }
+        };
+        final List<Long> streamed = matchPositions(searcher, new InputStreamReader(
+                new ByteArrayInputStream(data), WINDOW_SIZE, measured));
+        assertFalse(expected.isEmpty());
+        assertEquals(searcher.toString(), expected, streamed);
+        final int boundedWindows = (int) (horizon.getHorizon() / WINDOW_SIZE) + 2;
+        assertTrue("Windows held " + maxSize[0] + " should be at most " + boundedWindows, maxSize[0] <= boundedWindows);
+    }
+
+    private List<Long> matchPositions(final Searcher<SequenceMatcher> searcher,
+                                      final InputStreamReader reader) throws IOException {
+        final List<Long> positions = new ArrayList<Long>();
+        try {
+            final ForwardSearchIterator<SequenceMatcher> iterator = new ForwardSearchIterator<SequenceMatcher>(searcher, reader);
+            while (iterator.hasNext()) {
+                for (final SearchResult<SequenceMatcher> result : iterator.next()) {
+                    positions.add(result.getMatchPosition());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return positions;
+    }
+
+}
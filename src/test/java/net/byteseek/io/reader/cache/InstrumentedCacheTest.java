@@ -0,0 +1,130 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InstrumentedCacheTest {
+
+    private static final byte[] ARRAY = new byte[16];
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullCache() {
+        InstrumentedCache.create(null);
+    }
+
+    @Test
+    public void testStatistics() throws IOException {
+        final InstrumentedCache cache = InstrumentedCache.create(new LeastRecentlyUsedCache(2));
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                assertTrue(fromCache instanceof InstrumentedCache);
+                freed.add(window);
+            }
+        });
+        assertNull(cache.getWindow(0));
+        for (int i = 0; i < 5; i++) {
+            cache.addWindow(window(i));
+        }
+        assertNotNull(cache.getWindow(4 * ARRAY.length));
+        assertNotNull(cache.getWindow(3 * ARRAY.length));
+        assertNull(cache.getWindow(0));
+
+        final CacheStatistics statistics = cache.getStatistics();
+        assertEquals(2, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertEquals(0.5, statistics.getHitRatio(), 0.0);
+        assertEquals(5, statistics.getWindowsAdded());
+        assertEquals(3, statistics.getEvictions());
+        assertEquals(3, freed.size());
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getStatistics().getHits());
+        assertEquals(0, cache.getStatistics().getEvictions());
+        assertEquals(0.0, cache.getStatistics().getHitRatio(), 0.0);
+    }
+
+    @Test
+    public void testInstrumentedTwoLevelCache() throws IOException {
+        final InstrumentedCache primary = InstrumentedCache.create(new LeastRecentlyUsedCache(2));
+        final InstrumentedCache secondary = InstrumentedCache.create(new LeastRecentlyUsedCache(100));
+        final WindowCache cache = TwoLevelCache.create(primary, secondary);
+        for (int i = 0; i < 10; i++) {
+            cache.addWindow(window(i));
+        }
+        assertEquals(8, primary.getStatistics().getEvictions());
+        assertEquals(8, secondary.getStatistics().getWindowsAdded());
+        assertNotNull(cache.getWindow(0)); // moves back into the primary cache, evicting another window.
+        assertEquals(9, primary.getStatistics().getEvictions());
+        assertEquals(1, primary.getStatistics().getMisses());
+        assertEquals(1, secondary.getStatistics().getHits());
+    }
+
+    @Test
+    public void testInstrumentingTwoLevelCache() throws IOException {
+        final InstrumentedCache cache = InstrumentedCache.create(
+                TwoLevelCache.create(new LeastRecentlyUsedCache(2), new LeastRecentlyUsedCache(3)));
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                assertSame(cache, fromCache);
+                freed.add(window);
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            cache.addWindow(window(i));
+        }
+        assertEquals(10, cache.getStatistics().getWindowsAdded());
+        assertEquals(5, cache.getStatistics().getEvictions());
+        assertEquals(5, freed.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i * ARRAY.length, freed.get(i).getWindowPosition());
+        }
+    }
+
+    private Window window(final int index) {
+        return new HardWindow(ARRAY, index * ARRAY.length, ARRAY.length);
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.windows.ByteBufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OffHeapCacheTest {
+
+    private static final int SLOT_SIZE = 16;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroSlotSize() {
+        new OffHeapCache(1024, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityLessThanSlot() {
+        new OffHeapCache(15, SLOT_SIZE);
+    }
+
+    @Test
+    public void testAddAndGet() throws IOException {
+        final OffHeapCache cache = new OffHeapCache(SLOT_SIZE * 10, SLOT_SIZE);
+        assertEquals(0, cache.getAllocatedBytes());
+        assertNull(cache.getWindow(0));
+        for (int i = 0; i < 10; i++) {
+            cache.addWindow(window(i));
+        }
+        assertEquals(10, cache.size());
+        assertEquals(SLOT_SIZE * 10, cache.getAllocatedBytes());
+        for (int i = 0; i < 10; i++) {
+            assertWindow(i, cache.getWindow(i * SLOT_SIZE));
+        }
+        assertNull(cache.getWindow(1));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getAllocatedBytes());
+        assertNull(cache.getWindow(0));
+    }
+
+    @Test
+    public void testBufferWindowsAndShortWindows() throws IOException {
+        final OffHeapCache cache = new OffHeapCache(SLOT_SIZE * 10, SLOT_SIZE);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(SLOT_SIZE);
+        buffer.put(window(3).getArray());
+        cache.addWindow(new ByteBufferWindow(buffer, 3 * SLOT_SIZE, SLOT_SIZE));
+        assertWindow(3, cache.getWindow(3 * SLOT_SIZE));
+        cache.addWindow(new HardWindow(new byte[] { 1, 2, 3 }, 1000, 3));
+        final Window shortWindow = cache.getWindow(1000);
+        assertEquals(3, shortWindow.length());
+        assertEquals(3, shortWindow.getByte(2));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        final OffHeapCache cache = new OffHeapCache(SLOT_SIZE * 3, SLOT_SIZE);
+        final List<Window> freed = subscribe(cache);
+        cache.addWindow(window(0));
+        cache.addWindow(window(1));
+        cache.addWindow(window(2));
+        cache.getWindow(0);
+        cache.addWindow(window(3));
+        assertEquals(1, freed.size());
+        assertWindow(1, freed.get(0));
+        assertNull(cache.getWindow(SLOT_SIZE));
+        cache.addWindow(window(2)); // already cached - becomes most recent.
+        cache.addWindow(window(4));
+        assertEquals(2, freed.size());
+        assertWindow(0, freed.get(1));
+        assertEquals(3, cache.size());
+        assertWindow(2, cache.getWindow(2 * SLOT_SIZE));
+        assertWindow(3, cache.getWindow(3 * SLOT_SIZE));
+        assertWindow(4, cache.getWindow(4 * SLOT_SIZE));
+    }
+
+    @Test
+    public void testWindowLongerThanSlot() throws IOException {
+        final OffHeapCache cache = new OffHeapCache(SLOT_SIZE * 3, SLOT_SIZE);
+        final List<Window> freed = subscribe(cache);
+        final Window window = new HardWindow(new byte[SLOT_SIZE + 1], 0, SLOT_SIZE + 1);
+        cache.addWindow(window);
+        assertEquals(0, cache.size());
+        assertEquals(1, freed.size());
+        assertSame(window, freed.get(0));
+    }
+
+    @Test
+    public void testThreeLevelCacheWithStreamReader() throws IOException {
+        final byte[] bytes = new byte[300000];
+        final Random random = new Random(8);
+        random.nextBytes(bytes);
+        final OffHeapCache offHeap = new OffHeapCache(4096 * 20, 4096);
+        final TempFileCache tempFile = new TempFileCache();
+        final InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(bytes), 4096,
+                TwoLevelCache.create(new LeastRecentlyUsedCache(2), TwoLevelCache.create(offHeap, tempFile)));
+        try {
+            assertEquals(bytes.length, reader.length());
+            for (int count = 0; count < 20000; count++) {
+                final int position = random.nextInt(bytes.length);
+                assertEquals("Byte at " + position, bytes[position] & 0xFF, reader.readByte(position));
+            }
+            assertEquals(20, offHeap.size());
+            assertTrue(tempFile.size() > 0);
+        } finally {
+            reader.close();
+        }
+        assertEquals(0, offHeap.size());
+    }
+
+    @Test
+    public void testNestedTwoLevelCacheNotifiesFrees() throws IOException {
+        final WindowCache cache = TwoLevelCache.create(new LeastRecentlyUsedCache(2),
+                TwoLevelCache.create(new OffHeapCache(SLOT_SIZE * 2, SLOT_SIZE), new LeastRecentlyUsedCache(2)));
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                assertSame(cache, fromCache);
+                freed.add(window);
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            cache.addWindow(window(i));
+        }
+        assertEquals(4, freed.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i * SLOT_SIZE, freed.get(i).getWindowPosition());
+        }
+    }
+
+    private List<Window> subscribe(final WindowCache cache) {
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                freed.add(window);
+            }
+        });
+        return freed;
+    }
+
+    private Window window(final int index) {
+        final byte[] array = new byte[SLOT_SIZE];
+        for (int i = 0; i < SLOT_SIZE; i++) {
+            array[i] = (byte) (index * 31 + i);
+        }
+        return new HardWindow(array, index * SLOT_SIZE, SLOT_SIZE);
+    }
+
+    private void assertWindow(final int index, final Window window) throws IOException {
+        assertNotNull("Window " + index, window);
+        assertEquals(index * SLOT_SIZE, window.getWindowPosition());
+        assertArrayEquals(window(index).getArray(), window.getArray());
+    }
+
+}
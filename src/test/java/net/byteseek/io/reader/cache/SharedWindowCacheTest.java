@@ -0,0 +1,183 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.ReaderStatistics;
+import net.byteseek.io.reader.windows.HardWindow;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SharedWindowCacheTest {
+
+    private static final int WINDOW_SIZE = 1024;
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("shared", ".bin");
+        write(fill(WINDOW_SIZE * 8, (byte) 1));
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullBudget() {
+        new SharedWindowCache(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullFile() throws IOException {
+        new SharedWindowCache(1024 * 1024).getCache(null, WINDOW_SIZE);
+    }
+
+    @Test
+    public void testSecondReaderStartsWarm() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(1024 * 1024);
+        readAll(new FileReader(file, WINDOW_SIZE, shared.getCache(file, WINDOW_SIZE)));
+        assertEquals(1, shared.getFileCount());
+        assertEquals("Closing a reader leaves the shared windows", WINDOW_SIZE * 8, shared.getBudget().getUsedBytes());
+
+        final ReaderStatistics stats = readAll(new FileReader(file, WINDOW_SIZE, shared.getCache(file, WINDOW_SIZE)));
+        assertEquals(0, stats.getCacheMisses());
+        assertEquals(8, stats.getCacheHits());
+        assertEquals(0, stats.getWindowsCreated());
+    }
+
+    @Test
+    public void testWindowSizesAreNotShared() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(1024 * 1024);
+        readAll(new FileReader(file, WINDOW_SIZE, shared.getCache(file, WINDOW_SIZE)));
+        final ReaderStatistics stats = readAll(new FileReader(file, WINDOW_SIZE * 2, shared.getCache(file, WINDOW_SIZE * 2)));
+        assertEquals(0, stats.getCacheHits());
+        assertEquals(2, shared.getFileCount());
+    }
+
+    @Test
+    public void testChangedFileIsInvalidated() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(1024 * 1024);
+        readAll(new FileReader(file, WINDOW_SIZE, shared.getCache(file, WINDOW_SIZE)));
+
+        write(fill(WINDOW_SIZE * 4, (byte) 2));
+        final FileReader reader = new FileReader(file, WINDOW_SIZE, shared.getCache(file, WINDOW_SIZE));
+        try {
+            assertEquals(2, reader.readByte(0));
+            assertEquals(2, reader.readByte(WINDOW_SIZE * 4 - 1));
+            assertEquals(0, reader.getStatistics().getCacheHits());
+        } finally {
+            reader.close();
+        }
+        assertEquals("Windows of the old file are discarded", WINDOW_SIZE * 2, shared.getBudget().getUsedBytes());
+
+        final long modified = file.lastModified();
+        write(fill(WINDOW_SIZE * 4, (byte) 3));
+        assertTrue(file.setLastModified(modified + 10000));
+        final FileReader sameSize = new FileReader(file, WINDOW_SIZE, shared.getCache(file, WINDOW_SIZE));
+        try {
+            assertEquals(3, sameSize.readByte(0));
+        } finally {
+            sameSize.close();
+        }
+    }
+
+    @Test
+    public void testInvalidateAndClear() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(1024 * 1024);
+        readAll(new FileReader(file, WINDOW_SIZE, shared.getCache(file, WINDOW_SIZE)));
+        readAll(new FileReader(file, WINDOW_SIZE * 2, shared.getCache(file, WINDOW_SIZE * 2)));
+        shared.invalidate(file);
+        assertEquals(0, shared.getFileCount());
+        assertEquals(0, shared.getBudget().getUsedBytes());
+
+        readAll(new FileReader(file, WINDOW_SIZE, shared.getCache(file, WINDOW_SIZE)));
+        shared.clear();
+        assertEquals(0, shared.getFileCount());
+        assertEquals(0, shared.getBudget().getUsedBytes());
+    }
+
+    @Test
+    public void testFilesWithNoWindowsAreForgotten() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(WINDOW_SIZE * 2);
+        final WindowCache first = shared.getCache(file, WINDOW_SIZE);
+        first.addWindow(new HardWindow(new byte[WINDOW_SIZE], 0, WINDOW_SIZE));
+        // Each window size is a different entry for the file, and evicts the windows of the others:
+        for (int windowSize = 1; windowSize <= 1000; windowSize++) {
+            shared.getCache(file, windowSize).addWindow(new HardWindow(new byte[WINDOW_SIZE], 0, WINDOW_SIZE));
+            assertTrue("Files with no windows are forgotten", shared.getFileCount() <= 32);
+        }
+        final int fileCount = shared.getFileCount();
+        first.addWindow(new HardWindow(new byte[WINDOW_SIZE], 0, WINDOW_SIZE));
+        assertEquals(fileCount + 1, shared.getFileCount());
+        assertNotNull("A reader of a forgotten file registers its windows again",
+                      shared.getCache(file, WINDOW_SIZE).getWindow(0));
+    }
+
+    private ReaderStatistics readAll(final FileReader reader) throws IOException {
+        try {
+            for (long position = 0; position < reader.length(); position += WINDOW_SIZE) {
+                assertTrue(reader.readByte(position) >= 0);
+            }
+            return reader.getStatistics();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void write(final byte[] bytes) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] fill(final int length, final byte value) {
+        final byte[] bytes = new byte[length];
+        Arrays.fill(bytes, value);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.windows.ByteBufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TempFileCacheTest {
+
+    private static final int REGION_SIZE = 1000;
+    private static final int[] LENGTHS = new int[] { 300, 300, 300, 300, 1, 999, 1000, 2500, 17, 700 };
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroRegionSize() {
+        new TempFileCache(null, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTempDirNotDirectory() throws IOException {
+        final File file = File.createTempFile("byteseek", ".test");
+        try {
+            new TempFileCache(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAddAndGet() throws IOException {
+        final TempFileCache cache = new TempFileCache(null, REGION_SIZE);
+        try {
+            assertNull(cache.getWindow(0));
+            assertNull(cache.getTempFile());
+            final Window[] windows = addWindows(cache, new Random(1));
+            assertEquals(LENGTHS.length, cache.size());
+            assertNotNull(cache.getTempFile());
+            assertWindows(cache, windows);
+            waitForWrites(cache);
+            assertWindows(cache, windows);
+            for (int i = 0; i < windows.length; i++) {
+                final Window window = cache.getWindow(windows[i].getWindowPosition());
+                if (LENGTHS[i] <= REGION_SIZE) {
+                    assertTrue("Written windows are read from the mapped file", window instanceof ByteBufferWindow);
+                }
+                assertArrayEquals(windows[i].getArray(), cache.reloadWindowBytes(window));
+            }
+            assertNull(cache.getWindow(1));
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testAddExistingWindow() throws IOException {
+        final TempFileCache cache = new TempFileCache(null, REGION_SIZE);
+        try {
+            cache.addWindow(new HardWindow(new byte[] { 1, 2, 3 }, 0, 3));
+            cache.addWindow(new HardWindow(new byte[] { 4, 5, 6 }, 0, 3));
+            waitForWrites(cache);
+            assertEquals(1, cache.size());
+            assertEquals(1, cache.getWindow(0).getByte(0));
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testResetReusesFile() throws IOException {
+        final TempFileCache cache = new TempFileCache(null, REGION_SIZE);
+        try {
+            addWindows(cache, new Random(2));
+            waitForWrites(cache);
+            final File tempFile = cache.getTempFile();
+            final long fileLength = tempFile.length();
+            cache.reset();
+            assertEquals(0, cache.size());
+            assertNull(cache.getWindow(0));
+            assertSame(tempFile, cache.getTempFile());
+            final Window[] windows = addWindows(cache, new Random(3));
+            waitForWrites(cache);
+            assertWindows(cache, windows);
+            assertEquals("Space is re-used after a reset", fileLength, tempFile.length());
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testClearDeletesFile() throws IOException {
+        final TempFileCache cache = new TempFileCache(null, REGION_SIZE);
+        addWindows(cache, new Random(4));
+        final File tempFile = cache.getTempFile();
+        assertTrue(tempFile.exists());
+        cache.clear();
+        assertFalse(tempFile.exists());
+        assertNull(cache.getTempFile());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getPendingWriteCount());
+        final Window[] windows = addWindows(cache, new Random(5));
+        assertWindows(cache, windows);
+        cache.clear();
+    }
+
+    @Test
+    public void testWrittenWindowsAreObserved() throws IOException {
+        final TempFileCache cache = new TempFileCache(null, REGION_SIZE);
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                freed.add(window);
+            }
+        });
+        final List<Window> written = new ArrayList<Window>();
+        cache.setWriteObserver(new TempFileCache.WriteObserver() {
+            @Override
+            public void windowWritten(final Window window) {
+                written.add(window);
+            }
+        });
+        try {
+            final Window[] windows = addWindows(cache, new Random(7));
+            waitForWrites(cache);
+            cache.addWindow(new HardWindow(new byte[] { 1, 2, 3 }, 100000, 3));
+            // The window just added may also have been written by now:
+            assertEquals(Arrays.asList(windows), written.subList(0, windows.length));
+            assertTrue("Windows still held are not freed", freed.isEmpty());
+            assertWindows(cache, windows);
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testStreamReaderWithTwoLevelCache() throws IOException {
+        final byte[] bytes = new byte[200000];
+        final Random random = new Random(6);
+        random.nextBytes(bytes);
+        final TempFileCache tempCache = new TempFileCache(null, 4096 * 3);
+        final InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(bytes), 4096,
+                TwoLevelCache.create(new LeastRecentlyUsedCache(2), tempCache));
+        try {
+            assertEquals(bytes.length, reader.length());
+            for (int count = 0; count < 20000; count++) {
+                final int position = random.nextInt(bytes.length);
+                assertEquals("Byte at " + position, bytes[position] & 0xFF, reader.readByte(position));
+            }
+            assertTrue(tempCache.size() > 40);
+        } finally {
+            reader.close();
+        }
+        assertNull(tempCache.getTempFile());
+    }
+
+    private Window[] addWindows(final TempFileCache cache, final Random random) throws IOException {
+        final Window[] windows = new Window[LENGTHS.length];
+        long position = 0;
+        for (int i = 0; i < LENGTHS.length; i++) {
+            final byte[] array = new byte[LENGTHS[i]];
+            random.nextBytes(array);
+            windows[i] = new HardWindow(array, position, LENGTHS[i]);
+            cache.addWindow(windows[i]);
+            position += LENGTHS[i];
+        }
+        return windows;
+    }
+
+    private void assertWindows(final TempFileCache cache, final Window[] windows) throws IOException {
+        for (final Window expected : windows) {
+            final Window window = cache.getWindow(expected.getWindowPosition());
+            assertNotNull(window);
+            assertEquals(expected.getWindowPosition(), window.getWindowPosition());
+            assertEquals(expected.length(), window.length());
+            for (int i = 0; i < expected.length(); i++) {
+                assertEquals("Byte " + i + " of window at " + expected.getWindowPosition(),
+                             expected.getByte(i), window.getByte(i));
+            }
+        }
+    }
+
+    private void waitForWrites(final TempFileCache cache) {
+        final long giveUp = System.currentTimeMillis() + 10000;
+        while (cache.getPendingWriteCount() > 0 && System.currentTimeMillis() < giveUp) {
+            Thread.yield();
+        }
+        assertEquals(0, cache.getPendingWriteCount());
+    }
+
+}
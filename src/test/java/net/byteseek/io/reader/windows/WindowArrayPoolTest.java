@@ -0,0 +1,212 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.windows;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.NoCache;
+import net.byteseek.io.reader.cache.TempFileCache;
+import net.byteseek.io.reader.cache.TwoLevelCache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the WindowArrayPool, and readers which create their windows from one.
+ *
+ * @author Matt Palmer
+ */
+public class WindowArrayPoolTest {
+
+	private final static int WINDOW_SIZE = 127;
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroArraySize() {
+		new WindowArrayPool(0, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroCapacity() {
+		new WindowArrayPool(1, 0);
+	}
+
+	@Test
+	public void testBorrowAndRecycle() {
+		final WindowArrayPool pool = new WindowArrayPool(16, 2);
+		final byte[] first = pool.borrowArray();
+		final byte[] second = pool.borrowArray();
+		final byte[] third = pool.borrowArray();
+		assertEquals(16, first.length);
+		assertNotSame(first, second);
+		assertEquals(0, pool.size());
+
+		assertTrue(pool.recycleArray(first));
+		assertFalse("Already in the pool", pool.recycleArray(first));
+		assertFalse("Wrong size", pool.recycleArray(new byte[15]));
+		assertFalse("Null array", pool.recycleArray(null));
+		assertTrue(pool.recycleArray(second));
+		assertFalse("Pool is full", pool.recycleArray(third));
+		assertEquals(2, pool.size());
+
+		assertSame(second, pool.borrowArray());
+		assertSame(first, pool.borrowArray());
+		assertEquals(0, pool.size());
+
+		pool.recycleArray(third);
+		pool.clear();
+		assertEquals(0, pool.size());
+		assertNotSame(third, pool.borrowArray());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPoolMustMatchWindowSize() throws IOException {
+		final FileReader reader = new FileReader(getFile("/TestASCII.txt"), WINDOW_SIZE);
+		try {
+			reader.useArrayPool(new WindowArrayPool(WINDOW_SIZE + 1, 4));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testFileReaderRecyclesArrays() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] expected = readFile(file);
+		final WindowArrayPool pool = new WindowArrayPool(WINDOW_SIZE, 8);
+		final FileReader reader = new FileReader(file, WINDOW_SIZE, new LeastRecentlyUsedCache(4));
+		try {
+			reader.useArrayPool(pool);
+			assertSame(pool, reader.getArrayPool());
+			assertReadsForwards(expected, reader);
+			assertTrue("Arrays were recycled", pool.size() > 0);
+			assertReadsBackwards(expected, reader);
+
+			reader.useArrayPool(null);
+			pool.clear();
+			assertReadsForwards(expected, reader);
+			assertEquals("No arrays recycled once the pool is removed", 0, pool.size());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testNoCacheDoesNotRecycleLastWindow() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] expected = readFile(file);
+		final FileReader reader = new FileReader(file, WINDOW_SIZE, NoCache.NO_CACHE);
+		try {
+			reader.useArrayPool(new WindowArrayPool(WINDOW_SIZE, 8));
+			assertReadsForwards(expected, reader);
+			assertReadsBackwards(expected, reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testInputStreamReaderRecyclesArrays() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] expected = readFile(file);
+		final WindowArrayPool pool = new WindowArrayPool(WINDOW_SIZE, 8);
+		final InputStreamReader reader = new InputStreamReader(new FileInputStream(file), WINDOW_SIZE,
+				                                               new LeastRecentlyUsedCache(4));
+		try {
+			reader.useArrayPool(pool);
+			assertReadsForwards(expected, reader);
+			assertTrue("Arrays were recycled", pool.size() > 0);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testInputStreamReaderRecyclesArraysWrittenToTempFile() throws IOException, InterruptedException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] expected = readFile(file);
+		final WindowArrayPool pool = new WindowArrayPool(WINDOW_SIZE, 8);
+		final TempFileCache tempFileCache = new TempFileCache();
+		final InputStreamReader reader = new InputStreamReader(new FileInputStream(file), WINDOW_SIZE,
+				TwoLevelCache.create(new LeastRecentlyUsedCache(32), tempFileCache));
+		try {
+			reader.useArrayPool(pool);
+			assertReadsForwards(expected, reader);
+			while (tempFileCache.getPendingWriteCount() > 0) {
+				Thread.sleep(1);
+			}
+			// Reading back through the windows in the temp file creates no new windows to borrow arrays,
+			// but windows added back to the primary cache spill into the temp file cache again:
+			assertReadsBackwards(expected, reader);
+			assertTrue("Arrays of windows written to the temp file were recycled", pool.size() > 0);
+			assertReadsForwards(expected, reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void assertReadsForwards(final byte[] expected, final AbstractReader reader) throws IOException {
+		for (int position = 0; position < expected.length; position++) {
+			assertEquals("Byte at position " + position, expected[position] & 0xFF, reader.readByte(position));
+		}
+		assertTrue(reader.readByte(expected.length) < 0);
+	}
+
+	private void assertReadsBackwards(final byte[] expected, final AbstractReader reader) throws IOException {
+		for (int position = expected.length - 1; position >= 0; position--) {
+			assertEquals("Byte at position " + position, expected[position] & 0xFF, reader.readByte(position));
+		}
+	}
+
+	private byte[] readFile(final File file) throws IOException {
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		return bytes;
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
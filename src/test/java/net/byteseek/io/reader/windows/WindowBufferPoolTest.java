@@ -0,0 +1,193 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.windows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.PositionalFileReader;
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.NoCache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the WindowBufferPool, and readers which read their windows into buffers from one.
+ *
+ * @author Matt Palmer
+ */
+public class WindowBufferPoolTest {
+
+	private final static int WINDOW_SIZE = 127;
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroBufferSize() {
+		new WindowBufferPool(0, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroCapacity() {
+		new WindowBufferPool(1, 0);
+	}
+
+	@Test
+	public void testBorrowAndRecycle() {
+		final WindowBufferPool pool = new WindowBufferPool(16, 2);
+		assertNull("Empty pool", pool.borrowBuffer());
+		final ByteBuffer first = ByteBuffer.allocateDirect(16);
+		final ByteBuffer second = ByteBuffer.allocateDirect(16);
+		final ByteBuffer third = ByteBuffer.allocateDirect(16);
+
+		assertTrue(pool.recycleBuffer(first));
+		assertFalse("Already in the pool", pool.recycleBuffer(first));
+		assertFalse("Wrong size", pool.recycleBuffer(ByteBuffer.allocateDirect(15)));
+		assertFalse("Heap buffer", pool.recycleBuffer(ByteBuffer.allocate(16)));
+		assertFalse("Read only buffer", pool.recycleBuffer(third.asReadOnlyBuffer()));
+		assertFalse("Null buffer", pool.recycleBuffer(null));
+		second.position(10).limit(12);
+		assertTrue(pool.recycleBuffer(second));
+		assertFalse("Pool is full", pool.recycleBuffer(third));
+		assertEquals(2, pool.size());
+
+		final ByteBuffer borrowed = pool.borrowBuffer();
+		assertSame(second, borrowed);
+		assertEquals("Borrowed buffers are cleared", 0, borrowed.position());
+		assertEquals("Borrowed buffers are cleared", 16, borrowed.limit());
+		assertSame(first, pool.borrowBuffer());
+		assertEquals(0, pool.size());
+
+		pool.recycleBuffer(third);
+		pool.clear();
+		assertEquals(0, pool.size());
+		assertNull(pool.borrowBuffer());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPoolMustMatchWindowSize() throws IOException {
+		final PositionalFileReader reader = new PositionalFileReader(getFile("/TestASCII.txt"), WINDOW_SIZE);
+		try {
+			reader.useBufferPool(new WindowBufferPool(WINDOW_SIZE + 1, 4));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testPositionalFileReaderRecyclesBuffers() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] expected = readFile(file);
+		final WindowBufferPool pool = new WindowBufferPool(WINDOW_SIZE, 8);
+		final PositionalFileReader reader = new PositionalFileReader(file, WINDOW_SIZE, new LeastRecentlyUsedCache(4));
+		try {
+			reader.useDirectBuffers(true);
+			reader.useBufferPool(pool);
+			assertSame(pool, reader.getBufferPool());
+			assertReadsForwards(expected, reader);
+			assertTrue("Buffers were recycled", pool.size() > 0);
+			assertReadsBackwards(expected, reader);
+
+			reader.useBufferPool(null);
+			pool.clear();
+			assertReadsForwards(expected, reader);
+			assertEquals("No buffers recycled once the pool is removed", 0, pool.size());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testNoCacheDoesNotRecycleLastWindow() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] expected = readFile(file);
+		final PositionalFileReader reader = new PositionalFileReader(file, WINDOW_SIZE, NoCache.NO_CACHE);
+		try {
+			reader.useDirectBuffers(true);
+			reader.useBufferPool(new WindowBufferPool(WINDOW_SIZE, 8));
+			assertReadsForwards(expected, reader);
+			assertReadsBackwards(expected, reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testAdaptiveWindowsOnlyPoolWindowSizedBuffers() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		final byte[] expected = readFile(file);
+		final WindowBufferPool pool = new WindowBufferPool(WINDOW_SIZE, 8);
+		final PositionalFileReader reader = new PositionalFileReader(file, WINDOW_SIZE, new LeastRecentlyUsedCache(2));
+		try {
+			reader.useAdaptiveWindowSizes(WINDOW_SIZE * 4);
+			reader.useDirectBuffers(true);
+			reader.useBufferPool(pool);
+			assertReadsForwards(expected, reader);
+			assertReadsBackwards(expected, reader);
+			assertReadsForwards(expected, reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void assertReadsForwards(final byte[] expected, final AbstractReader reader) throws IOException {
+		for (int position = 0; position < expected.length; position++) {
+			assertEquals("Byte at position " + position, expected[position] & 0xFF, reader.readByte(position));
+		}
+		assertTrue(reader.readByte(expected.length) < 0);
+	}
+
+	private void assertReadsBackwards(final byte[] expected, final AbstractReader reader) throws IOException {
+		for (int position = expected.length - 1; position >= 0; position--) {
+			assertEquals("Byte at position " + position, expected[position] & 0xFF, reader.readByte(position));
+		}
+	}
+
+	private byte[] readFile(final File file) throws IOException {
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		return bytes;
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.byteseek.io.reader.AsynchronousFileReader;
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.cache.ConcurrentClockCache;
+import net.byteseek.matcher.Matcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AsyncSearcherTest {
+
+    private static final int WINDOW_SIZE = 31;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownMatchLength() {
+        new AsyncSearcher<Matcher>(new MatcherSearcher(new ByteSequenceMatcher("abc")));
+    }
+
+    @Test
+    public void testSearchesMatchSynchronousSearch() throws Exception {
+        final File file = getFile();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final AsynchronousFileReader reader = new AsynchronousFileReader(file, WINDOW_SIZE,
+                                                                         new ConcurrentClockCache(4), executor);
+        try {
+            for (final String pattern : new String[] {"the", "Shakespeare", "a", "a pattern which does not appear"}) {
+                final SequenceMatcher sequence = new ByteSequenceMatcher(pattern);
+                for (final Searcher<SequenceMatcher> searcher : searchers(sequence)) {
+                    assertEquals(searcher + " " + pattern, expectedPositions(file, searcher),
+                                 asyncPositions(new AsyncSearcher<SequenceMatcher>(searcher), reader));
+                }
+            }
+        } finally {
+            reader.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testManyConcurrentSearches() throws Exception {
+        final File file = getFile();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final AsyncSearcher<SequenceMatcher> searcher = new AsyncSearcher<SequenceMatcher>(
+                    new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher("a pattern which does not appear")));
+            final List<AsynchronousFileReader> readers = new ArrayList<AsynchronousFileReader>();
+            final List<Future<List<SearchResult<SequenceMatcher>>>> searches = new ArrayList<Future<List<SearchResult<SequenceMatcher>>>>();
+            for (int i = 0; i < 50; i++) {
+                final AsynchronousFileReader reader = new AsynchronousFileReader(file, WINDOW_SIZE,
+                                                                                 new ConcurrentClockCache(4), executor);
+                readers.add(reader);
+                searches.add(searcher.searchForwards(reader, 0));
+            }
+            for (final Future<List<SearchResult<SequenceMatcher>>> search : searches) {
+                assertTrue(search.get(30, TimeUnit.SECONDS).isEmpty());
+            }
+            for (final AsynchronousFileReader reader : readers) {
+                reader.close();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private List<Searcher<SequenceMatcher>> searchers(final SequenceMatcher sequence) {
+        final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+        searchers.add(new BoyerMooreHorspoolSearcher(sequence));
+        searchers.add(new SundayQuickSearcher(sequence));
+        return searchers;
+    }
+
+    private List<Long> expectedPositions(final File file, final Searcher<SequenceMatcher> searcher) throws IOException {
+        final FileReader reader = new FileReader(file, WINDOW_SIZE);
+        try {
+            final List<Long> positions = new ArrayList<Long>();
+            for (final SearchResult<SequenceMatcher> result : SearchUtils.searchAllForwards(searcher, reader)) {
+                positions.add(result.getMatchPosition());
+            }
+            return positions;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private List<Long> asyncPositions(final AsyncSearcher<SequenceMatcher> searcher,
+                                      final AsynchronousFileReader reader) throws Exception {
+        final List<Long> positions = new ArrayList<Long>();
+        long from = 0;
+        List<SearchResult<SequenceMatcher>> results;
+        while (!(results = searcher.searchForwards(reader, from).get(30, TimeUnit.SECONDS)).isEmpty()) {
+            for (final SearchResult<SequenceMatcher> result : results) {
+                positions.add(result.getMatchPosition());
+            }
+            from = results.get(0).getMatchPosition() + 1;
+        }
+        return positions;
+    }
+
+    private File getFile() {
+        return new File(getClass().getResource("/TestASCII.txt").getPath());
+    }
+
+}
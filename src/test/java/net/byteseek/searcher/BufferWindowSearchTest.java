@@ -0,0 +1,420 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import net.byteseek.io.reader.DirectIOFileReader;
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.MappedFileReader;
+import net.byteseek.io.reader.PositionalFileReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.matcher.multisequence.ListMultiSequenceMatcher;
+import net.byteseek.matcher.multisequence.MultiSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.bytes.ByteSearcher;
+import net.byteseek.searcher.multisequence.set_horspool.SetHorspoolSearcher;
+import net.byteseek.searcher.multisequence.wu_manber.WuManberOneByteSearcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that searchers which read directly from the buffers of BufferWindows
+ * find the same matches as a brute force search of the file bytes.
+ *
+ * @author Matt Palmer
+ */
+public class BufferWindowSearchTest {
+
+    private final static int[] WINDOW_SIZES = new int[] { 5, 31, 4096, 4099 };
+    private final static String[] SEQUENCES = new String[] { "Midsommer", "the", "A", "Exeunt." };
+    private final static String[] MULTI_SEQUENCES = new String[] { "Midsommer", "Dreame", "Puck", "Exeunt." };
+    private final static long[] BOUNDS = new long[] { 0, 1, 8, 319, 4095, 4100, 50003 };
+
+    @Test
+    public void testReadersProduceBufferWindows() throws IOException {
+        for (final WindowReader reader : createReaders(4096)) {
+            try {
+                assertTrue(reader.toString(), reader.getWindow(0) instanceof BufferWindow);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSequenceSearchers() throws IOException {
+        final byte[] fileBytes = readFile(getFile("/TestASCII.txt"));
+        for (final String sequence : SEQUENCES) {
+            final SequenceMatcher matcher = new ByteSequenceMatcher(sequence);
+            final List<Long> expected = bruteForce(fileBytes, sequence);
+            assertFalse("Some matches for " + sequence, expected.isEmpty());
+            final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+            searchers.add(new BoyerMooreHorspoolSearcher(matcher));
+            searchers.add(new SundayQuickSearcher(matcher));
+            for (final Searcher<SequenceMatcher> searcher : searchers) {
+                assertSearches(searcher, expected);
+            }
+        }
+    }
+
+    @Test
+    public void testMultiSequenceSearchers() throws IOException {
+        final byte[] fileBytes = readFile(getFile("/TestASCII.txt"));
+        final List<SequenceMatcher> matchers = new ArrayList<SequenceMatcher>();
+        final SortedSet<Long> expected = new TreeSet<Long>();
+        for (final String sequence : MULTI_SEQUENCES) {
+            final SequenceMatcher matcher = new ByteSequenceMatcher(sequence);
+            matchers.add(matcher);
+            final List<Long> matches = bruteForce(fileBytes, sequence);
+            assertFalse("Some matches for " + sequence, matches.isEmpty());
+            expected.addAll(matches);
+            final MultiSequenceMatcher single = new ListMultiSequenceMatcher(Arrays.asList(matcher));
+            assertMultiSequenceSearches(new WuManberOneByteSearcher(single), matches);
+            assertMultiSequenceSearches(new SetHorspoolSearcher(single), matches);
+        }
+        final MultiSequenceMatcher all = new ListMultiSequenceMatcher(matchers);
+        assertMultiSequenceSearches(new WuManberOneByteSearcher(all), new ArrayList<Long>(expected));
+        assertMultiSequenceSearches(new SetHorspoolSearcher(all), new ArrayList<Long>(expected));
+    }
+
+    @Test
+    public void testSearchesStopAtToPosition() throws IOException {
+        final File file = createFile("xxxxxxxxxxabcdxxxxxx");
+        try {
+            final Searcher<SequenceMatcher> searcher = new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher("abcd"));
+            for (final WindowReader reader : createReaders(file, 5)) {
+                try {
+                    assertTrue(reader.toString(), searcher.searchForwards(reader, 0, 8).isEmpty());
+                    assertEquals(reader.toString(), 10, searcher.searchForwards(reader, 0, 10).get(0).getMatchPosition());
+                } finally {
+                    reader.close();
+                }
+            }
+        } finally {
+            file.delete();
+        }
+        final File sixBytes = createFile("abcdef");
+        try {
+            final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+            searchers.add(new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher("cd")));
+            searchers.add(new SundayQuickSearcher(new ByteSequenceMatcher("cd")));
+            for (final Searcher<SequenceMatcher> searcher : searchers) {
+                for (final WindowReader reader : createReaders(sixBytes, 4096)) {
+                    try {
+                        assertTrue(searcher + " " + reader, searcher.searchForwards(reader, 0, 1).isEmpty());
+                        assertEquals(searcher + " " + reader, 2, searcher.searchForwards(reader, 0, 2).get(0).getMatchPosition());
+                    } finally {
+                        reader.close();
+                    }
+                }
+            }
+        } finally {
+            sixBytes.delete();
+        }
+    }
+
+    @Test
+    public void testBoundedSequenceSearchers() throws IOException {
+        final byte[] fileBytes = readFile(getFile("/TestASCII.txt"));
+        for (final String sequence : SEQUENCES) {
+            final SequenceMatcher matcher = new ByteSequenceMatcher(sequence);
+            final List<Long> expected = bruteForce(fileBytes, sequence);
+            final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+            searchers.add(new BoyerMooreHorspoolSearcher(matcher));
+            searchers.add(new SundayQuickSearcher(matcher));
+            for (final Searcher<SequenceMatcher> searcher : searchers) {
+                for (final int windowSize : WINDOW_SIZES) {
+                    final List<WindowReader> readers = createReaders(getFile("/TestASCII.txt"), windowSize);
+                    readers.add(new FileReader(getFile("/TestASCII.txt"), windowSize));
+                    for (final WindowReader reader : readers) {
+                        try {
+                            for (final long bound : BOUNDS) {
+                                assertEquals("Forwards to " + bound + " " + searcher + " " + reader,
+                                             between(expected, 0, bound), searchForwards(searcher, reader, 0, bound));
+                                final List<Long> backwards = between(expected, bound, fileBytes.length);
+                                Collections.reverse(backwards);
+                                assertEquals("Backwards to " + bound + " " + searcher + " " + reader,
+                                             backwards, searchBackwards(searcher, reader, fileBytes.length, bound));
+                            }
+                        } finally {
+                            reader.close();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The buffer searchers read array windows and buffer windows with the same loop,
+     * so searching the same file through a FileReader and through readers producing
+     * BufferWindows must give identical results, whether the search is bounded or not.
+     */
+    @Test
+    public void testBufferSearchesMatchArraySearches() throws IOException {
+        final List<Searcher<?>> searchers = new ArrayList<Searcher<?>>();
+        for (final String sequence : SEQUENCES) {
+            final SequenceMatcher matcher = new ByteSequenceMatcher(sequence);
+            searchers.add(new BoyerMooreHorspoolSearcher(matcher));
+            searchers.add(new SundayQuickSearcher(matcher));
+        }
+        final List<SequenceMatcher> matchers = new ArrayList<SequenceMatcher>();
+        for (final String sequence : MULTI_SEQUENCES) {
+            matchers.add(new ByteSequenceMatcher(sequence));
+        }
+        searchers.add(new WuManberOneByteSearcher(new ListMultiSequenceMatcher(matchers)));
+        final File file = getFile("/TestASCII.txt");
+        for (final Searcher<?> searcher : searchers) {
+            for (final int windowSize : WINDOW_SIZES) {
+                final WindowReader arrayReader = new FileReader(file, windowSize);
+                try {
+                    for (final WindowReader reader : createReaders(file, windowSize)) {
+                        try {
+                            for (final long bound : BOUNDS) {
+                                assertEquals("Forwards to " + bound + " " + searcher + " " + reader,
+                                             searchForwards(searcher, arrayReader, 0, bound),
+                                             searchForwards(searcher, reader, 0, bound));
+                                assertEquals("Backwards to " + bound + " " + searcher + " " + reader,
+                                             searchBackwards(searcher, arrayReader, file.length(), bound),
+                                             searchBackwards(searcher, reader, file.length(), bound));
+                            }
+                        } finally {
+                            reader.close();
+                        }
+                    }
+                } finally {
+                    arrayReader.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testByteSearcher() throws IOException {
+        final byte[] fileBytes = readFile(getFile("/TestASCII.txt"));
+        for (final String value : new String[] { "e", "Z", "\n" }) {
+            assertSearches(new ByteSearcher((byte) value.charAt(0)), bruteForce(fileBytes, value));
+        }
+    }
+
+    private <T> void assertSearches(final Searcher<T> searcher, final List<Long> expected) throws IOException {
+        final List<Long> expectedBackwards = new ArrayList<Long>(expected);
+        Collections.reverse(expectedBackwards);
+        for (final int windowSize : WINDOW_SIZES) {
+            for (final WindowReader reader : createReaders(windowSize)) {
+                try {
+                    assertEquals("Forwards " + searcher + " " + reader, expected, searchForwards(searcher, reader));
+                    assertEquals("Backwards " + searcher + " " + reader, expectedBackwards, searchBackwards(searcher, reader));
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Asserts that a multi-sequence searcher finds the expected matches through
+     * readers producing byte arrays and buffers, and that some of those matches
+     * cross a window boundary for each window size, so the searches must find
+     * matches by reading across windows as well as within them.
+     */
+    private <T> void assertMultiSequenceSearches(final Searcher<T> searcher, final List<Long> expected) throws IOException {
+        int shortest = Integer.MAX_VALUE;
+        for (final String sequence : MULTI_SEQUENCES) {
+            shortest = Math.min(shortest, sequence.length());
+        }
+        final List<Long> expectedBackwards = new ArrayList<Long>(expected);
+        Collections.reverse(expectedBackwards);
+        for (final int windowSize : WINDOW_SIZES) {
+            final List<WindowReader> readers = createReaders(windowSize);
+            readers.add(new FileReader(getFile("/TestASCII.txt"), windowSize));
+            for (final WindowReader reader : readers) {
+                try {
+                    assertEquals("Forwards " + searcher + " " + reader, expected, searchForwards(searcher, reader));
+                    assertEquals("Backwards " + searcher + " " + reader, expectedBackwards, searchBackwards(searcher, reader));
+                } finally {
+                    reader.close();
+                }
+            }
+            if (windowSize < 2 * shortest) {
+                assertTrue("Matches cross windows of size " + windowSize, crossesWindow(expected, windowSize, shortest));
+            }
+        }
+    }
+
+    private boolean crossesWindow(final List<Long> positions, final int windowSize, final int matchLength) {
+        for (final Long position : positions) {
+            if (position / windowSize != (position + matchLength - 1) / windowSize) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<WindowReader> createReaders(final int windowSize) throws IOException {
+        return createReaders(getFile("/TestASCII.txt"), windowSize);
+    }
+
+    private List<WindowReader> createReaders(final File file, final int windowSize) throws IOException {
+        final List<WindowReader> readers = new ArrayList<WindowReader>();
+        final PositionalFileReader direct = new PositionalFileReader(file, windowSize);
+        direct.useDirectBuffers(true);
+        readers.add(direct);
+        readers.add(new MappedFileReader(file, windowSize));
+        readers.add(new DirectIOFileReader(file, windowSize));
+        return readers;
+    }
+
+    private <T> List<Long> searchForwards(final Searcher<T> searcher, final WindowReader reader,
+                                          final long fromPosition, final long toPosition) throws IOException {
+        final List<Long> positions = new ArrayList<Long>();
+        long position = fromPosition;
+        List<SearchResult<T>> results;
+        while (position <= toPosition && !(results = searcher.searchForwards(reader, position, toPosition)).isEmpty()) {
+            final SortedSet<Long> found = new TreeSet<Long>();
+            for (final SearchResult<T> result : results) {
+                found.add(result.getMatchPosition());
+            }
+            positions.addAll(found);
+            position = found.last() + 1;
+        }
+        return positions;
+    }
+
+    private <T> List<Long> searchBackwards(final Searcher<T> searcher, final WindowReader reader,
+                                           final long fromPosition, final long toPosition) throws IOException {
+        final List<Long> positions = new ArrayList<Long>();
+        long position = fromPosition;
+        List<SearchResult<T>> results;
+        while (position >= toPosition && !(results = searcher.searchBackwards(reader, position, toPosition)).isEmpty()) {
+            final SortedSet<Long> found = new TreeSet<Long>(Collections.reverseOrder());
+            for (final SearchResult<T> result : results) {
+                found.add(result.getMatchPosition());
+            }
+            positions.addAll(found);
+            position = found.last() - 1;
+        }
+        return positions;
+    }
+
+    private List<Long> between(final List<Long> positions, final long from, final long to) {
+        final List<Long> result = new ArrayList<Long>();
+        for (final Long position : positions) {
+            if (position >= from && position <= to) {
+                result.add(position);
+            }
+        }
+        return result;
+    }
+
+    private File createFile(final String contents) throws IOException {
+        final File file = File.createTempFile("bufferSearch", ".txt");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private <T> List<Long> searchForwards(final Searcher<T> searcher, final WindowReader reader) {
+        final SortedSet<Long> positions = new TreeSet<Long>();
+        final ForwardSearchIterator<T> iterator = new ForwardSearchIterator<T>(searcher, reader);
+        while (iterator.hasNext()) {
+            for (final SearchResult<T> result : iterator.next()) {
+                positions.add(result.getMatchPosition());
+            }
+        }
+        return new ArrayList<Long>(positions);
+    }
+
+    private <T> List<Long> searchBackwards(final Searcher<T> searcher, final WindowReader reader) throws IOException {
+        final SortedSet<Long> positions = new TreeSet<Long>();
+        final BackwardSearchIterator<T> iterator = new BackwardSearchIterator<T>(searcher, reader);
+        while (iterator.hasNext()) {
+            for (final SearchResult<T> result : iterator.next()) {
+                positions.add(result.getMatchPosition());
+            }
+        }
+        final List<Long> results = new ArrayList<Long>(positions);
+        Collections.reverse(results);
+        return results;
+    }
+
+    private List<Long> bruteForce(final byte[] bytes, final String sequence) {
+        final byte[] pattern = sequence.getBytes();
+        final List<Long> positions = new ArrayList<Long>();
+        for (int position = 0; position <= bytes.length - pattern.length; position++) {
+            int index = 0;
+            while (index < pattern.length && bytes[position + index] == pattern[index]) {
+                index++;
+            }
+            if (index == pattern.length) {
+                positions.add((long) position);
+            }
+        }
+        return positions;
+    }
+
+    private byte[] readFile(final File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        return bytes;
+    }
+
+    private File getFile(final String resourceName) {
+        return new File(this.getClass().getResource(resourceName).getPath());
+    }
+
+}